@@ -12,6 +12,8 @@ import java.util.concurrent.Future;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.TriangularDoubleMatrix2D;
 import cern.jet.math.tdouble.DoubleFunctions;
 import edu.emory.mathcs.utils.ConcurrencyUtils;
 
@@ -168,11 +170,15 @@ public class SmpDoubleBlas implements DoubleBlas {
             A_loc = A;
         }
         DoubleProperty.DEFAULT.checkSquare(A_loc);
-        int size = A_loc.rows();
+        final int size = A_loc.rows();
         if (size != x.size() || size != y.size()) {
             throw new IllegalArgumentException(A_loc.toStringShort() + ", " + x.toStringShort() + ", "
                     + y.toStringShort());
         }
+        if (A instanceof SymmetricDoubleMatrix2D) {
+            A.zMult(x == y ? x.copy() : x, y, alpha, beta, false);
+            return;
+        }
         final DoubleMatrix1D tmp = x.like();
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_2D())) {
@@ -190,7 +196,7 @@ public class SmpDoubleBlas implements DoubleBlas {
                             for (int j = 0; j <= i; j++) {
                                 sum += A_loc.getQuick(i, j) * x.getQuick(j);
                             }
-                            for (int j = i + 1; j < lastIdx; j++) {
+                            for (int j = i + 1; j < size; j++) {
                                 sum += A_loc.getQuick(j, i) * x.getQuick(j);
                             }
                             tmp.setQuick(i, alpha * sum + beta * y.getQuick(i));
@@ -227,10 +233,15 @@ public class SmpDoubleBlas implements DoubleBlas {
         }
 
         DoubleProperty.DEFAULT.checkSquare(A_loc);
-        int size = A_loc.rows();
+        final int size = A_loc.rows();
         if (size != x.size()) {
             throw new IllegalArgumentException(A_loc.toStringShort() + ", " + x.toStringShort());
         }
+        if (A instanceof TriangularDoubleMatrix2D && !isUnitTriangular
+                && ((TriangularDoubleMatrix2D) A).isUpperTriangular() == isUpperTriangular) {
+            x.assign(A.zMult(x, null, 1, 0, transposeA));
+            return;
+        }
 
         final DoubleMatrix1D b = x.like();
         final DoubleMatrix1D y = x.like();
@@ -261,7 +272,7 @@ public class SmpDoubleBlas implements DoubleBlas {
                                 sum += y.getQuick(i) * x.getQuick(i);
                             } else {
                                 sum += y.getQuick(i) * x.getQuick(i);
-                                for (int j = i + 1; j < lastIdx; j++) {
+                                for (int j = i + 1; j < size; j++) {
                                     sum += A_loc.getQuick(i, j) * x.getQuick(j);
                                 }
                             }
@@ -8,6 +8,9 @@ It is provided "as is" without expressed or implied warranty.
  */
 package cern.colt.matrix.tdouble.algo;
 
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.decomposition.CSparseDoubleLUDecomposition;
@@ -17,8 +20,11 @@ import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleQRDecomposition;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_amd;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_norm;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
 
 /**
  * Linear algebraic matrix operations operating on sparse matrices.
@@ -59,6 +65,27 @@ public class SparseDoubleAlgebra {
         ZERO.property = DoubleProperty.ZERO; // immutable property object
     }
 
+    /*
+     * Returns the row pointers and column indexes of a row compressed square
+     * matrix, or the column pointers and row indexes of a column compressed
+     * one. Both describe the graph of A + A'.
+     */
+    private static int[][] pattern(DoubleMatrix2D A) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D U = ((SymmetricSparseRCDoubleMatrix2D) A).getUpper();
+            return new int[][] { U.getRowPointers(), U.getColumnIndexes() };
+        }
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            return new int[][] { ((SparseRCDoubleMatrix2D) A).getRowPointers(),
+                    ((SparseRCDoubleMatrix2D) A).getColumnIndexes() };
+        } else {
+            return new int[][] { ((SparseCCDoubleMatrix2D) A).getColumnPointers(),
+                    ((SparseCCDoubleMatrix2D) A).getRowIndexes() };
+        }
+    }
+
     private static double normInfinityRC(SparseRCDoubleMatrix2D A) {
         int p, j, n, Ap[];
         double Ax[], norm = 0, s;
@@ -96,6 +123,34 @@ public class SparseDoubleAlgebra {
         setProperty(new DoubleProperty(tolerance));
     }
 
+    /**
+     * Returns the approximate minimum degree ordering of the square matrix
+     * <tt>A</tt>, computed on the graph of <tt>A + A'</tt>. The ordering
+     * reduces the fill-in of the Cholesky factor of <tt>permute(A, p)</tt>.
+     * 
+     * @param A
+     *            sparse square matrix
+     * @return the permutation <tt>p</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or not sparse.
+     */
+    public int[] amd(DoubleMatrix2D A) {
+        int[][] pattern = pattern(A);
+        int n = A.rows();
+        // A and A' have the same A + A', so the row compressed pattern can be used as is
+        Dcs dcs = new Dcs();
+        dcs.m = n;
+        dcs.n = n;
+        dcs.p = pattern[0];
+        dcs.i = pattern[1];
+        dcs.nzmax = pattern[0][n];
+        dcs.nz = -1;
+        int[] P = Dcs_amd.cs_amd(1, dcs);
+        int[] p = new int[n];
+        System.arraycopy(P, 0, p, 0, n);
+        return p;
+    }
+
     /**
      * Constructs and returns the Cholesky-decomposition of the given matrix.
      * 
@@ -120,6 +175,43 @@ public class SparseDoubleAlgebra {
         return new SparseDoubleAlgebra(property.tolerance());
     }
 
+    /**
+     * Returns the column approximate minimum degree ordering of the matrix
+     * <tt>A</tt>, computed on the graph of <tt>A'*A</tt> with the dense rows
+     * of <tt>A</tt> ignored. The ordering reduces the fill-in of the LU and QR
+     * factors of <tt>permute(A, null, q)</tt>.
+     * 
+     * @param A
+     *            sparse matrix
+     * @return the column permutation <tt>q</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not sparse.
+     */
+    public int[] columnAmd(DoubleMatrix2D A) {
+        Dcs dcs;
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D) {
+            // the full pattern of a symmetric matrix is also its column compressed pattern
+            SparseRCDoubleMatrix2D B = ((SymmetricSparseRCDoubleMatrix2D) A).getRowCompressed();
+            dcs = new Dcs();
+            dcs.m = A.rows();
+            dcs.n = A.columns();
+            dcs.p = B.getRowPointers();
+            dcs.i = B.getColumnIndexes();
+            dcs.nzmax = dcs.p[dcs.n];
+            dcs.nz = -1;
+        } else {
+            DoubleProperty.DEFAULT.checkSparse(A);
+            SparseCCDoubleMatrix2D B = A instanceof SparseCCDoubleMatrix2D ? (SparseCCDoubleMatrix2D) A
+                    : ((SparseRCDoubleMatrix2D) A).getColumnCompressed();
+            dcs = B.elements();
+        }
+        int n = A.columns();
+        int[] Q = Dcs_amd.cs_amd(2, dcs);
+        int[] q = new int[n];
+        System.arraycopy(Q, 0, q, 0, n);
+        return q;
+    }
+
     /**
      * Returns the determinant of matrix <tt>A</tt>.
      * 
@@ -145,6 +237,26 @@ public class SparseDoubleAlgebra {
         return new CSparseDoubleLUDecomposition(matrix, order, true);
     }
 
+    /**
+     * Returns a nested dissection ordering of the square matrix <tt>A</tt>,
+     * computed on the graph of <tt>A + A'</tt>. The graph is split
+     * recursively by vertex separators taken from the middle level of a
+     * breadth-first search, and every separator is numbered after the two
+     * parts it separates. The upper levels of the recursion run concurrently.
+     * Factors of <tt>permute(A, p)</tt> have independent subtrees that can be
+     * eliminated in parallel.
+     * 
+     * @param A
+     *            sparse square matrix
+     * @return the permutation <tt>p</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or not sparse.
+     */
+    public int[] nestedDissection(DoubleMatrix2D A) {
+        int[][] pattern = pattern(A);
+        return new SparseDoubleOrdering(A.rows(), pattern[0], pattern[1]).nestedDissection();
+    }
+
     /**
      * Returns the 1-norm of matrix <tt>A</tt>, which is the maximum absolute
      * column sum.
@@ -175,6 +287,128 @@ public class SparseDoubleAlgebra {
         return norm;
     }
 
+    /**
+     * Returns a new vector <tt>y</tt> with <tt>y[i] = x[indexes[i]]</tt>. The
+     * inverse permutation is applied with
+     * <tt>permute(y, permutationInverse(indexes))</tt>.
+     * 
+     * @param x
+     *            the vector to permute.
+     * @param indexes
+     *            the permutation.
+     * @return the permuted vector
+     * @throws IndexOutOfBoundsException
+     *             if <tt>indexes</tt> is not a permutation of
+     *             <tt>[0, x.size())</tt>.
+     */
+    public DoubleMatrix1D permute(DoubleMatrix1D x, final int[] indexes) {
+        permutationInverse(indexes);
+        final int size = (int) x.size();
+        if (indexes.length != size)
+            throw new IndexOutOfBoundsException("invalid permutation");
+        final DenseDoubleMatrix1D y = new DenseDoubleMatrix1D(size);
+        final double[] elementsY = y.elements();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if (x instanceof DenseDoubleMatrix1D && (nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_1D())) {
+            DenseDoubleMatrix1D xx = (DenseDoubleMatrix1D) x;
+            final double[] elementsX = xx.elements();
+            final int zeroX = (int) xx.index(0);
+            final int strideX = xx.stride();
+            nthreads = Math.min(nthreads, size);
+            Future<?>[] futures = new Future[nthreads];
+            int k = size / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        for (int i = firstIdx; i < lastIdx; i++) {
+                            elementsY[i] = elementsX[zeroX + strideX * indexes[i]];
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            for (int i = 0; i < size; i++) {
+                elementsY[i] = x.getQuick(indexes[i]);
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Returns the symmetric permutation <tt>A(indexes, indexes)</tt> of the
+     * square matrix <tt>A</tt> as a new matrix of the same type. A
+     * {@link SymmetricSparseRCDoubleMatrix2D} stays symmetric.
+     * 
+     * @param A
+     *            sparse square matrix
+     * @param indexes
+     *            the permutation of the rows and columns, e.g. from
+     *            {@link #reverseCuthillMcKee(DoubleMatrix2D)}.
+     * @return the permuted matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or not sparse.
+     * @throws IndexOutOfBoundsException
+     *             if <tt>indexes</tt> is not a permutation of the rows.
+     */
+    public DoubleMatrix2D permute(DoubleMatrix2D A, int[] indexes) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D)
+            return ((SymmetricSparseRCDoubleMatrix2D) A).getPermuted(indexes);
+        return permute(A, indexes, indexes);
+    }
+
+    /**
+     * Returns <tt>A(rowIndexes, columnIndexes)</tt> as a new matrix of the
+     * same type, see {@link SparseRCDoubleMatrix2D#getPermuted(int[], int[])}
+     * and {@link SparseCCDoubleMatrix2D#getPermuted(int[], int[])}.
+     * 
+     * @param A
+     *            sparse matrix
+     * @param rowIndexes
+     *            the row permutation, or <tt>null</tt> for the identity.
+     * @param columnIndexes
+     *            the column permutation, or <tt>null</tt> for the identity.
+     * @return the permuted matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not sparse.
+     * @throws IndexOutOfBoundsException
+     *             if an argument is not a permutation of the rows or columns.
+     */
+    public DoubleMatrix2D permute(DoubleMatrix2D A, int[] rowIndexes, int[] columnIndexes) {
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            return ((SparseRCDoubleMatrix2D) A).getPermuted(rowIndexes, columnIndexes);
+        } else {
+            return ((SparseCCDoubleMatrix2D) A).getPermuted(rowIndexes, columnIndexes);
+        }
+    }
+
+    /**
+     * Returns the inverse of a permutation, <tt>q[indexes[i]] = i</tt>.
+     * 
+     * @param indexes
+     *            the permutation.
+     * @return the inverse permutation
+     * @throws IndexOutOfBoundsException
+     *             if <tt>indexes</tt> is not a permutation of
+     *             <tt>[0, indexes.length)</tt>.
+     */
+    public int[] permutationInverse(int[] indexes) {
+        int n = indexes.length;
+        int[] inverse = new int[n];
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < n; i++) {
+            int p = indexes[i];
+            if (p < 0 || p >= n || inverse[p] >= 0)
+                throw new IndexOutOfBoundsException("invalid permutation");
+            inverse[p] = i;
+        }
+        return inverse;
+    }
+
     /**
      * Returns the property object attached to this Algebra, defining tolerance.
      * 
@@ -199,6 +433,24 @@ public class SparseDoubleAlgebra {
         return new SparseDoubleQRDecomposition(matrix, order);
     }
 
+    /**
+     * Returns the reverse Cuthill-McKee ordering of the square matrix
+     * <tt>A</tt>, computed on the graph of <tt>A + A'</tt>. The ordering
+     * reduces the bandwidth and profile of <tt>permute(A, p)</tt>, which
+     * improves the locality of <tt>zMult</tt> and often the quality of
+     * incomplete factorizations.
+     * 
+     * @param A
+     *            sparse square matrix
+     * @return the permutation <tt>p</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or not sparse.
+     */
+    public int[] reverseCuthillMcKee(DoubleMatrix2D A) {
+        int[][] pattern = pattern(A);
+        return new SparseDoubleOrdering(A.rows(), pattern[0], pattern[1]).reverseCuthillMcKee();
+    }
+
     /**
      * Attaches the given property object to this Algebra, defining tolerance.
      * 
@@ -242,4 +494,59 @@ public class SparseDoubleAlgebra {
             return x.viewPart(0, A.columns()).copy();
         }
     }
+
+    /**
+     * Solves the triangular system <tt>T*x = b</tt>, see
+     * {@link #triangularSolver(DoubleMatrix2D, boolean, boolean)}. A solver
+     * should be kept and reused when the same matrix is solved many times.
+     * 
+     * @param T
+     *            sparse triangular matrix
+     * @param b
+     *            right hand side
+     * @param lower
+     *            whether <tt>T</tt> is lower or upper triangular
+     * @param unitDiagonal
+     *            whether the diagonal of <tt>T</tt> is implicitly one
+     * @return x; a new independent vector.
+     */
+    public DoubleMatrix1D solveTriangular(DoubleMatrix2D T, DoubleMatrix1D b, boolean lower, boolean unitDiagonal) {
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(T.rows());
+        x.assign(b);
+        triangularSolver(T, lower, unitDiagonal).solve(x);
+        return x;
+    }
+
+    /**
+     * Returns a level-scheduled solver of the triangular system
+     * <tt>T*x = b</tt>. The dependencies between the rows of <tt>T</tt> are
+     * analyzed once, and every solve runs the independent rows concurrently.
+     * Only the lower (or upper) triangle of <tt>T</tt> is used.
+     * 
+     * @param T
+     *            sparse square matrix
+     * @param lower
+     *            whether to use the lower or the upper triangle of <tt>T</tt>
+     * @param unitDiagonal
+     *            whether the diagonal of <tt>T</tt> is implicitly one
+     * @return the solver
+     * @throws IllegalArgumentException
+     *             if <tt>T</tt> is not square or not sparse, or if a diagonal
+     *             entry is missing and <tt>unitDiagonal</tt> is false.
+     */
+    public SparseDoubleTriangularSolver triangularSolver(DoubleMatrix2D T, boolean lower, boolean unitDiagonal) {
+        DoubleProperty.DEFAULT.checkSquare(T);
+        DoubleProperty.DEFAULT.checkSparse(T);
+        int n = T.rows();
+        if (T instanceof SparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D R = (SparseRCDoubleMatrix2D) T;
+            return new SparseDoubleTriangularSolver(n, R.getRowPointers(), R.getColumnIndexes(), R.getValues(),
+                    lower, unitDiagonal);
+        } else {
+            // the compressed columns of T are the compressed rows of T'
+            SparseCCDoubleMatrix2D C = (SparseCCDoubleMatrix2D) T;
+            return new SparseDoubleTriangularSolver(n, C.getColumnPointers(), C.getRowIndexes(), C.getValues(),
+                    !lower, unitDiagonal).getTranspose();
+        }
+    }
 }
@@ -0,0 +1,370 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Fill- and bandwidth-reducing orderings computed on the graph of
+ * <tt>A + A'</tt>, where <tt>A</tt> is given by the pattern of its compressed
+ * rows or columns. An ordering <tt>p</tt> lists the old index of every new
+ * row and column, so that the reordered matrix is <tt>A(p, p)</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+final class SparseDoubleOrdering {
+
+    /*
+     * Subgraphs with at most this number of vertices are not dissected.
+     */
+    private static final int ND_LEAF_SIZE = 32;
+
+    private final int n;
+
+    /*
+     * Adjacency lists of the graph of A + A', without self loops.
+     */
+    private final int[] xadj;
+
+    private final int[] adj;
+
+    /*
+     * Per vertex: the subgraph it belongs to during nested dissection, and the
+     * stamp and level of the last breadth-first search that visited it.
+     */
+    private final int[] label;
+
+    private final int[] mark;
+
+    private final int[] level;
+
+    private final AtomicInteger stamps = new AtomicInteger();
+
+    private final AtomicInteger labels = new AtomicInteger();
+
+    SparseDoubleOrdering(int n, int[] pointers, int[] indexes) {
+        this.n = n;
+        xadj = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i]; k < pointers[i + 1]; k++) {
+                int j = indexes[k];
+                if (j != i) {
+                    xadj[i + 1]++;
+                    xadj[j + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            xadj[i + 1] += xadj[i];
+        }
+        int[] next = new int[n];
+        System.arraycopy(xadj, 0, next, 0, n);
+        int[] edges = new int[xadj[n]];
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i]; k < pointers[i + 1]; k++) {
+                int j = indexes[k];
+                if (j != i) {
+                    edges[next[i]++] = j;
+                    edges[next[j]++] = i;
+                }
+            }
+        }
+        // remove the duplicate edges in place
+        int[] marker = next;
+        Arrays.fill(marker, -1);
+        int pos = 0;
+        for (int v = 0; v < n; v++) {
+            int start = xadj[v];
+            int end = xadj[v + 1];
+            xadj[v] = pos;
+            for (int k = start; k < end; k++) {
+                int u = edges[k];
+                if (marker[u] != v) {
+                    marker[u] = v;
+                    edges[pos++] = u;
+                }
+            }
+        }
+        xadj[n] = pos;
+        adj = edges;
+        label = new int[n];
+        mark = new int[n];
+        level = new int[n];
+    }
+
+    /**
+     * Returns the reverse Cuthill-McKee ordering. Every connected component is
+     * numbered breadth-first from a pseudo-peripheral vertex, visiting the
+     * neighbors of a vertex by increasing degree, and the whole numbering is
+     * reversed.
+     */
+    int[] reverseCuthillMcKee() {
+        // vertices by increasing degree, to start every component at a vertex of low degree
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, degree(v));
+        }
+        int[] byDegree = new int[n];
+        int[] count = new int[maxDegree + 2];
+        for (int v = 0; v < n; v++) {
+            count[degree(v) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            count[d + 1] += count[d];
+        }
+        for (int v = 0; v < n; v++) {
+            byDegree[count[degree(v)]++] = v;
+        }
+        int[] perm = new int[n];
+        boolean[] numbered = new boolean[n];
+        int[] queue = new int[n];
+        int numberedCount = 0;
+        for (int s = 0; s < n; s++) {
+            if (numbered[byDegree[s]])
+                continue;
+            int root = pseudoPeripheral(byDegree[s], 0, queue);
+            int head = numberedCount;
+            int tail = numberedCount;
+            perm[tail++] = root;
+            numbered[root] = true;
+            while (head < tail) {
+                int v = perm[head++];
+                int first = tail;
+                for (int k = xadj[v]; k < xadj[v + 1]; k++) {
+                    int u = adj[k];
+                    if (!numbered[u]) {
+                        numbered[u] = true;
+                        perm[tail++] = u;
+                    }
+                }
+                // insertion sort of the new vertices by degree
+                for (int k = first + 1; k < tail; k++) {
+                    int u = perm[k];
+                    int d = degree(u);
+                    int l = k - 1;
+                    while (l >= first && degree(perm[l]) > d) {
+                        perm[l + 1] = perm[l];
+                        l--;
+                    }
+                    perm[l + 1] = u;
+                }
+            }
+            numberedCount = tail;
+        }
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        return perm;
+    }
+
+    /**
+     * Returns a nested dissection ordering. Every subgraph is split by the
+     * middle level of a breadth-first search from a pseudo-peripheral vertex,
+     * which is numbered after the two halves; small subgraphs keep their
+     * order. The two halves of the upper levels of the dissection are ordered
+     * concurrently.
+     */
+    int[] nestedDissection() {
+        int[] perm = new int[n];
+        int[] vertices = new int[n];
+        for (int v = 0; v < n; v++) {
+            vertices[v] = v;
+        }
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        int parallelDepth = 0;
+        while ((1 << parallelDepth) < nthreads) {
+            parallelDepth++;
+        }
+        labels.set(1);
+        dissect(vertices, 0, perm, 0, parallelDepth);
+        return perm;
+    }
+
+    private int degree(int v) {
+        return xadj[v + 1] - xadj[v];
+    }
+
+    /*
+     * Orders the vertices, all labeled 'subgraph', into perm[offset, offset +
+     * vertices.length).
+     */
+    private void dissect(final int[] vertices, int subgraph, final int[] perm, final int offset,
+            final int parallelDepth) {
+        int size = vertices.length;
+        if (size <= ND_LEAF_SIZE) {
+            System.arraycopy(vertices, 0, perm, offset, size);
+            return;
+        }
+        int[] queue = new int[size];
+        int start = vertices[0];
+        for (int k = 1; k < size; k++) {
+            if (degree(vertices[k]) < degree(start))
+                start = vertices[k];
+        }
+        int root = pseudoPeripheral(start, subgraph, queue);
+        int stamp = stamps.incrementAndGet();
+        int visited = search(root, subgraph, stamp, queue);
+        if (visited < size) {
+            // disconnected: order every component on its own
+            int pos = offset;
+            int[] component = new int[visited];
+            System.arraycopy(queue, 0, component, 0, visited);
+            int componentLabel = labels.getAndIncrement();
+            relabel(component, componentLabel);
+            dissect(component, componentLabel, perm, pos, 0);
+            pos += visited;
+            for (int k = 0; k < size; k++) {
+                int v = vertices[k];
+                if (label[v] == subgraph) {
+                    visited = search(v, subgraph, stamps.incrementAndGet(), queue);
+                    component = new int[visited];
+                    System.arraycopy(queue, 0, component, 0, visited);
+                    componentLabel = labels.getAndIncrement();
+                    relabel(component, componentLabel);
+                    dissect(component, componentLabel, perm, pos, 0);
+                    pos += visited;
+                }
+            }
+            return;
+        }
+        int height = level[queue[size - 1]] + 1;
+        if (height < 3) {
+            System.arraycopy(vertices, 0, perm, offset, size);
+            return;
+        }
+        // middle level, not the first or the last one
+        int middle = level[queue[size / 2]];
+        middle = Math.max(1, Math.min(middle, height - 2));
+        int sizeA = 0;
+        int sizeB = 0;
+        int sizeS = 0;
+        for (int k = 0; k < size; k++) {
+            int v = queue[k];
+            int l = level[v];
+            if (l < middle) {
+                sizeA++;
+            } else if (l > middle) {
+                sizeB++;
+            } else if (touches(v, subgraph, stamp, middle + 1)) {
+                sizeS++;
+            } else {
+                // vertices without neighbors below the separator join the upper half
+                level[v] = middle - 1;
+                sizeA++;
+            }
+        }
+        final int[] verticesA = new int[sizeA];
+        final int[] verticesB = new int[sizeB];
+        int a = 0;
+        int b = 0;
+        int s = offset + sizeA + sizeB;
+        for (int k = 0; k < size; k++) {
+            int v = queue[k];
+            int l = level[v];
+            if (l < middle) {
+                verticesA[a++] = v;
+            } else if (l > middle) {
+                verticesB[b++] = v;
+            } else {
+                perm[s++] = v;
+            }
+        }
+        final int labelA = labels.getAndIncrement();
+        final int labelB = labels.getAndIncrement();
+        relabel(verticesA, labelA);
+        relabel(verticesB, labelB);
+        // the separator is left labeled 'subgraph', so the halves do not see it
+        if (parallelDepth > 0 && size >= ConcurrencyUtils.getThreadsBeginN_2D()) {
+            Future<?> future = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    dissect(verticesB, labelB, perm, offset + verticesA.length, parallelDepth - 1);
+                }
+            });
+            dissect(verticesA, labelA, perm, offset, parallelDepth - 1);
+            ConcurrencyUtils.waitForCompletion(new Future<?>[] { future });
+        } else {
+            dissect(verticesA, labelA, perm, offset, 0);
+            dissect(verticesB, labelB, perm, offset + sizeA, 0);
+        }
+    }
+
+    private void relabel(int[] vertices, int newLabel) {
+        for (int k = 0; k < vertices.length; k++) {
+            label[vertices[k]] = newLabel;
+        }
+    }
+
+    /*
+     * Returns true if v has a neighbor in the subgraph at the given level of
+     * the search with the given stamp.
+     */
+    private boolean touches(int v, int subgraph, int stamp, int targetLevel) {
+        for (int k = xadj[v]; k < xadj[v + 1]; k++) {
+            int u = adj[k];
+            if (label[u] == subgraph && mark[u] == stamp && level[u] == targetLevel)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Breadth-first search from root over the vertices labeled 'subgraph';
+     * stores the visited vertices in queue, level by level, and returns their
+     * number.
+     */
+    private int search(int root, int subgraph, int stamp, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        mark[root] = stamp;
+        level[root] = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int k = xadj[v]; k < xadj[v + 1]; k++) {
+                int u = adj[k];
+                if (label[u] == subgraph && mark[u] != stamp) {
+                    mark[u] = stamp;
+                    level[u] = level[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /*
+     * Returns a pseudo-peripheral vertex of the component of start (George and
+     * Liu): repeatedly moves to a vertex of minimum degree in the last level
+     * while that increases the height of the level structure.
+     */
+    private int pseudoPeripheral(int start, int subgraph, int[] queue) {
+        int root = start;
+        int visited = search(root, subgraph, stamps.incrementAndGet(), queue);
+        int height = level[queue[visited - 1]];
+        while (true) {
+            int candidate = queue[visited - 1];
+            for (int k = visited - 1; k >= 0 && level[queue[k]] == height; k--) {
+                if (degree(queue[k]) < degree(candidate))
+                    candidate = queue[k];
+            }
+            visited = search(candidate, subgraph, stamps.incrementAndGet(), queue);
+            int candidateHeight = level[queue[visited - 1]];
+            if (candidateHeight <= height)
+                return root;
+            root = candidate;
+            height = candidateHeight;
+        }
+    }
+}
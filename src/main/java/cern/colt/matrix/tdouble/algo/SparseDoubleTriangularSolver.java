@@ -0,0 +1,297 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Solves sparse triangular systems <tt>T*x = b</tt> with level scheduling.
+ * The rows of the compressed row matrix <tt>T</tt> are grouped once into
+ * levels, so that a row only depends on rows of earlier levels, and the rows
+ * of every level are then solved concurrently. Only the entries of the
+ * requested triangle are used, so the strictly lower and the upper part of a
+ * combined LU factor can share the same arrays.
+ * <p>
+ * The solver keeps references to the arrays of <tt>T</tt>: new values with
+ * the same pattern, e.g. from a numeric refactorization, are used by the next
+ * solve without a new analysis.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+public class SparseDoubleTriangularSolver {
+
+    private final int n;
+
+    private final int[] rowPointers;
+
+    private final int[] columnIndexes;
+
+    private final double[] values;
+
+    /*
+     * Position in values of every entry, or null if the entries are stored in
+     * order (only the solver of a transpose needs them).
+     */
+    private final int[] positions;
+
+    private final boolean lower;
+
+    private final boolean unitDiagonal;
+
+    /*
+     * Position of the diagonal entry of every row, or -1.
+     */
+    private final int[] diagonal;
+
+    /*
+     * The rows of level l are levelRows[levelPointers[l] ...
+     * levelPointers[l+1]-1], and levelCost[l] is their number of entries.
+     */
+    private final int[] levelPointers;
+
+    private final int[] levelRows;
+
+    private final long[] levelCost;
+
+    private SparseDoubleTriangularSolver transpose;
+
+    /**
+     * Analyzes the triangular matrix given by its compressed rows.
+     *
+     * @param n
+     *            number of rows and columns
+     * @param rowPointers
+     *            row pointers
+     * @param columnIndexes
+     *            column indexes
+     * @param values
+     *            numerical values
+     * @param lower
+     *            whether to use the lower or the upper triangle; the entries
+     *            of the other triangle are ignored
+     * @param unitDiagonal
+     *            whether the diagonal is implicitly one; stored diagonal
+     *            entries are then ignored
+     * @throws IllegalArgumentException
+     *             if the arrays are too short or if a row lacks its diagonal
+     *             entry and <tt>unitDiagonal</tt> is false.
+     */
+    public SparseDoubleTriangularSolver(int n, int[] rowPointers, int[] columnIndexes, double[] values,
+            boolean lower, boolean unitDiagonal) {
+        this(n, rowPointers, columnIndexes, values, null, lower, unitDiagonal);
+    }
+
+    private SparseDoubleTriangularSolver(int n, int[] rowPointers, int[] columnIndexes, double[] values,
+            int[] positions, boolean lower, boolean unitDiagonal) {
+        if (n < 0 || rowPointers.length < n + 1 || columnIndexes.length < rowPointers[n]
+                || (positions == null && values.length < rowPointers[n]))
+            throw new IllegalArgumentException("Incompatible args: n=" + n + ", rowPointers.length="
+                    + rowPointers.length + ", columnIndexes.length=" + columnIndexes.length + ", values.length="
+                    + values.length);
+        this.n = n;
+        this.rowPointers = rowPointers;
+        this.columnIndexes = columnIndexes;
+        this.values = values;
+        this.positions = positions;
+        this.lower = lower;
+        this.unitDiagonal = unitDiagonal;
+
+        // level of a row: one more than the highest level of the rows it depends on
+        diagonal = new int[n];
+        int[] level = new int[n];
+        int nlevels = 0;
+        for (int r = 0; r < n; r++) {
+            int i = lower ? r : n - 1 - r;
+            int l = 0;
+            int d = -1;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int j = columnIndexes[k];
+                if (j == i) {
+                    d = k;
+                } else if ((j < i) == lower) {
+                    l = Math.max(l, level[j] + 1);
+                }
+            }
+            if (d < 0 && !unitDiagonal)
+                throw new IllegalArgumentException("Missing diagonal entry on row " + i);
+            diagonal[i] = d;
+            level[i] = l;
+            nlevels = Math.max(nlevels, l + 1);
+        }
+        levelPointers = new int[nlevels + 1];
+        levelCost = new long[nlevels];
+        for (int i = 0; i < n; i++) {
+            levelPointers[level[i] + 1]++;
+            levelCost[level[i]] += rowPointers[i + 1] - rowPointers[i];
+        }
+        for (int l = 0; l < nlevels; l++) {
+            levelPointers[l + 1] += levelPointers[l];
+        }
+        int[] next = new int[nlevels];
+        System.arraycopy(levelPointers, 0, next, 0, nlevels);
+        levelRows = new int[n];
+        for (int i = 0; i < n; i++) {
+            levelRows[next[level[i]]++] = i;
+        }
+    }
+
+    /**
+     * Returns the number of levels, i.e. the length of the longest chain of
+     * dependent rows. The average parallelism of a solve is
+     * <tt>n / getNumberOfLevels()</tt>.
+     *
+     * @return the number of levels
+     */
+    public int getNumberOfLevels() {
+        return levelPointers.length - 1;
+    }
+
+    /**
+     * Returns the solver of the transposed system <tt>T'*x = b</tt>. It is
+     * analyzed on the first call and refers to the same values as this
+     * solver.
+     *
+     * @return the solver of <tt>T'</tt>
+     */
+    public SparseDoubleTriangularSolver getTranspose() {
+        if (transpose == null) {
+            int[] pointers = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    if (isUsed(i, k))
+                        pointers[columnIndexes[k] + 1]++;
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                pointers[j + 1] += pointers[j];
+            }
+            int[] next = new int[n];
+            System.arraycopy(pointers, 0, next, 0, n);
+            int[] indexes = new int[pointers[n]];
+            int[] transposePositions = new int[pointers[n]];
+            for (int i = 0; i < n; i++) {
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    if (isUsed(i, k)) {
+                        int p = next[columnIndexes[k]]++;
+                        indexes[p] = i;
+                        transposePositions[p] = positions == null ? k : positions[k];
+                    }
+                }
+            }
+            transpose = new SparseDoubleTriangularSolver(n, pointers, indexes, values, transposePositions, !lower,
+                    unitDiagonal);
+            transpose.transpose = this;
+        }
+        return transpose;
+    }
+
+    /**
+     * Solves <tt>T*x = b</tt> in place. Upon return <tt>b</tt> is overridden
+     * with the result <tt>x</tt>.
+     *
+     * @param b
+     *            right-hand side of size <tt>n</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != n</tt>.
+     */
+    public void solve(DoubleMatrix1D b) {
+        if (b.size() != n)
+            throw new IllegalArgumentException("Incompatible args: b.size()=" + b.size() + ", n=" + n);
+        if (b instanceof DenseDoubleMatrix1D && !b.isView()) {
+            solve((double[]) b.elements());
+        } else {
+            double[] x = b.toArray();
+            solve(x);
+            b.assign(x);
+        }
+    }
+
+    /**
+     * Solves <tt>T*x = b</tt> in place for the first <tt>n</tt> elements of
+     * <tt>b</tt>. Upon return they are overridden with the result <tt>x</tt>.
+     *
+     * @param b
+     *            right-hand side
+     * @throws IllegalArgumentException
+     *             if <tt>b.length < n</tt>.
+     */
+    public void solve(final double[] b) {
+        if (b.length < n)
+            throw new IllegalArgumentException("Incompatible args: b.length=" + b.length + ", n=" + n);
+        int nlevels = levelPointers.length - 1;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads == 1) || (nlevels == n)) {
+            // no concurrency to exploit: the natural order is the most cache friendly
+            if (lower) {
+                for (int i = 0; i < n; i++) {
+                    solveRow(i, b);
+                }
+            } else {
+                for (int i = n - 1; i >= 0; i--) {
+                    solveRow(i, b);
+                }
+            }
+            return;
+        }
+        int threshold = ConcurrencyUtils.getThreadsBeginN_1D();
+        for (int l = 0; l < nlevels; l++) {
+            int first = levelPointers[l];
+            int size = levelPointers[l + 1] - first;
+            if ((size > 1) && (levelCost[l] >= threshold)) {
+                int nparts = Math.min(nthreads, size);
+                Future<?>[] futures = new Future[nparts];
+                int k = size / nparts;
+                for (int j = 0; j < nparts; j++) {
+                    final int firstIdx = first + j * k;
+                    final int lastIdx = (j == nparts - 1) ? first + size : firstIdx + k;
+                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                        public void run() {
+                            for (int r = firstIdx; r < lastIdx; r++) {
+                                solveRow(levelRows[r], b);
+                            }
+                        }
+                    });
+                }
+                ConcurrencyUtils.waitForCompletion(futures);
+            } else {
+                for (int r = first; r < first + size; r++) {
+                    solveRow(levelRows[r], b);
+                }
+            }
+        }
+    }
+
+    private boolean isUsed(int i, int k) {
+        int j = columnIndexes[k];
+        return j == i ? !unitDiagonal : (j < i) == lower;
+    }
+
+    private void solveRow(int i, double[] x) {
+        double sum = x[i];
+        if (positions == null) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int j = columnIndexes[k];
+                if ((j != i) && ((j < i) == lower))
+                    sum -= values[k] * x[j];
+            }
+            x[i] = unitDiagonal ? sum : sum / values[diagonal[i]];
+        } else {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int j = columnIndexes[k];
+                if ((j != i) && ((j < i) == lower))
+                    sum -= values[positions[k]] * x[j];
+            }
+            x[i] = unitDiagonal ? sum : sum / values[positions[diagonal[i]]];
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BandDoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * For a symmetric, positive definite band matrix <tt>A</tt>, the Cholesky
+ * decomposition is a lower triangular band matrix <tt>L</tt> with the same
+ * lower bandwidth so that <tt>A = L*L'</tt>; If the matrix is not symmetric
+ * positive definite, the IllegalArgumentException is thrown. Only the lower
+ * band of <tt>A</tt> is referenced. The factorization takes
+ * <tt>O(n*kl^2)</tt> time and no extra memory beyond <tt>L</tt>; the
+ * algorithm is the one of LAPACK's <tt>dpbtf2</tt> and <tt>dpbtrs</tt>.
+ * Systems with several right-hand sides are solved concurrently.
+ */
+public class BandDoubleCholeskyDecomposition implements java.io.Serializable {
+    static final long serialVersionUID = 1020;
+
+    /*
+     * The factor in band storage: L(i,j) is kept in L[j*(kd+1) + i-j].
+     */
+    private double[] L;
+
+    private int n;
+
+    private int kd;
+
+    /**
+     * Constructs and returns a new Cholesky decomposition object for a
+     * symmetric and positive definite band matrix; The decomposed matrices can
+     * be retrieved via instance methods of the returned decomposition object.
+     *
+     * @param A
+     *            Square, symmetric positive definite band matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or is not a symmetric positive
+     *             definite.
+     */
+    public BandDoubleCholeskyDecomposition(BandDoubleMatrix2D A) {
+        if (A.rows() != A.columns())
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        n = A.rows();
+        kd = A.lowerBandwidth();
+        int ku = A.upperBandwidth();
+        int ldA = kd + ku + 1;
+        int ldL = kd + 1;
+        L = new double[ldL * n];
+        double[] elementsA = A.elements();
+        for (int j = 0; j < n; j++) {
+            System.arraycopy(elementsA, j * ldA + ku, L, j * ldL, ldL);
+        }
+        for (int j = 0; j < n; j++) {
+            int diag = j * ldL;
+            double ajj = L[diag];
+            if (ajj <= 0 || ajj != ajj) {
+                throw new IllegalArgumentException("Matrix is not symmetric positive definite.");
+            }
+            ajj = Math.sqrt(ajj);
+            L[diag] = ajj;
+            int kn = Math.min(kd, n - 1 - j);
+            for (int i = 1; i <= kn; i++) {
+                L[diag + i] /= ajj;
+            }
+            // symmetric rank-1 update of the trailing band
+            for (int c = 1; c <= kn; c++) {
+                double t = L[diag + c];
+                if (t != 0) {
+                    int idx = (j + c) * ldL;
+                    for (int i = c; i <= kn; i++) {
+                        L[idx + i - c] -= L[diag + i] * t;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the triangular factor, <tt>L</tt>.
+     *
+     * @return <tt>L</tt>
+     */
+    public BandDoubleMatrix2D getL() {
+        BandDoubleMatrix2D Lband = new BandDoubleMatrix2D(n, n, kd, 0);
+        System.arraycopy(L, 0, Lband.elements(), 0, L.length);
+        return Lband;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> (in-place). Upon return <tt>b</tt> is
+     * overridden with the result <tt>x</tt>.
+     *
+     * @param b
+     *            A vector of size <tt>A.rows()</tt>
+     * @exception IllegalArgumentException
+     *                if <tt>b.size() != A.rows()</tt>.
+     */
+    public void solve(DoubleMatrix1D b) {
+        if (b.size() != n) {
+            throw new IllegalArgumentException("b.size() != A.rows()");
+        }
+        double[] x = b.toArray();
+        solve(x);
+        b.assign(x);
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> (in-place). Upon return <tt>B</tt> is
+     * overridden with the result <tt>X</tt>. The columns of <tt>B</tt> are
+     * solved concurrently.
+     *
+     * @param B
+     *            A Matrix with as many rows as <tt>A</tt> and any number of
+     *            columns.
+     * @exception IllegalArgumentException
+     *                if <tt>B.rows() != A.rows()</tt>.
+     */
+    public void solve(final DoubleMatrix2D B) {
+        if (B.rows() != n) {
+            throw new IllegalArgumentException("B.rows() != A.rows()");
+        }
+        final int ncolumns = B.columns();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && ((long) n * ncolumns >= ConcurrencyUtils.getThreadsBeginN_2D()) && (ncolumns > 1)) {
+            nthreads = Math.min(nthreads, ncolumns);
+            Future<?>[] futures = new Future[nthreads];
+            int k = ncolumns / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstColumn = j * k;
+                final int lastColumn = (j == nthreads - 1) ? ncolumns : firstColumn + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        solveColumns(B, firstColumn, lastColumn);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            solveColumns(B, 0, ncolumns);
+        }
+    }
+
+    public String toString() {
+        return "BandCholeskyDecomposition(A) --> L = " + getL();
+    }
+
+    private void solve(double[] b) {
+        int ldL = kd + 1;
+        // L*y = b
+        for (int j = 0; j < n; j++) {
+            int diag = j * ldL;
+            double yj = b[j] / L[diag];
+            b[j] = yj;
+            if (yj != 0) {
+                int kn = Math.min(kd, n - 1 - j);
+                for (int i = 1; i <= kn; i++) {
+                    b[j + i] -= L[diag + i] * yj;
+                }
+            }
+        }
+        // L'*x = y
+        for (int j = n - 1; j >= 0; j--) {
+            int diag = j * ldL;
+            int kn = Math.min(kd, n - 1 - j);
+            double sum = b[j];
+            for (int i = 1; i <= kn; i++) {
+                sum -= L[diag + i] * b[j + i];
+            }
+            b[j] = sum / L[diag];
+        }
+    }
+
+    private void solveColumns(DoubleMatrix2D B, int firstColumn, int lastColumn) {
+        double[] x = new double[n];
+        for (int c = firstColumn; c < lastColumn; c++) {
+            DoubleMatrix1D column = B.viewColumn(c);
+            for (int i = 0; i < n; i++) {
+                x[i] = column.getQuick(i);
+            }
+            solve(x);
+            column.assign(x);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BandDoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * LU decomposition with partial pivoting of a square band matrix. For an
+ * <tt>n x n</tt> matrix <tt>A</tt> with lower bandwidth <tt>kl</tt> and upper
+ * bandwidth <tt>ku</tt>, the decomposition is <tt>A = P*L*U</tt>, where
+ * <tt>L</tt> is unit lower triangular with at most <tt>kl</tt> subdiagonals
+ * (stored as the product of <tt>n</tt> elementary transformations) and
+ * <tt>U</tt> is upper triangular with at most <tt>kl+ku</tt> superdiagonals.
+ * The factorization takes <tt>O(n*kl*(kl+ku))</tt> time and
+ * <tt>O(n*(2*kl+ku+1))</tt> memory; the algorithm is the one of LAPACK's
+ * <tt>dgbtf2</tt> and <tt>dgbtrs</tt>. Systems with several right-hand sides
+ * are solved concurrently.
+ * <p>
+ * The LU decomposition with pivoting always exists, even if the matrix is
+ * singular, so the constructor will never fail. The primary use of the LU
+ * decomposition is in the solution of square systems of simultaneous linear
+ * equations. This will fail if <tt>isNonsingular()</tt> returns false.
+ */
+public class BandDoubleLUDecomposition implements java.io.Serializable {
+    static final long serialVersionUID = 1020;
+
+    /*
+     * The factors in band storage: (i,j) is kept in LU[j*ldab + kv+i-j].
+     */
+    private double[] LU;
+
+    /*
+     * Row interchanges: row j was interchanged with row piv[j].
+     */
+    private int[] piv;
+
+    private int n;
+
+    private int kl;
+
+    private int kv;
+
+    private int ldab;
+
+    private boolean isNonSingular;
+
+    /**
+     * Constructs and returns a new LU decomposition object of a square band
+     * matrix.
+     *
+     * @param A
+     *            Square band matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square.
+     */
+    public BandDoubleLUDecomposition(BandDoubleMatrix2D A) {
+        if (A.rows() != A.columns())
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        n = A.rows();
+        kl = A.lowerBandwidth();
+        int ku = A.upperBandwidth();
+        kv = kl + ku;
+        ldab = 2 * kl + ku + 1;
+        LU = new double[ldab * n];
+        double[] elementsA = A.elements();
+        int ldA = kl + ku + 1;
+        for (int j = 0; j < n; j++) {
+            System.arraycopy(elementsA, j * ldA, LU, j * ldab + kl, ldA);
+        }
+        piv = new int[n];
+        factor();
+    }
+
+    /**
+     * Returns the determinant, <tt>det(A)</tt>.
+     *
+     * @return the determinant.
+     */
+    public double det() {
+        double det = 1;
+        for (int j = 0; j < n; j++) {
+            det *= LU[j * ldab + kv];
+            if (piv[j] != j)
+                det = -det;
+        }
+        return det;
+    }
+
+    /**
+     * Returns the pivot permutation vector: row <tt>j</tt> of the matrix was
+     * interchanged with row <tt>getPivot()[j]</tt> in step <tt>j</tt>.
+     *
+     * @return the row interchanges.
+     */
+    public int[] getPivot() {
+        return piv.clone();
+    }
+
+    /**
+     * Returns the upper triangular factor, <tt>U</tt>.
+     *
+     * @return <tt>U</tt>, a band matrix with <tt>kl+ku</tt> superdiagonals.
+     */
+    public BandDoubleMatrix2D getU() {
+        BandDoubleMatrix2D U = new BandDoubleMatrix2D(n, n, 0, kv);
+        for (int j = 0; j < n; j++) {
+            for (int i = Math.max(0, j - kv); i <= j; i++) {
+                U.setQuick(i, j, LU[j * ldab + kv + i - j]);
+            }
+        }
+        return U;
+    }
+
+    /**
+     * Returns whether the matrix is nonsingular (has an inverse).
+     *
+     * @return true if <tt>U</tt>, and hence <tt>A</tt>, is nonsingular; false
+     *         otherwise.
+     */
+    public boolean isNonsingular() {
+        return isNonSingular;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> (in-place). Upon return <tt>b</tt> is
+     * overridden with the result <tt>x</tt>.
+     *
+     * @param b
+     *            A vector of size <tt>A.rows()</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(DoubleMatrix1D b) {
+        if (b.size() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (!isNonsingular())
+            throw new IllegalArgumentException("Matrix is singular.");
+        double[] x = b.toArray();
+        solve(x, 0);
+        b.assign(x);
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> (in-place). Upon return <tt>B</tt> is
+     * overridden with the result <tt>X</tt>. The columns of <tt>B</tt> are
+     * solved concurrently.
+     *
+     * @param B
+     *            A matrix with as many rows as <tt>A</tt> and any number of
+     *            columns.
+     * @throws IllegalArgumentException
+     *             if <tt>B.rows() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(final DoubleMatrix2D B) {
+        if (B.rows() != n)
+            throw new IllegalArgumentException("Matrix row dimensions must agree.");
+        if (!isNonsingular())
+            throw new IllegalArgumentException("Matrix is singular.");
+        final int ncolumns = B.columns();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && ((long) n * ncolumns >= ConcurrencyUtils.getThreadsBeginN_2D()) && (ncolumns > 1)) {
+            nthreads = Math.min(nthreads, ncolumns);
+            Future<?>[] futures = new Future[nthreads];
+            int k = ncolumns / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstColumn = j * k;
+                final int lastColumn = (j == nthreads - 1) ? ncolumns : firstColumn + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        solveColumns(B, firstColumn, lastColumn);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            solveColumns(B, 0, ncolumns);
+        }
+    }
+
+    public String toString() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("---------------------------------------------------------------------------\n");
+        buf.append("BandLUDecomposition(A) --> isNonSingular(A), det(A), pivot, U\n");
+        buf.append("---------------------------------------------------------------------------\n");
+        buf.append("isNonSingular = " + isNonsingular());
+        buf.append("\ndet = " + det());
+        buf.append("\n\npivot = " + new cern.colt.list.tint.IntArrayList(piv));
+        buf.append("\n\nU = " + getU());
+        return buf.toString();
+    }
+
+    /*
+     * Solves A*x = b for b[offset..offset+n-1] (in-place). The matrix must be
+     * nonsingular.
+     */
+    void solve(double[] b, int offset) {
+        // L*y = P'*b
+        for (int j = 0; j < n - 1; j++) {
+            int p = piv[j];
+            double bj = b[offset + p];
+            if (p != j) {
+                b[offset + p] = b[offset + j];
+                b[offset + j] = bj;
+            }
+            if (bj != 0) {
+                int lm = Math.min(kl, n - 1 - j);
+                int idx = j * ldab + kv + 1;
+                for (int i = 1; i <= lm; i++) {
+                    b[offset + j + i] -= LU[idx++] * bj;
+                }
+            }
+        }
+        // U*x = y
+        for (int j = n - 1; j >= 0; j--) {
+            int idx = j * ldab + kv;
+            double xj = b[offset + j] / LU[idx];
+            b[offset + j] = xj;
+            if (xj != 0) {
+                int first = Math.max(0, j - kv);
+                for (int i = j - 1; i >= first; i--) {
+                    b[offset + i] -= LU[--idx] * xj;
+                }
+            }
+        }
+    }
+
+    /*
+     * Number of rows of the factorized matrix.
+     */
+    int size() {
+        return n;
+    }
+
+    private void factor() {
+        isNonSingular = true;
+        int ju = 0; // last column affected by the interchanges so far
+        for (int j = 0; j < n; j++) {
+            int km = Math.min(kl, n - 1 - j);
+            int diag = j * ldab + kv;
+            // find the pivot
+            int jp = 0;
+            double max = Math.abs(LU[diag]);
+            for (int i = 1; i <= km; i++) {
+                double v = Math.abs(LU[diag + i]);
+                if (v > max) {
+                    max = v;
+                    jp = i;
+                }
+            }
+            piv[j] = j + jp;
+            if (LU[diag + jp] == 0) {
+                isNonSingular = false;
+                continue;
+            }
+            ju = Math.max(ju, Math.min(j + kv - kl + jp, n - 1));
+            if (jp != 0) {
+                // interchange rows j and j+jp in columns j..ju
+                for (int c = j; c <= ju; c++) {
+                    int idx = c * ldab + kv + j - c;
+                    double tmp = LU[idx];
+                    LU[idx] = LU[idx + jp];
+                    LU[idx + jp] = tmp;
+                }
+            }
+            if (km > 0) {
+                double pivot = LU[diag];
+                for (int i = 1; i <= km; i++) {
+                    LU[diag + i] /= pivot;
+                }
+                // rank-1 update of the trailing band
+                for (int c = j + 1; c <= ju; c++) {
+                    int idx = c * ldab + kv + j - c;
+                    double t = LU[idx];
+                    if (t != 0) {
+                        for (int i = 1; i <= km; i++) {
+                            LU[idx + i] -= LU[diag + i] * t;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void solveColumns(DoubleMatrix2D B, int firstColumn, int lastColumn) {
+        double[] x = new double[n];
+        for (int c = firstColumn; c < lastColumn; c++) {
+            DoubleMatrix1D column = B.viewColumn(c);
+            for (int i = 0; i < n; i++) {
+                x[i] = column.getQuick(i);
+            }
+            solve(x, 0);
+            column.assign(x);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BandDoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Partitioned (SPIKE) decomposition of a square band matrix for solving large
+ * banded systems concurrently.
+ * <p>
+ * The rows of the <tt>n x n</tt> matrix <tt>A</tt> with lower bandwidth
+ * <tt>kl</tt> and upper bandwidth <tt>ku</tt> are split into <tt>p</tt>
+ * contiguous partitions. The diagonal blocks <tt>A_j</tt> are factorized
+ * concurrently by {@link BandDoubleLUDecomposition}, together with the tips
+ * of the spikes <tt>V_j = inv(A_j)*B_j</tt> and <tt>W_j = inv(A_j)*C_j</tt>,
+ * where <tt>B_j</tt> and <tt>C_j</tt> couple the partition to its neighbors.
+ * A solve then takes three steps: the partitions are solved concurrently, the
+ * first <tt>ku</tt> and last <tt>kl</tt> unknowns of every partition are
+ * obtained from a reduced band system of order <tt>p*(kl+ku)</tt>, and the
+ * remaining unknowns are recovered by solving the partitions concurrently
+ * again.
+ * <p>
+ * Pivoting is restricted to the diagonal blocks, so the method requires every
+ * <tt>A_j</tt> to be nonsingular, which holds e.g. for diagonally dominant and
+ * symmetric positive definite matrices. If a block (or the reduced system)
+ * turns out to be singular, the constructor falls back to a single partition,
+ * i.e. to a plain {@link BandDoubleLUDecomposition}.
+ */
+public class BandDoubleSpikeDecomposition implements java.io.Serializable {
+    static final long serialVersionUID = 1020;
+
+    private int n;
+
+    private int kl;
+
+    private int ku;
+
+    /*
+     * Number of partitions.
+     */
+    private int p;
+
+    /*
+     * The partition j consists of the rows offsets[j]..offsets[j+1]-1.
+     */
+    private int[] offsets;
+
+    private BandDoubleLUDecomposition[] blocks;
+
+    /*
+     * Coupling to the next partition: next[j][a*ku+q] = A(last row - ku+1+a,
+     * first column of the next partition + q).
+     */
+    private double[][] next;
+
+    /*
+     * Coupling to the previous partition: previous[j][a*kl+q] = A(first row + a,
+     * last column of the previous partition - kl+1+q).
+     */
+    private double[][] previous;
+
+    /*
+     * LU decomposition of the reduced system.
+     */
+    private BandDoubleLUDecomposition R;
+
+    /**
+     * Constructs and returns a new SPIKE decomposition object of a square band
+     * matrix, using one partition per thread if the matrix is large enough.
+     *
+     * @param A
+     *            Square band matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square.
+     */
+    public BandDoubleSpikeDecomposition(BandDoubleMatrix2D A) {
+        this(A, A.rows() >= ConcurrencyUtils.getThreadsBeginN_1D() ? ConcurrencyUtils.getNumberOfThreads() : 1);
+    }
+
+    /**
+     * Constructs and returns a new SPIKE decomposition object of a square band
+     * matrix. The actual number of partitions can be smaller than requested,
+     * since every partition needs at least <tt>2*(kl+ku)</tt> rows.
+     *
+     * @param A
+     *            Square band matrix
+     * @param partitions
+     *            requested number of partitions
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or <tt>partitions < 1</tt>.
+     */
+    public BandDoubleSpikeDecomposition(BandDoubleMatrix2D A, int partitions) {
+        if (A.rows() != A.columns())
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        if (partitions < 1)
+            throw new IllegalArgumentException("partitions < 1");
+        n = A.rows();
+        kl = A.lowerBandwidth();
+        ku = A.upperBandwidth();
+        int minSize = Math.max(2 * (kl + ku), 1);
+        p = Math.max(1, Math.min(partitions, n / minSize));
+        if (p > 1 && factor(A)) {
+            return;
+        }
+        p = 1;
+        offsets = new int[] { 0, n };
+        blocks = new BandDoubleLUDecomposition[] { new BandDoubleLUDecomposition(A) };
+        next = new double[1][0];
+        previous = new double[1][0];
+        R = null;
+    }
+
+    /**
+     * Returns the determinant, <tt>det(A)</tt>.
+     *
+     * @return the determinant.
+     */
+    public double det() {
+        double det = R == null ? 1 : R.det();
+        for (int j = 0; j < p; j++) {
+            det *= blocks[j].det();
+        }
+        return det;
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return the number of partitions.
+     */
+    public int getPartitions() {
+        return p;
+    }
+
+    /**
+     * Returns whether the matrix is nonsingular (has an inverse).
+     *
+     * @return true if <tt>A</tt> is nonsingular; false otherwise.
+     */
+    public boolean isNonsingular() {
+        return blocks[0].isNonsingular();
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> (in-place). Upon return <tt>b</tt> is
+     * overridden with the result <tt>x</tt>.
+     *
+     * @param b
+     *            A vector of size <tt>A.rows()</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(DoubleMatrix1D b) {
+        if (b.size() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        if (!isNonsingular())
+            throw new IllegalArgumentException("Matrix is singular.");
+        double[] x = b.toArray();
+        solve(x, 1);
+        b.assign(x);
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> (in-place). Upon return <tt>B</tt> is
+     * overridden with the result <tt>X</tt>.
+     *
+     * @param B
+     *            A matrix with as many rows as <tt>A</tt> and any number of
+     *            columns.
+     * @throws IllegalArgumentException
+     *             if <tt>B.rows() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(DoubleMatrix2D B) {
+        if (B.rows() != n)
+            throw new IllegalArgumentException("Matrix row dimensions must agree.");
+        if (!isNonsingular())
+            throw new IllegalArgumentException("Matrix is singular.");
+        int ncolumns = B.columns();
+        double[] x = new double[n * ncolumns];
+        for (int c = 0; c < ncolumns; c++) {
+            for (int i = 0; i < n; i++) {
+                x[c * n + i] = B.getQuick(i, c);
+            }
+        }
+        solve(x, ncolumns);
+        for (int c = 0; c < ncolumns; c++) {
+            for (int i = 0; i < n; i++) {
+                B.setQuick(i, c, x[c * n + i]);
+            }
+        }
+    }
+
+    /*
+     * Factorizes the partitions and the reduced system. Returns false if any
+     * of them is singular.
+     */
+    private boolean factor(final BandDoubleMatrix2D A) {
+        offsets = new int[p + 1];
+        for (int j = 0; j < p; j++) {
+            offsets[j] = (int) ((long) j * n / p);
+        }
+        offsets[p] = n;
+        blocks = new BandDoubleLUDecomposition[p];
+        next = new double[p][];
+        previous = new double[p][];
+        final int s = kl + ku;
+        // tips of the spikes: the first ku and the last kl rows of V_j and W_j
+        final double[][] V = new double[p][];
+        final double[][] W = new double[p][];
+        final boolean[] singular = new boolean[1];
+        forEachPartition(new PartitionProcedure() {
+            public void apply(int j) {
+                int r0 = offsets[j];
+                int nj = offsets[j + 1] - r0;
+                BandDoubleMatrix2D Aj = new BandDoubleMatrix2D(nj, nj, kl, ku);
+                for (int c = 0; c < nj; c++) {
+                    int last = Math.min(nj - 1, c + kl);
+                    for (int i = Math.max(0, c - ku); i <= last; i++) {
+                        Aj.setQuick(i, c, A.getQuick(r0 + i, r0 + c));
+                    }
+                }
+                BandDoubleLUDecomposition lu = new BandDoubleLUDecomposition(Aj);
+                blocks[j] = lu;
+                if (!lu.isNonsingular()) {
+                    singular[0] = true;
+                    return;
+                }
+                double[] work = new double[nj];
+                int r1 = r0 + nj; // first row of the next partition
+                next[j] = new double[j < p - 1 ? ku * ku : 0];
+                V[j] = new double[j < p - 1 ? s * ku : 0];
+                if (j < p - 1) {
+                    for (int q = 0; q < ku; q++) {
+                        java.util.Arrays.fill(work, 0);
+                        for (int a = 0; a < ku; a++) {
+                            double value = A.getQuick(r1 - ku + a, r1 + q);
+                            next[j][a * ku + q] = value;
+                            work[nj - ku + a] = value;
+                        }
+                        lu.solve(work, 0);
+                        storeTips(work, V[j], q);
+                    }
+                }
+                previous[j] = new double[j > 0 ? kl * kl : 0];
+                W[j] = new double[j > 0 ? s * kl : 0];
+                if (j > 0) {
+                    for (int q = 0; q < kl; q++) {
+                        java.util.Arrays.fill(work, 0);
+                        for (int a = 0; a < kl; a++) {
+                            double value = A.getQuick(r0 + a, r0 - kl + q);
+                            previous[j][a * kl + q] = value;
+                            work[a] = value;
+                        }
+                        lu.solve(work, 0);
+                        storeTips(work, W[j], q);
+                    }
+                }
+            }
+        });
+        if (singular[0])
+            return false;
+        // reduced system in the unknowns t_0, b_0, t_1, b_1, ... where t_j
+        // (b_j) are the first ku (last kl) unknowns of the partition j
+        int order = p * s;
+        BandDoubleMatrix2D Rm = new BandDoubleMatrix2D(order, order, 2 * s, 2 * s);
+        for (int j = 0; j < p; j++) {
+            for (int a = 0; a < s; a++) {
+                int row = j * s + a;
+                Rm.setQuick(row, row, 1);
+                if (j < p - 1) {
+                    for (int q = 0; q < ku; q++) {
+                        Rm.setQuick(row, (j + 1) * s + q, V[j][q * s + a]);
+                    }
+                }
+                if (j > 0) {
+                    for (int q = 0; q < kl; q++) {
+                        Rm.setQuick(row, (j - 1) * s + ku + q, W[j][q * s + a]);
+                    }
+                }
+            }
+        }
+        R = new BandDoubleLUDecomposition(Rm);
+        return R.isNonsingular();
+    }
+
+    /*
+     * Solves A*X = F (in-place) for the n x ncolumns matrix x stored column by
+     * column.
+     */
+    private void solve(final double[] x, final int ncolumns) {
+        if (p == 1) {
+            for (int c = 0; c < ncolumns; c++) {
+                blocks[0].solve(x, c * n);
+            }
+            return;
+        }
+        final int s = kl + ku;
+        final int order = p * s;
+        final double[] reduced = new double[order * ncolumns];
+        // g_j = inv(A_j)*f_j, keep its tips
+        forEachPartition(new PartitionProcedure() {
+            public void apply(int j) {
+                int r0 = offsets[j];
+                int nj = offsets[j + 1] - r0;
+                double[] g = new double[nj];
+                for (int c = 0; c < ncolumns; c++) {
+                    System.arraycopy(x, c * n + r0, g, 0, nj);
+                    blocks[j].solve(g, 0);
+                    for (int a = 0; a < ku; a++) {
+                        reduced[c * order + j * s + a] = g[a];
+                    }
+                    for (int a = 0; a < kl; a++) {
+                        reduced[c * order + j * s + ku + a] = g[nj - kl + a];
+                    }
+                }
+            }
+        });
+        for (int c = 0; c < ncolumns; c++) {
+            R.solve(reduced, c * order);
+        }
+        // x_j = inv(A_j)*(f_j - B_j*t_{j+1} - C_j*b_{j-1})
+        forEachPartition(new PartitionProcedure() {
+            public void apply(int j) {
+                int r0 = offsets[j];
+                int r1 = offsets[j + 1];
+                for (int c = 0; c < ncolumns; c++) {
+                    int col = c * n;
+                    if (j < p - 1) {
+                        int t = c * order + (j + 1) * s;
+                        for (int a = 0; a < ku; a++) {
+                            double sum = 0;
+                            for (int q = 0; q < ku; q++) {
+                                sum += next[j][a * ku + q] * reduced[t + q];
+                            }
+                            x[col + r1 - ku + a] -= sum;
+                        }
+                    }
+                    if (j > 0) {
+                        int b = c * order + (j - 1) * s + ku;
+                        for (int a = 0; a < kl; a++) {
+                            double sum = 0;
+                            for (int q = 0; q < kl; q++) {
+                                sum += previous[j][a * kl + q] * reduced[b + q];
+                            }
+                            x[col + r0 + a] -= sum;
+                        }
+                    }
+                    blocks[j].solve(x, col + r0);
+                }
+            }
+        });
+    }
+
+    /*
+     * Stores the first ku and the last kl entries of the column q of a spike.
+     */
+    private void storeTips(double[] spike, double[] tips, int q) {
+        int s = kl + ku;
+        int nj = spike.length;
+        for (int a = 0; a < ku; a++) {
+            tips[q * s + a] = spike[a];
+        }
+        for (int a = 0; a < kl; a++) {
+            tips[q * s + ku + a] = spike[nj - kl + a];
+        }
+    }
+
+    private void forEachPartition(final PartitionProcedure procedure) {
+        if (p > 1 && ConcurrencyUtils.getNumberOfThreads() > 1) {
+            Future<?>[] futures = new Future[p];
+            for (int j = 0; j < p; j++) {
+                final int partition = j;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(partition);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            for (int j = 0; j < p; j++) {
+                procedure.apply(j);
+            }
+        }
+    }
+
+    private interface PartitionProcedure {
+        void apply(int partition);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import cern.colt.function.tint.IntProcedure;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BlockDiagonalDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * LU decomposition of a block diagonal matrix with square blocks. Every block
+ * is decomposed on its own: dense blocks with
+ * {@link DenseDoubleLUDecompositionQuick}, compressed sparse blocks with
+ * {@link CSparseDoubleLUDecomposition}. The blocks are decomposed and solved
+ * concurrently, so the decomposition of <tt>k</tt> blocks of size <tt>m</tt>
+ * takes <tt>O(k*m^3)</tt> operations spread over all cores instead of the
+ * <tt>O((k*m)^3)</tt> operations of a dense decomposition.
+ * <p>
+ * The decomposition always exists, so the constructor will never fail for
+ * square blocks. The primary use of the decomposition is in the solution of
+ * square systems of simultaneous linear equations. This will fail if
+ * <tt>isNonsingular()</tt> returns false.
+ */
+public class BlockDiagonalDoubleLUDecomposition implements java.io.Serializable {
+    static final long serialVersionUID = 1020;
+
+    /*
+     * The decomposed matrix; only its block structure is used after the
+     * constructor.
+     */
+    private BlockDiagonalDoubleMatrix2D A;
+
+    private DoubleMatrix2D[] blocks;
+
+    private int[] offsets;
+
+    private int n;
+
+    /*
+     * Decomposition of dense blocks, null for sparse blocks.
+     */
+    private DenseDoubleLUDecompositionQuick[] dense;
+
+    /*
+     * Decomposition of sparse blocks, null for dense blocks.
+     */
+    private SparseDoubleLUDecomposition[] sparse;
+
+    private boolean[] singular;
+
+    /**
+     * Constructs and returns a new LU decomposition object of a block diagonal
+     * matrix.
+     *
+     * @param A
+     *            block diagonal matrix with square blocks.
+     * @throws IllegalArgumentException
+     *             if some block of <tt>A</tt> is not square.
+     */
+    public BlockDiagonalDoubleLUDecomposition(BlockDiagonalDoubleMatrix2D A) {
+        this.A = A;
+        int nblocks = A.numberOfBlocks();
+        blocks = new DoubleMatrix2D[nblocks];
+        offsets = new int[nblocks + 1];
+        for (int i = 0; i < nblocks; i++) {
+            blocks[i] = A.getBlock(i);
+            if (blocks[i].rows() != blocks[i].columns())
+                throw new IllegalArgumentException("Block must be square: " + blocks[i].toStringShort());
+            offsets[i + 1] = A.rowOffset(i + 1);
+        }
+        n = A.rows();
+        dense = new DenseDoubleLUDecompositionQuick[nblocks];
+        sparse = new SparseDoubleLUDecomposition[nblocks];
+        singular = new boolean[nblocks];
+        A.forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                factor(i);
+                return true;
+            }
+        });
+        blocks = null;
+    }
+
+    /**
+     * Returns the determinant, <tt>det(A)</tt>, the product of the
+     * determinants of the blocks.
+     *
+     * @return the determinant.
+     */
+    public double det() {
+        double det = 1;
+        for (int i = 0; i < singular.length; i++) {
+            if (singular[i])
+                return 0;
+            if (dense[i] != null) {
+                det *= dense[i].det();
+            } else if (sparse[i] != null) {
+                det *= sparse[i].det();
+            }
+        }
+        return det;
+    }
+
+    /**
+     * Returns the inverse of <tt>A</tt>, a block diagonal matrix with dense
+     * blocks.
+     *
+     * @return the inverse.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is singular.
+     */
+    public BlockDiagonalDoubleMatrix2D getInverse() {
+        checkNonsingular();
+        final DoubleMatrix2D[] inverses = new DoubleMatrix2D[singular.length];
+        A.forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                int m = offsets[i + 1] - offsets[i];
+                DoubleMatrix2D X = new DenseDoubleMatrix2D(m, m);
+                for (int j = 0; j < m; j++) {
+                    X.setQuick(j, j, 1);
+                }
+                solveBlock(i, X);
+                inverses[i] = X;
+                return true;
+            }
+        });
+        return new BlockDiagonalDoubleMatrix2D(inverses);
+    }
+
+    /**
+     * Returns whether the matrix is nonsingular (has an inverse).
+     *
+     * @return true if all blocks are nonsingular; false otherwise.
+     */
+    public boolean isNonsingular() {
+        for (int i = 0; i < singular.length; i++) {
+            if (singular[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> (in-place). Upon return <tt>b</tt> is
+     * overridden with the result <tt>x</tt>. The blocks are solved
+     * concurrently.
+     *
+     * @param b
+     *            A vector of size <tt>A.rows()</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(final DoubleMatrix1D b) {
+        if (b.size() != n)
+            throw new IllegalArgumentException("Matrix dimensions must agree.");
+        checkNonsingular();
+        A.forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                solveBlock(i, b.viewPart(offsets[i], offsets[i + 1] - offsets[i]));
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> (in-place). Upon return <tt>B</tt> is
+     * overridden with the result <tt>X</tt>. The blocks are solved
+     * concurrently.
+     *
+     * @param B
+     *            A matrix with as many rows as <tt>A</tt> and any number of
+     *            columns.
+     * @throws IllegalArgumentException
+     *             if <tt>B.rows() != A.rows()</tt> or if <tt>A</tt> is
+     *             singular.
+     */
+    public void solve(final DoubleMatrix2D B) {
+        if (B.rows() != n)
+            throw new IllegalArgumentException("Matrix row dimensions must agree.");
+        checkNonsingular();
+        final int ncolumns = B.columns();
+        A.forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                solveBlock(i, B.viewPart(offsets[i], 0, offsets[i + 1] - offsets[i], ncolumns));
+                return true;
+            }
+        });
+    }
+
+    public String toString() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("---------------------------------------------------------------------------\n");
+        buf.append("BlockDiagonalLUDecomposition(A) --> isNonSingular(A), det(A)\n");
+        buf.append("---------------------------------------------------------------------------\n");
+        buf.append("isNonSingular = " + isNonsingular());
+        buf.append("\ndet = " + det());
+        buf.append("\nblocks = " + singular.length);
+        return buf.toString();
+    }
+
+    private void checkNonsingular() {
+        if (!isNonsingular())
+            throw new IllegalArgumentException("Matrix is singular.");
+    }
+
+    private void factor(int i) {
+        DoubleMatrix2D block = blocks[i];
+        if (block.rows() == 0)
+            return;
+        if (block instanceof SparseDoubleMatrix2D) {
+            // the conversion reads the hash map directly, ignoring views
+            if (block.isView())
+                block = block.copy();
+            block = ((SparseDoubleMatrix2D) block).getColumnCompressed(false);
+        }
+        if (block instanceof SparseCCDoubleMatrix2D || block instanceof SparseRCDoubleMatrix2D) {
+            try {
+                sparse[i] = new CSparseDoubleLUDecomposition(block, 0, true);
+                singular[i] = !sparse[i].isNonsingular();
+            } catch (IllegalArgumentException e) {
+                // cs_lu fails on a zero pivot
+                singular[i] = true;
+            }
+        } else {
+            DenseDoubleMatrix2D LU = new DenseDoubleMatrix2D(block.rows(), block.columns());
+            LU.assign(block);
+            dense[i] = new DenseDoubleLUDecompositionQuick(0);
+            dense[i].decompose(LU);
+            singular[i] = !dense[i].isNonsingular();
+        }
+    }
+
+    private void solveBlock(int i, DoubleMatrix1D b) {
+        if (dense[i] != null) {
+            dense[i].solve(b);
+        } else if (sparse[i] != null) {
+            DoubleMatrix1D x = new DenseDoubleMatrix1D((int) b.size());
+            x.assign(b);
+            sparse[i].solve(x);
+            b.assign(x);
+        }
+    }
+
+    private void solveBlock(int i, DoubleMatrix2D B) {
+        if (dense[i] != null) {
+            dense[i].solve(B);
+        } else if (sparse[i] != null) {
+            for (int c = 0; c < B.columns(); c++) {
+                solveBlock(i, B.viewColumn(c));
+            }
+        }
+    }
+}
@@ -3,14 +3,13 @@ package cern.colt.matrix.tdouble.algo.decomposition;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_dmperm;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_lsolve;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_lu;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_sqr;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_usolve;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsd;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsn;
@@ -28,6 +27,9 @@ public class CSparseDoubleLUDecomposition implements SparseDoubleLUDecomposition
     private DoubleMatrix2D U;
     private boolean rcMatrix = false;
     private boolean isNonSingular = true;
+    private SparseDoubleTriangularSolver Lsolver;
+    private SparseDoubleTriangularSolver Usolver;
+    private SparseDoublePattern pattern;
     /**
      * Row and column dimension (square matrix).
      */
@@ -52,34 +54,51 @@ public class CSparseDoubleLUDecomposition implements SparseDoubleLUDecomposition
      *             if <tt>order</tt> is not in [0,3]
      */
     public CSparseDoubleLUDecomposition(DoubleMatrix2D A, int order, boolean checkIfSingular) {
-        DoubleProperty.DEFAULT.checkSquare(A);
-        DoubleProperty.DEFAULT.checkSparse(A);
-
         if (order < 0 || order > 3) {
             throw new IllegalArgumentException("order must be a number between 0 and 3");
         }
-        Dcs dcs;
-        if (A instanceof SparseRCDoubleMatrix2D) {
-            rcMatrix = true;
-            dcs = ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
-        } else {
-            dcs = (Dcs) A.elements();
-        }
+        Dcs dcs = compressed(A);
         n = A.rows();
 
         S = Dcs_sqr.cs_sqr(order, dcs, false);
         if (S == null) {
             throw new IllegalArgumentException("Exception occured in cs_sqr()");
         }
-        N = Dcs_lu.cs_lu(dcs, S, 1);
-        if (N == null) {
-            throw new IllegalArgumentException("Exception occured in cs_lu()");
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
+        if (checkIfSingular) {
+            checkSingular(dcs);
         }
+    }
+
+    /**
+     * Constructs and returns a new LU Decomposition object reusing the
+     * symbolic analysis of a matrix with the same pattern, see
+     * {@link #getSymbolicAnalysis()}. Only the numeric factorization is
+     * computed. The symbolic analysis is not modified, so one analysis can be
+     * shared by decompositions constructed concurrently.
+     * 
+     * @param A
+     *            Square matrix
+     * @param S
+     *            symbolic analysis of a matrix with the pattern of <tt>A</tt>
+     * @param checkIfSingular
+     *            if true, then the singularity test (based on
+     *            Dulmage-Mendelsohn decomposition) is performed.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or is not sparse, or if
+     *             <tt>S</tt> is the analysis of a matrix of another size or
+     *             number of entries.
+     */
+    public CSparseDoubleLUDecomposition(DoubleMatrix2D A, Dcss S, boolean checkIfSingular) {
+        Dcs dcs = compressed(A);
+        n = A.rows();
+        SparseDoublePattern.checkLU(dcs, S);
+        this.S = S;
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
         if (checkIfSingular) {
-            Dcsd D = Dcs_dmperm.cs_dmperm(dcs, 1); /* check if matrix is singular */
-            if (D != null && D.rr[3] < n) {
-                isNonSingular = false;
-            }
+            checkSingular(dcs);
         }
     }
 
@@ -168,6 +187,23 @@ public class CSparseDoubleLUDecomposition implements SparseDoubleLUDecomposition
         return isNonSingular;
     }
 
+    /**
+     * Recomputes the numeric factorization, with partial pivoting, for new
+     * values of a matrix with the pattern of the factorized one, reusing the
+     * fill-reducing ordering of the symbolic analysis. The singularity test
+     * only depends on the pattern and is not repeated.
+     * 
+     * @param A
+     *            Square matrix with the pattern of the factorized matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not sparse or has another pattern.
+     */
+    public void refactor(DoubleMatrix2D A) {
+        Dcs dcs = compressed(A);
+        pattern.check(dcs);
+        factor(dcs);
+    }
+
     /* (non-Javadoc)
 	 * @see cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition#solve(cern.colt.matrix.tdouble.DoubleMatrix1D)
 	 */
@@ -186,13 +222,49 @@ public class CSparseDoubleLUDecomposition implements SparseDoubleLUDecomposition
         } else {
             x = (double[]) b.elements();
         }
+        if (Lsolver == null) {
+            // the compressed columns of L and U are the compressed rows of L' and U'
+            Lsolver = new SparseDoubleTriangularSolver(n, N.L.p, N.L.i, N.L.x, false, true).getTranspose();
+            Usolver = new SparseDoubleTriangularSolver(n, N.U.p, N.U.i, N.U.x, true, false).getTranspose();
+        }
         Dcs_ipvec.cs_ipvec(N.pinv, x, y, n); /* y = b(p) */
-        Dcs_lsolve.cs_lsolve(N.L, y); /* y = L\y */
-        Dcs_usolve.cs_usolve(N.U, y); /* y = U\y */
+        Lsolver.solve(y); /* y = L\y */
+        Usolver.solve(y); /* y = U\y */
         Dcs_ipvec.cs_ipvec(S.q, y, x, n); /* b(q) = x */
 
         if (b.isView()) {
             b.assign(x);
         }
     }
+
+    private void checkSingular(Dcs dcs) {
+        Dcsd D = Dcs_dmperm.cs_dmperm(dcs, 1); /* check if matrix is singular */
+        if (D != null && D.rr[3] < n) {
+            isNonSingular = false;
+        }
+    }
+
+    private Dcs compressed(DoubleMatrix2D A) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
+        } else {
+            rcMatrix = false;
+            return (Dcs) A.elements();
+        }
+    }
+
+    private void factor(Dcs dcs) {
+        Dcsn N = Dcs_lu.cs_lu(dcs, S, 1);
+        if (N == null) {
+            throw new IllegalArgumentException("Exception occured in cs_lu()");
+        }
+        this.N = N;
+        L = null;
+        U = null;
+        Lsolver = null;
+        Usolver = null;
+    }
 }
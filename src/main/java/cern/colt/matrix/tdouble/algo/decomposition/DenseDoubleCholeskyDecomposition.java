@@ -13,6 +13,7 @@ import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
 import cern.colt.matrix.tdouble.impl.DenseColumnDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricDoubleMatrix2D;
 import edu.emory.mathcs.jplasma.tdouble.Dplasma;
 
 /**
@@ -36,7 +37,9 @@ public class DenseDoubleCholeskyDecomposition implements java.io.Serializable {
     /**
      * Constructs and returns a new Cholesky decomposition object for a
      * symmetric and positive definite matrix; The decomposed matrices can be
-     * retrieved via instance methods of the returned decomposition object.
+     * retrieved via instance methods of the returned decomposition object. A
+     * {@link SymmetricDoubleMatrix2D} is factorized directly from its packed
+     * storage.
      * 
      * @param A
      *            Square, symmetric positive definite matrix .
@@ -46,10 +49,12 @@ public class DenseDoubleCholeskyDecomposition implements java.io.Serializable {
      */
     public DenseDoubleCholeskyDecomposition(DoubleMatrix2D A) {
         DoubleProperty.DEFAULT.checkSquare(A);
-        DoubleProperty.DEFAULT.checkDense(A);
-        if (A instanceof DenseDoubleMatrix2D) {
+        if (A instanceof SymmetricDoubleMatrix2D) {
+            elementsA = ((SymmetricDoubleMatrix2D) A).toUpperColumnMajor();
+        } else if (A instanceof DenseDoubleMatrix2D) {
             elementsA = (double[]) A.viewDice().copy().elements();
         } else {
+            DoubleProperty.DEFAULT.checkDense(A);
             columnMatrix = true;
             elementsA = (double[]) A.copy().elements();
         }
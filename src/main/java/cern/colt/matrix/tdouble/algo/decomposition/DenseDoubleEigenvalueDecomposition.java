@@ -14,6 +14,7 @@ import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.impl.SymmetricDoubleMatrix2D;
 
 /**
  * Eigenvalues and eigenvectors of a real matrix <tt>A</tt>.
@@ -101,12 +102,16 @@ public class DenseDoubleEigenvalueDecomposition implements java.io.Serializable
         d = new double[n];
         e = new double[n];
 
-        issymmetric = DoubleProperty.DEFAULT.isSymmetric(A);
+        issymmetric = (A instanceof SymmetricDoubleMatrix2D) || DoubleProperty.DEFAULT.isSymmetric(A);
 
         if (issymmetric) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    V[i][j] = A.getQuick(i, j);
+            if (A instanceof SymmetricDoubleMatrix2D) {
+                V = A.toArray();
+            } else {
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        V[i][j] = A.getQuick(i, j);
+                    }
                 }
             }
 
@@ -11,12 +11,12 @@ package cern.colt.matrix.tdouble.algo.decomposition;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_chol;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_lsolve;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_ltsolve;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_pvec;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_schol;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
@@ -36,6 +36,8 @@ public class SparseDoubleCholeskyDecomposition {
     private Dcsn N;
     private DoubleMatrix2D L;
     private boolean rcMatrix = false;
+    private SparseDoubleTriangularSolver Lsolver;
+    private SparseDoublePattern pattern;
 
     /**
      * Row and column dimension (square matrix).
@@ -48,7 +50,10 @@ public class SparseDoubleCholeskyDecomposition {
      * retrieved via instance methods of the returned decomposition object.
      * 
      * @param A
-     *            Square, symmetric positive definite matrix .
+     *            Square, symmetric positive definite matrix; only its upper
+     *            triangle is used, so a
+     *            {@link SymmetricSparseRCDoubleMatrix2D} is factorized without
+     *            expanding it.
      * @param order
      *            ordering option (0 or 1); 0: natural ordering, 1: amd(A+A')
      * @throws IllegalArgumentException
@@ -58,27 +63,43 @@ public class SparseDoubleCholeskyDecomposition {
      *             if <tt>order != 0 || order != 1</tt>
      */
     public SparseDoubleCholeskyDecomposition(DoubleMatrix2D A, int order) {
-        DoubleProperty.DEFAULT.checkSquare(A);
-        DoubleProperty.DEFAULT.checkSparse(A);
         if (order < 0 || order > 1) {
             throw new IllegalArgumentException("order must be equal 0 or 1");
         }
-        Dcs dcs;
-        if (A instanceof SparseRCDoubleMatrix2D) {
-            rcMatrix = true;
-            dcs = ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
-        } else {
-            dcs = (Dcs) A.elements();
-        }
+        Dcs dcs = compressed(A);
         n = A.rows();
         S = Dcs_schol.cs_schol(order, dcs);
         if (S == null) {
             throw new IllegalArgumentException("Exception occured in cs_schol()");
         }
-        N = Dcs_chol.cs_chol(dcs, S);
-        if (N == null) {
-            throw new IllegalArgumentException("Matrix is not symmetric positive definite");
-        }
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
+    }
+
+    /**
+     * Constructs and returns a new Cholesky decomposition object for a sparse
+     * symmetric and positive definite matrix, reusing the symbolic analysis
+     * of a matrix with the same pattern, see {@link #getSymbolicAnalysis()}.
+     * Only the numeric factorization is computed. The symbolic analysis is
+     * not modified, so one analysis can be shared by decompositions
+     * constructed concurrently.
+     * 
+     * @param A
+     *            Square, symmetric positive definite matrix
+     * @param S
+     *            symbolic analysis of a matrix with the pattern of <tt>A</tt>
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or is not sparse or is not a
+     *             symmetric positive definite, or if <tt>S</tt> is not the
+     *             analysis of the pattern of <tt>A</tt>.
+     */
+    public SparseDoubleCholeskyDecomposition(DoubleMatrix2D A, Dcss S) {
+        Dcs dcs = compressed(A);
+        n = A.rows();
+        SparseDoublePattern.checkCholesky(dcs, S);
+        this.S = S;
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
     }
 
     /**
@@ -134,6 +155,23 @@ public class SparseDoubleCholeskyDecomposition {
         return S2;
     }
 
+    /**
+     * Recomputes the numeric factorization for new values of a matrix with
+     * the pattern of the factorized one, reusing the symbolic analysis.
+     * 
+     * @param A
+     *            Square, symmetric positive definite matrix with the pattern
+     *            of the factorized matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not sparse, has another pattern or is not
+     *             symmetric positive definite.
+     */
+    public void refactor(DoubleMatrix2D A) {
+        Dcs dcs = compressed(A);
+        pattern.check(dcs);
+        factor(dcs);
+    }
+
     /**
      * Solves <tt>A*x = b</tt>(in-place). Upon return <tt>b</tt> is overridden
      * with the result <tt>x</tt>.
@@ -155,13 +193,43 @@ public class SparseDoubleCholeskyDecomposition {
         } else {
             x = (double[]) b.elements();
         }
+        if (Lsolver == null) {
+            // the compressed columns of L are the compressed rows of L'
+            Lsolver = new SparseDoubleTriangularSolver(n, N.L.p, N.L.i, N.L.x, false, false).getTranspose();
+        }
         Dcs_ipvec.cs_ipvec(S.pinv, x, y, n); /* y = P*b */
-        Dcs_lsolve.cs_lsolve(N.L, y); /* y = L\y */
-        Dcs_ltsolve.cs_ltsolve(N.L, y); /* y = L'\y */
+        Lsolver.solve(y); /* y = L\y */
+        Lsolver.getTranspose().solve(y); /* y = L'\y */
         Dcs_pvec.cs_pvec(S.pinv, y, x, n); /* x = P'*y */
 
         if (b.isView()) {
             b.assign(x);
         }
     }
+
+    private Dcs compressed(DoubleMatrix2D A) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SymmetricSparseRCDoubleMatrix2D) A).getUpper().getColumnCompressed().elements();
+        }
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
+        } else {
+            rcMatrix = false;
+            return (Dcs) A.elements();
+        }
+    }
+
+    private void factor(Dcs dcs) {
+        Dcsn N = Dcs_chol.cs_chol(dcs, S);
+        if (N == null) {
+            throw new IllegalArgumentException("Matrix is not symmetric positive definite");
+        }
+        this.N = N;
+        L = null;
+        Lsolver = null;
+    }
 }
@@ -15,6 +15,7 @@ import static edu.ufl.cise.btf.tdouble.Dbtf_maxtrans.btf_maxtrans;
 import static edu.ufl.cise.klu.tdouble.Dklu_analyze.klu_analyze;
 import static edu.ufl.cise.klu.tdouble.Dklu_defaults.klu_defaults;
 import static edu.ufl.cise.klu.tdouble.Dklu_factor.klu_factor;
+import static edu.ufl.cise.klu.tdouble.Dklu_refactor.klu_refactor;
 import static edu.ufl.cise.klu.tdouble.Dklu_solve.klu_solve;
 import static edu.ufl.cise.klu.tdouble.Dklu_extract.klu_extract;
 
@@ -32,6 +33,7 @@ public class SparseDoubleKLUDecomposition implements SparseDoubleLUDecomposition
     private DoubleMatrix2D U;
     private boolean rcMatrix = false;
     private boolean isNonSingular = true;
+    private SparseDoublePattern pattern;
     /**
      * Row and column dimension (square matrix).
      */
@@ -56,43 +58,59 @@ public class SparseDoubleKLUDecomposition implements SparseDoubleLUDecomposition
      *             if <tt>order</tt> is not in [0,1]
      */
     public SparseDoubleKLUDecomposition(DoubleMatrix2D A, int order, boolean checkIfSingular, boolean preOrder) {
-        DoubleProperty.DEFAULT.checkSquare(A);
-        DoubleProperty.DEFAULT.checkSparse(A);
-
         if (order < 0 || order > 3) {
             throw new IllegalArgumentException("order must be a number between 0 and 3");
         }
+        Dcs dcs = compressed(A);
+        n = A.rows();
 
 		Common = new KLU_common();
 		klu_defaults(Common);
 		Common.ordering = order;
 		Common.btf = preOrder ? 1 : 0;
-		
-        Dcs dcs;
-        if (A instanceof SparseRCDoubleMatrix2D) {
-            rcMatrix = true;
-            dcs = ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
-        } else {
-            dcs = (Dcs) A.elements();
-        }
-        n = A.rows();
-        int[] Ap = dcs.p, Ai = dcs.i;
-        double[] Ax = dcs.x;
 
-        S = klu_analyze(n, Ap, Ai, Common);
+        S = klu_analyze(n, dcs.p, dcs.i, Common);
         if (S == null) {
             throw new IllegalArgumentException("Exception occured in klu_analyze()");
         }
-		N = klu_factor(Ap, Ai, Ax, S, Common);
-        if (N == null) {
-            throw new IllegalArgumentException("Exception occured in klu_factor()");
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
+        if (checkIfSingular) {
+            checkSingular(dcs);
         }
+    }
+
+    /**
+     * Constructs and returns a new LU Decomposition object reusing the
+     * symbolic analysis of a matrix with the same pattern, see
+     * {@link #getSymbolicAnalysis()}. Only the numeric factorization is
+     * computed. The symbolic analysis is not modified, so one analysis can be
+     * shared by decompositions constructed concurrently.
+     * 
+     * @param A
+     *            Square matrix
+     * @param S
+     *            symbolic analysis of a matrix with the pattern of <tt>A</tt>
+     * @param checkIfSingular
+     *            if true, then the singularity test (based on
+     *            BTFJ) is performed.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or is not sparse, or if
+     *             <tt>S</tt> is not the analysis of the pattern of <tt>A</tt>.
+     */
+    public SparseDoubleKLUDecomposition(DoubleMatrix2D A, KLU_symbolic S, boolean checkIfSingular) {
+        Dcs dcs = compressed(A);
+        n = A.rows();
+        SparseDoublePattern.checkKLU(dcs, S);
+        Common = new KLU_common();
+        klu_defaults(Common);
+        Common.ordering = S.ordering;
+        Common.btf = S.do_btf;
+        this.S = S;
+        pattern = new SparseDoublePattern(dcs);
+        factor(dcs);
         if (checkIfSingular) {
-        	/* check if matrix is singular */
-        	int sprank = btf_maxtrans(n, n, Ap, Ai, Common.maxwork, new double[1], new int[n]) ;
-            if (sprank < n) {
-                isNonSingular = false;
-            }
+            checkSingular(dcs);
         }
     }
     
@@ -198,6 +216,28 @@ public class SparseDoubleKLUDecomposition implements SparseDoubleLUDecomposition
         return isNonSingular;
     }
 
+    /**
+     * Recomputes the numeric factorization for new values of a matrix with the
+     * pattern of the factorized one. The fill-reducing ordering and the pivots
+     * of the first factorization are kept, so the new values must not need
+     * another pivot sequence for stability; construct a new decomposition from
+     * {@link #getSymbolicAnalysis()} otherwise.
+     * 
+     * @param A
+     *            Square matrix with the pattern of the factorized matrix
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not sparse or has another pattern.
+     */
+    public void refactor(DoubleMatrix2D A) {
+        Dcs dcs = compressed(A);
+        pattern.check(dcs);
+        if (klu_refactor(dcs.p, dcs.i, dcs.x, S, N, Common) == 0) {
+            throw new IllegalArgumentException("Exception occured in klu_refactor()");
+        }
+        L = null;
+        U = null;
+    }
+
     /* (non-Javadoc)
 	 * @see cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition#solve(cern.colt.matrix.tdouble.DoubleMatrix1D)
 	 */
@@ -221,4 +261,33 @@ public class SparseDoubleKLUDecomposition implements SparseDoubleLUDecomposition
             b.assign(x);
         }
     }
+
+    private void checkSingular(Dcs dcs) {
+        /* check if matrix is singular */
+        int sprank = btf_maxtrans(n, n, dcs.p, dcs.i, Common.maxwork, new double[1], new int[n]);
+        if (sprank < n) {
+            isNonSingular = false;
+        }
+    }
+
+    private Dcs compressed(DoubleMatrix2D A) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
+        } else {
+            rcMatrix = false;
+            return (Dcs) A.elements();
+        }
+    }
+
+    private void factor(Dcs dcs) {
+        N = klu_factor(dcs.p, dcs.i, dcs.x, S, Common);
+        if (N == null) {
+            throw new IllegalArgumentException("Exception occured in klu_factor()");
+        }
+        L = null;
+        U = null;
+    }
 }
@@ -60,6 +60,17 @@ public interface SparseDoubleLUDecomposition {
 	 */
 	public abstract boolean isNonsingular();
 
+	/**
+	 * Recomputes the numeric factorization for new values of a matrix with
+	 * the pattern of the factorized one, reusing its symbolic analysis.
+	 * 
+	 * @param A
+	 *            Square matrix with the pattern of the factorized matrix
+	 * @exception IllegalArgumentException
+	 *                if <tt>A</tt> is not sparse or has another pattern.
+	 */
+	public abstract void refactor(DoubleMatrix2D A);
+
 	/**
 	 * Solves <tt>A*x = b</tt>(in-place). Upon return <tt>b</tt> is overridden
 	 * with the result <tt>x</tt>.
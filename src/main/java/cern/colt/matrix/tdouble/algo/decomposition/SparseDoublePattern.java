@@ -0,0 +1,171 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_counts;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_etree;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_post;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_symperm;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.ufl.cise.klu.common.KLU_symbolic;
+
+/**
+ * Copy of the nonzero pattern of a column compressed matrix, kept by a sparse
+ * decomposition to check that the matrix of a numeric refactorization has
+ * the pattern its symbolic analysis was computed for. The row indexes of a
+ * column may be stored in any order. The static methods check a matrix
+ * against a symbolic analysis passed in by the caller, whose pattern is not
+ * known.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+final class SparseDoublePattern {
+
+    private final int m;
+
+    private final int n;
+
+    private final int[] columnPointers;
+
+    private final int[] rowIndexes;
+
+    SparseDoublePattern(Dcs A) {
+        m = A.m;
+        n = A.n;
+        columnPointers = new int[n + 1];
+        System.arraycopy(A.p, 0, columnPointers, 0, n + 1);
+        rowIndexes = new int[columnPointers[n]];
+        System.arraycopy(A.i, 0, rowIndexes, 0, rowIndexes.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> has another pattern.
+     */
+    void check(Dcs A) {
+        boolean equal = (A.m == m) && (A.n == n);
+        for (int j = 0; equal && j < n; j++) {
+            equal = A.p[j + 1] - A.p[j] == columnPointers[j + 1] - columnPointers[j];
+        }
+        if (equal) {
+            // marker[i] == 2*j+1: row i is expected in column j, 2*j+2: seen
+            int[] marker = new int[m];
+            for (int j = 0; equal && j < n; j++) {
+                for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+                    marker[rowIndexes[k]] = 2 * j + 1;
+                }
+                for (int k = A.p[j]; equal && k < A.p[j + 1]; k++) {
+                    int i = A.i[k];
+                    equal = marker[i] == 2 * j + 1;
+                    marker[i] = 2 * j + 2;
+                }
+            }
+        }
+        if (!equal)
+            throw new IllegalArgumentException("The pattern of A differs from the pattern of the factorized matrix");
+    }
+
+    /**
+     * Checks that the symbolic Cholesky analysis <tt>S</tt> was computed for
+     * the pattern of the upper triangle of <tt>A</tt>: the elimination tree
+     * and the column counts of <tt>L</tt> of the permuted matrix must agree.
+     *
+     * @throws IllegalArgumentException
+     *             if <tt>S</tt> does not belong to the pattern of <tt>A</tt>.
+     */
+    static void checkCholesky(Dcs A, Dcss S) {
+        int n = A.n;
+        if (S.cp == null || S.cp.length != n + 1 || S.parent == null || S.parent.length != n)
+            throw new IllegalArgumentException("S is not the symbolic analysis of a " + n + " x " + n + " matrix");
+        Dcs C = Dcs_symperm.cs_symperm(A, S.pinv, false);
+        int[] parent = Dcs_etree.cs_etree(C, false);
+        int[] post = Dcs_post.cs_post(parent, n);
+        int[] counts = Dcs_counts.cs_counts(C, parent, post, false);
+        boolean equal = parent != null && counts != null;
+        for (int j = 0; equal && j < n; j++) {
+            equal = parent[j] == S.parent[j] && counts[j] == S.cp[j + 1] - S.cp[j];
+        }
+        if (!equal)
+            throw mismatch();
+    }
+
+    /**
+     * Checks that the symbolic LU analysis <tt>S</tt> was computed for a
+     * matrix with the size and the number of entries of <tt>A</tt>. The
+     * analysis holds only a column ordering and estimates of the sizes of the
+     * factors derived from the number of entries, so this is all that can be
+     * checked.
+     *
+     * @throws IllegalArgumentException
+     *             if <tt>S</tt> does not belong to <tt>A</tt>.
+     */
+    static void checkLU(Dcs A, Dcss S) {
+        int n = A.n;
+        if (S.q != null && !isPermutation(S.q, n))
+            throw new IllegalArgumentException("S is not the symbolic analysis of a " + n + " x " + n + " matrix");
+        if (S.lnz != 4 * A.p[n] + n || S.unz != S.lnz)
+            throw mismatch();
+    }
+
+    /**
+     * Checks that the KLU analysis <tt>S</tt> was computed for the pattern of
+     * <tt>A</tt>: the number of entries must agree and, after the row and
+     * column permutations of the analysis, all entries must lie in the block
+     * upper triangular form of the analysis, with as many entries outside the
+     * diagonal blocks.
+     *
+     * @throws IllegalArgumentException
+     *             if <tt>S</tt> does not belong to the pattern of <tt>A</tt>.
+     */
+    static void checkKLU(Dcs A, KLU_symbolic S) {
+        int n = A.n;
+        if (S.n != n || !isPermutation(S.P, n) || !isPermutation(S.Q, n) || S.R == null
+                || S.R.length < S.nblocks + 1)
+            throw new IllegalArgumentException("S is not the symbolic analysis of a " + n + " x " + n + " matrix");
+        if (S.nz != A.p[n])
+            throw mismatch();
+        int[] rowBlock = new int[n];
+        int[] columnBlock = new int[n];
+        for (int b = 0; b < S.nblocks; b++) {
+            for (int k = S.R[b]; k < S.R[b + 1]; k++) {
+                rowBlock[S.P[k]] = b;
+                columnBlock[S.Q[k]] = b;
+            }
+        }
+        int nzoff = 0;
+        for (int j = 0; j < n; j++) {
+            for (int k = A.p[j]; k < A.p[j + 1]; k++) {
+                int b = rowBlock[A.i[k]];
+                if (b > columnBlock[j])
+                    throw mismatch();
+                if (b < columnBlock[j])
+                    nzoff++;
+            }
+        }
+        if (nzoff != S.nzoff)
+            throw mismatch();
+    }
+
+    private static boolean isPermutation(int[] p, int n) {
+        if (p == null || p.length < n)
+            return false;
+        boolean[] seen = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            if (p[k] < 0 || p[k] >= n || seen[p[k]])
+                return false;
+            seen[p[k]] = true;
+        }
+        return true;
+    }
+
+    private static IllegalArgumentException mismatch() {
+        return new IllegalArgumentException("S is not the symbolic analysis of the pattern of A");
+    }
+}
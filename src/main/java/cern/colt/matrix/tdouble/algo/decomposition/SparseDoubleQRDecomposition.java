@@ -3,6 +3,7 @@ package cern.colt.matrix.tdouble.algo.decomposition;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_happly;
@@ -10,8 +11,6 @@ import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_pvec;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_qr;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_sqr;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_usolve;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_utsolve;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsn;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
@@ -35,6 +34,7 @@ public class SparseDoubleQRDecomposition {
     private DoubleMatrix2D V;
     private int m, n;
     private boolean rcMatrix = false;
+    private SparseDoubleTriangularSolver Rsolver;
 
     /**
      * Constructs and returns a new QR decomposition object; computed by
@@ -189,6 +189,10 @@ public class SparseDoubleQRDecomposition {
         if (!this.hasFullRank()) {
             throw new IllegalArgumentException("Matrix is rank deficient.");
         }
+        if (Rsolver == null) {
+            // the compressed columns of R are the compressed rows of R'
+            Rsolver = new SparseDoubleTriangularSolver(N.U.n, N.U.p, N.U.i, N.U.x, true, false);
+        }
         double[] x;
         if (b.isView()) {
             x = (double[]) b.copy().elements();
@@ -202,12 +206,12 @@ public class SparseDoubleQRDecomposition {
             {
                 Dcs_happly.cs_happly(N.L, k, N.B[k], y);
             }
-            Dcs_usolve.cs_usolve(N.U, y); /* y = R\y */
+            Rsolver.getTranspose().solve(y); /* y = R\y */
             Dcs_ipvec.cs_ipvec(S.q, y, x, n); /* x(q(0:n-1)) = y(0:n-1) */
         } else {
             double[] y = new double[S != null ? S.m2 : 1]; /* get workspace */
             Dcs_pvec.cs_pvec(S.q, x, y, m); /* y(q(0:m-1)) = b(0:m-1) */
-            Dcs_utsolve.cs_utsolve(N.U, y); /* y = R'\y */
+            Rsolver.solve(y); /* y = R'\y */
             for (int k = m - 1; k >= 0; k--) /* apply Householder refl. to x */
             {
                 Dcs_happly.cs_happly(N.L, k, N.B[k], y);
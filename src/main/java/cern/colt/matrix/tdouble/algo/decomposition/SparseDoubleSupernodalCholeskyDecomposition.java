@@ -0,0 +1,627 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_pvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_schol;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_symperm;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_transpose;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Supernodal Cholesky decomposition <tt>A = L*L'</tt> of a sparse symmetric,
+ * positive definite matrix; If the matrix is not symmetric positive definite,
+ * the IllegalArgumentException is thrown.
+ * <p>
+ * Consecutive columns of <tt>L</tt> with the same structure below the
+ * diagonal are grouped into supernodes, which are factorized with the
+ * multifrontal method: the columns of a supernode and the updates of its
+ * children in the elimination tree are assembled into a dense frontal matrix,
+ * whose partial factorization gives the columns of <tt>L</tt> and a dense
+ * update for the parent. The supernodes of every level of the tree are
+ * independent and are factorized concurrently; the few large supernodes near
+ * the root are factorized one by one with concurrent dense kernels instead.
+ * This decomposition has the API of {@link SparseDoubleCholeskyDecomposition}
+ * and is much faster on matrices with large supernodes, e.g. from 3D finite
+ * element discretizations.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+public class SparseDoubleSupernodalCholeskyDecomposition {
+    private Dcss S;
+    private DoubleMatrix2D L;
+    private boolean rcMatrix = false;
+
+    /**
+     * Row and column dimension (square matrix).
+     */
+    private int n;
+
+    /*
+     * Supernode s holds the columns superColumns[s] ... superColumns[s+1]-1
+     * of L. The rows of its columns are superRows[rowPointers[s] ...
+     * rowPointers[s+1]-1], sorted and starting with the supernode's own
+     * columns.
+     */
+    private int[] superColumns;
+
+    private int[] rowPointers;
+
+    private int[] superRows;
+
+    /*
+     * The children of supernode s are children[childPointers[s] ...
+     * childPointers[s+1]-1], and the supernodes of level l of the tree (the
+     * leaves are on level 0) are levelNodes[levelPointers[l] ...
+     * levelPointers[l+1]-1].
+     */
+    private int[] childPointers;
+
+    private int[] children;
+
+    private int[] levelPointers;
+
+    private int[] levelNodes;
+
+    /*
+     * Columns of supernode s, as a dense column-major matrix with one row for
+     * every row of the supernode; the entries above the diagonal are zero.
+     */
+    private double[][] values;
+
+    /**
+     * Constructs and returns a new supernodal Cholesky decomposition object
+     * for a sparse symmetric and positive definite matrix; The decomposed
+     * matrices can be retrieved via instance methods of the returned
+     * decomposition object.
+     *
+     * @param A
+     *            Square, symmetric positive definite matrix; only its upper
+     *            triangle is used, so a
+     *            {@link SymmetricSparseRCDoubleMatrix2D} is factorized without
+     *            expanding it.
+     * @param order
+     *            ordering option (0 or 1); 0: natural ordering, 1: amd(A+A')
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square or is not sparse or is not a
+     *             symmetric positive definite.
+     * @throws IllegalArgumentException
+     *             if <tt>order != 0 || order != 1</tt>
+     */
+    public SparseDoubleSupernodalCholeskyDecomposition(DoubleMatrix2D A, int order) {
+        if (order < 0 || order > 1) {
+            throw new IllegalArgumentException("order must be equal 0 or 1");
+        }
+        Dcs dcs = compressed(A);
+        n = A.rows();
+        S = Dcs_schol.cs_schol(order, dcs);
+        if (S == null) {
+            throw new IllegalArgumentException("Exception occured in cs_schol()");
+        }
+        Dcs C = Dcs_symperm.cs_symperm(dcs, S.pinv, true); /* C = triu(P*A*P') */
+        Dcs lower = Dcs_transpose.cs_transpose(C, true); /* sorted columns of tril(P*A*P') */
+        analyze(lower);
+        factor(lower);
+    }
+
+    /**
+     * Returns the number of supernodes.
+     *
+     * @return the number of supernodes
+     */
+    public int getNumberOfSupernodes() {
+        return superColumns.length - 1;
+    }
+
+    /**
+     * Returns the triangular factor, <tt>L</tt>.
+     *
+     * @return <tt>L</tt>
+     */
+    public DoubleMatrix2D getL() {
+        if (L == null) {
+            L = expand();
+        }
+        return L.copy();
+    }
+
+    /**
+     *
+     * Returns the triangular factor, <tt>L'</tt>.
+     *
+     * @return <tt>L'</tt>
+     */
+    public DoubleMatrix2D getLtranspose() {
+        if (L == null) {
+            L = expand();
+        }
+        if (rcMatrix) {
+            return ((SparseRCDoubleMatrix2D) L).getTranspose();
+        } else {
+            return ((SparseCCDoubleMatrix2D) L).getTranspose();
+        }
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt>(in-place). Upon return <tt>b</tt> is overridden
+     * with the result <tt>x</tt>.
+     *
+     * @param b
+     *            A vector with of size A.rows();
+     * @exception IllegalArgumentException
+     *                if <tt>b.size() != A.rows()</tt>.
+     */
+    public void solve(DoubleMatrix1D b) {
+        if (b.size() != n) {
+            throw new IllegalArgumentException("b.size() != A.rows()");
+        }
+        DoubleProperty.DEFAULT.checkDense(b);
+        double[] y = new double[n];
+        double[] x;
+        if (b.isView()) {
+            x = (double[]) b.copy().elements();
+        } else {
+            x = (double[]) b.elements();
+        }
+        Dcs_ipvec.cs_ipvec(S.pinv, x, y, n); /* y = P*b */
+        int nsuper = superColumns.length - 1;
+        for (int s = 0; s < nsuper; s++) { /* y = L\y */
+            int first = superColumns[s];
+            int ncols = superColumns[s + 1] - first;
+            int r0 = rowPointers[s];
+            int m = rowPointers[s + 1] - r0;
+            double[] panel = values[s];
+            for (int c = 0; c < ncols; c++) {
+                int cc = c * m;
+                double yj = y[first + c] / panel[c + cc];
+                y[first + c] = yj;
+                for (int r = c + 1; r < m; r++) {
+                    y[superRows[r0 + r]] -= panel[r + cc] * yj;
+                }
+            }
+        }
+        for (int s = nsuper - 1; s >= 0; s--) { /* y = L'\y */
+            int first = superColumns[s];
+            int ncols = superColumns[s + 1] - first;
+            int r0 = rowPointers[s];
+            int m = rowPointers[s + 1] - r0;
+            double[] panel = values[s];
+            for (int c = ncols - 1; c >= 0; c--) {
+                int cc = c * m;
+                double sum = y[first + c];
+                for (int r = c + 1; r < m; r++) {
+                    sum -= panel[r + cc] * y[superRows[r0 + r]];
+                }
+                y[first + c] = sum / panel[c + cc];
+            }
+        }
+        Dcs_pvec.cs_pvec(S.pinv, y, x, n); /* x = P'*y */
+
+        if (b.isView()) {
+            b.assign(x);
+        }
+    }
+
+    private Dcs compressed(DoubleMatrix2D A) {
+        DoubleProperty.DEFAULT.checkSquare(A);
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SymmetricSparseRCDoubleMatrix2D) A).getUpper().getColumnCompressed().elements();
+        }
+        DoubleProperty.DEFAULT.checkSparse(A);
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            rcMatrix = true;
+            return ((SparseRCDoubleMatrix2D) A).getColumnCompressed().elements();
+        } else {
+            rcMatrix = false;
+            return (Dcs) A.elements();
+        }
+    }
+
+    /*
+     * Finds the fundamental supernodes, their rows and the levels of the
+     * supernodal elimination tree.
+     */
+    private void analyze(Dcs lower) {
+        int[] parent = S.parent;
+        int[] count = new int[n];
+        int[] nchildren = new int[n];
+        for (int j = 0; j < n; j++) {
+            count[j] = S.cp[j + 1] - S.cp[j];
+            if (parent[j] >= 0)
+                nchildren[parent[j]]++;
+        }
+        // column j extends the supernode of column j-1 if it is its only child with the same structure
+        int[] columns = new int[n + 1];
+        int nsuper = 0;
+        for (int j = 0; j < n; j++) {
+            if (j == 0 || parent[j - 1] != j || count[j - 1] != count[j] + 1 || nchildren[j] != 1)
+                columns[nsuper++] = j;
+        }
+        columns[nsuper] = n;
+        superColumns = new int[nsuper + 1];
+        System.arraycopy(columns, 0, superColumns, 0, nsuper + 1);
+        int[] superOf = new int[n];
+        for (int s = 0; s < nsuper; s++) {
+            for (int j = superColumns[s]; j < superColumns[s + 1]; j++) {
+                superOf[j] = s;
+            }
+        }
+        int[] superParent = new int[nsuper];
+        childPointers = new int[nsuper + 1];
+        for (int s = 0; s < nsuper; s++) {
+            int p = parent[superColumns[s + 1] - 1];
+            superParent[s] = p < 0 ? -1 : superOf[p];
+            if (p >= 0)
+                childPointers[superParent[s] + 1]++;
+        }
+        for (int s = 0; s < nsuper; s++) {
+            childPointers[s + 1] += childPointers[s];
+        }
+        children = new int[childPointers[nsuper]];
+        int[] next = new int[nsuper];
+        System.arraycopy(childPointers, 0, next, 0, nsuper);
+        for (int s = 0; s < nsuper; s++) {
+            if (superParent[s] >= 0)
+                children[next[superParent[s]]++] = s;
+        }
+
+        // rows of a supernode: its columns, the rows of A in them and the rows of its children below them
+        rowPointers = new int[nsuper + 1];
+        for (int s = 0; s < nsuper; s++) {
+            rowPointers[s + 1] = rowPointers[s] + count[superColumns[s]];
+        }
+        superRows = new int[rowPointers[nsuper]];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        for (int s = 0; s < nsuper; s++) {
+            int first = superColumns[s];
+            int last = superColumns[s + 1];
+            int pos = rowPointers[s];
+            for (int j = first; j < last; j++) {
+                superRows[pos++] = j;
+                mark[j] = s;
+            }
+            for (int j = first; j < last; j++) {
+                for (int k = lower.p[j]; k < lower.p[j + 1]; k++) {
+                    int i = lower.i[k];
+                    if (mark[i] != s) {
+                        mark[i] = s;
+                        superRows[pos++] = i;
+                    }
+                }
+            }
+            for (int k = childPointers[s]; k < childPointers[s + 1]; k++) {
+                int c = children[k];
+                for (int r = rowPointers[c] + superColumns[c + 1] - superColumns[c]; r < rowPointers[c + 1]; r++) {
+                    int i = superRows[r];
+                    if (mark[i] != s) {
+                        mark[i] = s;
+                        superRows[pos++] = i;
+                    }
+                }
+            }
+            Arrays.sort(superRows, rowPointers[s] + last - first, pos);
+        }
+
+        // level of a supernode: one more than the highest level of its children
+        int[] level = new int[nsuper];
+        int nlevels = 0;
+        for (int s = 0; s < nsuper; s++) {
+            for (int k = childPointers[s]; k < childPointers[s + 1]; k++) {
+                level[s] = Math.max(level[s], level[children[k]] + 1);
+            }
+            nlevels = Math.max(nlevels, level[s] + 1);
+        }
+        levelPointers = new int[nlevels + 1];
+        for (int s = 0; s < nsuper; s++) {
+            levelPointers[level[s] + 1]++;
+        }
+        for (int l = 0; l < nlevels; l++) {
+            levelPointers[l + 1] += levelPointers[l];
+        }
+        next = new int[nlevels];
+        System.arraycopy(levelPointers, 0, next, 0, nlevels);
+        levelNodes = new int[nsuper];
+        for (int s = 0; s < nsuper; s++) {
+            levelNodes[next[level[s]]++] = s;
+        }
+    }
+
+    private void factor(final Dcs lower) {
+        int nsuper = superColumns.length - 1;
+        values = new double[nsuper][];
+        final double[][] updates = new double[nsuper][];
+        final boolean[] failed = new boolean[1];
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        int nlevels = levelPointers.length - 1;
+        for (int l = 0; l < nlevels; l++) {
+            int first = levelPointers[l];
+            int size = levelPointers[l + 1] - first;
+            if ((nthreads > 1) && (size >= nthreads)) {
+                // one supernode per task, in parts of about the same number of flops
+                long[] cost = new long[size + 1];
+                for (int k = 0; k < size; k++) {
+                    cost[k + 1] = cost[k] + cost(levelNodes[first + k]);
+                }
+                Future<?>[] futures = new Future[nthreads];
+                int start = 0;
+                for (int j = 0; j < nthreads; j++) {
+                    int end = start;
+                    long target = cost[size] * (j + 1) / nthreads;
+                    while (end < size && (cost[end] < target || end == start)) {
+                        end++;
+                    }
+                    if (j == nthreads - 1)
+                        end = size;
+                    final int firstIdx = first + start;
+                    final int lastIdx = first + end;
+                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                        public void run() {
+                            for (int k = firstIdx; k < lastIdx; k++) {
+                                if (!factorSupernode(levelNodes[k], lower, updates, false))
+                                    failed[0] = true;
+                            }
+                        }
+                    });
+                    start = end;
+                }
+                ConcurrencyUtils.waitForCompletion(futures);
+            } else {
+                for (int k = first; k < first + size; k++) {
+                    if (!factorSupernode(levelNodes[k], lower, updates, nthreads > 1))
+                        failed[0] = true;
+                }
+            }
+            if (failed[0]) {
+                throw new IllegalArgumentException("Matrix is not symmetric positive definite");
+            }
+        }
+        L = null;
+    }
+
+    private long cost(int s) {
+        long ncols = superColumns[s + 1] - superColumns[s];
+        long m = rowPointers[s + 1] - rowPointers[s];
+        return ncols * m * m;
+    }
+
+    /*
+     * Assembles and partially factorizes the frontal matrix of supernode s.
+     * Returns false if a pivot is not positive.
+     */
+    private boolean factorSupernode(int s, Dcs lower, double[][] updates, boolean concurrent) {
+        int first = superColumns[s];
+        final int ncols = superColumns[s + 1] - first;
+        int r0 = rowPointers[s];
+        final int m = rowPointers[s + 1] - r0;
+        final int mu = m - ncols;
+        final double[] panel = new double[m * ncols];
+        final double[] update = mu > 0 ? new double[mu * mu] : null;
+
+        // assemble the columns of A
+        for (int c = 0; c < ncols; c++) {
+            int j = first + c;
+            int p = r0 + c;
+            for (int k = lower.p[j]; k < lower.p[j + 1]; k++) {
+                int i = lower.i[k];
+                while (superRows[p] != i) {
+                    p++;
+                }
+                panel[p - r0 + c * m] += lower.x[k];
+            }
+        }
+        // extend-add the updates of the children
+        for (int k = childPointers[s]; k < childPointers[s + 1]; k++) {
+            int child = children[k];
+            double[] childUpdate = updates[child];
+            int cr0 = rowPointers[child] + superColumns[child + 1] - superColumns[child];
+            int cmu = rowPointers[child + 1] - cr0;
+            int[] relative = new int[cmu];
+            int p = r0;
+            for (int a = 0; a < cmu; a++) {
+                int i = superRows[cr0 + a];
+                while (superRows[p] != i) {
+                    p++;
+                }
+                relative[a] = p - r0;
+            }
+            for (int b = 0; b < cmu; b++) {
+                int rb = relative[b];
+                int bb = b * cmu;
+                if (rb < ncols) {
+                    int cc = rb * m;
+                    for (int a = b; a < cmu; a++) {
+                        panel[relative[a] + cc] += childUpdate[a + bb];
+                    }
+                } else {
+                    int cc = (rb - ncols) * mu - ncols;
+                    for (int a = b; a < cmu; a++) {
+                        update[relative[a] + cc] += childUpdate[a + bb];
+                    }
+                }
+            }
+            updates[child] = null;
+        }
+
+        // L11 = chol(F11)
+        for (int c = 0; c < ncols; c++) {
+            int cc = c * m;
+            for (int k = 0; k < c; k++) {
+                double l = panel[c + k * m];
+                if (l != 0) {
+                    int kk = k * m;
+                    for (int r = c; r < ncols; r++) {
+                        panel[r + cc] -= panel[r + kk] * l;
+                    }
+                }
+            }
+            double d = panel[c + cc];
+            if (d <= 0) {
+                return false;
+            }
+            d = Math.sqrt(d);
+            panel[c + cc] = d;
+            for (int r = c + 1; r < ncols; r++) {
+                panel[r + cc] /= d;
+            }
+        }
+        if (mu == 0) {
+            values[s] = panel;
+            return true;
+        }
+
+        int nthreads = concurrent ? ConcurrencyUtils.getNumberOfThreads() : 1;
+        if ((nthreads > 1) && ((long) mu * ncols >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            // L21 = F21/L11', by blocks of rows
+            int nparts = Math.min(nthreads, mu);
+            Future<?>[] futures = new Future[nparts];
+            int k = mu / nparts;
+            for (int j = 0; j < nparts; j++) {
+                final int firstRow = ncols + j * k;
+                final int lastRow = (j == nparts - 1) ? m : firstRow + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        solvePanel(panel, m, ncols, firstRow, lastRow);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            // F22 = F22 - L21*L21', by blocks of columns with the same number of entries
+            futures = new Future[nparts];
+            int firstColumn = 0;
+            for (int j = 0; j < nparts; j++) {
+                int lastColumn = mu - (int) (mu * Math.sqrt((double) (nparts - j - 1) / nparts));
+                if (j == nparts - 1)
+                    lastColumn = mu;
+                final int firstIdx = firstColumn;
+                final int lastIdx = Math.max(firstColumn, lastColumn);
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        updateFront(panel, m, ncols, update, mu, firstIdx, lastIdx);
+                    }
+                });
+                firstColumn = lastIdx;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            solvePanel(panel, m, ncols, ncols, m);
+            updateFront(panel, m, ncols, update, mu, 0, mu);
+        }
+        values[s] = panel;
+        updates[s] = update;
+        return true;
+    }
+
+    /*
+     * Computes the rows [firstRow, lastRow) of L21 = F21/L11'.
+     */
+    private static void solvePanel(double[] panel, int m, int ncols, int firstRow, int lastRow) {
+        for (int c = 0; c < ncols; c++) {
+            int cc = c * m;
+            for (int k = 0; k < c; k++) {
+                double l = panel[c + k * m];
+                if (l != 0) {
+                    int kk = k * m;
+                    for (int r = firstRow; r < lastRow; r++) {
+                        panel[r + cc] -= panel[r + kk] * l;
+                    }
+                }
+            }
+            double d = panel[c + cc];
+            for (int r = firstRow; r < lastRow; r++) {
+                panel[r + cc] /= d;
+            }
+        }
+    }
+
+    /*
+     * Subtracts L21*L21' from the columns [firstColumn, lastColumn) of the
+     * lower triangle of the update matrix, four columns at a time.
+     */
+    private static void updateFront(double[] panel, int m, int ncols, double[] update, int mu, int firstColumn,
+            int lastColumn) {
+        int b = firstColumn;
+        for (; b + 3 < lastColumn; b += 4) {
+            int c0 = b * mu;
+            int c1 = c0 + mu;
+            int c2 = c1 + mu;
+            int c3 = c2 + mu;
+            for (int k = 0; k < ncols; k++) {
+                int kk = ncols + k * m;
+                double l0 = panel[b + kk];
+                double l1 = panel[b + 1 + kk];
+                double l2 = panel[b + 2 + kk];
+                double l3 = panel[b + 3 + kk];
+                if (l0 == 0 && l1 == 0 && l2 == 0 && l3 == 0)
+                    continue;
+                // the entries above the diagonal of the 4 x 4 block are computed too, but never read
+                for (int a = b; a < mu; a++) {
+                    double v = panel[a + kk];
+                    update[a + c0] -= v * l0;
+                    update[a + c1] -= v * l1;
+                    update[a + c2] -= v * l2;
+                    update[a + c3] -= v * l3;
+                }
+            }
+        }
+        for (; b < lastColumn; b++) {
+            int bb = b * mu;
+            for (int k = 0; k < ncols; k++) {
+                int kk = ncols + k * m;
+                double l = panel[b + kk];
+                if (l != 0) {
+                    for (int a = b; a < mu; a++) {
+                        update[a + bb] -= panel[a + kk] * l;
+                    }
+                }
+            }
+        }
+    }
+
+    private DoubleMatrix2D expand() {
+        int lnz = S.cp[n];
+        int[] Lp = new int[n + 1];
+        int[] Li = new int[lnz];
+        double[] Lx = new double[lnz];
+        int pos = 0;
+        int nsuper = superColumns.length - 1;
+        for (int s = 0; s < nsuper; s++) {
+            int first = superColumns[s];
+            int r0 = rowPointers[s];
+            int m = rowPointers[s + 1] - r0;
+            double[] panel = values[s];
+            for (int c = 0; c < superColumns[s + 1] - first; c++) {
+                Lp[first + c] = pos;
+                for (int r = c; r < m; r++) {
+                    Li[pos] = superRows[r0 + r];
+                    Lx[pos++] = panel[r + c * m];
+                }
+            }
+        }
+        Lp[n] = pos;
+        DoubleMatrix2D L = new SparseCCDoubleMatrix2D(n, n, Li, Lp, Lx);
+        if (rcMatrix) {
+            L = ((SparseCCDoubleMatrix2D) L).getRowCompressed();
+        }
+        return L;
+    }
+}
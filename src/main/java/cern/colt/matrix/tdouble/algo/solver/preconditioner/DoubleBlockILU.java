@@ -0,0 +1,369 @@
+package cern.colt.matrix.tdouble.algo.solver.preconditioner;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BlockSparseRowDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Block ILU(0) preconditioner using a block compressed row matrix as internal
+ * storage. The incomplete factorization keeps the block sparsity pattern of
+ * the matrix and works on dense <tt>b x b</tt> blocks; the diagonal blocks of
+ * <tt>U</tt> are stored inverted, so applying the preconditioner only takes
+ * block products. With blocks of size <tt>1</tt> this is the same as
+ * {@link DoubleILU}.
+ */
+public class DoubleBlockILU implements DoublePreconditioner {
+
+    /**
+     * Factorisation matrix
+     */
+    private BlockSparseRowDoubleMatrix2D LU;
+
+    /**
+     * Inverses of the diagonal blocks of U
+     */
+    private double[] inverseDiagonal;
+
+    /**
+     * Temporary vector for solving the factorised system
+     */
+    private final DoubleMatrix1D y;
+
+    private int[] diagind;
+
+    private final int n;
+
+    private final int blockSize;
+
+    /**
+     * Sets up the block ILU preconditioner
+     *
+     * @param n
+     *            Problem size (number of rows)
+     * @param blockSize
+     *            Size of the blocks. <tt>n</tt> must be a multiple of it
+     */
+    public DoubleBlockILU(int n, int blockSize) {
+        if (blockSize <= 0 || n % blockSize != 0)
+            throw new IllegalArgumentException("Problem size must be a multiple of the block size: " + n + ", "
+                    + blockSize);
+        this.n = n;
+        this.blockSize = blockSize;
+        y = new DenseDoubleMatrix1D(n);
+    }
+
+    public DoubleMatrix1D apply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        // Ly = b, y = L\b
+        lowerUnitSolve(b, y);
+
+        // Ux = L\b = y
+        return upperSolve(y, x);
+    }
+
+    public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        // U'y = b, y = U'\b
+        upperTransSolve(b, y);
+
+        // L'x = U'\b = y
+        return lowerUnitTransSolve(y, x);
+    }
+
+    public void setMatrix(DoubleMatrix2D A) {
+        if (A.rows() != n) {
+            throw new IllegalArgumentException("A.rows() != n");
+        }
+        if (A instanceof BlockSparseRowDoubleMatrix2D
+                && ((BlockSparseRowDoubleMatrix2D) A).getBlockSize() == blockSize) {
+            BlockSparseRowDoubleMatrix2D B = (BlockSparseRowDoubleMatrix2D) A;
+            int nnzb = B.numberOfBlocks();
+            int[] blockColumnIndexes = new int[nnzb];
+            System.arraycopy(B.getBlockColumnIndexes(), 0, blockColumnIndexes, 0, nnzb);
+            double[] values = new double[nnzb * blockSize * blockSize];
+            System.arraycopy(B.getValues(), 0, values, 0, values.length);
+            LU = new BlockSparseRowDoubleMatrix2D(n, n, blockSize, B.getBlockRowPointers().clone(),
+                    blockColumnIndexes, values);
+        } else {
+            SparseRCDoubleMatrix2D Arc;
+            if (A instanceof SparseRCDoubleMatrix2D) {
+                Arc = (SparseRCDoubleMatrix2D) A;
+            } else {
+                Arc = new SparseRCDoubleMatrix2D(n, n);
+                Arc.assign(A);
+            }
+            LU = new BlockSparseRowDoubleMatrix2D(Arc, blockSize);
+        }
+        factor();
+    }
+
+    private void factor() {
+        int b = blockSize;
+        int bb = b * b;
+        int nb = n / b;
+
+        // Internal BSR matrix storage
+        int[] colind = LU.getBlockColumnIndexes();
+        int[] rowptr = LU.getBlockRowPointers();
+        double[] data = LU.getValues();
+
+        // Find the indexes to the diagonal blocks
+        diagind = findDiagonalIndexes(nb, colind, rowptr);
+        inverseDiagonal = new double[nb * bb];
+        double[] work = new double[bb];
+
+        for (int k = 0; k < nb; ++k) {
+            for (int i = rowptr[k]; i < diagind[k]; ++i) {
+
+                // Elimination factor, L_ki = A_ki * inv(U_ii)
+                int index = colind[i];
+                System.arraycopy(data, i * bb, work, 0, bb);
+                multiplyBlocks(work, 0, inverseDiagonal, index * bb, data, i * bb, b);
+
+                // Traverse the sparse block row index, reducing on block row k
+                for (int j = diagind[index] + 1, l = rowptr[k]; j < rowptr[index + 1]; ++j) {
+
+                    while (l < rowptr[k + 1] && colind[l] < colind[j])
+                        l++;
+
+                    if (l < rowptr[k + 1] && colind[l] == colind[j])
+                        multiplySubtractBlocks(data, i * bb, data, j * bb, data, l * bb, b);
+                }
+            }
+
+            if (!invert(data, diagind[k] * bb, inverseDiagonal, k * bb, b, work))
+                throw new RuntimeException("Singular diagonal block on block row " + (k + 1)
+                        + " during block ILU process");
+        }
+    }
+
+    private int[] findDiagonalIndexes(int m, int[] colind, int[] rowptr) {
+        int[] diagind = new int[m];
+
+        for (int k = 0; k < m; ++k) {
+            diagind[k] = cern.colt.Sorting.binarySearchFromTo(colind, k, rowptr[k], rowptr[k + 1] - 1);
+
+            if (diagind[k] < 0)
+                throw new RuntimeException("Missing diagonal block on block row " + (k + 1));
+        }
+
+        return diagind;
+    }
+
+    private DoubleMatrix1D lowerUnitSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
+        double[] bd = ((DenseDoubleMatrix1D) b).elements();
+        double[] xd = ((DenseDoubleMatrix1D) x).elements();
+        int[] colind = LU.getBlockColumnIndexes();
+        int[] rowptr = LU.getBlockRowPointers();
+        double[] data = LU.getValues();
+        int bs = blockSize;
+        int bb = bs * bs;
+        for (int i = 0; i < n / bs; ++i) {
+
+            // xi = bi - sum[j<i] Lij * xj
+            System.arraycopy(bd, i * bs, xd, i * bs, bs);
+            for (int j = rowptr[i]; j < diagind[i]; ++j)
+                multiplySubtract(data, j * bb, xd, colind[j] * bs, xd, i * bs, bs);
+        }
+
+        return x;
+    }
+
+    private DoubleMatrix1D lowerUnitTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
+        x.assign(b);
+        double[] xd = ((DenseDoubleMatrix1D) x).elements();
+        int[] colind = LU.getBlockColumnIndexes();
+        int[] rowptr = LU.getBlockRowPointers();
+        double[] data = LU.getValues();
+        int bs = blockSize;
+        int bb = bs * bs;
+
+        for (int i = n / bs - 1; i >= 0; --i)
+
+            // At this stage, x[i] is known, so move it over to the right hand
+            // side for the remaining equations
+            for (int j = rowptr[i]; j < diagind[i]; ++j)
+                transMultiplySubtract(data, j * bb, xd, i * bs, xd, colind[j] * bs, bs);
+
+        return x;
+    }
+
+    private DoubleMatrix1D upperSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
+        double[] bd = ((DenseDoubleMatrix1D) b).elements();
+        double[] xd = ((DenseDoubleMatrix1D) x).elements();
+        int[] colind = LU.getBlockColumnIndexes();
+        int[] rowptr = LU.getBlockRowPointers();
+        double[] data = LU.getValues();
+        int bs = blockSize;
+        int bb = bs * bs;
+        double[] sum = new double[bs];
+        for (int i = n / bs - 1; i >= 0; --i) {
+
+            // xi = inv(Uii) * (bi - sum[j>i] Uij * xj)
+            System.arraycopy(bd, i * bs, sum, 0, bs);
+            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
+                multiplySubtract(data, j * bb, xd, colind[j] * bs, sum, 0, bs);
+
+            multiply(inverseDiagonal, i * bb, sum, 0, xd, i * bs, bs);
+        }
+
+        return x;
+    }
+
+    private DoubleMatrix1D upperTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
+        x.assign(b);
+        double[] xd = ((DenseDoubleMatrix1D) x).elements();
+        int[] colind = LU.getBlockColumnIndexes();
+        int[] rowptr = LU.getBlockRowPointers();
+        double[] data = LU.getValues();
+        int bs = blockSize;
+        int bb = bs * bs;
+        double[] xi = new double[bs];
+
+        for (int i = 0; i < n / bs; ++i) {
+
+            // Solve for the current block
+            transMultiply(inverseDiagonal, i * bb, xd, i * bs, xi, bs);
+            System.arraycopy(xi, 0, xd, i * bs, bs);
+
+            // Move this known solution over to the right hand side for the
+            // remaining equations
+            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
+                transMultiplySubtract(data, j * bb, xd, i * bs, xd, colind[j] * bs, bs);
+        }
+
+        return x;
+    }
+
+    /*
+     * C = A * B for blocks A, B and C.
+     */
+    private static void multiplyBlocks(double[] a, int ia, double[] bl, int ib, double[] c, int ic, int b) {
+        for (int i = 0; i < b; i++) {
+            for (int j = 0; j < b; j++) {
+                double sum = 0;
+                for (int l = 0; l < b; l++)
+                    sum += a[ia + i * b + l] * bl[ib + l * b + j];
+                c[ic + i * b + j] = sum;
+            }
+        }
+    }
+
+    /*
+     * C -= A * B for blocks A, B and C.
+     */
+    private static void multiplySubtractBlocks(double[] a, int ia, double[] bl, int ib, double[] c, int ic, int b) {
+        for (int i = 0; i < b; i++) {
+            for (int l = 0; l < b; l++) {
+                double ail = a[ia + i * b + l];
+                if (ail != 0)
+                    for (int j = 0; j < b; j++)
+                        c[ic + i * b + j] -= ail * bl[ib + l * b + j];
+            }
+        }
+    }
+
+    /*
+     * c = A * v for a block A and vectors v and c.
+     */
+    private static void multiply(double[] a, int ia, double[] v, int iv, double[] c, int ic, int b) {
+        for (int i = 0; i < b; i++) {
+            double sum = 0;
+            for (int l = 0; l < b; l++)
+                sum += a[ia + i * b + l] * v[iv + l];
+            c[ic + i] = sum;
+        }
+    }
+
+    /*
+     * c -= A * v for a block A and vectors v and c.
+     */
+    private static void multiplySubtract(double[] a, int ia, double[] v, int iv, double[] c, int ic, int b) {
+        for (int i = 0; i < b; i++) {
+            double sum = 0;
+            for (int l = 0; l < b; l++)
+                sum += a[ia + i * b + l] * v[iv + l];
+            c[ic + i] -= sum;
+        }
+    }
+
+    /*
+     * c = A' * v for a block A and vectors v and c.
+     */
+    private static void transMultiply(double[] a, int ia, double[] v, int iv, double[] c, int b) {
+        for (int j = 0; j < b; j++)
+            c[j] = 0;
+        for (int i = 0; i < b; i++) {
+            double vi = v[iv + i];
+            for (int j = 0; j < b; j++)
+                c[j] += a[ia + i * b + j] * vi;
+        }
+    }
+
+    /*
+     * c -= A' * v for a block A and vectors v and c.
+     */
+    private static void transMultiplySubtract(double[] a, int ia, double[] v, int iv, double[] c, int ic, int b) {
+        for (int i = 0; i < b; i++) {
+            double vi = v[iv + i];
+            for (int j = 0; j < b; j++)
+                c[ic + j] -= a[ia + i * b + j] * vi;
+        }
+    }
+
+    /*
+     * Inverts the block A by Gauss-Jordan elimination with partial pivoting.
+     * Returns false if A is singular.
+     */
+    private static boolean invert(double[] a, int ia, double[] inv, int iinv, int b, double[] work) {
+        int bb = b * b;
+        System.arraycopy(a, ia, work, 0, bb);
+        for (int i = 0; i < bb; i++)
+            inv[iinv + i] = 0;
+        for (int i = 0; i < b; i++)
+            inv[iinv + i * b + i] = 1;
+        for (int c = 0; c < b; c++) {
+            int p = c;
+            for (int r = c + 1; r < b; r++) {
+                if (Math.abs(work[r * b + c]) > Math.abs(work[p * b + c]))
+                    p = r;
+            }
+            if (work[p * b + c] == 0)
+                return false;
+            if (p != c) {
+                for (int j = 0; j < b; j++) {
+                    double t = work[p * b + j];
+                    work[p * b + j] = work[c * b + j];
+                    work[c * b + j] = t;
+                    t = inv[iinv + p * b + j];
+                    inv[iinv + p * b + j] = inv[iinv + c * b + j];
+                    inv[iinv + c * b + j] = t;
+                }
+            }
+            double d = 1 / work[c * b + c];
+            for (int j = 0; j < b; j++) {
+                work[c * b + j] *= d;
+                inv[iinv + c * b + j] *= d;
+            }
+            for (int r = 0; r < b; r++) {
+                double f = work[r * b + c];
+                if (r != c && f != 0) {
+                    for (int j = 0; j < b; j++) {
+                        work[r * b + j] -= f * work[c * b + j];
+                        inv[iinv + r * b + j] -= f * inv[iinv + c * b + j];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+}
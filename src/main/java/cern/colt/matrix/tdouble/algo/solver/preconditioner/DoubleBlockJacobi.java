@@ -0,0 +1,183 @@
+package cern.colt.matrix.tdouble.algo.solver.preconditioner;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.BlockDiagonalDoubleLUDecomposition;
+import cern.colt.matrix.tdouble.impl.BlockDiagonalDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BlockSparseRowDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Block Jacobi preconditioner. Uses the inverse of the block diagonal part of
+ * the matrix as preconditioner. The diagonal blocks are LU decomposed once in
+ * <tt>setMatrix</tt>; applying the preconditioner solves with all blocks
+ * concurrently (see {@link BlockDiagonalDoubleLUDecomposition}). With blocks
+ * of size <tt>1</tt> this is the same as {@link DoubleDiagonal}.
+ */
+public class DoubleBlockJacobi implements DoublePreconditioner {
+
+    /**
+     * The block diagonal part of the matrix
+     */
+    private BlockDiagonalDoubleMatrix2D D;
+
+    /**
+     * Decomposition of D
+     */
+    private BlockDiagonalDoubleLUDecomposition lu;
+
+    /**
+     * Decomposition of D', computed on the first call of transApply
+     */
+    private BlockDiagonalDoubleLUDecomposition luTranspose;
+
+    /**
+     * Constructor for DoubleBlockJacobi
+     *
+     * @param n
+     *            Problem size (number of rows)
+     * @param blockSize
+     *            Size of the diagonal blocks. The last block is smaller if
+     *            <tt>n</tt> is not a multiple of <tt>blockSize</tt>
+     */
+    public DoubleBlockJacobi(int n, int blockSize) {
+        this(sizes(n, blockSize));
+    }
+
+    /**
+     * Constructor for DoubleBlockJacobi
+     *
+     * @param blockSizes
+     *            Sizes of the diagonal blocks, from the upper left to the lower
+     *            right corner. The problem size is the sum of the sizes
+     */
+    public DoubleBlockJacobi(int[] blockSizes) {
+        DoubleMatrix2D[] blocks = new DoubleMatrix2D[blockSizes.length];
+        for (int i = 0; i < blocks.length; i++) {
+            if (blockSizes[i] < 0)
+                throw new IllegalArgumentException("Negative block size: " + blockSizes[i]);
+            blocks[i] = new DenseDoubleMatrix2D(blockSizes[i], blockSizes[i]);
+        }
+        D = new BlockDiagonalDoubleMatrix2D(blocks);
+    }
+
+    /**
+     * Constructor for DoubleBlockJacobi. The given matrix is used as the
+     * preconditioner until <tt>setMatrix</tt> replaces it by the block
+     * diagonal part of another matrix with blocks of the same sizes
+     *
+     * @param M
+     *            Block diagonal matrix with square blocks. Not modified
+     */
+    public DoubleBlockJacobi(BlockDiagonalDoubleMatrix2D M) {
+        D = M;
+        lu = new BlockDiagonalDoubleLUDecomposition(D);
+    }
+
+    public DoubleMatrix1D apply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        x.assign(b);
+        lu.solve(x);
+        return x;
+    }
+
+    public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        if (luTranspose == null) {
+            DoubleMatrix2D[] blocks = new DoubleMatrix2D[D.numberOfBlocks()];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = D.getBlock(i).viewDice();
+            }
+            luTranspose = new BlockDiagonalDoubleLUDecomposition(new BlockDiagonalDoubleMatrix2D(blocks));
+        }
+        x.assign(b);
+        luTranspose.solve(x);
+        return x;
+    }
+
+    public void setMatrix(DoubleMatrix2D A) {
+        int n = D.rows();
+        if (A.rows() != n || A.columns() != n)
+            throw new IllegalArgumentException("Matrix size differs from preconditioner size");
+
+        int nblocks = D.numberOfBlocks();
+        DoubleMatrix2D[] blocks = new DoubleMatrix2D[nblocks];
+        for (int i = 0; i < nblocks; i++) {
+            int m = D.getBlock(i).rows();
+            blocks[i] = new DenseDoubleMatrix2D(m, m);
+        }
+        if (A instanceof BlockSparseRowDoubleMatrix2D
+                && hasBlockSize(((BlockSparseRowDoubleMatrix2D) A).getBlockSize())) {
+            // the diagonal blocks are stored as they are
+            BlockSparseRowDoubleMatrix2D B = (BlockSparseRowDoubleMatrix2D) A;
+            int b = B.getBlockSize();
+            int[] blockRowPointers = B.getBlockRowPointers();
+            int[] blockColumnIndexes = B.getBlockColumnIndexes();
+            double[] values = B.getValues();
+            for (int I = 0; I < nblocks; I++) {
+                for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                    if (blockColumnIndexes[k] == I) {
+                        double[] elements = new double[b * b];
+                        System.arraycopy(values, k * b * b, elements, 0, b * b);
+                        blocks[I] = new DenseDoubleMatrix2D(b, b, elements, 0, 0, b, 1, false);
+                        break;
+                    }
+                }
+            }
+        } else if (A instanceof SparseRCDoubleMatrix2D) {
+            int[] rowPointers = ((SparseRCDoubleMatrix2D) A).getRowPointers();
+            int[] columnIndexes = ((SparseRCDoubleMatrix2D) A).getColumnIndexes();
+            double[] values = ((SparseRCDoubleMatrix2D) A).getValues();
+            int k = 0;
+            for (int r = 0; r < n; r++) {
+                while (D.rowOffset(k + 1) <= r)
+                    k++;
+                int offset = D.rowOffset(k);
+                int end = D.rowOffset(k + 1);
+                for (int p = rowPointers[r]; p < rowPointers[r + 1]; p++) {
+                    int c = columnIndexes[p];
+                    if (c >= offset && c < end)
+                        blocks[k].setQuick(r - offset, c - offset, values[p]);
+                }
+            }
+        } else {
+            for (int i = 0; i < nblocks; i++) {
+                int m = blocks[i].rows();
+                blocks[i].assign(A.viewPart(D.rowOffset(i), D.rowOffset(i), m, m));
+            }
+        }
+        D = new BlockDiagonalDoubleMatrix2D(blocks);
+        lu = new BlockDiagonalDoubleLUDecomposition(D);
+        luTranspose = null;
+    }
+
+    /*
+     * Returns true if all diagonal blocks have the given size.
+     */
+    private boolean hasBlockSize(int blockSize) {
+        for (int i = 0; i < D.numberOfBlocks(); i++) {
+            if (D.getBlock(i).rows() != blockSize)
+                return false;
+        }
+        return true;
+    }
+
+    private static int[] sizes(int n, int blockSize) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        int nblocks = (n + blockSize - 1) / blockSize;
+        int[] sizes = new int[nblocks];
+        for (int i = 0; i < nblocks; i++) {
+            sizes[i] = Math.min(blockSize, n - i * blockSize);
+        }
+        return sizes;
+    }
+
+}
@@ -0,0 +1,81 @@
+package cern.colt.matrix.tdouble.algo.solver.preconditioner;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.CirculantDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.ToeplitzDoubleMatrix2D;
+
+/**
+ * Circulant preconditioner. Uses T. Chan's optimal circulant approximation of
+ * the matrix, i.e. the circulant matrix <tt>C</tt> that minimizes the
+ * Frobenius norm of <tt>A-C</tt>. Its first column is obtained by averaging
+ * the (wrapped) diagonals of <tt>A</tt>: <tt>c[k] = (1/n) * sum A[i,j]</tt>
+ * over all <tt>(i-j) mod n = k</tt>. Applying the preconditioner takes
+ * <tt>O(n*log(n))</tt> time. It is most effective for Toeplitz matrices and
+ * matrices that are close to Toeplitz; for a symmetric positive definite
+ * matrix, <tt>C</tt> is symmetric positive definite as well.
+ */
+public class DoubleCirculant implements DoublePreconditioner {
+
+    /**
+     * The circulant approximation
+     */
+    private CirculantDoubleMatrix2D C;
+
+    /**
+     * Constructor for DoubleCirculant
+     *
+     * @param n
+     *            Problem size (number of rows)
+     */
+    public DoubleCirculant(int n) {
+        C = new CirculantDoubleMatrix2D(n);
+    }
+
+    public DoubleMatrix1D apply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        return x.assign(C.solve(b, false));
+    }
+
+    public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
+        if (x == null) {
+            x = b.like();
+        }
+
+        return x.assign(C.solve(b, true));
+    }
+
+    public void setMatrix(DoubleMatrix2D A) {
+        final int n = C.rows();
+        if (A.rows() != n || A.columns() != n)
+            throw new IllegalArgumentException("Matrix size differs from preconditioner size");
+
+        final double[] c = new double[n];
+        if (A instanceof CirculantDoubleMatrix2D) {
+            System.arraycopy(((CirculantDoubleMatrix2D) A).elements(), 0, c, 0, n);
+        } else if (A instanceof ToeplitzDoubleMatrix2D) {
+            double[] col = ((ToeplitzDoubleMatrix2D) A).getFirstColumn();
+            double[] row = ((ToeplitzDoubleMatrix2D) A).getFirstRow();
+            c[0] = col[0];
+            for (int k = 1; k < n; k++)
+                c[k] = ((n - k) * col[k] + k * row[n - k]) / n;
+        } else {
+            A.forEachNonZero(new cern.colt.function.tdouble.IntIntDoubleFunction() {
+                public double apply(int i, int j, double value) {
+                    int k = i - j;
+                    synchronized (c) {
+                        c[k < 0 ? k + n : k] += value;
+                    }
+                    return value;
+                }
+            });
+            for (int k = 0; k < n; k++)
+                c[k] /= n;
+        }
+        C.assign(c);
+    }
+
+}
@@ -25,12 +25,15 @@ import java.util.Arrays;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
 
 /**
  * Incomplete Cholesky preconditioner without fill-in using a compressed row
- * matrix as internal storage
+ * matrix as internal storage. The factor of a
+ * {@link SymmetricSparseRCDoubleMatrix2D} only holds the upper triangle.
  */
 public class DoubleICC implements DoublePreconditioner {
 
@@ -44,8 +47,20 @@ public class DoubleICC implements DoublePreconditioner {
      */
     private final DoubleMatrix1D y;
 
+    /**
+     * Level-scheduled solver of the triangular factor
+     */
+    private SparseDoubleTriangularSolver Rsolver;
+
     private int[] diagind;
 
+    /**
+     * Transpose of the upper triangle of a symmetric matrix, giving the part
+     * of every row below the diagonal during the factorisation; null if
+     * <tt>R</tt> holds the whole matrix
+     */
+    private SparseRCDoubleMatrix2D lower;
+
     private final int n;
 
     /**
@@ -65,10 +80,13 @@ public class DoubleICC implements DoublePreconditioner {
         }
 
         // R'y = b, y = R'\b
-        upperTransSolve(b, y);
+        y.assign(b);
+        Rsolver.getTranspose().solve(y);
 
         // Rx = R'\b = y
-        return upperSolve(y, x);
+        x.assign(y);
+        Rsolver.solve(x);
+        return x;
     }
 
     public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
@@ -84,12 +102,22 @@ public class DoubleICC implements DoublePreconditioner {
         if (A.rows() != n) {
             throw new IllegalArgumentException("A.rows() != n");
         }
-        R = new SparseRCDoubleMatrix2D(n, n);
-        R.assign(A);
+        if (A instanceof SymmetricSparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D U = ((SymmetricSparseRCDoubleMatrix2D) A).getUpper();
+            R = new SparseRCDoubleMatrix2D(n, n, U.getRowPointers().clone(), U.getColumnIndexes().clone(), U
+                    .getValues().clone());
+            lower = U.getTranspose();
+        } else {
+            R = new SparseRCDoubleMatrix2D(n, n);
+            R.assign(A);
+        }
         if (!R.hasColumnIndexesSorted()) {
             R.sortColumnIndexes();
         }
         factor();
+        lower = null;
+        Rsolver = new SparseDoubleTriangularSolver(n, R.getRowPointers(), R.getColumnIndexes(), R.getValues(), false,
+                false);
     }
 
     private void factor() {
@@ -111,6 +139,14 @@ public class DoubleICC implements DoublePreconditioner {
 
             // Expand current row to dense storage
             Arrays.fill(Rk, 0);
+            if (lower != null) {
+                int[] lowerColind = lower.getColumnIndexes();
+                int[] lowerRowptr = lower.getRowPointers();
+                double[] lowerData = lower.getValues();
+                for (int i = lowerRowptr[k]; i < lowerRowptr[k + 1]; ++i)
+                    if (lowerColind[i] < k)
+                        Rk[lowerColind[i]] = lowerData[i];
+            }
             for (int i = rowptr[k]; i < rowptr[k + 1]; ++i)
                 Rk[colind[i]] = data[i];
 
@@ -155,48 +191,4 @@ public class DoubleICC implements DoublePreconditioner {
 
         return diagind;
     }
-
-    private DoubleMatrix1D upperSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        double[] bd = ((DenseDoubleMatrix1D) b).elements();
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = R.getColumnIndexes();
-        int[] rowptr = R.getRowPointers();
-        double[] data = R.getValues();
-        int rows = R.rows();
-
-        for (int i = rows - 1; i >= 0; --i) {
-
-            // xi = (bi - sum[j>i] Uij * xj) / Uii
-            double sum = 0;
-            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
-                sum += data[j] * xd[colind[j]];
-
-            xd[i] = (bd[i] - sum) / data[diagind[i]];
-        }
-
-        return x;
-    }
-
-    private DoubleMatrix1D upperTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        x.assign(b);
-
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = R.getColumnIndexes();
-        int[] rowptr = R.getRowPointers();
-        double[] data = R.getValues();
-        int rows = R.rows();
-
-        for (int i = 0; i < rows; ++i) {
-
-            // Solve for the current entry
-            xd[i] /= data[diagind[i]];
-
-            // Move this known solution over to the right hand side for the
-            // remaining equations
-            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
-                xd[colind[j]] -= data[j] * xd[i];
-        }
-
-        return x;
-    }
 }
@@ -22,6 +22,7 @@ package cern.colt.matrix.tdouble.algo.solver.preconditioner;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
 
@@ -40,6 +41,11 @@ public class DoubleILU implements DoublePreconditioner {
      */
     private final DoubleMatrix1D y;
 
+    /**
+     * Solvers of the lower and upper triangular factors
+     */
+    private SparseDoubleTriangularSolver L, U;
+
     private int[] diagind;
 
     private final int n;
@@ -61,10 +67,13 @@ public class DoubleILU implements DoublePreconditioner {
         }
 
         // Ly = b, y = L\b
-        lowerUnitSolve(b, y);
+        y.assign(b);
+        L.solve(y);
 
         // Ux = L\b = y
-        return upperSolve(y, x);
+        x.assign(y);
+        U.solve(x);
+        return x;
     }
 
     public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
@@ -73,10 +82,13 @@ public class DoubleILU implements DoublePreconditioner {
         }
 
         // U'y = b, y = U'\b
-        upperTransSolve(b, y);
+        y.assign(b);
+        U.getTranspose().solve(y);
 
         // L'x = U'\b = y
-        return loverUnitTransSolve(y, x);
+        x.assign(y);
+        L.getTranspose().solve(x);
+        return x;
     }
 
     public void setMatrix(DoubleMatrix2D A) {
@@ -89,6 +101,12 @@ public class DoubleILU implements DoublePreconditioner {
             LU.sortColumnIndexes();
         }
         factor();
+
+        // Level-scheduled solvers of the unit lower and the upper factor
+        L = new SparseDoubleTriangularSolver(n, LU.getRowPointers(), LU.getColumnIndexes(), LU.getValues(), true,
+                true);
+        U = new SparseDoubleTriangularSolver(n, LU.getRowPointers(), LU.getColumnIndexes(), LU.getValues(), false,
+                false);
     }
 
     private void factor() {
@@ -141,84 +159,4 @@ public class DoubleILU implements DoublePreconditioner {
         return diagind;
     }
 
-    private DoubleMatrix1D lowerUnitSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        double[] bd = ((DenseDoubleMatrix1D) b).elements();
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = LU.getColumnIndexes();
-        int[] rowptr = LU.getRowPointers();
-        double[] data = LU.getValues();
-        int rows = LU.rows();
-        for (int i = 0; i < rows; ++i) {
-
-            // xi = bi - sum[j<i] Lij * xj
-            double sum = 0;
-            for (int j = rowptr[i]; j < diagind[i]; ++j)
-                sum += data[j] * xd[colind[j]];
-
-            xd[i] = bd[i] - sum;
-        }
-
-        return x;
-    }
-
-    private DoubleMatrix1D loverUnitTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        x.assign(b);
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = LU.getColumnIndexes();
-        int[] rowptr = LU.getRowPointers();
-        double[] data = LU.getValues();
-        int rows = LU.rows();
-
-        for (int i = rows - 1; i >= 0; --i)
-
-            // At this stage, x[i] is known, so move it over to the right hand
-            // side for the remaining equations
-            for (int j = rowptr[i]; j < diagind[i]; ++j)
-                xd[colind[j]] -= data[j] * xd[i];
-
-        return x;
-    }
-
-    private DoubleMatrix1D upperSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        double[] bd = ((DenseDoubleMatrix1D) b).elements();
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = LU.getColumnIndexes();
-        int[] rowptr = LU.getRowPointers();
-        double[] data = LU.getValues();
-        int rows = LU.rows();
-        for (int i = rows - 1; i >= 0; --i) {
-
-            // xi = (bi - sum[j>i] Uij * xj) / Uii
-            double sum = 0;
-            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
-                sum += data[j] * xd[colind[j]];
-
-            xd[i] = (bd[i] - sum) / data[diagind[i]];
-        }
-
-        return x;
-    }
-
-    private DoubleMatrix1D upperTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        x.assign(b);
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int[] colind = LU.getColumnIndexes();
-        int[] rowptr = LU.getRowPointers();
-        double[] data = LU.getValues();
-        int rows = LU.rows();
-
-        for (int i = 0; i < rows; ++i) {
-
-            // Solve for the current entry
-            xd[i] /= data[diagind[i]];
-
-            // Move this known solution over to the right hand side for the
-            // remaining equations
-            for (int j = diagind[i] + 1; j < rowptr[i + 1]; ++j)
-                xd[colind[j]] -= data[j] * xd[i];
-        }
-
-        return x;
-    }
-
 }
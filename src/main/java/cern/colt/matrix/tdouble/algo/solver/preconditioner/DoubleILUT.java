@@ -24,11 +24,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import cern.colt.function.tdouble.LongDoubleProcedure;
 import cern.colt.matrix.Norm;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.DoubleProperty;
+import cern.colt.matrix.tdouble.algo.SparseDoubleTriangularSolver;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseRCMDoubleMatrix2D;
@@ -67,6 +69,12 @@ public class DoubleILUT implements DoublePreconditioner {
      */
     private final int p;
 
+    /**
+     * Level-scheduled solvers of the lower and upper triangular factors,
+     * working on a compressed row copy of the factorisation matrix
+     */
+    private SparseDoubleTriangularSolver L, U;
+
     private final int n;
 
     /**
@@ -110,10 +118,13 @@ public class DoubleILUT implements DoublePreconditioner {
         }
 
         // Ly = b, y = L\b
-        unitLowerSolve(b, y);
+        y.assign(b);
+        L.solve(y);
 
         // Ux = L\b = y
-        return upperSolve(y, x);
+        x.assign(y);
+        U.solve(x);
+        return x;
     }
 
     public DoubleMatrix1D transApply(DoubleMatrix1D b, DoubleMatrix1D x) {
@@ -122,9 +133,12 @@ public class DoubleILUT implements DoublePreconditioner {
         }
 
         // U'y = b, y = U'\b
-        upperTransSolve(b, y);
+        y.assign(b);
+        U.getTranspose().solve(y);
         // L'x = U'\b = y
-        return unitLowerTransSolve(y, x);
+        x.assign(y);
+        L.getTranspose().solve(x);
+        return x;
     }
 
     public void setMatrix(DoubleMatrix2D A) {
@@ -137,6 +151,7 @@ public class DoubleILUT implements DoublePreconditioner {
         LU.trimToSize();
 
         factor();
+        compress();
     }
 
     private void factor() {
@@ -179,6 +194,30 @@ public class DoubleILUT implements DoublePreconditioner {
         //        System.out.println(LU.toString());
     }
 
+    /**
+     * Copies the factorisation into compressed rows for the triangular solvers
+     */
+    private void compress() {
+        SparseDoubleMatrix1D[] rows = LU.elements();
+        int[] rowPointers = new int[n + 1];
+        for (int i = 0; i < n; ++i)
+            rowPointers[i + 1] = rowPointers[i] + rows[i].elements().size();
+        final int[] columnIndexes = new int[rowPointers[n]];
+        final double[] values = new double[rowPointers[n]];
+        for (int i = 0; i < n; ++i) {
+            final int[] pos = { rowPointers[i] };
+            rows[i].elements().forEachPair(new LongDoubleProcedure() {
+                public boolean apply(long key, double value) {
+                    columnIndexes[pos[0]] = (int) key;
+                    values[pos[0]++] = value;
+                    return true;
+                }
+            });
+        }
+        L = new SparseDoubleTriangularSolver(n, rowPointers, columnIndexes, values, true, true);
+        U = new SparseDoubleTriangularSolver(n, rowPointers, columnIndexes, values, false, false);
+    }
+
     /**
      * Copies the dense array back into the sparse vector, applying a numerical
      * dropping rule and keeping only a given number of entries
@@ -258,90 +297,4 @@ public class DoubleILUT implements DoublePreconditioner {
         }
     }
 
-    private DoubleMatrix1D unitLowerSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        double[] bd = ((DenseDoubleMatrix1D) b).elements();
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int rows = LU.rows();
-        for (int i = 0; i < rows; ++i) {
-
-            // Get row i
-            SparseDoubleMatrix1D row = LU.viewRow(i);
-
-            // xi = bi - sum[j<i] Lij * xj
-            double sum = 0;
-            for (int j = 0; j < i; ++j)
-                sum += row.getQuick(j) * xd[j];
-
-            xd[i] = bd[i] - sum;
-        }
-
-        return x;
-    }
-
-    private DoubleMatrix1D unitLowerTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-
-        x.assign(b);
-
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int rows = LU.rows();
-
-        for (int i = rows - 1; i >= 0; --i) {
-
-            // Get row i
-            SparseDoubleMatrix1D row = LU.viewRow(i);
-
-            // At this stage, x[i] is known, so move it over to the right
-            // hand side for the remaining equations
-            for (int j = 0; j < i; ++j)
-                xd[j] -= row.getQuick(j) * xd[i];
-
-        }
-        return x;
-    }
-
-    private DoubleMatrix1D upperSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-
-        double[] bd = ((DenseDoubleMatrix1D) b).elements();
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int rows = LU.rows();
-        for (int i = rows - 1; i >= 0; --i) {
-
-            // Get row i
-            SparseDoubleMatrix1D row = LU.viewRow(i);
-            int used = (int) row.size();
-
-            // xi = (bi - sum[j>i] Uij * xj) / Uii
-            double sum = 0;
-            for (int j = i + 1; j < used; ++j)
-                sum += row.getQuick(j) * xd[j];
-
-            xd[i] = (bd[i] - sum) / row.getQuick(i);
-        }
-
-        return x;
-    }
-
-    private DoubleMatrix1D upperTransSolve(DoubleMatrix1D b, DoubleMatrix1D x) {
-        x.assign(b);
-
-        double[] xd = ((DenseDoubleMatrix1D) x).elements();
-        int rows = LU.rows();
-        for (int i = 0; i < rows; ++i) {
-
-            // Get row i
-            SparseDoubleMatrix1D row = LU.viewRow(i);
-            int used = (int) row.size();
-
-            // Solve for the current entry
-            xd[i] /= row.getQuick(i);
-
-            // Move this known solution over to the right hand side for the
-            // remaining equations
-            for (int j = i + 1; j < used; ++j)
-                xd[j] -= row.getQuick(j) * xd[i];
-        }
-
-        return x;
-    }
-
 }
@@ -0,0 +1,405 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Band 2-d matrix holding <tt>double</tt> elements. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * A matrix with lower bandwidth <tt>kl</tt> and upper bandwidth <tt>ku</tt>
+ * has nonzero elements only in the cells <tt>(i,j)</tt> with
+ * <tt>-ku &lt;= i-j &lt;= kl</tt>. The band is stored column by column in the
+ * LAPACK band format: <tt>A(i,j)</tt> is kept in
+ * <tt>elements[j*(kl+ku+1) + ku+i-j]</tt>. Cells outside the band are always
+ * <tt>0</tt>; setting them has no effect. A banded system is solved with
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.BandDoubleLUDecomposition}
+ * (or
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.BandDoubleSpikeDecomposition}
+ * for large systems on many cores) and
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.BandDoubleCholeskyDecomposition}
+ * . Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*(kl+ku+1)*columns()</tt>. Thus, a tridiagonal matrix
+ * with <tt>10^6</tt> rows needs 24 MB.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ * <tt>zMult</tt> takes <tt>O((kl+ku+1)*columns())</tt> time per vector.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class BandDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The band, column by column.
+     */
+    private double[] elements;
+
+    /*
+     * Lower bandwidth.
+     */
+    private int kl;
+
+    /*
+     * Upper bandwidth.
+     */
+    private int ku;
+
+    /*
+     * Leading dimension of the band storage (kl+ku+1).
+     */
+    private int ldab;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns and given
+     * bandwidths. All entries are initially <tt>0</tt>.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param kl
+     *            the lower bandwidth (number of subdiagonals).
+     * @param ku
+     *            the upper bandwidth (number of superdiagonals).
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0 || kl<0 || ku<0</tt> or if the
+     *             band is too large.
+     */
+    public BandDoubleMatrix2D(int rows, int columns, int kl, int ku) {
+        super(null);
+        try {
+            setUp(rows, columns);
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        if (kl < 0 || ku < 0)
+            throw new IllegalArgumentException("Bandwidth must not be negative: kl=" + kl + ", ku=" + ku);
+        this.kl = Math.min(kl, Math.max(rows - 1, 0));
+        this.ku = Math.min(ku, Math.max(columns - 1, 0));
+        this.ldab = this.kl + this.ku + 1;
+        if ((long) ldab * columns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        this.elements = new double[ldab * columns];
+        content = this;
+    }
+
+    /**
+     * Constructs a matrix holding the band <tt>-ku &lt;= i-j &lt;= kl</tt> of
+     * the given matrix. Cells of <tt>A</tt> outside the band are ignored.
+     *
+     * @param A
+     *            the source matrix.
+     * @param kl
+     *            the lower bandwidth (number of subdiagonals).
+     * @param ku
+     *            the upper bandwidth (number of superdiagonals).
+     */
+    public BandDoubleMatrix2D(DoubleMatrix2D A, int kl, int ku) {
+        this(A.rows(), A.columns(), kl, ku);
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + this.kl);
+            for (int i = Math.max(0, j - this.ku); i <= last; i++) {
+                elements[j * ldab + this.ku + i - j] = A.getQuick(i, j);
+            }
+        }
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + kl);
+            for (int i = Math.max(0, j - ku), idx = j * ldab + ku + i - j; i <= last; i++, idx++) {
+                elements[idx] = function.apply(elements[idx]);
+            }
+        }
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + kl);
+            for (int i = Math.max(0, j - ku), idx = j * ldab + ku + i - j; i <= last; i++, idx++) {
+                elements[idx] = value;
+            }
+        }
+        return this;
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof BandDoubleMatrix2D) {
+            BandDoubleMatrix2D other = (BandDoubleMatrix2D) source;
+            if (other.kl == kl && other.ku == ku) {
+                System.arraycopy(other.elements, 0, elements, 0, elements.length);
+                return this;
+            }
+        }
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + kl);
+            for (int i = Math.max(0, j - ku), idx = j * ldab + ku + i - j; i <= last; i++, idx++) {
+                elements[idx] = source.getQuick(i, j);
+            }
+        }
+        return this;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + kl);
+            for (int i = Math.max(0, j - ku), idx = j * ldab + ku + i - j; i <= last; i++, idx++) {
+                if (elements[idx] != 0)
+                    cardinality++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the band storage of this matrix: <tt>A(i,j)</tt> is kept in
+     * <tt>elements()[j*(kl+ku+1) + ku+i-j]</tt>.
+     *
+     * @return the band storage of this matrix.
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        for (int j = 0; j < columns; j++) {
+            int last = Math.min(rows - 1, j + kl);
+            for (int i = Math.max(0, j - ku), idx = j * ldab + ku + i - j; i <= last; i++, idx++) {
+                double value = elements[idx];
+                if (value != 0) {
+                    elements[idx] = function.apply(i, j, value);
+                }
+            }
+        }
+        return this;
+    }
+
+    public double getQuick(int row, int column) {
+        int k = row - column;
+        if (k > kl || -k > ku)
+            return 0;
+        return elements[column * ldab + ku + k];
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Returns the lower bandwidth (number of subdiagonals) of this matrix.
+     *
+     * @return the lower bandwidth.
+     */
+    public int lowerBandwidth() {
+        return kl;
+    }
+
+    public void setQuick(int row, int column, double value) {
+        int k = row - column;
+        if (k > kl || -k > ku)
+            return;
+        elements[column * ldab + ku + k] = value;
+    }
+
+    /**
+     * Returns the upper bandwidth (number of superdiagonals) of this matrix.
+     *
+     * @return the upper bandwidth.
+     */
+    public int upperBandwidth() {
+        return ku;
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(m);
+        }
+        if (n != y.size() || m > z.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + z.toStringShort());
+        final DoubleMatrix1D yy = y;
+        final DoubleMatrix1D zz = z;
+        forEachRange(m, (long) ldab * n, new RangeProcedure() {
+            public void apply(int firstIdx, int lastIdx) {
+                mult(yy, zz, alpha, beta, transposeA, firstIdx, lastIdx);
+            }
+        });
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(final DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, boolean transposeB) {
+        final DoubleMatrix2D BB = transposeB ? B.viewDice() : B;
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(m, BB.columns());
+        }
+        if (BB.rows() != n)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort());
+        if (C.rows() != m || C.columns() != BB.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort() + ", "
+                    + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        final int ncolumns = BB.columns();
+        final DoubleMatrix1D[] y = new DoubleMatrix1D[ncolumns];
+        final DoubleMatrix1D[] z = new DoubleMatrix1D[ncolumns];
+        for (int c = 0; c < ncolumns; c++) {
+            y[c] = BB.viewColumn(c);
+            z[c] = C.viewColumn(c);
+        }
+        forEachRange(m, (long) ldab * n * ncolumns, new RangeProcedure() {
+            public void apply(int firstIdx, int lastIdx) {
+                for (int c = 0; c < ncolumns; c++) {
+                    mult(y[c], z[c], alpha, beta, transposeA, firstIdx, lastIdx);
+                }
+            }
+        });
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * z[firstIdx..lastIdx-1] = alpha*op(A)[firstIdx..lastIdx-1,:]*y +
+     * beta*z[firstIdx..lastIdx-1].
+     */
+    private void mult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA,
+            int firstIdx, int lastIdx) {
+        if (y instanceof DenseDoubleMatrix1D && z instanceof DenseDoubleMatrix1D) {
+            double[] elementsY = (double[]) y.elements();
+            int zeroY = (int) y.index(0);
+            int strideY = y.stride();
+            double[] elementsZ = (double[]) z.elements();
+            int zeroZ = (int) z.index(0);
+            int strideZ = z.stride();
+            if (transposeA) {
+                // z[j] = sum_i A(i,j)*y[i], the column j of the band is contiguous
+                for (int j = firstIdx; j < lastIdx; j++) {
+                    int first = Math.max(0, j - ku);
+                    int last = Math.min(rows - 1, j + kl);
+                    int idx = j * ldab + ku + first - j;
+                    int idxY = zeroY + first * strideY;
+                    double sum = 0;
+                    for (int i = first; i <= last; i++) {
+                        sum += elements[idx++] * elementsY[idxY];
+                        idxY += strideY;
+                    }
+                    int idxZ = zeroZ + j * strideZ;
+                    elementsZ[idxZ] = alpha * sum + beta * elementsZ[idxZ];
+                }
+            } else {
+                // z[i] = sum_j A(i,j)*y[j], the row i of the band has stride ldab-1
+                for (int i = firstIdx; i < lastIdx; i++) {
+                    int first = Math.max(0, i - kl);
+                    int last = Math.min(columns - 1, i + ku);
+                    int idx = first * ldab + ku + i - first;
+                    int idxY = zeroY + first * strideY;
+                    double sum = 0;
+                    for (int j = first; j <= last; j++) {
+                        sum += elements[idx] * elementsY[idxY];
+                        idx += ldab - 1;
+                        idxY += strideY;
+                    }
+                    int idxZ = zeroZ + i * strideZ;
+                    elementsZ[idxZ] = alpha * sum + beta * elementsZ[idxZ];
+                }
+            }
+        } else {
+            if (transposeA) {
+                for (int j = firstIdx; j < lastIdx; j++) {
+                    int first = Math.max(0, j - ku);
+                    int last = Math.min(rows - 1, j + kl);
+                    int idx = j * ldab + ku + first - j;
+                    double sum = 0;
+                    for (int i = first; i <= last; i++) {
+                        sum += elements[idx++] * y.getQuick(i);
+                    }
+                    z.setQuick(j, alpha * sum + beta * z.getQuick(j));
+                }
+            } else {
+                for (int i = firstIdx; i < lastIdx; i++) {
+                    int first = Math.max(0, i - kl);
+                    int last = Math.min(columns - 1, i + ku);
+                    int idx = first * ldab + ku + i - first;
+                    double sum = 0;
+                    for (int j = first; j <= last; j++) {
+                        sum += elements[idx] * y.getQuick(j);
+                        idx += ldab - 1;
+                    }
+                    z.setQuick(i, alpha * sum + beta * z.getQuick(i));
+                }
+            }
+        }
+    }
+
+    /*
+     * Applies the procedure to [0, size) split into ranges, concurrently if
+     * the amount of work is large enough.
+     */
+    private static void forEachRange(int size, long work, final RangeProcedure procedure) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (work >= ConcurrencyUtils.getThreadsBeginN_2D()) && (size >= nthreads)) {
+            Future<?>[] futures = new Future[nthreads];
+            int k = size / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(firstIdx, lastIdx);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, size);
+        }
+    }
+
+    private interface RangeProcedure {
+        void apply(int firstIdx, int lastIdx);
+    }
+}
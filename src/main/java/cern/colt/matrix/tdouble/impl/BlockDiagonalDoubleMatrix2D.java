@@ -0,0 +1,447 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.function.tint.IntProcedure;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.BlockDiagonalDoubleLUDecomposition;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Block diagonal 2-d matrix holding <tt>double</tt> elements. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The matrix is a list of blocks <tt>B0, B1, ..., Bk</tt> placed one after
+ * another along the diagonal; block <tt>Bi</tt> occupies rows
+ * <tt>rowOffset(i)..rowOffset(i+1)-1</tt> and columns
+ * <tt>columnOffset(i)..columnOffset(i+1)-1</tt>. The blocks may be of any type
+ * (dense or sparse) and need not be square. They are held by reference, so
+ * changes to a block are visible in the matrix and vice versa. Cells outside
+ * the blocks are always <tt>0</tt>; setting them has no effect.
+ * <tt>zMult</tt>, <tt>inverse</tt>, <tt>solve</tt> and <tt>det</tt> work block
+ * by block and process the blocks concurrently. The matrix can be used as a
+ * block Jacobi preconditioner through
+ * {@link cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockJacobi}
+ * . Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * The sum of the memory requirements of the blocks.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(log(k))</tt> plus the time of the block's <tt>getQuick</tt> for the
+ * basic operations <tt>get</tt>, <tt>getQuick</tt>, <tt>set</tt> and
+ * <tt>setQuick</tt>, where <tt>k</tt> is the number of blocks.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class BlockDiagonalDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The diagonal blocks.
+     */
+    private DoubleMatrix2D[] blocks;
+
+    /*
+     * Block i starts at row rowOffsets[i] and column columnOffsets[i]; the last
+     * entries are rows and columns.
+     */
+    private int[] rowOffsets;
+
+    private int[] columnOffsets;
+
+    /*
+     * Number of cells inside the blocks.
+     */
+    private long blockCells;
+
+    /**
+     * Constructs a block diagonal matrix with the given blocks. The blocks are
+     * not copied.
+     *
+     * @param blocks
+     *            the diagonal blocks, from the upper left to the lower right
+     *            corner.
+     * @throws IllegalArgumentException
+     *             if the total number of rows or columns exceeds
+     *             <tt>Integer.MAX_VALUE</tt>.
+     */
+    public BlockDiagonalDoubleMatrix2D(DoubleMatrix2D[] blocks) {
+        super(null);
+        int nblocks = blocks.length;
+        this.blocks = blocks.clone();
+        rowOffsets = new int[nblocks + 1];
+        columnOffsets = new int[nblocks + 1];
+        long r = 0;
+        long c = 0;
+        for (int i = 0; i < nblocks; i++) {
+            r += blocks[i].rows();
+            c += blocks[i].columns();
+            if (r > Integer.MAX_VALUE || c > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("matrix too large");
+            rowOffsets[i + 1] = (int) r;
+            columnOffsets[i + 1] = (int) c;
+            blockCells += (long) blocks[i].rows() * blocks[i].columns();
+        }
+        setUp((int) r, (int) c);
+        content = this;
+    }
+
+    /**
+     * Constructs a block diagonal matrix with the given blocks. The blocks are
+     * not copied.
+     *
+     * @param blocks
+     *            the diagonal blocks, from the upper left to the lower right
+     *            corner.
+     * @throws IllegalArgumentException
+     *             if the total number of rows or columns exceeds
+     *             <tt>Integer.MAX_VALUE</tt>.
+     */
+    public BlockDiagonalDoubleMatrix2D(java.util.List<DoubleMatrix2D> blocks) {
+        this(blocks.toArray(new DoubleMatrix2D[blocks.size()]));
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                blocks[i].assign(function);
+                return true;
+            }
+        });
+        return this;
+    }
+
+    public DoubleMatrix2D assign(final double value) {
+        forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                blocks[i].assign(value);
+                return true;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Replaces all cell values of the receiver with the values of another
+     * matrix. Only the cells inside the blocks of the receiver are referenced.
+     *
+     * @param source
+     *            the source matrix to copy from (may be identical to the
+     *            receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if
+     *             <tt>columns() != source.columns() || rows() != source.rows()</tt>
+     */
+    public DoubleMatrix2D assign(final DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                blocks[i].assign(source.viewPart(rowOffsets[i], columnOffsets[i], blocks[i].rows(), blocks[i]
+                        .columns()));
+                return true;
+            }
+        });
+        return this;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            cardinality += blocks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the block at the given position.
+     *
+     * @param i
+     *            the index of the block.
+     * @return block <tt>i</tt> (not a copy).
+     */
+    public DoubleMatrix2D getBlock(int i) {
+        return blocks[i];
+    }
+
+    /**
+     * Returns the index of the first row of the given block.
+     *
+     * @param i
+     *            the index of the block, <tt>0 &lt;= i &lt;= numberOfBlocks()</tt>
+     *            .
+     * @return the first row of block <tt>i</tt>, or <tt>rows()</tt> if
+     *         <tt>i == numberOfBlocks()</tt>.
+     */
+    public int rowOffset(int i) {
+        return rowOffsets[i];
+    }
+
+    /**
+     * Returns the index of the first column of the given block.
+     *
+     * @param i
+     *            the index of the block, <tt>0 &lt;= i &lt;= numberOfBlocks()</tt>
+     *            .
+     * @return the first column of block <tt>i</tt>, or <tt>columns()</tt> if
+     *         <tt>i == numberOfBlocks()</tt>.
+     */
+    public int columnOffset(int i) {
+        return columnOffsets[i];
+    }
+
+    /**
+     * Applies the procedure to the index of every block. The blocks are split
+     * into contiguous groups holding about the same number of cells, which are
+     * processed concurrently, so the procedure must be thread safe across
+     * blocks. The return value of the procedure is ignored.
+     *
+     * @param procedure
+     *            the procedure to be applied to every block index.
+     */
+    public void forEachBlock(final IntProcedure procedure) {
+        final int nblocks = blocks.length;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (nblocks > 1) && (blockCells >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, nblocks);
+            Future<?>[] futures = new Future[nthreads];
+            int firstBlock = 0;
+            long cells = 0;
+            for (int j = 0; j < nthreads; j++) {
+                int lastBlock;
+                if (j == nthreads - 1) {
+                    lastBlock = nblocks;
+                } else {
+                    long target = blockCells * (j + 1) / nthreads;
+                    lastBlock = firstBlock;
+                    while (lastBlock < nblocks - (nthreads - 1 - j) && (lastBlock == firstBlock || cells < target)) {
+                        cells += (long) blocks[lastBlock].rows() * blocks[lastBlock].columns();
+                        lastBlock++;
+                    }
+                }
+                final int first = firstBlock;
+                final int last = lastBlock;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        for (int i = first; i < last; i++) {
+                            procedure.apply(i);
+                        }
+                    }
+                });
+                firstBlock = lastBlock;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            for (int i = 0; i < nblocks; i++) {
+                procedure.apply(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of blocks.
+     *
+     * @return the number of blocks.
+     */
+    public int numberOfBlocks() {
+        return blocks.length;
+    }
+
+    /**
+     * Returns the determinant of this matrix, the product of the determinants
+     * of its blocks. The blocks are decomposed concurrently.
+     *
+     * @return the determinant.
+     * @throws IllegalArgumentException
+     *             if some block is not square.
+     */
+    public double det() {
+        return new BlockDiagonalDoubleLUDecomposition(this).det();
+    }
+
+    /**
+     * Returns the inverse of this matrix, a block diagonal matrix whose blocks
+     * are the inverses of the blocks of this matrix. The blocks are inverted
+     * concurrently.
+     *
+     * @return a new block diagonal matrix.
+     * @throws IllegalArgumentException
+     *             if some block is not square or is singular.
+     */
+    public BlockDiagonalDoubleMatrix2D inverse() {
+        return new BlockDiagonalDoubleLUDecomposition(this).getInverse();
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt>, where <tt>A</tt> is this matrix. The blocks are
+     * decomposed and solved concurrently.
+     *
+     * @param b
+     *            right hand side.
+     * @return <tt>x</tt>; a new vector.
+     * @throws IllegalArgumentException
+     *             if some block is not square or is singular, or if
+     *             <tt>b.size() != rows()</tt>.
+     */
+    public DoubleMatrix1D solve(DoubleMatrix1D b) {
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(rows);
+        x.assign(b);
+        new BlockDiagonalDoubleLUDecomposition(this).solve(x);
+        return x;
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt>, where <tt>A</tt> is this matrix. The blocks are
+     * decomposed and solved concurrently.
+     *
+     * @param B
+     *            right hand side.
+     * @return <tt>X</tt>; a new matrix.
+     * @throws IllegalArgumentException
+     *             if some block is not square or is singular, or if
+     *             <tt>B.rows() != rows()</tt>.
+     */
+    public DoubleMatrix2D solve(DoubleMatrix2D B) {
+        DoubleMatrix2D X = new DenseDoubleMatrix2D(rows, B.columns());
+        X.assign(B);
+        new BlockDiagonalDoubleLUDecomposition(this).solve(X);
+        return X;
+    }
+
+    public double getQuick(int row, int column) {
+        int i = findBlock(rowOffsets, row);
+        int c = column - columnOffsets[i];
+        if (c < 0 || column >= columnOffsets[i + 1])
+            return 0;
+        return blocks[i].getQuick(row - rowOffsets[i], c);
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        int i = findBlock(rowOffsets, row);
+        int c = column - columnOffsets[i];
+        if (c < 0 || column >= columnOffsets[i + 1])
+            return;
+        blocks[i].setQuick(row - rowOffsets[i], c, value);
+    }
+
+    public DoubleMatrix1D zMult(final DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rowsA);
+        }
+        if (columnsA != y.size() || rowsA > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + ((transposeA ? viewDice() : this).toStringShort())
+                    + ", " + y.toStringShort() + ", " + z.toStringShort());
+        final int[] zOffsets = transposeA ? columnOffsets : rowOffsets;
+        final int[] yOffsets = transposeA ? rowOffsets : columnOffsets;
+        final DoubleMatrix1D zz = z;
+        forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                int zSize = zOffsets[i + 1] - zOffsets[i];
+                if (zSize == 0)
+                    return true;
+                DoubleMatrix1D zPart = zz.viewPart(zOffsets[i], zSize);
+                int ySize = yOffsets[i + 1] - yOffsets[i];
+                if (ySize == 0) {
+                    zPart.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+                } else {
+                    blocks[i].zMult(y.viewPart(yOffsets[i], ySize), zPart, alpha, beta, transposeA);
+                }
+                return true;
+            }
+        });
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rowsA, B.columns());
+        }
+        if (B.rows() != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rowsA || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        final int[] cOffsets = transposeA ? columnOffsets : rowOffsets;
+        final int[] bOffsets = transposeA ? rowOffsets : columnOffsets;
+        final int ncolumns = B.columns();
+        final DoubleMatrix2D BB = B;
+        final DoubleMatrix2D CC = C;
+        forEachBlock(new IntProcedure() {
+            public boolean apply(int i) {
+                int cRows = cOffsets[i + 1] - cOffsets[i];
+                if (cRows == 0)
+                    return true;
+                DoubleMatrix2D cPart = CC.viewPart(cOffsets[i], 0, cRows, ncolumns);
+                int bRows = bOffsets[i + 1] - bOffsets[i];
+                if (bRows == 0) {
+                    cPart.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+                } else {
+                    blocks[i].zMult(BB.viewPart(bOffsets[i], 0, bRows, ncolumns), cPart, alpha, beta, transposeA,
+                            false);
+                }
+                return true;
+            }
+        });
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * Returns the block containing the given row (or column) index; empty
+     * blocks are skipped.
+     */
+    private static int findBlock(int[] offsets, int index) {
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
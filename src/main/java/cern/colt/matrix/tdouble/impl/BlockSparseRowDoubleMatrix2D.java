@@ -0,0 +1,704 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Sparse 2-d matrix holding <tt>double</tt> elements in block compressed row
+ * (BSR) format. First see the <a href="package-summary.html">package
+ * summary</a> and javadoc <a href="package-tree.html">tree view</a> to get the
+ * broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The matrix is divided into dense <tt>b x b</tt> blocks. The nonzero blocks
+ * are stored in compressed row form: <tt>blockRowPointers</tt> has one entry
+ * per block row, <tt>blockColumnIndexes</tt> one sorted entry per stored
+ * block, and <tt>values</tt> holds the <tt>b*b</tt> elements of every stored
+ * block in row-major order. Compared to {@link SparseRCDoubleMatrix2D}, only
+ * one index is kept per block instead of one per element, and the products
+ * work on whole blocks, with a fully unrolled kernel for <tt>b = 3</tt>. This
+ * suits matrices from finite element discretizations with several unknowns
+ * per node. The numbers of rows and columns must be multiples of <tt>b</tt>.
+ * Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 4*(rows()/b + 1) + (4 + 8*b*b)*nnzb</tt>, where
+ * <tt>nnzb</tt> is the number of stored blocks.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(log nnzb)</tt> for the basic operations <tt>get</tt> and
+ * <tt>getQuick</tt>; <tt>O(nnzb)</tt> for <tt>set</tt> and
+ * <tt>setQuick</tt> if a new block has to be inserted. <tt>zMult</tt> takes
+ * <tt>O(b*b*nnzb)</tt> time and is split between the threads by block rows
+ * with about the same number of blocks.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class BlockSparseRowDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private int blockSize;
+
+    private int blockRows;
+
+    private int blockColumns;
+
+    private int[] blockRowPointers;
+
+    private int[] blockColumnIndexes;
+
+    private double[] values;
+
+    /**
+     * Constructs a matrix with a copy of the given row-compressed matrix. Every
+     * <tt>b x b</tt> block holding at least one stored element of <tt>A</tt>
+     * is stored.
+     *
+     * @param A
+     *            the matrix to be copied.
+     * @param blockSize
+     *            the block size <tt>b</tt>.
+     * @throws IllegalArgumentException
+     *             if <tt>blockSize &lt; 1</tt> or the size of <tt>A</tt> is
+     *             not a multiple of <tt>blockSize</tt>.
+     */
+    public BlockSparseRowDoubleMatrix2D(SparseRCDoubleMatrix2D A, int blockSize) {
+        this(A.rows(), A.columns(), blockSize);
+        fromRowCompressed(A.getRowPointers(), A.getColumnIndexes(), A.getValues());
+    }
+
+    /**
+     * Constructs a matrix with the given block structure. The arrays are not
+     * copied.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param blockSize
+     *            the block size <tt>b</tt>.
+     * @param blockRowPointers
+     *            block row pointers, of length <tt>rows/b + 1</tt>.
+     * @param blockColumnIndexes
+     *            block column indexes, sorted within every block row.
+     * @param values
+     *            the elements of the blocks, <tt>b*b</tt> per block in
+     *            row-major order.
+     * @throws IllegalArgumentException
+     *             if the arguments do not describe a valid block structure.
+     */
+    public BlockSparseRowDoubleMatrix2D(int rows, int columns, int blockSize, int[] blockRowPointers,
+            int[] blockColumnIndexes, double[] values) {
+        this(rows, columns, blockSize);
+        int nnzb = blockRowPointers.length == blockRows + 1 ? blockRowPointers[blockRows] : -1;
+        if (nnzb < 0 || blockColumnIndexes.length < nnzb || values.length < (long) nnzb * blockSize * blockSize)
+            throw new IllegalArgumentException("Invalid block structure");
+        this.blockRowPointers = blockRowPointers;
+        this.blockColumnIndexes = blockColumnIndexes;
+        this.values = values;
+    }
+
+    /**
+     * Constructs an empty matrix with the given block size.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param blockSize
+     *            the block size <tt>b</tt>.
+     * @throws IllegalArgumentException
+     *             if <tt>blockSize &lt; 1</tt> or <tt>rows</tt> or
+     *             <tt>columns</tt> is not a multiple of <tt>blockSize</tt>.
+     */
+    public BlockSparseRowDoubleMatrix2D(int rows, int columns, int blockSize) {
+        super(null);
+        if (blockSize < 1 || rows % blockSize != 0 || columns % blockSize != 0)
+            throw new IllegalArgumentException("Matrix size must be a multiple of the block size: " + rows + " x "
+                    + columns + ", " + blockSize);
+        try {
+            setUp(rows, columns);
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        this.blockSize = blockSize;
+        blockRows = rows / blockSize;
+        blockColumns = columns / blockSize;
+        blockRowPointers = new int[blockRows + 1];
+        blockColumnIndexes = new int[0];
+        values = new double[0];
+        content = this;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        int size = blockRowPointers[blockRows] * blockSize * blockSize;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != 0)
+                cardinality++;
+        }
+        return cardinality;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        int b = blockSize;
+        for (int I = 0; I < blockRows; I++) {
+            for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                int column = blockColumnIndexes[k] * b;
+                for (int i = 0, idx = k * b * b; i < b; i++) {
+                    for (int j = 0; j < b; j++, idx++) {
+                        double value = values[idx];
+                        if (value != 0) {
+                            double result = function.apply(I * b + i, column + j, value);
+                            if (result != value)
+                                values[idx] = result;
+                        }
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the block column indexes (not a copy).
+     *
+     * @return block column indexes.
+     */
+    public int[] getBlockColumnIndexes() {
+        return blockColumnIndexes;
+    }
+
+    /**
+     * Returns the block row pointers (not a copy).
+     *
+     * @return block row pointers.
+     */
+    public int[] getBlockRowPointers() {
+        return blockRowPointers;
+    }
+
+    /**
+     * Returns the block size.
+     *
+     * @return <tt>b</tt>.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public double getQuick(int row, int column) {
+        int b = blockSize;
+        int k = findBlock(row / b, column / b);
+        return k < 0 ? 0 : values[k * b * b + (row % b) * b + column % b];
+    }
+
+    /**
+     * Returns a new row-compressed matrix with the nonzero elements of this
+     * matrix. The column indexes are sorted.
+     *
+     * @return this matrix in row-compressed form.
+     */
+    public SparseRCDoubleMatrix2D getRowCompressed() {
+        final int b = blockSize;
+        final int[] rowPointers = new int[rows + 1];
+        forEachBlockRowRange(new BlockRowProcedure() {
+            public void apply(int firstBlockRow, int lastBlockRow) {
+                for (int I = firstBlockRow; I < lastBlockRow; I++) {
+                    for (int i = 0; i < b; i++) {
+                        int count = 0;
+                        for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                            for (int j = 0, idx = k * b * b + i * b; j < b; j++, idx++) {
+                                if (values[idx] != 0)
+                                    count++;
+                            }
+                        }
+                        rowPointers[I * b + i + 1] = count;
+                    }
+                }
+            }
+        });
+        for (int r = 0; r < rows; r++) {
+            rowPointers[r + 1] += rowPointers[r];
+        }
+        final int[] columnIndexes = new int[rowPointers[rows]];
+        final double[] elements = new double[rowPointers[rows]];
+        forEachBlockRowRange(new BlockRowProcedure() {
+            public void apply(int firstBlockRow, int lastBlockRow) {
+                for (int I = firstBlockRow; I < lastBlockRow; I++) {
+                    for (int i = 0; i < b; i++) {
+                        int pos = rowPointers[I * b + i];
+                        for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                            int column = blockColumnIndexes[k] * b;
+                            for (int j = 0, idx = k * b * b + i * b; j < b; j++, idx++) {
+                                if (values[idx] != 0) {
+                                    columnIndexes[pos] = column + j;
+                                    elements[pos++] = values[idx];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        SparseRCDoubleMatrix2D R = new SparseRCDoubleMatrix2D(rows, columns, rowPointers, columnIndexes, elements);
+        R.columnIndexesSorted = true;
+        return R;
+    }
+
+    /**
+     * Returns the elements of the stored blocks (not a copy). Block <tt>k</tt>
+     * starts at <tt>k*b*b</tt> and is stored in row-major order.
+     *
+     * @return the elements of the blocks.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Returns the number of stored blocks.
+     *
+     * @return <tt>nnzb</tt>.
+     */
+    public int numberOfBlocks() {
+        return blockRowPointers[blockRows];
+    }
+
+    public void setQuick(int row, int column, double value) {
+        int b = blockSize;
+        int I = row / b;
+        int J = column / b;
+        int k = findBlock(I, J);
+        if (k < 0) {
+            if (value == 0)
+                return;
+            k = insertBlock(I, J, -k - 1);
+        }
+        values[k * b * b + (row % b) * b + column % b] = value;
+    }
+
+    /**
+     * Releases any superfluous internal memory.
+     */
+    public void trimToSize() {
+        int nnzb = blockRowPointers[blockRows];
+        if (blockColumnIndexes.length > nnzb) {
+            int[] indexes = new int[nnzb];
+            System.arraycopy(blockColumnIndexes, 0, indexes, 0, nnzb);
+            blockColumnIndexes = indexes;
+            double[] elements = new double[nnzb * blockSize * blockSize];
+            System.arraycopy(values, 0, elements, 0, elements.length);
+            values = elements;
+        }
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+
+        if (z == null)
+            z = new DenseDoubleMatrix1D(rowsA);
+
+        if (!(y instanceof DenseDoubleMatrix1D && z instanceof DenseDoubleMatrix1D)) {
+            return super.zMult(y, z, alpha, beta, transposeA);
+        }
+
+        if (columnsA != y.size() || rowsA > z.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + z.toStringShort());
+
+        if (y == z)
+            y = y.copy();
+
+        DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
+        final double[] elementsZ = zz.elements;
+        final int strideZ = zz.stride();
+        final int zeroZ = (int) zz.index(0);
+
+        DenseDoubleMatrix1D yy = (DenseDoubleMatrix1D) y;
+        final double[] elementsY = yy.elements;
+        final int strideY = yy.stride();
+        final int zeroY = (int) yy.index(0);
+
+        if (!transposeA) {
+            forEachBlockRowRange(new BlockRowProcedure() {
+                public void apply(int firstBlockRow, int lastBlockRow) {
+                    if (blockSize == 3) {
+                        multiply3(firstBlockRow, lastBlockRow, elementsY, zeroY, strideY, elementsZ, zeroZ, strideZ,
+                                alpha, beta);
+                    } else {
+                        multiply(firstBlockRow, lastBlockRow, elementsY, zeroY, strideY, elementsZ, zeroZ, strideZ,
+                                alpha, beta);
+                    }
+                }
+            });
+        } else {
+            if (beta != 1) {
+                for (int i = 0, zidx = zeroZ; i < rowsA; i++, zidx += strideZ) {
+                    elementsZ[zidx] = beta == 0 ? 0 : beta * elementsZ[zidx];
+                }
+            }
+            int nthreads = ConcurrencyUtils.getNumberOfThreads();
+            int nnzb = blockRowPointers[blockRows];
+            if ((nthreads > 1) && (blockRows > 1)
+                    && ((long) nnzb * blockSize * blockSize >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+                // every thread scatters into its own buffer
+                nthreads = Math.min(nthreads, blockRows);
+                final double[][] buffers = new double[nthreads][];
+                Future<?>[] futures = new Future[nthreads];
+                for (int j = 0; j < nthreads; j++) {
+                    final int firstBlockRow = (int) ((long) blockRows * j / nthreads);
+                    final int lastBlockRow = (int) ((long) blockRows * (j + 1) / nthreads);
+                    final int threadID = j;
+                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                        public void run() {
+                            double[] buffer = new double[rowsA];
+                            transposeMultiply(firstBlockRow, lastBlockRow, elementsY, zeroY, strideY, alpha, buffer,
+                                    0, 1);
+                            buffers[threadID] = buffer;
+                        }
+                    });
+                }
+                ConcurrencyUtils.waitForCompletion(futures);
+                for (int j = 0; j < nthreads; j++) {
+                    double[] buffer = buffers[j];
+                    for (int i = 0, zidx = zeroZ; i < rowsA; i++, zidx += strideZ) {
+                        elementsZ[zidx] += buffer[i];
+                    }
+                }
+            } else {
+                transposeMultiply(0, blockRows, elementsY, zeroY, strideY, alpha, elementsZ, zeroZ, strideZ);
+            }
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            boolean transposeA, boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rowsA, B.columns());
+        }
+        if (B.rows() != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rowsA || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        if (!(B instanceof DenseDoubleMatrix2D && C instanceof DenseDoubleMatrix2D))
+            return super.zMult(B, C, alpha, beta, transposeA, false);
+        if (transposeA) {
+            for (int j = 0; j < B.columns(); j++) {
+                zMult(B.viewColumn(j), C.viewColumn(j), alpha, beta, true);
+            }
+            return C;
+        }
+        DenseDoubleMatrix2D BB = (DenseDoubleMatrix2D) B;
+        DenseDoubleMatrix2D CC = (DenseDoubleMatrix2D) C;
+        final int p = CC.columns();
+        final double[] elementsB = BB.elements;
+        final int zeroB = (int) BB.index(0, 0);
+        final int rowStrideB = BB.rowStride();
+        final int columnStrideB = BB.columnStride();
+        final double[] elementsC = CC.elements;
+        final int zeroC = (int) CC.index(0, 0);
+        final int rowStrideC = CC.rowStride();
+        final int columnStrideC = CC.columnStride();
+        forEachBlockRowRange(new BlockRowProcedure() {
+            public void apply(int firstBlockRow, int lastBlockRow) {
+                int b = blockSize;
+                double[] sums = new double[b];
+                for (int I = firstBlockRow; I < lastBlockRow; I++) {
+                    int low = blockRowPointers[I];
+                    int high = blockRowPointers[I + 1];
+                    for (int c = 0; c < p; c++) {
+                        for (int i = 0; i < b; i++) {
+                            sums[i] = 0;
+                        }
+                        int offsetB = zeroB + c * columnStrideB;
+                        for (int k = low; k < high; k++) {
+                            int idxB = offsetB + blockColumnIndexes[k] * b * rowStrideB;
+                            for (int i = 0, idx = k * b * b; i < b; i++) {
+                                double sum = 0;
+                                for (int j = 0, jdx = idxB; j < b; j++, jdx += rowStrideB) {
+                                    sum += values[idx++] * elementsB[jdx];
+                                }
+                                sums[i] += sum;
+                            }
+                        }
+                        int idxC = zeroC + I * b * rowStrideC + c * columnStrideC;
+                        for (int i = 0; i < b; i++, idxC += rowStrideC) {
+                            elementsC[idxC] = beta == 0 ? alpha * sums[i] : alpha * sums[i] + beta * elementsC[idxC];
+                        }
+                    }
+                }
+            }
+        });
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * Returns the index of block (I,J), or -(insertion point) - 1.
+     */
+    private int findBlock(int I, int J) {
+        int low = blockRowPointers[I];
+        int high = blockRowPointers[I + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = blockColumnIndexes[mid];
+            if (index < J) {
+                low = mid + 1;
+            } else if (index > J) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void fromRowCompressed(final int[] rowPointers, final int[] columnIndexes, final double[] elements) {
+        final int b = blockSize;
+        // count the distinct blocks of every block row
+        forEachBlockRowRange(new BlockRowProcedure() {
+            public void apply(int firstBlockRow, int lastBlockRow) {
+                int[] marker = new int[blockColumns];
+                Arrays.fill(marker, -1);
+                for (int I = firstBlockRow; I < lastBlockRow; I++) {
+                    int count = 0;
+                    for (int k = rowPointers[I * b]; k < rowPointers[(I + 1) * b]; k++) {
+                        int J = columnIndexes[k] / b;
+                        if (marker[J] != I) {
+                            marker[J] = I;
+                            count++;
+                        }
+                    }
+                    blockRowPointers[I + 1] = count;
+                }
+            }
+        });
+        for (int I = 0; I < blockRows; I++) {
+            blockRowPointers[I + 1] += blockRowPointers[I];
+        }
+        int nnzb = blockRowPointers[blockRows];
+        if ((long) nnzb * b * b > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        blockColumnIndexes = new int[nnzb];
+        values = new double[nnzb * b * b];
+        forEachBlockRowRange(new BlockRowProcedure() {
+            public void apply(int firstBlockRow, int lastBlockRow) {
+                int[] position = new int[blockColumns];
+                Arrays.fill(position, -1);
+                for (int I = firstBlockRow; I < lastBlockRow; I++) {
+                    int low = blockRowPointers[I];
+                    int pos = low;
+                    int first = rowPointers[I * b];
+                    int last = rowPointers[(I + 1) * b];
+                    for (int k = first; k < last; k++) {
+                        int J = columnIndexes[k] / b;
+                        if (position[J] != I) {
+                            position[J] = I;
+                            blockColumnIndexes[pos++] = J;
+                        }
+                    }
+                    Arrays.sort(blockColumnIndexes, low, pos);
+                    for (int k = low; k < pos; k++) {
+                        position[blockColumnIndexes[k]] = k;
+                    }
+                    for (int i = 0; i < b; i++) {
+                        int row = I * b + i;
+                        for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+                            int column = columnIndexes[k];
+                            values[position[column / b] * b * b + i * b + column % b] = elements[k];
+                        }
+                    }
+                    // block rows are disjoint, reset the markers of this one
+                    for (int k = low; k < pos; k++) {
+                        position[blockColumnIndexes[k]] = -1;
+                    }
+                }
+            }
+        });
+    }
+
+    private int insertBlock(int I, int J, int k) {
+        int bb = blockSize * blockSize;
+        int nnzb = blockRowPointers[blockRows];
+        if (nnzb == blockColumnIndexes.length) {
+            int capacity = Math.max(nnzb + 1, (int) Math.min(Integer.MAX_VALUE / bb, (long) nnzb * 3 / 2 + 1));
+            int[] indexes = new int[capacity];
+            System.arraycopy(blockColumnIndexes, 0, indexes, 0, nnzb);
+            blockColumnIndexes = indexes;
+            double[] elements = new double[capacity * bb];
+            System.arraycopy(values, 0, elements, 0, nnzb * bb);
+            values = elements;
+        }
+        System.arraycopy(blockColumnIndexes, k, blockColumnIndexes, k + 1, nnzb - k);
+        System.arraycopy(values, k * bb, values, (k + 1) * bb, (nnzb - k) * bb);
+        blockColumnIndexes[k] = J;
+        Arrays.fill(values, k * bb, (k + 1) * bb, 0);
+        for (int i = I + 1; i <= blockRows; i++) {
+            blockRowPointers[i]++;
+        }
+        return k;
+    }
+
+    private void multiply(int firstBlockRow, int lastBlockRow, double[] elementsY, int zeroY, int strideY,
+            double[] elementsZ, int zeroZ, int strideZ, double alpha, double beta) {
+        int b = blockSize;
+        double[] sums = new double[b];
+        double[] yb = new double[b];
+        for (int I = firstBlockRow; I < lastBlockRow; I++) {
+            for (int i = 0; i < b; i++) {
+                sums[i] = 0;
+            }
+            for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                int yidx = zeroY + strideY * blockColumnIndexes[k] * b;
+                for (int j = 0; j < b; j++, yidx += strideY) {
+                    yb[j] = elementsY[yidx];
+                }
+                for (int i = 0, idx = k * b * b; i < b; i++) {
+                    double sum = 0;
+                    for (int j = 0; j < b; j++) {
+                        sum += values[idx++] * yb[j];
+                    }
+                    sums[i] += sum;
+                }
+            }
+            int zidx = zeroZ + strideZ * I * b;
+            for (int i = 0; i < b; i++, zidx += strideZ) {
+                elementsZ[zidx] = beta == 0 ? alpha * sums[i] : alpha * sums[i] + beta * elementsZ[zidx];
+            }
+        }
+    }
+
+    private void multiply3(int firstBlockRow, int lastBlockRow, double[] elementsY, int zeroY, int strideY,
+            double[] elementsZ, int zeroZ, int strideZ, double alpha, double beta) {
+        for (int I = firstBlockRow; I < lastBlockRow; I++) {
+            double s0 = 0;
+            double s1 = 0;
+            double s2 = 0;
+            for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                int yidx = zeroY + strideY * blockColumnIndexes[k] * 3;
+                double y0 = elementsY[yidx];
+                double y1 = elementsY[yidx + strideY];
+                double y2 = elementsY[yidx + 2 * strideY];
+                int idx = k * 9;
+                s0 += values[idx] * y0 + values[idx + 1] * y1 + values[idx + 2] * y2;
+                s1 += values[idx + 3] * y0 + values[idx + 4] * y1 + values[idx + 5] * y2;
+                s2 += values[idx + 6] * y0 + values[idx + 7] * y1 + values[idx + 8] * y2;
+            }
+            int zidx = zeroZ + strideZ * I * 3;
+            if (beta == 0) {
+                elementsZ[zidx] = alpha * s0;
+                elementsZ[zidx + strideZ] = alpha * s1;
+                elementsZ[zidx + 2 * strideZ] = alpha * s2;
+            } else {
+                elementsZ[zidx] = alpha * s0 + beta * elementsZ[zidx];
+                elementsZ[zidx + strideZ] = alpha * s1 + beta * elementsZ[zidx + strideZ];
+                elementsZ[zidx + 2 * strideZ] = alpha * s2 + beta * elementsZ[zidx + 2 * strideZ];
+            }
+        }
+    }
+
+    private void transposeMultiply(int firstBlockRow, int lastBlockRow, double[] elementsY, int zeroY, int strideY,
+            double alpha, double[] elementsZ, int zeroZ, int strideZ) {
+        int b = blockSize;
+        double[] yb = new double[b];
+        for (int I = firstBlockRow; I < lastBlockRow; I++) {
+            int yidx = zeroY + strideY * I * b;
+            for (int i = 0; i < b; i++, yidx += strideY) {
+                yb[i] = alpha * elementsY[yidx];
+            }
+            for (int k = blockRowPointers[I]; k < blockRowPointers[I + 1]; k++) {
+                int offsetZ = zeroZ + strideZ * blockColumnIndexes[k] * b;
+                for (int i = 0, idx = k * b * b; i < b; i++) {
+                    double yElem = yb[i];
+                    for (int j = 0, zidx = offsetZ; j < b; j++, zidx += strideZ) {
+                        elementsZ[zidx] += values[idx++] * yElem;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Applies the procedure to ranges of block rows, concurrently if there is
+     * enough work. The ranges hold about the same number of blocks.
+     */
+    private void forEachBlockRowRange(final BlockRowProcedure procedure) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        long size = (long) blockRowPointers[blockRows] * blockSize * blockSize + rows;
+        if ((nthreads > 1) && (blockRows > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, blockRows);
+            long work = (long) blockRowPointers[blockRows] + blockRows;
+            Future<?>[] futures = new Future[nthreads];
+            int firstBlockRow = 0;
+            for (int j = 0; j < nthreads; j++) {
+                int lastBlockRow = firstBlockRow;
+                if (j == nthreads - 1) {
+                    lastBlockRow = blockRows;
+                } else {
+                    long target = work * (j + 1) / nthreads;
+                    while (lastBlockRow < blockRows - (nthreads - 1 - j)
+                            && (lastBlockRow == firstBlockRow || (long) blockRowPointers[lastBlockRow] + lastBlockRow < target)) {
+                        lastBlockRow++;
+                    }
+                }
+                final int first = firstBlockRow;
+                final int last = lastBlockRow;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(first, last);
+                    }
+                });
+                firstBlockRow = lastBlockRow;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, blockRows);
+        }
+    }
+
+    private interface BlockRowProcedure {
+        void apply(int firstBlockRow, int lastBlockRow);
+    }
+}
@@ -0,0 +1,357 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequence of <tt>double</tt> elements held in one or more
+ * <tt>java.nio.DoubleBuffer</tt> chunks. A single NIO buffer is limited to
+ * 2^31-1 bytes, so the elements are split into chunks of
+ * <tt>2^chunkShift</tt> elements each and addressed with a <tt>long</tt>
+ * index. The chunks are usually views of memory-mapped file regions or of
+ * direct (off-heap) memory, so no element is held on the Java heap.
+ * <p>
+ * Absolute <tt>get</tt> and <tt>put</tt> operations do not modify the
+ * position of the underlying buffers, therefore concurrent reads (and
+ * concurrent writes of disjoint elements) are safe.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+class ChunkedDoubleBuffer {
+
+    /**
+     * Default number of elements in a chunk (2^27 elements, i.e. 1 GB).
+     */
+    static final int DEFAULT_CHUNK_SHIFT = 27;
+
+    /**
+     * Assumed size (in bytes) of a page of virtual memory.
+     */
+    static final int PAGE_SIZE = 4096;
+
+    private final ByteBuffer[] bytes;
+
+    private final DoubleBuffer[] chunks;
+
+    private final long size;
+
+    private final int chunkShift;
+
+    private final long chunkMask;
+
+    /*
+     * Set by free(); pending touches stop at the next page.
+     */
+    private volatile boolean freed;
+
+    /*
+     * Number of running touches; free() waits for them before it releases
+     * the memory. Guarded by this.
+     */
+    private int touching;
+
+    private ChunkedDoubleBuffer(ByteBuffer[] bytes, long size, int chunkShift, ByteOrder order) {
+        this.bytes = bytes;
+        this.size = size;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.chunks = new DoubleBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chunks[i] = bytes[i].order(order).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Maps <tt>size</tt> elements of a file into memory.
+     *
+     * @param channel
+     *            the file channel.
+     * @param position
+     *            the position (in bytes) within the file at which the
+     *            elements start.
+     * @param size
+     *            the number of elements.
+     * @param mode
+     *            <tt>READ_ONLY</tt>, <tt>READ_WRITE</tt> or <tt>PRIVATE</tt>
+     *            (copy-on-write).
+     * @param order
+     *            the byte order of the elements in the file.
+     * @param chunkShift
+     *            base 2 logarithm of the number of elements in a chunk.
+     * @return the mapped elements.
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @throws IllegalArgumentException
+     *             if the file is too short and the mode is not
+     *             <tt>READ_WRITE</tt>.
+     */
+    static ChunkedDoubleBuffer map(FileChannel channel, long position, long size, FileChannel.MapMode mode,
+            ByteOrder order, int chunkShift) throws IOException {
+        checkChunkShift(chunkShift);
+        if (position < 0 || size < 0)
+            throw new IllegalArgumentException("position < 0 || size < 0");
+        if (mode != FileChannel.MapMode.READ_WRITE && channel.size() < position + 8 * size)
+            throw new IllegalArgumentException("File too short: " + channel.size() + " < " + (position + 8 * size));
+        ByteBuffer[] bytes = new ByteBuffer[numberOfChunks(size, chunkShift)];
+        long chunkSize = 1L << chunkShift;
+        for (int i = 0; i < bytes.length; i++) {
+            long n = Math.min(chunkSize, size - i * chunkSize);
+            bytes[i] = channel.map(mode, position + 8 * i * chunkSize, 8 * n);
+        }
+        return new ChunkedDoubleBuffer(bytes, size, chunkShift, order);
+    }
+
+    /**
+     * Allocates <tt>size</tt> elements of direct (off-heap) memory. All
+     * elements are initially <tt>0</tt>.
+     *
+     * @param size
+     *            the number of elements.
+     * @param chunkShift
+     *            base 2 logarithm of the number of elements in a chunk.
+     * @return the allocated elements.
+     */
+    static ChunkedDoubleBuffer allocateDirect(long size, int chunkShift) {
+        checkChunkShift(chunkShift);
+        if (size < 0)
+            throw new IllegalArgumentException("size < 0");
+        ByteBuffer[] bytes = new ByteBuffer[numberOfChunks(size, chunkShift)];
+        long chunkSize = 1L << chunkShift;
+        for (int i = 0; i < bytes.length; i++) {
+            long n = Math.min(chunkSize, size - i * chunkSize);
+            bytes[i] = ByteBuffer.allocateDirect((int) (8 * n));
+        }
+        return new ChunkedDoubleBuffer(bytes, size, chunkShift, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Wraps the given buffer, no elements are copied. The elements are read
+     * in the byte order of the buffer, starting at its position.
+     *
+     * @param buffer
+     *            the buffer holding the elements.
+     * @return the wrapped elements.
+     */
+    static ChunkedDoubleBuffer wrap(ByteBuffer buffer) {
+        ByteBuffer[] bytes = new ByteBuffer[] { buffer.slice() };
+        long size = bytes[0].remaining() / 8;
+        return new ChunkedDoubleBuffer(bytes, size, DEFAULT_CHUNK_SHIFT, buffer.order());
+    }
+
+    private static void checkChunkShift(int chunkShift) {
+        if (chunkShift < 0 || chunkShift > DEFAULT_CHUNK_SHIFT)
+            throw new IllegalArgumentException("chunkShift must be in [0, " + DEFAULT_CHUNK_SHIFT + "]: " + chunkShift);
+    }
+
+    private static int numberOfChunks(long size, int chunkShift) {
+        long n = (size + (1L << chunkShift) - 1) >>> chunkShift;
+        if (n > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many chunks");
+        return (int) n;
+    }
+
+    /**
+     * Returns the element at the given index.
+     */
+    double get(long index) {
+        return chunks[(int) (index >>> chunkShift)].get((int) (index & chunkMask));
+    }
+
+    /**
+     * Sets the element at the given index.
+     */
+    void put(long index, double value) {
+        chunks[(int) (index >>> chunkShift)].put((int) (index & chunkMask), value);
+    }
+
+    /**
+     * Copies <tt>length</tt> elements starting at <tt>index</tt> into
+     * <tt>dst[offset..offset+length-1]</tt>.
+     */
+    void get(long index, double[] dst, int offset, int length) {
+        while (length > 0) {
+            int c = (int) (index >>> chunkShift);
+            int o = (int) (index & chunkMask);
+            DoubleBuffer chunk = chunks[c].duplicate();
+            int n = Math.min(length, chunk.limit() - o);
+            chunk.position(o);
+            chunk.get(dst, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies <tt>src[offset..offset+length-1]</tt> into the elements starting
+     * at <tt>index</tt>.
+     */
+    void put(long index, double[] src, int offset, int length) {
+        while (length > 0) {
+            int c = (int) (index >>> chunkShift);
+            int o = (int) (index & chunkMask);
+            DoubleBuffer chunk = chunks[c].duplicate();
+            int n = Math.min(length, chunk.limit() - o);
+            chunk.position(o);
+            chunk.put(src, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Sets the elements in <tt>[from, to)</tt> to the given value.
+     */
+    void fill(long from, long to, double value) {
+        double[] block = new double[(int) Math.min(to - from, PAGE_SIZE)];
+        if (value != 0)
+            java.util.Arrays.fill(block, value);
+        for (long i = from; i < to; i += block.length) {
+            put(i, block, 0, (int) Math.min(block.length, to - i));
+        }
+    }
+
+    /**
+     * Reads one element of every page in <tt>[from, to)</tt>, so that the
+     * operating system brings the pages into physical memory. A touch that is
+     * still running when the memory is freed stops early, and the memory is
+     * only released once it has stopped, so prefetch tasks may outlive the
+     * matrix that started them.
+     *
+     * @return a value that depends on the touched elements (returned only to
+     *         keep the reads from being optimized away).
+     */
+    double touch(long from, long to) {
+        synchronized (this) {
+            if (freed)
+                return 0;
+            touching++;
+        }
+        try {
+            double s = 0;
+            int step = PAGE_SIZE / 8;
+            for (long i = from; i < to && !freed; i += step) {
+                s += get(i);
+            }
+            return s;
+        } finally {
+            synchronized (this) {
+                touching--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Loads all mapped chunks into physical memory.
+     */
+    void load() {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] instanceof MappedByteBuffer)
+                ((MappedByteBuffer) bytes[i]).load();
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if all mapped chunks are likely to be resident in
+     * physical memory.
+     */
+    boolean isLoaded() {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] instanceof MappedByteBuffer && !((MappedByteBuffer) bytes[i]).isLoaded())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes changes made to the mapped chunks to the storage device.
+     */
+    void force() {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] instanceof MappedByteBuffer && !bytes[i].isReadOnly())
+                ((MappedByteBuffer) bytes[i]).force();
+        }
+    }
+
+    /**
+     * Releases the memory (or the file mapping) held by the chunks without
+     * waiting for the garbage collector. The chunks must not be accessed
+     * afterwards. If the memory cannot be released explicitly on this Java
+     * platform, it is released by the garbage collector. Running touches are
+     * stopped and waited for first.
+     */
+    void free() {
+        synchronized (this) {
+            freed = true;
+            boolean interrupted = false;
+            while (touching > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i].isDirect())
+                free(bytes[i]);
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try { // Java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) { // Java 8 and earlier
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // leave it to the garbage collector
+        }
+    }
+
+    boolean isReadOnly() {
+        return bytes.length > 0 && bytes[0].isReadOnly();
+    }
+
+    DoubleBuffer[] chunks() {
+        return chunks;
+    }
+
+    int chunkShift() {
+        return chunkShift;
+    }
+
+    long size() {
+        return size;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Circulant 2-d matrix holding <tt>double</tt> elements. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * A circulant matrix is a square matrix where each column is the previous
+ * column rotated down by one element, <tt>A[i,j] = c[(i-j) mod n]</tt>. Only
+ * the first column <tt>c</tt> is stored. Setting any element sets the whole
+ * (wrapped) diagonal it belongs to.
+ * <p>
+ * Circulant matrices are diagonalized by the discrete Fourier transform: the
+ * eigenvalues are the DFT of <tt>c</tt>. Hence <tt>zMult</tt> and
+ * <tt>solve</tt> take <tt>O(n*log(n))</tt> time, using the FFT of
+ * JTransforms. The eigenvalues are computed on first use and cached until
+ * the matrix is modified. Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*n</tt> (plus <tt>16*n</tt> for the cached
+ * eigenvalues).
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ * @see ToeplitzDoubleMatrix2D
+ */
+public class CirculantDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The first column.
+     */
+    private double[] elements;
+
+    private transient DoubleFFT_1D fft;
+
+    /*
+     * DFT of the first column, interleaved real and imaginary parts.
+     */
+    private transient double[] eigenvalues;
+
+    /**
+     * Constructs a circulant <tt>n x n</tt> matrix. All entries are initially
+     * <tt>0</tt>.
+     *
+     * @param n
+     *            the number of rows and columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>n<0</tt>.
+     */
+    public CirculantDoubleMatrix2D(int n) {
+        super(null);
+        setUp(n, n);
+        elements = new double[n];
+        content = this;
+    }
+
+    /**
+     * Constructs a circulant matrix with the given first column. The values
+     * are copied.
+     *
+     * @param column
+     *            the first column.
+     */
+    public CirculantDoubleMatrix2D(double[] column) {
+        this(column.length);
+        System.arraycopy(column, 0, elements, 0, column.length);
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        java.util.Arrays.fill(elements, value);
+        eigenvalues = null;
+        return this;
+    }
+
+    /**
+     * Returns the first column of this matrix. Changes made to the returned
+     * array must be followed by a call to <tt>assign(elements())</tt>, so that
+     * the cached eigenvalues are recomputed.
+     *
+     * @return the first column of this matrix.
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    public DoubleMatrix2D assign(double[] values) {
+        if (values.length == rows) {
+            if (values != elements)
+                System.arraycopy(values, 0, elements, 0, rows);
+            eigenvalues = null;
+            return this;
+        }
+        return super.assign(values);
+    }
+
+    /**
+     * Returns the eigenvalues of this matrix, i.e. the discrete Fourier
+     * transform of the first column. The real and imaginary part of the
+     * <tt>k</tt>-th eigenvalue are stored at indexes <tt>2*k</tt> and
+     * <tt>2*k+1</tt>.
+     *
+     * @return the eigenvalues of this matrix.
+     */
+    public double[] getEigenvalues() {
+        return eigenvalues().clone();
+    }
+
+    public double getQuick(int row, int column) {
+        int k = row - column;
+        return elements[k < 0 ? k + rows : k];
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        int k = row - column;
+        elements[k < 0 ? k + rows : k] = value;
+        eigenvalues = null;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> in <tt>O(n*log(n))</tt> time.
+     *
+     * @param b
+     *            the right-hand side.
+     * @return <tt>x</tt>; a new vector.
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != rows()</tt> or if the matrix is singular.
+     */
+    public DoubleMatrix1D solve(DoubleMatrix1D b) {
+        return solve(b, false);
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> or <tt>A'*x = b</tt> in <tt>O(n*log(n))</tt>
+     * time.
+     *
+     * @param b
+     *            the right-hand side.
+     * @param transposeA
+     *            whether to solve with the transpose of this matrix.
+     * @return <tt>x</tt>; a new vector.
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != rows()</tt> or if the matrix is singular.
+     */
+    public DoubleMatrix1D solve(DoubleMatrix1D b, boolean transposeA) {
+        if (b.size() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + b.toStringShort());
+        if (rows == 0)
+            return new DenseDoubleMatrix1D(0);
+        double[] a = load(b, rows);
+        solve(a, transposeA);
+        return new DenseDoubleMatrix1D(store(a, new double[rows]));
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt>; the columns of <tt>B</tt> are solved
+     * concurrently.
+     *
+     * @param B
+     *            the right-hand sides.
+     * @return <tt>X</tt>; a new matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>B.rows() != rows()</tt> or if the matrix is singular.
+     */
+    public DoubleMatrix2D solve(final DoubleMatrix2D B) {
+        if (B.rows() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + B.toStringShort());
+        eigenvalues();
+        checkNonsingular();
+        final DoubleMatrix2D X = new DenseDoubleMatrix2D(B.rows(), B.columns());
+        forEachColumn(B.columns(), new ColumnProcedure() {
+            public void apply(int column, double[] a) {
+                loadColumn(B, column, a);
+                solve(a, false);
+                for (int r = 0; r < rows; r++) {
+                    X.setQuick(r, column, a[2 * r]);
+                }
+            }
+        });
+        return X;
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rows);
+        }
+        if (columns != y.size() || rows > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + y.toStringShort()
+                    + ", " + z.toStringShort());
+        if (rows == 0)
+            return z;
+        double[] a = load(y, rows);
+        mult(a, transposeA);
+        for (int r = 0; r < rows; r++) {
+            z.setQuick(r, alpha * a[2 * r] + beta * z.getQuick(r));
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(final DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, boolean transposeB) {
+        final DoubleMatrix2D BB = transposeB ? B.viewDice() : B;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rows, BB.columns());
+        }
+        if (BB.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + BB.toStringShort());
+        if (C.rows() != rows || C.columns() != BB.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + BB.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        eigenvalues();
+        final DoubleMatrix2D CC = C;
+        forEachColumn(BB.columns(), new ColumnProcedure() {
+            public void apply(int column, double[] a) {
+                loadColumn(BB, column, a);
+                mult(a, transposeA);
+                for (int r = 0; r < rows; r++) {
+                    CC.setQuick(r, column, alpha * a[2 * r] + beta * CC.getQuick(r, column));
+                }
+            }
+        });
+        return C;
+    }
+
+    /**
+     * Multiplies the complex vector <tt>a</tt> (interleaved real and imaginary
+     * parts) by this matrix (or its transpose) in place.
+     */
+    void mult(double[] a, boolean transposeA) {
+        double[] lambda = eigenvalues();
+        fft.complexForward(a);
+        for (int k = 0; k < rows; k++) {
+            double re = lambda[2 * k];
+            double im = transposeA ? -lambda[2 * k + 1] : lambda[2 * k + 1];
+            double ar = a[2 * k];
+            double ai = a[2 * k + 1];
+            a[2 * k] = re * ar - im * ai;
+            a[2 * k + 1] = re * ai + im * ar;
+        }
+        fft.complexInverse(a, true);
+    }
+
+    /**
+     * Solves <tt>A*x = a</tt> (or <tt>A'*x = a</tt>) for the complex vector
+     * <tt>a</tt> (interleaved real and imaginary parts) in place.
+     */
+    void solve(double[] a, boolean transposeA) {
+        double[] lambda = eigenvalues();
+        checkNonsingular();
+        fft.complexForward(a);
+        for (int k = 0; k < rows; k++) {
+            double re = lambda[2 * k];
+            double im = transposeA ? -lambda[2 * k + 1] : lambda[2 * k + 1];
+            double d = re * re + im * im;
+            double ar = a[2 * k];
+            double ai = a[2 * k + 1];
+            a[2 * k] = (ar * re + ai * im) / d;
+            a[2 * k + 1] = (ai * re - ar * im) / d;
+        }
+        fft.complexInverse(a, true);
+    }
+
+    private void checkNonsingular() {
+        for (int k = 0; k < rows; k++) {
+            if (eigenvalues[2 * k] == 0 && eigenvalues[2 * k + 1] == 0)
+                throw new IllegalArgumentException("Matrix is singular.");
+        }
+    }
+
+    private double[] eigenvalues() {
+        double[] lambda = eigenvalues;
+        if (lambda == null) {
+            if (fft == null)
+                fft = new DoubleFFT_1D(Math.max(1, rows));
+            lambda = new double[2 * rows];
+            for (int k = 0; k < rows; k++) {
+                lambda[2 * k] = elements[k];
+            }
+            if (rows > 0)
+                fft.complexForward(lambda);
+            eigenvalues = lambda;
+        }
+        return lambda;
+    }
+
+    private static double[] load(DoubleMatrix1D y, int n) {
+        double[] a = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            a[2 * i] = y.getQuick(i);
+        }
+        return a;
+    }
+
+    private void loadColumn(DoubleMatrix2D B, int column, double[] a) {
+        java.util.Arrays.fill(a, 0);
+        for (int r = 0; r < rows; r++) {
+            a[2 * r] = B.getQuick(r, column);
+        }
+    }
+
+    private static double[] store(double[] a, double[] x) {
+        for (int i = 0; i < x.length; i++) {
+            x[i] = a[2 * i];
+        }
+        return x;
+    }
+
+    /*
+     * Applies the procedure to the columns [0, columns) concurrently; each
+     * thread owns a complex work array of length 2*rows.
+     */
+    private void forEachColumn(final int columns, final ColumnProcedure procedure) {
+        if (rows == 0 || columns == 0)
+            return;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (columns > 1) && ((long) rows * columns >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
+            ConcurrencyUtils.setThreadsBeginN_1D_FFT_4Threads(Integer.MAX_VALUE);
+            nthreads = Math.min(nthreads, columns);
+            Future<?>[] futures = new Future[nthreads];
+            int k = columns / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstColumn = j * k;
+                final int lastColumn = (j == nthreads - 1) ? columns : firstColumn + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        double[] a = new double[2 * rows];
+                        for (int c = firstColumn; c < lastColumn; c++) {
+                            procedure.apply(c, a);
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            ConcurrencyUtils.resetThreadsBeginN_FFT();
+        } else {
+            double[] a = new double[2 * rows];
+            for (int c = 0; c < columns; c++) {
+                procedure.apply(c, a);
+            }
+        }
+    }
+
+    private interface ColumnProcedure {
+        void apply(int column, double[] work);
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+}
@@ -0,0 +1,994 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Concurrent kernels shared by the compressed sparse formats
+ * {@link SparseRCDoubleMatrix2D} and {@link SparseCCDoubleMatrix2D}. A
+ * compressed matrix is described by <tt>n</tt> outer vectors (rows of a row
+ * compressed, columns of a column compressed matrix); the nonzeros of outer
+ * vector <tt>i</tt> are stored in <tt>[pointers[i], pointers[i+1])</tt> of
+ * <tt>indexes</tt> and <tt>values</tt>.
+ * <p>
+ * The work is split by the number of nonzeros rather than by the number of
+ * outer vectors, so a few very long rows or columns (as in power-law graphs)
+ * do not serialize the product on a single thread.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+final class CompressedDoubleMatrixKernels {
+
+    private CompressedDoubleMatrixKernels() {
+    }
+
+    /**
+     * <tt>z[i] = alpha * sum(values[k] * y[indexes[k]]) + beta * z[i]</tt>
+     * for each outer vector <tt>i</tt>, i.e. the product of a row compressed
+     * matrix with a vector or of the transpose of a column compressed matrix.
+     * <p>
+     * The outer vectors and the nonzeros are merged into one sequence of
+     * length <tt>n + nnz</tt>, which is split into equal parts (merge-path
+     * partitioning). A thread may therefore start or end in the middle of an
+     * outer vector; the partial sum at its end is carried over and added
+     * after all threads are finished.
+     */
+    static void gather(final int n, final int[] pointers, final int[] indexes, final double[] values,
+            final double[] y, final int zeroY, final int strideY, final double[] z, final int zeroZ,
+            final int strideZ, final double alpha, final double beta) {
+        final int nnz = pointers[n] - pointers[0];
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (n > 0) && (nnz >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = (int) Math.min(nthreads, (long) n + nnz);
+            final int[] carryIndex = new int[nthreads];
+            final double[] carry = new double[nthreads];
+            Future<?>[] futures = new Future[nthreads];
+            long length = (long) n + nnz;
+            int firstOuter = 0;
+            int firstNonzero = pointers[0];
+            for (int j = 0; j < nthreads; j++) {
+                long diagonal = length * (j + 1) / nthreads;
+                int lastOuter = mergePathSearch(diagonal, n, pointers);
+                int lastNonzero = pointers[0] + (int) (diagonal - lastOuter);
+                final int first = firstOuter;
+                final int last = lastOuter;
+                final int firstK = firstNonzero;
+                final int lastK = lastNonzero;
+                final int threadID = j;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        int k = firstK;
+                        int zidx = zeroZ + first * strideZ;
+                        for (int i = first; i < last; i++) {
+                            double sum = 0;
+                            int high = pointers[i + 1];
+                            for (; k < high; k++) {
+                                sum += values[k] * y[zeroY + strideY * indexes[k]];
+                            }
+                            z[zidx] = beta == 0 ? alpha * sum : alpha * sum + beta * z[zidx];
+                            zidx += strideZ;
+                        }
+                        double sum = 0;
+                        for (; k < lastK; k++) {
+                            sum += values[k] * y[zeroY + strideY * indexes[k]];
+                        }
+                        carryIndex[threadID] = last;
+                        carry[threadID] = sum;
+                    }
+                });
+                firstOuter = lastOuter;
+                firstNonzero = lastNonzero;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            for (int j = 0; j < nthreads; j++) {
+                if (carryIndex[j] < n && carry[j] != 0) {
+                    z[zeroZ + carryIndex[j] * strideZ] += alpha * carry[j];
+                }
+            }
+        } else {
+            int k = pointers[0];
+            int zidx = zeroZ;
+            for (int i = 0; i < n; i++) {
+                double sum = 0;
+                int high = pointers[i + 1];
+                for (; k < high; k++) {
+                    sum += values[k] * y[zeroY + strideY * indexes[k]];
+                }
+                z[zidx] = beta == 0 ? alpha * sum : alpha * sum + beta * z[zidx];
+                zidx += strideZ;
+            }
+        }
+    }
+
+    /**
+     * <tt>z = alpha * sum(values[k] * y[i]) e_indexes[k] + beta * z</tt>,
+     * i.e. the product of the transpose of a row compressed matrix with a
+     * vector or of a column compressed matrix. <tt>z</tt> has <tt>size</tt>
+     * elements.
+     * <p>
+     * The nonzeros are split into equal parts. Each thread scatters its part
+     * into a private buffer, and the buffers are then summed into <tt>z</tt>
+     * concurrently over disjoint ranges of <tt>z</tt>. The buffers are
+     * allocated by every call and released when it returns.
+     */
+    static void scatter(final int n, final int[] pointers, final int[] indexes, final double[] values,
+            final double[] y, final int zeroY, final int strideY, final double[] z, final int zeroZ,
+            final int strideZ, final int size, final double alpha, final double beta) {
+        final int nnz = pointers[n] - pointers[0];
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (size > 0) && (nnz >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, nnz);
+            final double[][] work = new double[nthreads][];
+            Future<?>[] futures = new Future[nthreads];
+            for (int j = 0; j < nthreads; j++) {
+                final int firstK = pointers[0] + (int) ((long) nnz * j / nthreads);
+                final int lastK = pointers[0] + (int) ((long) nnz * (j + 1) / nthreads);
+                final int threadID = j;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        double[] buffer = new double[size];
+                        int i = upperBound(pointers, n, firstK);
+                        int k = firstK;
+                        while (k < lastK) {
+                            int high = Math.min(pointers[i + 1], lastK);
+                            double yElem = y[zeroY + strideY * i];
+                            for (; k < high; k++) {
+                                buffer[indexes[k]] += values[k] * yElem;
+                            }
+                            i++;
+                        }
+                        work[threadID] = buffer;
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            final int nbuffers = nthreads;
+            nthreads = Math.min(ConcurrencyUtils.getNumberOfThreads(), size);
+            futures = new Future[nthreads];
+            for (int j = 0; j < nthreads; j++) {
+                final int first = (int) ((long) size * j / nthreads);
+                final int last = (int) ((long) size * (j + 1) / nthreads);
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        int zidx = zeroZ + first * strideZ;
+                        for (int i = first; i < last; i++) {
+                            double sum = 0;
+                            for (int t = 0; t < nbuffers; t++) {
+                                sum += work[t][i];
+                            }
+                            z[zidx] = beta == 0 ? alpha * sum : alpha * sum + beta * z[zidx];
+                            zidx += strideZ;
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            if (beta != 1) {
+                for (int i = 0, zidx = zeroZ; i < size; i++, zidx += strideZ) {
+                    z[zidx] = beta == 0 ? 0 : beta * z[zidx];
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                int high = pointers[i + 1];
+                double yElem = alpha * y[zeroY + strideY * i];
+                for (int k = pointers[i]; k < high; k++) {
+                    z[zeroZ + strideZ * indexes[k]] += values[k] * yElem;
+                }
+            }
+        }
+    }
+
+    /**
+     * <tt>C = alpha * S * B + beta * C</tt>, where the sparse matrix <tt>S</tt>
+     * is given by its <tt>n</tt> compressed rows (the outer vectors) and
+     * <tt>B</tt> and <tt>C</tt> are dense. Row <tt>i</tt> of <tt>C</tt> is a
+     * linear combination of the rows <tt>indexes[k]</tt> of <tt>B</tt>.
+     * <p>
+     * The rows of <tt>C</tt> are split into parts with about the same number
+     * of rows plus nonzeros. Within a row, four columns of <tt>C</tt> are
+     * accumulated at once in local variables, so every nonzero of <tt>S</tt>
+     * is loaded once per four columns and <tt>C</tt> is written only once.
+     */
+    static void compressedTimesDense(final int n, final int[] pointers, final int[] indexes, final double[] values,
+            DenseDoubleMatrix2D B, DenseDoubleMatrix2D C, final double alpha, final double beta) {
+        final int p = C.columns();
+        final double[] elementsB = B.elements;
+        final int zeroB = (int) B.index(0, 0);
+        final int rowStrideB = B.rowStride();
+        final int columnStrideB = B.columnStride();
+        final double[] elementsC = C.elements;
+        final int zeroC = (int) C.index(0, 0);
+        final int rowStrideC = C.rowStride();
+        final int columnStrideC = C.columnStride();
+        final int nnz = pointers[n] - pointers[0];
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (n > 1) && ((long) nnz * p >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, n);
+            Future<?>[] futures = new Future[nthreads];
+            long length = (long) n + nnz;
+            int firstRow = 0;
+            for (int j = 0; j < nthreads; j++) {
+                final int first = firstRow;
+                final int last = (j == nthreads - 1) ? n : Math.max(first, mergePathSearch(length * (j + 1)
+                        / nthreads, n, pointers));
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        compressedTimesDense(first, last, pointers, indexes, values, elementsB, zeroB, rowStrideB,
+                                columnStrideB, elementsC, zeroC, rowStrideC, columnStrideC, p, alpha, beta);
+                    }
+                });
+                firstRow = last;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            compressedTimesDense(0, n, pointers, indexes, values, elementsB, zeroB, rowStrideB, columnStrideB,
+                    elementsC, zeroC, rowStrideC, columnStrideC, p, alpha, beta);
+        }
+    }
+
+    /**
+     * <tt>C = alpha * D * S + beta * C</tt>, where <tt>D</tt> and <tt>C</tt>
+     * are dense and the sparse matrix <tt>S</tt> is given by its <tt>n</tt>
+     * compressed outer vectors, which are rows if <tt>rowCompressed</tt> and
+     * columns otherwise. Every row of <tt>C</tt> depends only on the same row
+     * of <tt>D</tt>, so the rows are split evenly between the threads. For
+     * compressed rows, row <tt>k</tt> of <tt>S</tt> scaled by <tt>D(i,k)</tt>
+     * is added to row <tt>i</tt> of <tt>C</tt>; for compressed columns,
+     * <tt>C(i,j)</tt> is the sparse dot product of row <tt>i</tt> of
+     * <tt>D</tt> with column <tt>j</tt> of <tt>S</tt>, computed for four rows
+     * at once.
+     */
+    static void denseTimesCompressed(DenseDoubleMatrix2D D, final int n, final int[] pointers,
+            final int[] indexes, final double[] values, final boolean rowCompressed, DenseDoubleMatrix2D C,
+            final double alpha, final double beta) {
+        final int m = C.rows();
+        final int p = C.columns();
+        final double[] elementsD = D.elements;
+        final int zeroD = (int) D.index(0, 0);
+        final int rowStrideD = D.rowStride();
+        final int columnStrideD = D.columnStride();
+        final double[] elementsC = C.elements;
+        final int zeroC = (int) C.index(0, 0);
+        final int rowStrideC = C.rowStride();
+        final int columnStrideC = C.columnStride();
+        final int nnz = pointers[n] - pointers[0];
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (m > 1) && ((long) nnz * m >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, m);
+            Future<?>[] futures = new Future[nthreads];
+            for (int j = 0; j < nthreads; j++) {
+                final int first = (int) ((long) m * j / nthreads);
+                final int last = (int) ((long) m * (j + 1) / nthreads);
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        denseTimesCompressed(first, last, elementsD, zeroD, rowStrideD, columnStrideD, n, pointers,
+                                indexes, values, rowCompressed, elementsC, zeroC, rowStrideC, columnStrideC, p, alpha,
+                                beta);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            denseTimesCompressed(0, m, elementsD, zeroD, rowStrideD, columnStrideD, n, pointers, indexes, values,
+                    rowCompressed, elementsC, zeroC, rowStrideC, columnStrideC, p, alpha, beta);
+        }
+    }
+
+    /**
+     * Computes <tt>alpha * L * R</tt>, where both sparse matrices are given by
+     * their outer vectors and the result is compressed in the same direction:
+     * outer vector <tt>i</tt> of the result is the sum of the outer vectors
+     * <tt>k</tt> of <tt>R</tt> scaled by the nonzeros <tt>L(i,k)</tt>. For
+     * row compressed matrices this is <tt>A*B</tt> with <tt>L = A</tt>,
+     * <tt>R = B</tt>; for column compressed matrices it is <tt>A*B</tt> with
+     * <tt>L = B</tt>, <tt>R = A</tt>.
+     * <p>
+     * The product is computed in two passes over the same partition of the
+     * outer vectors, which is balanced by the number of multiplications. The
+     * symbolic pass counts the nonzeros of every outer vector, so the result
+     * arrays are allocated with their exact size; the numeric pass then fills
+     * them. Each thread accumulates into a hash table for outer vectors with
+     * few multiplications and into a dense accumulator of length
+     * <tt>ninner</tt> otherwise. If <tt>maskPointers</tt> is not
+     * <tt>null</tt>, only the entries present in the (equally compressed)
+     * mask are computed. The indexes of the result are not sorted.
+     *
+     * @param n
+     *            the number of outer vectors of <tt>L</tt> and of the result.
+     * @param ninner
+     *            the length of the outer vectors of <tt>R</tt> and of the
+     *            result.
+     * @throws IllegalArgumentException
+     *             if the result has more than <tt>Integer.MAX_VALUE</tt>
+     *             nonzeros.
+     */
+    static Compressed multiply(final int n, final int[] pointersL, final int[] indexesL, final double[] valuesL,
+            final int[] pointersR, final int[] indexesR, final double[] valuesR, final int ninner,
+            final double alpha, final int[] maskPointers, final int[] maskIndexes) {
+        // cost of every outer vector, flops plus one
+        final long[] cost = new long[n + 1];
+        forEachPart(uniformParts(n, pointersL[n] - pointersL[0]), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int i = first; i < last; i++) {
+                    long flops = 0;
+                    for (int kl = pointersL[i]; kl < pointersL[i + 1]; kl++) {
+                        int k = indexesL[kl];
+                        flops += pointersR[k + 1] - pointersR[k];
+                    }
+                    cost[i + 1] = flops + 1;
+                }
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            cost[i + 1] += cost[i];
+        }
+        final int[] parts = costParts(n, cost);
+        final int[] pointers = new int[n + 1];
+        forEachPart(parts, new PartProcedure() {
+            public void apply(int first, int last) {
+                ProductAccumulator acc = new ProductAccumulator(ninner, maskPointers != null);
+                int base = 0;
+                for (int i = first; i < last; i++) {
+                    int count = acc.row(i, cost[i + 1] - cost[i] - 1, base, pointersL, indexesL, valuesL,
+                            pointersR, indexesR, valuesR, alpha, maskPointers, maskIndexes, null, null);
+                    pointers[i + 1] = count;
+                    base += count;
+                }
+            }
+        });
+        long nnz = 0;
+        for (int i = 0; i < n; i++) {
+            nnz += pointers[i + 1];
+            if (nnz > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("The product has more than Integer.MAX_VALUE nonzeros");
+            pointers[i + 1] = (int) nnz;
+        }
+        final int[] indexes = new int[(int) nnz];
+        final double[] values = new double[(int) nnz];
+        forEachPart(parts, new PartProcedure() {
+            public void apply(int first, int last) {
+                ProductAccumulator acc = new ProductAccumulator(ninner, maskPointers != null);
+                for (int i = first; i < last; i++) {
+                    acc.row(i, cost[i + 1] - cost[i] - 1, pointers[i], pointersL, indexesL, valuesL, pointersR,
+                            indexesR, valuesR, alpha, maskPointers, maskIndexes, indexes, values);
+                }
+            }
+        });
+        return new Compressed(pointers, indexes, values);
+    }
+
+    /**
+     * Computes <tt>A + B</tt> of two equally compressed sparse matrices with
+     * <tt>n</tt> outer vectors of length <tt>ninner</tt>, in two passes like
+     * {@link #multiply}. The indexes of the result are not sorted.
+     */
+    static Compressed add(final int n, final int[] pointersA, final int[] indexesA, final double[] valuesA,
+            final int[] pointersB, final int[] indexesB, final double[] valuesB, final int ninner) {
+        final int[] parts = uniformParts(n, (pointersA[n] - pointersA[0]) + (pointersB[n] - pointersB[0]));
+        final int[] pointers = new int[n + 1];
+        final PartProcedure symbolic = new PartProcedure() {
+            public void apply(int first, int last) {
+                int[] marker = new int[ninner];
+                Arrays.fill(marker, -1);
+                for (int i = first; i < last; i++) {
+                    int count = pointersA[i + 1] - pointersA[i];
+                    for (int k = pointersA[i]; k < pointersA[i + 1]; k++) {
+                        marker[indexesA[k]] = i;
+                    }
+                    for (int k = pointersB[i]; k < pointersB[i + 1]; k++) {
+                        if (marker[indexesB[k]] != i)
+                            count++;
+                    }
+                    pointers[i + 1] = count;
+                }
+            }
+        };
+        forEachPart(parts, symbolic);
+        long nnz = 0;
+        for (int i = 0; i < n; i++) {
+            nnz += pointers[i + 1];
+            if (nnz > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("The sum has more than Integer.MAX_VALUE nonzeros");
+            pointers[i + 1] = (int) nnz;
+        }
+        final int[] indexes = new int[(int) nnz];
+        final double[] values = new double[(int) nnz];
+        forEachPart(parts, new PartProcedure() {
+            public void apply(int first, int last) {
+                int[] marker = new int[ninner];
+                Arrays.fill(marker, -1);
+                for (int i = first; i < last; i++) {
+                    int base = pointers[i];
+                    int pos = base;
+                    for (int k = pointersA[i]; k < pointersA[i + 1]; k++) {
+                        marker[indexesA[k]] = pos;
+                        indexes[pos] = indexesA[k];
+                        values[pos++] = valuesA[k];
+                    }
+                    for (int k = pointersB[i]; k < pointersB[i + 1]; k++) {
+                        int j = indexesB[k];
+                        if (marker[j] < base) {
+                            marker[j] = pos;
+                            indexes[pos] = j;
+                            values[pos++] = valuesB[k];
+                        } else {
+                            values[marker[j]] += valuesB[k];
+                        }
+                    }
+                }
+            }
+        });
+        return new Compressed(pointers, indexes, values);
+    }
+
+    /**
+     * Returns the permuted copy of a compressed matrix with <tt>n</tt> outer
+     * vectors: outer vector <tt>i</tt> of the result is outer vector
+     * <tt>outer[i]</tt> of the matrix, and inner index <tt>j</tt> becomes
+     * <tt>innerInverse[j]</tt>. Either permutation may be null, meaning the
+     * identity. The outer vectors are copied concurrently; if <tt>sort</tt>,
+     * the permuted inner indexes of every outer vector are sorted.
+     */
+    static Compressed permute(final int n, final int[] pointers, final int[] indexes, final double[] values,
+            final int[] outer, final int[] innerInverse, final boolean sort) {
+        final int[] pointersP = new int[n + 1];
+        final long[] cost = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            int o = outer == null ? i : outer[i];
+            pointersP[i + 1] = pointersP[i] + pointers[o + 1] - pointers[o];
+            cost[i + 1] = (long) pointersP[i + 1] + i + 1;
+        }
+        final int[] indexesP = new int[pointersP[n]];
+        final double[] valuesP = new double[pointersP[n]];
+        forEachPart(costParts(n, cost), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int i = first; i < last; i++) {
+                    int o = outer == null ? i : outer[i];
+                    int low = pointers[o];
+                    int len = pointers[o + 1] - low;
+                    int pos = pointersP[i];
+                    System.arraycopy(values, low, valuesP, pos, len);
+                    if (innerInverse == null) {
+                        System.arraycopy(indexes, low, indexesP, pos, len);
+                    } else {
+                        for (int k = 0; k < len; k++) {
+                            indexesP[pos + k] = innerInverse[indexes[low + k]];
+                        }
+                        if (sort)
+                            sort(indexesP, valuesP, pos, pos + len);
+                    }
+                }
+            }
+        });
+        return new Compressed(pointersP, indexesP, valuesP);
+    }
+
+    /**
+     * Returns the transpose of a compressed matrix with <tt>n</tt> outer and
+     * <tt>m</tt> inner vectors, which is also its conversion between row and
+     * column compressed form; the inner indexes of the result are sorted.
+     * Every thread counts the inner indexes of its outer vectors, a parallel
+     * prefix sum over the inner vectors turns the counts into per-thread
+     * offsets, and the threads then scatter their entries without
+     * synchronization.
+     */
+    static Compressed transpose(final int n, final int m, final int[] pointers, final int[] indexes,
+            final double[] values) {
+        int nnz = pointers[n];
+        final int[] pointersT = new int[m + 1];
+        final int[] indexesT = new int[nnz];
+        final double[] valuesT = new double[nnz];
+        long[] cost = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            cost[i + 1] = (long) pointers[i + 1] + i + 1;
+        }
+        final int[] parts = costParts(n, cost);
+        final int nparts = parts.length - 1;
+        if (nparts == 1) {
+            for (int k = 0; k < nnz; k++) {
+                pointersT[indexes[k] + 1]++;
+            }
+            for (int j = 0; j < m; j++) {
+                pointersT[j + 1] += pointersT[j];
+            }
+            int[] next = new int[m];
+            System.arraycopy(pointersT, 0, next, 0, m);
+            for (int i = 0; i < n; i++) {
+                for (int k = pointers[i]; k < pointers[i + 1]; k++) {
+                    int q = next[indexes[k]]++;
+                    indexesT[q] = i;
+                    valuesT[q] = values[k];
+                }
+            }
+            return new Compressed(pointersT, indexesT, valuesT);
+        }
+        // counts[p][j]: number of entries of part p in inner vector j
+        final int[][] counts = new int[nparts][];
+        forEachPart(uniformParts(nparts, Long.MAX_VALUE), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int p = first; p < last; p++) {
+                    int[] count = new int[m];
+                    for (int k = pointers[parts[p]]; k < pointers[parts[p + 1]]; k++) {
+                        count[indexes[k]]++;
+                    }
+                    counts[p] = count;
+                }
+            }
+        });
+        // turn the counts into offsets within every inner vector, and sum the blocks of inner vectors
+        final int[] blocks = uniformParts(m, (long) m * nparts);
+        final int nblocks = blocks.length - 1;
+        final long[] blockOffsets = new long[nblocks + 1];
+        forEachPart(uniformParts(nblocks, Long.MAX_VALUE), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int b = first; b < last; b++) {
+                    long sum = 0;
+                    for (int j = blocks[b]; j < blocks[b + 1]; j++) {
+                        int total = 0;
+                        for (int p = 0; p < nparts; p++) {
+                            int c = counts[p][j];
+                            counts[p][j] = total;
+                            total += c;
+                        }
+                        pointersT[j + 1] = total;
+                        sum += total;
+                    }
+                    blockOffsets[b + 1] = sum;
+                }
+            }
+        });
+        for (int b = 0; b < nblocks; b++) {
+            blockOffsets[b + 1] += blockOffsets[b];
+        }
+        forEachPart(uniformParts(nblocks, Long.MAX_VALUE), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int b = first; b < last; b++) {
+                    int offset = (int) blockOffsets[b];
+                    for (int j = blocks[b]; j < blocks[b + 1]; j++) {
+                        offset += pointersT[j + 1];
+                        pointersT[j + 1] = offset;
+                    }
+                }
+            }
+        });
+        forEachPart(uniformParts(nparts, Long.MAX_VALUE), new PartProcedure() {
+            public void apply(int first, int last) {
+                for (int p = first; p < last; p++) {
+                    int[] next = counts[p];
+                    for (int i = parts[p]; i < parts[p + 1]; i++) {
+                        for (int k = pointers[i]; k < pointers[i + 1]; k++) {
+                            int j = indexes[k];
+                            int q = pointersT[j] + next[j]++;
+                            indexesT[q] = i;
+                            valuesT[q] = values[k];
+                        }
+                    }
+                }
+            }
+        });
+        return new Compressed(pointersT, indexesT, valuesT);
+    }
+
+    /**
+     * Returns the inverse of a permutation of <tt>[0, n)</tt>.
+     * 
+     * @throws IndexOutOfBoundsException
+     *             if <tt>permutation</tt> is not a permutation of
+     *             <tt>[0, n)</tt>.
+     */
+    static int[] inverse(int[] permutation, int n) {
+        if (permutation.length != n)
+            throw new IndexOutOfBoundsException("invalid permutation");
+        int[] inverse = new int[n];
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < n; i++) {
+            int p = permutation[i];
+            if (p < 0 || p >= n || inverse[p] >= 0)
+                throw new IndexOutOfBoundsException("invalid permutation");
+            inverse[p] = i;
+        }
+        return inverse;
+    }
+
+    /*
+     * Sorts the entries low to high - 1 by index.
+     */
+    private static void sort(int[] indexes, double[] values, int low, int high) {
+        int len = high - low;
+        if (len <= 32) {
+            for (int k = low + 1; k < high; k++) {
+                int j = indexes[k];
+                double x = values[k];
+                int l = k - 1;
+                while (l >= low && indexes[l] > j) {
+                    indexes[l + 1] = indexes[l];
+                    values[l + 1] = values[l];
+                    l--;
+                }
+                indexes[l + 1] = j;
+                values[l + 1] = x;
+            }
+            return;
+        }
+        long[] keys = new long[len];
+        for (int k = 0; k < len; k++) {
+            keys[k] = ((long) indexes[low + k] << 32) | k;
+        }
+        Arrays.sort(keys);
+        double[] work = new double[len];
+        for (int k = 0; k < len; k++) {
+            indexes[low + k] = (int) (keys[k] >>> 32);
+            work[k] = values[low + (int) keys[k]];
+        }
+        System.arraycopy(work, 0, values, low, len);
+    }
+
+    private static void compressedTimesDense(int firstRow, int lastRow, int[] pointers, int[] indexes,
+            double[] values, double[] elementsB, int zeroB, int rowStrideB, int columnStrideB, double[] elementsC,
+            int zeroC, int rowStrideC, int columnStrideC, int p, double alpha, double beta) {
+        int cs = columnStrideB;
+        for (int i = firstRow; i < lastRow; i++) {
+            int low = pointers[i];
+            int high = pointers[i + 1];
+            int idxC = zeroC + i * rowStrideC;
+            int c = 0;
+            for (; c + 4 <= p; c += 4) {
+                double s0 = 0;
+                double s1 = 0;
+                double s2 = 0;
+                double s3 = 0;
+                int offsetB = zeroB + c * cs;
+                for (int k = low; k < high; k++) {
+                    double v = values[k];
+                    int idxB = offsetB + indexes[k] * rowStrideB;
+                    s0 += v * elementsB[idxB];
+                    s1 += v * elementsB[idxB + cs];
+                    s2 += v * elementsB[idxB + 2 * cs];
+                    s3 += v * elementsB[idxB + 3 * cs];
+                }
+                if (beta == 0) {
+                    elementsC[idxC] = alpha * s0;
+                    elementsC[idxC + columnStrideC] = alpha * s1;
+                    elementsC[idxC + 2 * columnStrideC] = alpha * s2;
+                    elementsC[idxC + 3 * columnStrideC] = alpha * s3;
+                } else {
+                    elementsC[idxC] = alpha * s0 + beta * elementsC[idxC];
+                    elementsC[idxC + columnStrideC] = alpha * s1 + beta * elementsC[idxC + columnStrideC];
+                    elementsC[idxC + 2 * columnStrideC] = alpha * s2 + beta * elementsC[idxC + 2 * columnStrideC];
+                    elementsC[idxC + 3 * columnStrideC] = alpha * s3 + beta * elementsC[idxC + 3 * columnStrideC];
+                }
+                idxC += 4 * columnStrideC;
+            }
+            for (; c < p; c++) {
+                double s = 0;
+                int offsetB = zeroB + c * cs;
+                for (int k = low; k < high; k++) {
+                    s += values[k] * elementsB[offsetB + indexes[k] * rowStrideB];
+                }
+                elementsC[idxC] = beta == 0 ? alpha * s : alpha * s + beta * elementsC[idxC];
+                idxC += columnStrideC;
+            }
+        }
+    }
+
+    private static void denseTimesCompressed(int firstRow, int lastRow, double[] elementsD, int zeroD,
+            int rowStrideD, int columnStrideD, int n, int[] pointers, int[] indexes, double[] values,
+            boolean rowCompressed, double[] elementsC, int zeroC, int rowStrideC, int columnStrideC, int p,
+            double alpha, double beta) {
+        if (rowCompressed) {
+            for (int i = firstRow; i < lastRow; i++) {
+                int offsetC = zeroC + i * rowStrideC;
+                for (int j = 0, idxC = offsetC; j < p; j++, idxC += columnStrideC) {
+                    elementsC[idxC] = beta == 0 ? 0 : beta * elementsC[idxC];
+                }
+                int idxD = zeroD + i * rowStrideD;
+                for (int k = 0; k < n; k++, idxD += columnStrideD) {
+                    double a = elementsD[idxD];
+                    if (a != 0) {
+                        a *= alpha;
+                        int high = pointers[k + 1];
+                        for (int l = pointers[k]; l < high; l++) {
+                            elementsC[offsetC + indexes[l] * columnStrideC] += a * values[l];
+                        }
+                    }
+                }
+            }
+        } else {
+            int rs = rowStrideD;
+            int i = firstRow;
+            for (; i + 4 <= lastRow; i += 4) {
+                int offsetD = zeroD + i * rs;
+                int idxC = zeroC + i * rowStrideC;
+                for (int j = 0; j < n; j++, idxC += columnStrideC) {
+                    double s0 = 0;
+                    double s1 = 0;
+                    double s2 = 0;
+                    double s3 = 0;
+                    int high = pointers[j + 1];
+                    for (int l = pointers[j]; l < high; l++) {
+                        double v = values[l];
+                        int idxD = offsetD + indexes[l] * columnStrideD;
+                        s0 += v * elementsD[idxD];
+                        s1 += v * elementsD[idxD + rs];
+                        s2 += v * elementsD[idxD + 2 * rs];
+                        s3 += v * elementsD[idxD + 3 * rs];
+                    }
+                    if (beta == 0) {
+                        elementsC[idxC] = alpha * s0;
+                        elementsC[idxC + rowStrideC] = alpha * s1;
+                        elementsC[idxC + 2 * rowStrideC] = alpha * s2;
+                        elementsC[idxC + 3 * rowStrideC] = alpha * s3;
+                    } else {
+                        elementsC[idxC] = alpha * s0 + beta * elementsC[idxC];
+                        elementsC[idxC + rowStrideC] = alpha * s1 + beta * elementsC[idxC + rowStrideC];
+                        elementsC[idxC + 2 * rowStrideC] = alpha * s2 + beta * elementsC[idxC + 2 * rowStrideC];
+                        elementsC[idxC + 3 * rowStrideC] = alpha * s3 + beta * elementsC[idxC + 3 * rowStrideC];
+                    }
+                }
+            }
+            for (; i < lastRow; i++) {
+                int offsetD = zeroD + i * rs;
+                int idxC = zeroC + i * rowStrideC;
+                for (int j = 0; j < n; j++, idxC += columnStrideC) {
+                    double s = 0;
+                    int high = pointers[j + 1];
+                    for (int l = pointers[j]; l < high; l++) {
+                        s += values[l] * elementsD[offsetD + indexes[l] * columnStrideD];
+                    }
+                    elementsC[idxC] = beta == 0 ? alpha * s : alpha * s + beta * elementsC[idxC];
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the number of outer vectors that are finished before the given
+     * diagonal of the merge path, i.e. the smallest i such that i + nonzeros
+     * before pointers[i + 1] reaches the diagonal.
+     */
+    private static int mergePathSearch(long diagonal, int n, int[] pointers) {
+        int nnz = pointers[n] - pointers[0];
+        int low = (int) Math.max(0, diagonal - nnz);
+        int high = (int) Math.min(diagonal, n);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pointers[mid + 1] - pointers[0] <= diagonal - 1 - mid) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Returns the outer vector that holds nonzero k.
+     */
+    private static int upperBound(int[] pointers, int n, int k) {
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pointers[mid] <= k) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Splits [0, n) into one part per thread of about equal size, or a single
+     * part if the work is too small.
+     */
+    private static int[] uniformParts(int n, long work) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads <= 1) || (n <= 1) || (work < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            return new int[] { 0, n };
+        }
+        nthreads = Math.min(nthreads, n);
+        int[] parts = new int[nthreads + 1];
+        for (int j = 1; j <= nthreads; j++) {
+            parts[j] = (int) ((long) n * j / nthreads);
+        }
+        return parts;
+    }
+
+    /*
+     * Splits [0, n) into one part per thread of about equal cost, where
+     * cost[i] is the cumulative cost of the outer vectors before i.
+     */
+    private static int[] costParts(int n, long[] cost) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads <= 1) || (n <= 1) || (cost[n] < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            return new int[] { 0, n };
+        }
+        nthreads = Math.min(nthreads, n);
+        int[] parts = new int[nthreads + 1];
+        parts[nthreads] = n;
+        for (int j = 1; j < nthreads; j++) {
+            long target = cost[n] * j / nthreads;
+            int low = parts[j - 1];
+            int high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cost[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            parts[j] = low;
+        }
+        return parts;
+    }
+
+    private static void forEachPart(int[] parts, final PartProcedure procedure) {
+        int nparts = parts.length - 1;
+        if (nparts == 1) {
+            procedure.apply(parts[0], parts[1]);
+            return;
+        }
+        Future<?>[] futures = new Future[nparts];
+        for (int j = 0; j < nparts; j++) {
+            final int first = parts[j];
+            final int last = parts[j + 1];
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    procedure.apply(first, last);
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+    }
+
+    private interface PartProcedure {
+        void apply(int first, int last);
+    }
+
+    /*
+     * A sparse matrix in compressed form.
+     */
+    static final class Compressed {
+        final int[] pointers;
+
+        final int[] indexes;
+
+        final double[] values;
+
+        Compressed(int[] pointers, int[] indexes, double[] values) {
+            this.pointers = pointers;
+            this.indexes = indexes;
+            this.values = values;
+        }
+    }
+
+    /*
+     * Thread-local accumulator of one outer vector of a sparse product. A
+     * position in the result is assigned to every index when it is first
+     * seen; positions only grow while a thread processes its outer vectors, so
+     * a stored position below the start of the current outer vector marks an
+     * index that has not been seen yet and the dense arrays never need to be
+     * cleared.
+     */
+    private static final class ProductAccumulator {
+        private final int ninner;
+
+        private final boolean masked;
+
+        private int[] marker;
+
+        private int[] allowed;
+
+        private int[] keys;
+
+        private int[] positions;
+
+        ProductAccumulator(int ninner, boolean masked) {
+            this.ninner = ninner;
+            this.masked = masked;
+        }
+
+        /*
+         * Accumulates outer vector i with the given number of flops, starting
+         * at position base. Only counts if indexes is null. Returns the number
+         * of nonzeros of the outer vector.
+         */
+        int row(int i, long flops, int base, int[] pointersL, int[] indexesL, double[] valuesL, int[] pointersR,
+                int[] indexesR, double[] valuesR, double alpha, int[] maskPointers, int[] maskIndexes,
+                int[] indexes, double[] values) {
+            if (flops == 0)
+                return 0;
+            if (!masked && flops < ninner / 32) {
+                return hashRow(i, (int) flops, base, pointersL, indexesL, valuesL, pointersR, indexesR, valuesR,
+                        alpha, indexes, values);
+            }
+            if (marker == null) {
+                marker = new int[ninner];
+                Arrays.fill(marker, -1);
+                if (masked) {
+                    allowed = new int[ninner];
+                    Arrays.fill(allowed, -1);
+                }
+            }
+            if (masked) {
+                for (int k = maskPointers[i]; k < maskPointers[i + 1]; k++) {
+                    allowed[maskIndexes[k]] = i;
+                }
+            }
+            int count = 0;
+            for (int kl = pointersL[i]; kl < pointersL[i + 1]; kl++) {
+                int k = indexesL[kl];
+                double a = alpha * valuesL[kl];
+                for (int kr = pointersR[k]; kr < pointersR[k + 1]; kr++) {
+                    int c = indexesR[kr];
+                    if (masked && allowed[c] != i)
+                        continue;
+                    int pos = marker[c];
+                    if (pos < base) {
+                        pos = base + count++;
+                        marker[c] = pos;
+                        if (indexes != null) {
+                            indexes[pos] = c;
+                            values[pos] = a * valuesR[kr];
+                        }
+                    } else if (indexes != null) {
+                        values[pos] += a * valuesR[kr];
+                    }
+                }
+            }
+            return count;
+        }
+
+        private int hashRow(int i, int flops, int base, int[] pointersL, int[] indexesL, double[] valuesL,
+                int[] pointersR, int[] indexesR, double[] valuesR, double alpha, int[] indexes, double[] values) {
+            int bits = 2;
+            while ((1 << bits) < 2 * flops) {
+                bits++;
+            }
+            int size = 1 << bits;
+            int mask = size - 1;
+            if (keys == null || keys.length < size) {
+                keys = new int[size];
+                positions = new int[size];
+            }
+            Arrays.fill(keys, 0, size, -1);
+            int count = 0;
+            for (int kl = pointersL[i]; kl < pointersL[i + 1]; kl++) {
+                int k = indexesL[kl];
+                double a = alpha * valuesL[kl];
+                for (int kr = pointersR[k]; kr < pointersR[k + 1]; kr++) {
+                    int c = indexesR[kr];
+                    int h = (c * 0x9E3779B9) >>> (32 - bits);
+                    while (keys[h] != -1 && keys[h] != c) {
+                        h = (h + 1) & mask;
+                    }
+                    if (keys[h] == -1) {
+                        int pos = base + count++;
+                        keys[h] = c;
+                        positions[h] = pos;
+                        if (indexes != null) {
+                            indexes[pos] = c;
+                            values[pos] = a * valuesR[kr];
+                        }
+                    } else if (indexes != null) {
+                        values[positions[h]] += a * valuesR[kr];
+                    }
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.map.tdouble.OpenLongDoubleHashMap;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Sparse hashed 2-d matrix holding <tt>double</tt> elements that can be
+ * assembled by many threads at once. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The cells are spread over a number of stripes by a hash of their index.
+ * Every stripe is an {@link OpenLongDoubleHashMap} guarded by its own lock, so
+ * threads only wait for each other when they touch the same stripe at the
+ * same time, instead of serializing on the single monitor of
+ * {@link SparseDoubleMatrix2D}. {@link #addQuick(int, int, double)} adds to a
+ * cell atomically, which is what finite element assembly needs: every thread
+ * adds the contributions of its elements, and shared nodes are summed
+ * correctly. <tt>getQuick</tt> takes the lock of the stripe as well, so a
+ * read during assembly sees every completed update of the cell. This
+ * implementation is thread safe; methods that read and then write a cell,
+ * such as <tt>forEachNonZero</tt>, are not atomic with respect to concurrent
+ * updates of that cell.
+ * <p>
+ * Once assembled, the matrix is frozen with {@link #getRowCompressed(boolean)}
+ * or {@link #getColumnCompressed(boolean)}, which collect the stripes
+ * concurrently and sort them with {@link SparseDoubleMatrix2DBuilder}. The
+ * compressed matrices take no locks when read.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * Same as {@link SparseDoubleMatrix2D}, plus a small hash map header per
+ * stripe.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * Expected <tt>O(1)</tt> for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>addQuick</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class ConcurrentSparseDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final OpenLongDoubleHashMap[] stripes;
+
+    private final int shift;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns and four
+     * stripes per thread (see {@link ConcurrencyUtils#getNumberOfThreads()}).
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt>.
+     */
+    public ConcurrentSparseDoubleMatrix2D(int rows, int columns) {
+        this(rows, columns, 4 * ConcurrencyUtils.getNumberOfThreads());
+    }
+
+    /**
+     * Constructs a matrix with a given number of rows and columns.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param concurrencyLevel
+     *            the expected number of threads updating the matrix at once;
+     *            rounded up to the number of stripes, a power of two.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0 || concurrencyLevel<1</tt>.
+     */
+    public ConcurrentSparseDoubleMatrix2D(int rows, int columns, int concurrencyLevel) {
+        super(null);
+        if (concurrencyLevel < 1)
+            throw new IllegalArgumentException("concurrencyLevel < 1: " + concurrencyLevel);
+        try {
+            setUp(rows, columns);
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        int bits = 0;
+        while ((1 << bits) < concurrencyLevel && bits < 16) {
+            bits++;
+        }
+        stripes = new OpenLongDoubleHashMap[1 << bits];
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s] = new OpenLongDoubleHashMap();
+        }
+        shift = 32 - bits;
+        content = this;
+    }
+
+    /**
+     * Atomically adds <tt>value</tt> to the cell at coordinate
+     * <tt>[row,column]</tt>. Provided with invalid parameters this method may
+     * access illegal indexes without throwing any exception.
+     *
+     * @param row
+     *            the index of the row-coordinate.
+     * @param column
+     *            the index of the column-coordinate.
+     * @param value
+     *            the value to be added.
+     */
+    public void addQuick(int row, int column, double value) {
+        long index = (long) row * (long) columns + (long) column;
+        OpenLongDoubleHashMap stripe = stripe(index);
+        synchronized (stripe) {
+            double sum = stripe.get(index) + value;
+            if (sum == 0)
+                stripe.removeKey(index);
+            else
+                stripe.put(index, sum);
+        }
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        if (value == 0) {
+            for (int s = 0; s < stripes.length; s++) {
+                synchronized (stripes[s]) {
+                    stripes[s].clear();
+                }
+            }
+            return this;
+        }
+        return super.assign(value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int s = 0; s < stripes.length; s++) {
+            synchronized (stripes[s]) {
+                cardinality += stripes[s].size();
+            }
+        }
+        return cardinality;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        for (int s = 0; s < stripes.length; s++) {
+            long[] keys;
+            double[] values;
+            synchronized (stripes[s]) {
+                keys = new long[stripes[s].size()];
+                values = new double[keys.length];
+                collect(stripes[s], keys, values);
+            }
+            for (int k = 0; k < keys.length; k++) {
+                int row = (int) (keys[k] / columns);
+                int column = (int) (keys[k] % columns);
+                double result = function.apply(row, column, values[k]);
+                if (result != values[k])
+                    setQuick(row, column, result);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns a new column-compressed copy of this matrix. Threads still
+     * updating the matrix may or may not be seen.
+     *
+     * @param sortRowIndexes
+     *            if true, then row indexes in column compressed matrix are
+     *            sorted
+     * @return this matrix in column-compressed form.
+     */
+    public SparseCCDoubleMatrix2D getColumnCompressed(boolean sortRowIndexes) {
+        Triplets t = triplets();
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(columns, rows,
+                t.columnIndexes, t.rowIndexes, t.values, t.lengths, 0, false, false, sortRowIndexes);
+        SparseCCDoubleMatrix2D A = new SparseCCDoubleMatrix2D(rows, columns, C.indexes, C.pointers, C.values);
+        A.rowIndexesSorted = sortRowIndexes;
+        return A;
+    }
+
+    public double getQuick(int row, int column) {
+        long index = (long) row * (long) columns + (long) column;
+        OpenLongDoubleHashMap stripe = stripe(index);
+        synchronized (stripe) {
+            return stripe.get(index);
+        }
+    }
+
+    /**
+     * Returns a new row-compressed copy of this matrix. Threads still updating
+     * the matrix may or may not be seen.
+     *
+     * @param sortColumnIndexes
+     *            if true, then column indexes in row compressed matrix are
+     *            sorted
+     * @return this matrix in row-compressed form.
+     */
+    public SparseRCDoubleMatrix2D getRowCompressed(boolean sortColumnIndexes) {
+        Triplets t = triplets();
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(rows, columns,
+                t.rowIndexes, t.columnIndexes, t.values, t.lengths, 0, false, false, sortColumnIndexes);
+        SparseRCDoubleMatrix2D A = new SparseRCDoubleMatrix2D(rows, columns, C.pointers, C.indexes, C.values);
+        A.columnIndexesSorted = sortColumnIndexes;
+        return A;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new SparseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        long index = (long) row * (long) columns + (long) column;
+        OpenLongDoubleHashMap stripe = stripe(index);
+        synchronized (stripe) {
+            if (value == 0)
+                stripe.removeKey(index);
+            else
+                stripe.put(index, value);
+        }
+    }
+
+    public void trimToSize() {
+        for (int s = 0; s < stripes.length; s++) {
+            synchronized (stripes[s]) {
+                stripes[s].trimToSize();
+            }
+        }
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    private OpenLongDoubleHashMap stripe(long index) {
+        int h = (int) (index ^ (index >>> 32)) * 0x9E3779B9;
+        return stripes[shift == 32 ? 0 : h >>> shift];
+    }
+
+    private static void collect(OpenLongDoubleHashMap map, final long[] keys, final double[] values) {
+        map.forEachPair(new cern.colt.function.tdouble.LongDoubleProcedure() {
+            int k = 0;
+
+            public boolean apply(long key, double value) {
+                keys[k] = key;
+                values[k++] = value;
+                return true;
+            }
+        });
+    }
+
+    /*
+     * Copies the stripes, one batch of triplets per stripe, concurrently.
+     */
+    private Triplets triplets() {
+        final int nstripes = stripes.length;
+        final Triplets t = new Triplets(nstripes);
+        int nthreads = Math.min(ConcurrencyUtils.getNumberOfThreads(), nstripes);
+        if (nthreads > 1 && cardinality() >= ConcurrencyUtils.getThreadsBeginN_2D()) {
+            Future<?>[] futures = new Future[nthreads];
+            for (int j = 0; j < nthreads; j++) {
+                final int firstStripe = nstripes * j / nthreads;
+                final int lastStripe = nstripes * (j + 1) / nthreads;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        for (int s = firstStripe; s < lastStripe; s++) {
+                            triplets(s, t);
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            for (int s = 0; s < nstripes; s++) {
+                triplets(s, t);
+            }
+        }
+        return t;
+    }
+
+    private void triplets(int s, Triplets t) {
+        long[] keys;
+        double[] values;
+        synchronized (stripes[s]) {
+            keys = new long[stripes[s].size()];
+            values = new double[keys.length];
+            collect(stripes[s], keys, values);
+        }
+        int[] rowIndexes = new int[keys.length];
+        int[] columnIndexes = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            rowIndexes[k] = (int) (keys[k] / columns);
+            columnIndexes[k] = (int) (keys[k] % columns);
+        }
+        t.rowIndexes[s] = rowIndexes;
+        t.columnIndexes[s] = columnIndexes;
+        t.values[s] = values;
+        t.lengths[s] = keys.length;
+    }
+
+    private static final class Triplets {
+        final int[][] rowIndexes;
+
+        final int[][] columnIndexes;
+
+        final double[][] values;
+
+        final int[] lengths;
+
+        Triplets(int nbatches) {
+            rowIndexes = new int[nbatches][];
+            columnIndexes = new int[nbatches][];
+            values = new double[nbatches][];
+            lengths = new int[nbatches];
+        }
+    }
+}
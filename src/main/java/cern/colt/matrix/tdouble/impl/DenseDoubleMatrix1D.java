@@ -503,6 +503,18 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
 
     public DoubleMatrix1D assign(final DoubleMatrix1D y, final cern.colt.function.tdouble.DoubleDoubleFunction function) {
         // overriden for performance only
+        if ((y instanceof SparseSortedDoubleMatrix1D)
+                && (function instanceof cern.jet.math.tdouble.DoublePlusMultSecond)) { // x[i] = x[i] + alpha*y[i]
+            checkSize(y);
+            double alpha = ((cern.jet.math.tdouble.DoublePlusMultSecond) function).multiplicator;
+            SparseSortedDoubleMatrix1D yy = (SparseSortedDoubleMatrix1D) y;
+            int[] indexesOther = yy.getIndexes();
+            double[] valuesOther = yy.getValues();
+            for (int k = yy.cardinality(); --k >= 0;) {
+                elements[zero + indexesOther[k] * stride] += alpha * valuesOther[k];
+            }
+            return this;
+        }
         if (!(y instanceof DenseDoubleMatrix1D)) {
             super.assign(y, function);
             return this;
@@ -1404,6 +1416,9 @@ public class DenseDoubleMatrix1D extends DoubleMatrix1D {
     }
 
     public double zDotProduct(DoubleMatrix1D y, int from, int length) {
+        if (y instanceof SparseSortedDoubleMatrix1D) {
+            return y.zDotProduct(this, from, length);
+        }
         if (!(y instanceof DenseDoubleMatrix1D)) {
             return super.zDotProduct(y, from, length);
         }
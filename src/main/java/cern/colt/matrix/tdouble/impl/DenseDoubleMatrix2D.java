@@ -2739,6 +2739,35 @@ public class DenseDoubleMatrix2D extends DoubleMatrix2D {
         */
         if (transposeA)
             return viewDice().zMult(B, C, alpha, beta, false, transposeB);
+        if (B instanceof DiagonalDoubleMatrix2D) {
+            // A*D = (D' * A')', which scales the columns of A
+            B.zMult(this, C.viewDice(), alpha, beta, !transposeB, true);
+            return C;
+        }
+        if ((B instanceof SparseRCDoubleMatrix2D || B instanceof SparseCCDoubleMatrix2D)
+                && (C instanceof DenseDoubleMatrix2D)) {
+            int rowsOpB = transposeB ? columnsB : rowsB;
+            int columnsOpB = transposeB ? rowsB : columnsB;
+            if (rowsOpB != columnsA)
+                throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + this.toStringShort()
+                        + ", " + (transposeB ? B.viewDice() : B).toStringShort());
+            if (C.rows() != rowsA || C.columns() != columnsOpB)
+                throw new IllegalArgumentException("Incompatibe result matrix: " + this.toStringShort() + ", "
+                        + (transposeB ? B.viewDice() : B).toStringShort() + ", " + C.toStringShort());
+            if (this == C)
+                throw new IllegalArgumentException("Matrices must not be identical");
+            // rows of op(B) are the rows of B (plain RC) or the columns of B (transposed CC)
+            if (B instanceof SparseRCDoubleMatrix2D) {
+                SparseRCDoubleMatrix2D BB = (SparseRCDoubleMatrix2D) B;
+                CompressedDoubleMatrixKernels.denseTimesCompressed(this, rowsB, BB.rowPointers, BB.columnIndexes,
+                        BB.values, !transposeB, (DenseDoubleMatrix2D) C, alpha, beta);
+            } else {
+                SparseCCDoubleMatrix2D BB = (SparseCCDoubleMatrix2D) B;
+                CompressedDoubleMatrixKernels.denseTimesCompressed(this, columnsB, BB.dcs.p, BB.dcs.i, BB.dcs.x,
+                        transposeB, (DenseDoubleMatrix2D) C, alpha, beta);
+            }
+            return C;
+        }
         if (B instanceof SparseDoubleMatrix2D || B instanceof SparseRCDoubleMatrix2D) {
             // exploit quick sparse mult
             // A*B = (B' * A')'
@@ -400,7 +400,11 @@ public class DiagonalDoubleMatrix2D extends WrapperDoubleMatrix2D {
         for (int j = dlength; --j >= 0;) {
             double value = elements[j];
             if (value != 0) {
-                elements[j] = function.apply(j, j, value);
+                if (dindex >= 0) {
+                    elements[j] = function.apply(j, j + dindex, value);
+                } else {
+                    elements[j] = function.apply(j - dindex, j, value);
+                }
             }
         }
         return this;
@@ -622,15 +626,11 @@ public class DiagonalDoubleMatrix2D extends WrapperDoubleMatrix2D {
         }
     }
 
-    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, final boolean transposeA) {
-        int rowsA = rows;
-        int columnsA = columns;
-        if (transposeA) {
-            rowsA = columns;
-            columnsA = rows;
-        }
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
 
-        boolean ignore = (z == null);
         if (z == null)
             z = new DenseDoubleMatrix1D(rowsA);
 
@@ -643,8 +643,8 @@ public class DiagonalDoubleMatrix2D extends WrapperDoubleMatrix2D {
                     + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
                     + z.toStringShort());
 
-        if ((!ignore) && ((beta) != 1))
-            z.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        if (y == z)
+            y = y.copy();
 
         DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
         final double[] elementsZ = zz.elements;
@@ -656,34 +656,391 @@ public class DiagonalDoubleMatrix2D extends WrapperDoubleMatrix2D {
         final int strideY = yy.stride();
         final int zeroY = (int) y.index(0);
 
-        if (elementsY == null || elementsZ == null)
-            throw new InternalError();
-        if (!transposeA) {
-            if (dindex >= 0) {
-                for (int i = dlength; --i >= 0;) {
-                    elementsZ[zeroZ + strideZ * i] += alpha * elements[i] * elementsY[dindex + zeroY + strideY * i];
+        final int shift = transposeA ? -dindex : dindex;
+        final int first = Math.max(0, -shift);
+        forEachRange(rowsA, rowsA, new RangeProcedure() {
+            public void apply(int firstRow, int lastRow) {
+                int idxZ = zeroZ + firstRow * strideZ;
+                int idxY = zeroY + (firstRow + shift) * strideY;
+                for (int r = firstRow; r < lastRow; r++) {
+                    int e = r - first;
+                    double value = beta == 0 ? 0 : beta * elementsZ[idxZ];
+                    if (e >= 0 && e < dlength) {
+                        value += alpha * elements[e] * elementsY[idxY];
+                    }
+                    elementsZ[idxZ] = value;
+                    idxZ += strideZ;
+                    idxY += strideY;
                 }
+            }
+        });
+        return z;
+    }
+
+    /**
+     * Linear algebraic matrix-matrix multiplication;
+     * <tt>C = alpha * op(A) x op(B) + beta*C</tt>, where <tt>A</tt> is this
+     * matrix. Multiplication by a diagonal matrix scales (and, for a
+     * subdiagonal or superdiagonal, shifts) the rows of <tt>op(B)</tt>, so the
+     * products with dense, compressed sparse (<tt>SparseRCDoubleMatrix2D</tt>,
+     * <tt>SparseCCDoubleMatrix2D</tt>) and diagonal matrices are computed
+     * directly in <tt>O(nnz(B))</tt> time and concurrently. If <tt>C</tt> is
+     * <tt>null</tt>, the result has the storage format of <tt>B</tt>. Products
+     * with a diagonal matrix on the right, <tt>op(B) x op(A)</tt>, are handled
+     * in the same way by the <tt>zMult</tt> methods of the other matrix.
+     */
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, final boolean transposeB) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        final int rowsB = transposeB ? B.columns() : B.rows();
+        final int columnsB = transposeB ? B.rows() : B.columns();
+
+        if (!this.isNoView || B.isView() && !(B instanceof DenseDoubleMatrix2D) || rowsA == 0 || columnsB == 0
+                || !(C == null || C instanceof DenseDoubleMatrix2D || B instanceof DiagonalDoubleMatrix2D)) {
+            return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+        }
+        if (rowsB != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + (transposeA ? viewDice() : this).toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort());
+        if (C != null && (C.rows() != rowsA || C.columns() != columnsB))
+            throw new IllegalArgumentException("Incompatible result matrix: "
+                    + (transposeA ? viewDice() : this).toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+
+        if (B instanceof DiagonalDoubleMatrix2D) {
+            return multDiagonal((DiagonalDoubleMatrix2D) B, C, alpha, beta, transposeA, transposeB);
+        }
+        if (B instanceof SparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D BB = (SparseRCDoubleMatrix2D) B;
+            DoubleMatrix2D T;
+            if (!transposeB) {
+                T = selectVectors(BB.rowPointers, BB.columnIndexes, BB.values, BB.columns(), alpha, transposeA, true);
+            } else {
+                T = remapIndexes(BB.rowPointers, BB.columnIndexes, BB.values, BB.rows(), alpha, !transposeA, false);
+            }
+            return addTo(T, C, beta);
+        }
+        if (B instanceof SparseCCDoubleMatrix2D) {
+            SparseCCDoubleMatrix2D BB = (SparseCCDoubleMatrix2D) B;
+            DoubleMatrix2D T;
+            if (!transposeB) {
+                T = remapIndexes(BB.dcs.p, BB.dcs.i, BB.dcs.x, BB.columns(), alpha, !transposeA, false);
             } else {
-                for (int i = dlength; --i >= 0;) {
-                    elementsZ[-dindex + zeroZ + strideZ * i] += alpha * elements[i] * elementsY[zeroY + strideY * i];
+                T = selectVectors(BB.dcs.p, BB.dcs.i, BB.dcs.x, BB.rows(), alpha, transposeA, true);
+            }
+            return addTo(T, C, beta);
+        }
+        if (B instanceof DenseDoubleMatrix2D) {
+            if (C == null) {
+                C = new DenseDoubleMatrix2D(rowsA, columnsB);
+            }
+            DenseDoubleMatrix2D BB = (DenseDoubleMatrix2D) (transposeB ? B.viewDice() : B);
+            scaleRows(BB, (DenseDoubleMatrix2D) C, alpha, beta, transposeA);
+            return C;
+        }
+        return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * op(A) x op(D), where A is row or column compressed; called by the zMult
+     * methods of the compressed matrices. C is null or dense.
+     */
+    DoubleMatrix2D multLeft(DoubleMatrix2D A, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeD) {
+        int rowsA = transposeA ? A.columns() : A.rows();
+        int columnsA = transposeA ? A.rows() : A.columns();
+        int rowsD = transposeD ? columns : rows;
+        int columnsD = transposeD ? rows : columns;
+        if (columnsA != rowsD)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + (transposeA ? A.viewDice() : A).toStringShort() + ", "
+                    + (transposeD ? viewDice() : this).toStringShort());
+        if (C != null && (C.rows() != rowsA || C.columns() != columnsD))
+            throw new IllegalArgumentException("Incompatible result matrix: "
+                    + (transposeA ? A.viewDice() : A).toStringShort() + ", "
+                    + (transposeD ? viewDice() : this).toStringShort() + ", " + C.toStringShort());
+        DoubleMatrix2D T;
+        if (A instanceof SparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D AA = (SparseRCDoubleMatrix2D) A;
+            if (!transposeA) {
+                T = remapIndexes(AA.rowPointers, AA.columnIndexes, AA.values, AA.rows(), alpha, transposeD, true);
+            } else {
+                T = selectVectors(AA.rowPointers, AA.columnIndexes, AA.values, AA.columns(), alpha, !transposeD, false);
+            }
+        } else {
+            SparseCCDoubleMatrix2D AA = (SparseCCDoubleMatrix2D) A;
+            if (!transposeA) {
+                T = selectVectors(AA.dcs.p, AA.dcs.i, AA.dcs.x, AA.rows(), alpha, !transposeD, false);
+            } else {
+                T = remapIndexes(AA.dcs.p, AA.dcs.i, AA.dcs.x, AA.columns(), alpha, transposeD, true);
+            }
+        }
+        return addTo(T, C, beta);
+    }
+
+    /*
+     * Index into elements of the only element in row k of op(D), or -1 if the
+     * row is empty. Row k of op(D) has its element in column k + shift, where
+     * shift = transpose ? -dindex : dindex.
+     */
+    private int elementIndex(int k, boolean transpose) {
+        int shift = transpose ? -dindex : dindex;
+        int e = k - Math.max(0, -shift);
+        return (e >= 0 && e < dlength) ? e : -1;
+    }
+
+    /*
+     * C = T + beta*C, or T if C is null.
+     */
+    private static DoubleMatrix2D addTo(DoubleMatrix2D T, final DoubleMatrix2D C, double beta) {
+        if (C == null)
+            return T;
+        if (beta != 1)
+            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        T.forEachNonZero(new cern.colt.function.tdouble.IntIntDoubleFunction() {
+            public double apply(int row, int column, double value) {
+                C.setQuick(row, column, C.getQuick(row, column) + value);
+                return value;
+            }
+        });
+        return C;
+    }
+
+    /*
+     * D1 x D2 is a diagonal matrix.
+     */
+    private DoubleMatrix2D multDiagonal(DiagonalDoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta,
+            boolean transposeA, boolean transposeB) {
+        int rowsA = transposeA ? columns : rows;
+        int columnsA = transposeA ? rows : columns;
+        int columnsB = transposeB ? B.rows : B.columns;
+        int shiftA = transposeA ? -dindex : dindex;
+        int shiftB = transposeB ? -B.dindex : B.dindex;
+        int d = shiftA + shiftB;
+        if (C == null) {
+            if (d < -rowsA + 1 || d > columnsB - 1) {
+                return new DiagonalDoubleMatrix2D(rowsA, columnsB, 0);
+            }
+            C = new DiagonalDoubleMatrix2D(rowsA, columnsB, d);
+        } else if (beta != 1) {
+            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        }
+        for (int r = 0; r < rowsA; r++) {
+            int e = elementIndex(r, transposeA);
+            int c = r + shiftA;
+            if (e < 0 || c >= columnsA)
+                continue;
+            int f = B.elementIndex(c, transposeB);
+            int c2 = c + shiftB;
+            if (f < 0 || c2 < 0 || c2 >= columnsB)
+                continue;
+            C.setQuick(r, c2, C.getQuick(r, c2) + alpha * elements[e] * B.elements[f]);
+        }
+        return C;
+    }
+
+    /*
+     * Returns the compressed matrix whose outer vector r is alpha*v(r) times
+     * the outer vector r + shift of the given compressed matrix (rows of a row
+     * compressed or columns of a column compressed matrix), where v(r) is the
+     * element in row r of op(D). Row r of op(D) is empty if there is no such
+     * element.
+     */
+    private DoubleMatrix2D selectVectors(final int[] pointers, final int[] indexes, final double[] values,
+            int ninner, final double alpha, final boolean transpose, boolean rowCompressed) {
+        final int nouter = transpose ? columns : rows;
+        final int shift = transpose ? -dindex : dindex;
+        final int[] pointersT = new int[nouter + 1];
+        for (int r = 0; r < nouter; r++) {
+            int s = r + shift;
+            pointersT[r + 1] = pointersT[r] + (elementIndex(r, transpose) < 0 ? 0 : pointers[s + 1] - pointers[s]);
+        }
+        final int[] indexesT = new int[pointersT[nouter]];
+        final double[] valuesT = new double[pointersT[nouter]];
+        forEachRange(nouter, pointersT[nouter], new RangeProcedure() {
+            public void apply(int firstRow, int lastRow) {
+                for (int r = firstRow; r < lastRow; r++) {
+                    int e = elementIndex(r, transpose);
+                    if (e < 0)
+                        continue;
+                    double v = alpha * elements[e];
+                    int k = pointers[r + shift];
+                    for (int p = pointersT[r]; p < pointersT[r + 1]; p++, k++) {
+                        indexesT[p] = indexes[k];
+                        valuesT[p] = v * values[k];
+                    }
                 }
             }
+        });
+        if (rowCompressed) {
+            return new SparseRCDoubleMatrix2D(nouter, ninner, pointersT, indexesT, valuesT);
         } else {
-            if (dindex >= 0) {
-                for (int i = dlength; --i >= 0;) {
-                    elementsZ[dindex + zeroZ + strideZ * i] += alpha * elements[i] * elementsY[zeroY + strideY * i];
+            return new SparseCCDoubleMatrix2D(ninner, nouter, indexesT, pointersT, valuesT);
+        }
+    }
+
+    /*
+     * Returns the compressed matrix where each inner index k of the given
+     * compressed matrix is replaced by k + shift and the value is multiplied by
+     * alpha*v(k), where v(k) is the element in row k of op(D). Entries with an
+     * empty row k of op(D) are dropped.
+     */
+    private DoubleMatrix2D remapIndexes(final int[] pointers, final int[] indexes, final double[] values,
+            final int nouter, final double alpha, final boolean transpose, boolean rowCompressed) {
+        int ninner = transpose ? rows : columns;
+        final int shift = transpose ? -dindex : dindex;
+        final int nnz = pointers[nouter];
+        final int[] pointersT;
+        final int[] indexesT;
+        final double[] valuesT;
+        if (shift == 0 && rows == columns) {
+            // every index is kept
+            pointersT = new int[nouter + 1];
+            System.arraycopy(pointers, 0, pointersT, 0, nouter + 1);
+            indexesT = new int[nnz];
+            System.arraycopy(indexes, 0, indexesT, 0, nnz);
+            valuesT = new double[nnz];
+            forEachRange(nnz, nnz, new RangeProcedure() {
+                public void apply(int first, int last) {
+                    for (int p = first; p < last; p++) {
+                        valuesT[p] = alpha * elements[indexes[p]] * values[p];
+                    }
                 }
-            } else {
-                for (int i = dlength; --i >= 0;) {
-                    elementsZ[zeroZ + strideZ * i] += alpha * elements[i] * elementsY[-dindex + zeroY + strideY * i];
+            });
+        } else {
+            final int[] counts = new int[nouter];
+            forEachRange(nouter, nnz, new RangeProcedure() {
+                public void apply(int first, int last) {
+                    for (int j = first; j < last; j++) {
+                        int count = 0;
+                        for (int k = pointers[j]; k < pointers[j + 1]; k++) {
+                            if (elementIndex(indexes[k], transpose) >= 0)
+                                count++;
+                        }
+                        counts[j] = count;
+                    }
                 }
+            });
+            pointersT = new int[nouter + 1];
+            for (int j = 0; j < nouter; j++) {
+                pointersT[j + 1] = pointersT[j] + counts[j];
             }
+            indexesT = new int[pointersT[nouter]];
+            valuesT = new double[pointersT[nouter]];
+            forEachRange(nouter, nnz, new RangeProcedure() {
+                public void apply(int first, int last) {
+                    for (int j = first; j < last; j++) {
+                        int p = pointersT[j];
+                        for (int k = pointers[j]; k < pointers[j + 1]; k++) {
+                            int e = elementIndex(indexes[k], transpose);
+                            if (e >= 0) {
+                                indexesT[p] = indexes[k] + shift;
+                                valuesT[p++] = alpha * elements[e] * values[k];
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        if (rowCompressed) {
+            return new SparseRCDoubleMatrix2D(nouter, ninner, pointersT, indexesT, valuesT);
+        } else {
+            return new SparseCCDoubleMatrix2D(ninner, nouter, indexesT, pointersT, valuesT);
+        }
+    }
 
+    /*
+     * C = alpha*op(D) x B + beta*C for dense B and C: row r of C is
+     * alpha*v(r) times row r + shift of B.
+     */
+    private void scaleRows(DenseDoubleMatrix2D B, DenseDoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transpose) {
+        final int shift = transpose ? -dindex : dindex;
+        final int rowsC = C.rows();
+        final int columnsC = C.columns();
+        final double[] elementsB = B.elements;
+        final int zeroB = (int) B.index(0, 0);
+        final int rowStrideB = B.rowStride();
+        final int columnStrideB = B.columnStride();
+        final double[] elementsC = C.elements;
+        final int zeroC = (int) C.index(0, 0);
+        final int rowStrideC = C.rowStride();
+        final int columnStrideC = C.columnStride();
+        if (Math.abs(rowStrideC) >= Math.abs(columnStrideC)) {
+            // C is traversed row by row
+            forEachRange(rowsC, (long) rowsC * columnsC, new RangeProcedure() {
+                public void apply(int firstRow, int lastRow) {
+                    for (int r = firstRow; r < lastRow; r++) {
+                        int e = elementIndex(r, transpose);
+                        double v = e < 0 ? 0 : alpha * elements[e];
+                        int idxC = zeroC + r * rowStrideC;
+                        int idxB = zeroB + (r + shift) * rowStrideB;
+                        for (int c = 0; c < columnsC; c++) {
+                            double value = beta == 0 ? 0 : beta * elementsC[idxC];
+                            if (e >= 0)
+                                value += v * elementsB[idxB];
+                            elementsC[idxC] = value;
+                            idxC += columnStrideC;
+                            idxB += columnStrideB;
+                        }
+                    }
+                }
+            });
+        } else {
+            // C is traversed column by column
+            forEachRange(columnsC, (long) rowsC * columnsC, new RangeProcedure() {
+                public void apply(int firstColumn, int lastColumn) {
+                    for (int c = firstColumn; c < lastColumn; c++) {
+                        int idxC = zeroC + c * columnStrideC;
+                        for (int r = 0; r < rowsC; r++) {
+                            int e = elementIndex(r, transpose);
+                            double value = beta == 0 ? 0 : beta * elementsC[idxC];
+                            if (e >= 0)
+                                value += alpha * elements[e]
+                                        * elementsB[zeroB + (r + shift) * rowStrideB + c * columnStrideB];
+                            elementsC[idxC] = value;
+                            idxC += rowStrideC;
+                        }
+                    }
+                }
+            });
         }
-        return z;
     }
 
-    protected DoubleMatrix2D getContent() {
-        return this;
+    /*
+     * Splits [0, n) into ranges that are processed concurrently if there is
+     * enough work.
+     */
+    private static void forEachRange(int n, long work, final RangeProcedure procedure) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (n > 1) && (work >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, n);
+            Future<?>[] futures = new Future[nthreads];
+            int k = n / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int first = j * k;
+                final int last = (j == nthreads - 1) ? n : first + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(first, last);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, n);
+        }
+    }
+
+    private interface RangeProcedure {
+        void apply(int first, int last);
     }
 }
@@ -0,0 +1,501 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleLUDecomposition;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Diagonal plus low-rank 2-d matrix holding <tt>double</tt> elements. First
+ * see the <a href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * An <tt>n x n</tt> matrix <tt>A = D + U*V'</tt> is stored as the diagonal
+ * <tt>D</tt> and a {@link LowRankDoubleMatrix2D} of rank <tt>k</tt>.
+ * <tt>zMult</tt> takes <tt>O(n*k)</tt> time. Systems are solved with the
+ * Sherman-Morrison-Woodbury formula
+ * <p>
+ * <tt>inv(D + U*V') = inv(D) - inv(D)*U*inv(I + V'*inv(D)*U)*V'*inv(D)</tt>,
+ * <p>
+ * and the determinant follows from the matrix determinant lemma
+ * <tt>det(D + U*V') = det(I + V'*inv(D)*U)*det(D)</tt>. Both need the
+ * <tt>k x k</tt> capacitance matrix <tt>I + V'*inv(D)*U</tt>, which is LU
+ * decomposed once in <tt>O(n*k^2)</tt> time and kept until the matrix
+ * changes; every further solve takes <tt>O(n*k)</tt> time. <tt>D</tt> must be
+ * nonsingular. Setting a diagonal cell changes <tt>D</tt>; setting any other
+ * cell adds a rank-one correction to the low-rank part (see
+ * {@link LowRankDoubleMatrix2D#setQuick(int, int, double)}). The
+ * <tt>assign</tt> methods take <tt>D</tt> from the diagonal of the new values
+ * and store the rest exactly. The diagonal is owned by the matrix; it is
+ * copied on the way in and out. Note that this implementation is not
+ * synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*n*(2*k+1)</tt> (plus <tt>8*n*k</tt> for the cached
+ * <tt>inv(D)*U</tt> after the first solve).
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(k)</tt> for the basic operations <tt>get</tt> and <tt>getQuick</tt>;
+ * <tt>set</tt> and <tt>setQuick</tt> take <tt>O(k)</tt> time on the diagonal
+ * and <tt>O(n*k)</tt> time elsewhere.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class DiagonalPlusLowRankDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private double[] diagonal;
+
+    private LowRankDoubleMatrix2D UV;
+
+    /*
+     * inv(D)*U and the LU decomposition of I + V'*inv(D)*U, computed on demand.
+     */
+    private DoubleMatrix2D DinvU;
+
+    private DenseDoubleLUDecomposition capacitance;
+
+    /**
+     * Constructs the matrix <tt>diag(diagonal) + U*V'</tt>. The diagonal is
+     * copied, the factors are not (they are never modified).
+     *
+     * @param diagonal
+     *            the diagonal of <tt>D</tt>.
+     * @param U
+     *            the left factor, <tt>n x k</tt>.
+     * @param V
+     *            the right factor, <tt>n x k</tt>.
+     * @throws IllegalArgumentException
+     *             if the shapes do not match.
+     */
+    public DiagonalPlusLowRankDoubleMatrix2D(double[] diagonal, DoubleMatrix2D U, DoubleMatrix2D V) {
+        this(diagonal, new LowRankDoubleMatrix2D(U, V));
+    }
+
+    /**
+     * Constructs the matrix <tt>diag(diagonal) + UV</tt>. The diagonal is
+     * copied, the factors of <tt>UV</tt> are not (they are never modified).
+     *
+     * @param diagonal
+     *            the diagonal of <tt>D</tt>.
+     * @param UV
+     *            the low-rank part.
+     * @throws IllegalArgumentException
+     *             if the shapes do not match.
+     */
+    public DiagonalPlusLowRankDoubleMatrix2D(double[] diagonal, LowRankDoubleMatrix2D UV) {
+        super(null);
+        if (UV.rows() != diagonal.length || UV.columns() != diagonal.length)
+            throw new IllegalArgumentException("Incompatible args: " + diagonal.length + ", " + UV.toStringShort());
+        setUp(diagonal.length, diagonal.length);
+        this.diagonal = diagonal.clone();
+        this.UV = new LowRankDoubleMatrix2D(UV.getU(), UV.getV());
+        content = this;
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        if (function instanceof cern.jet.math.tdouble.DoubleMult) { // x[i] = mult*x[i]
+            double alpha = ((cern.jet.math.tdouble.DoubleMult) function).multiplicator;
+            if (alpha == alpha && !Double.isInfinite(alpha)) {
+                for (int i = 0; i < rows; i++) {
+                    diagonal[i] *= alpha;
+                }
+                UV.assign(function);
+                DinvU = null;
+                capacitance = null;
+                return this;
+            }
+        }
+        return setDense(toDense().assign(function));
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleProcedure cond,
+            final cern.colt.function.tdouble.DoubleFunction function) {
+        return setDense(toDense().assign(cond, function));
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleProcedure cond, final double value) {
+        return setDense(toDense().assign(cond, value));
+    }
+
+    /**
+     * Sets all cells to the given value: <tt>D</tt> becomes zero (and thus
+     * singular) and the low-rank part has rank <tt>1</tt>.
+     */
+    public DoubleMatrix2D assign(double value) {
+        java.util.Arrays.fill(diagonal, 0);
+        UV.assign(value);
+        DinvU = null;
+        capacitance = null;
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double[] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    public DoubleMatrix2D assign(double[][] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    public DoubleMatrix2D assign(float[] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    /**
+     * Replaces all cell values with the values of another matrix. The diagonal
+     * and the factors of another diagonal plus low-rank matrix are copied; any
+     * other matrix is stored exactly, with <tt>D</tt> taken from its diagonal.
+     *
+     * @param source
+     *            the source matrix to copy from (may be identical to the
+     *            receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if
+     *             <tt>columns() != source.columns() || rows() != source.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof DiagonalPlusLowRankDoubleMatrix2D) {
+            DiagonalPlusLowRankDoubleMatrix2D other = (DiagonalPlusLowRankDoubleMatrix2D) source;
+            System.arraycopy(other.diagonal, 0, diagonal, 0, rows);
+            UV.assign(other.UV);
+            DinvU = null;
+            capacitance = null;
+            return this;
+        }
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(source));
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D y, cern.colt.function.tdouble.DoubleDoubleFunction function) {
+        return setDense(toDense().assign(y, function));
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D y, cern.colt.function.tdouble.DoubleDoubleFunction function,
+            cern.colt.list.tint.IntArrayList rowList, cern.colt.list.tint.IntArrayList columnList) {
+        return setDense(toDense().assign(y, function, rowList, columnList));
+    }
+
+    /**
+     * Returns the determinant, <tt>det(I + V'*inv(D)*U)*prod(D)</tt>. The
+     * result may overflow for large matrices; see {@link #logDet()}.
+     *
+     * @return the determinant.
+     * @throws IllegalArgumentException
+     *             if <tt>D</tt> is singular.
+     */
+    public double det() {
+        double det = capacitance().det();
+        for (int i = 0; i < rows; i++) {
+            det *= diagonal[i];
+        }
+        return det;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        return setDense(toDense().forEachNonZero(function));
+    }
+
+    /**
+     * Returns a copy of the diagonal of <tt>D</tt>.
+     *
+     * @return the diagonal of <tt>D</tt>.
+     */
+    public double[] getDiagonal() {
+        return diagonal.clone();
+    }
+
+    /**
+     * Returns the low-rank part <tt>U*V'</tt> (not a copy).
+     *
+     * @return the low-rank part.
+     */
+    public LowRankDoubleMatrix2D getLowRank() {
+        return UV;
+    }
+
+    public double getQuick(int row, int column) {
+        double value = UV.getQuick(row, column);
+        return row == column ? value + diagonal[row] : value;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Returns the natural logarithm of the absolute value of the determinant,
+     * <tt>log|det(I + V'*inv(D)*U)| + sum(log|D|)</tt>, computed with the
+     * matrix determinant lemma in <tt>O(n*k^2)</tt> time. Unlike
+     * {@link #det()}, this does not overflow.
+     *
+     * @return <tt>log(abs(det(A)))</tt>.
+     * @throws IllegalArgumentException
+     *             if <tt>D</tt> is singular.
+     */
+    public double logDet() {
+        DoubleMatrix2D LU = capacitance().getU();
+        double logDet = 0;
+        for (int i = 0; i < LU.rows(); i++) {
+            logDet += Math.log(Math.abs(LU.getQuick(i, i)));
+        }
+        for (int i = 0; i < rows; i++) {
+            logDet += Math.log(Math.abs(diagonal[i]));
+        }
+        return logDet;
+    }
+
+    /**
+     * Returns the sum of this matrix and the low-rank matrix <tt>B</tt>,
+     * <tt>D + [U1 U2]*[V1 V2]'</tt>. If <tt>tolerance > 0</tt>, the rank of
+     * the low-rank part is truncated with
+     * {@link LowRankDoubleMatrix2D#compress(double)}.
+     *
+     * @param B
+     *            the low-rank summand.
+     * @param tolerance
+     *            relative tolerance of the dropped singular values, or
+     *            <tt>0</tt> to keep the exact sum.
+     * @return a new matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>B</tt> has a different shape.
+     */
+    public DiagonalPlusLowRankDoubleMatrix2D plus(LowRankDoubleMatrix2D B, double tolerance) {
+        LowRankDoubleMatrix2D sum = UV.plus(B);
+        if (tolerance > 0)
+            sum = sum.compress(tolerance);
+        return new DiagonalPlusLowRankDoubleMatrix2D(diagonal, sum);
+    }
+
+    /**
+     * Sets the diagonal of <tt>D</tt>.
+     *
+     * @param diagonal
+     *            the new diagonal of <tt>D</tt> (copied).
+     * @throws IllegalArgumentException
+     *             if <tt>diagonal.length != rows()</tt>.
+     */
+    public void setDiagonal(double[] diagonal) {
+        if (diagonal.length != rows)
+            throw new IllegalArgumentException("Incompatible args: " + diagonal.length + ", " + toStringShort());
+        System.arraycopy(diagonal, 0, this.diagonal, 0, rows);
+        DinvU = null;
+        capacitance = null;
+    }
+
+    /**
+     * Sets a diagonal cell by changing <tt>D</tt>, or any other cell by adding
+     * a rank-one correction to the low-rank part.
+     */
+    public void setQuick(int row, int column, double value) {
+        if (row != column)
+            UV.setQuick(row, column, value);
+        else
+            diagonal[row] = value - UV.getQuick(row, row);
+        DinvU = null;
+        capacitance = null;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> with the Sherman-Morrison-Woodbury formula.
+     *
+     * @param b
+     *            the right-hand side.
+     * @return <tt>x</tt>; a new vector.
+     * @throws IllegalArgumentException
+     *             if <tt>b.size() != rows()</tt>, or if <tt>D</tt> or
+     *             <tt>A</tt> is singular.
+     */
+    public DoubleMatrix1D solve(DoubleMatrix1D b) {
+        if (b.size() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + b.toStringShort());
+        DenseDoubleLUDecomposition lu = capacitance();
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(rows);
+        for (int i = 0; i < rows; i++) {
+            x.setQuick(i, b.getQuick(i) / diagonal[i]);
+        }
+        DoubleMatrix1D t = UV.getV().zMult(x, null, 1, 0, true);
+        t = lu.solve(t);
+        return DinvU.zMult(t, x, -1, 1, false);
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> with the Sherman-Morrison-Woodbury formula.
+     *
+     * @param B
+     *            the right-hand side.
+     * @return <tt>X</tt>; a new matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>B.rows() != rows()</tt>, or if <tt>D</tt> or
+     *             <tt>A</tt> is singular.
+     */
+    public DoubleMatrix2D solve(DoubleMatrix2D B) {
+        if (B.rows() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + B.toStringShort());
+        DenseDoubleLUDecomposition lu = capacitance();
+        DoubleMatrix2D X = new DenseDoubleMatrix2D(rows, B.columns());
+        final double[] invdiag = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            invdiag[i] = 1 / diagonal[i];
+        }
+        scaleRows(invdiag, 1, B, 0, X);
+        DoubleMatrix2D T = UV.getV().zMult(X, null, 1, 0, true, false);
+        T = lu.solve(T);
+        return DinvU.zMult(T, X, -1, 1, false, false);
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rows);
+        }
+        if (columns != y.size() || rows > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + y.toStringShort()
+                    + ", " + z.toStringShort());
+        DoubleMatrix1D yy = y == z ? y.copy() : y;
+        UV.zMult(yy, z, alpha, beta, transposeA);
+        for (int i = 0; i < rows; i++) {
+            z.setQuick(i, z.getQuick(i) + alpha * diagonal[i] * yy.getQuick(i));
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rows, B.columns());
+        }
+        if (B.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rows || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        UV.zMult(B, C, alpha, beta, transposeA, false);
+        scaleRows(diagonal, alpha, B, 1, C);
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * Takes D from the diagonal of A and stores the rest of A exactly in the
+     * low-rank part. A is overwritten.
+     */
+    private DoubleMatrix2D setDense(DoubleMatrix2D A) {
+        for (int i = 0; i < rows; i++) {
+            diagonal[i] = A.getQuick(i, i);
+            A.setQuick(i, i, 0);
+        }
+        UV.setDense(A);
+        DinvU = null;
+        capacitance = null;
+        return this;
+    }
+
+    /*
+     * Returns D + U*V' as a new dense matrix.
+     */
+    private DoubleMatrix2D toDense() {
+        DoubleMatrix2D A = UV.toDense();
+        for (int i = 0; i < rows; i++) {
+            A.setQuick(i, i, A.getQuick(i, i) + diagonal[i]);
+        }
+        return A;
+    }
+
+    /*
+     * Returns the LU decomposition of I + V'*inv(D)*U, computing it (and
+     * inv(D)*U) if needed.
+     */
+    private DenseDoubleLUDecomposition capacitance() {
+        if (capacitance == null) {
+            for (int i = 0; i < rows; i++) {
+                if (diagonal[i] == 0)
+                    throw new IllegalArgumentException("Diagonal matrix is singular.");
+            }
+            final double[] invdiag = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                invdiag[i] = 1 / diagonal[i];
+            }
+            DoubleMatrix2D U = UV.getU();
+            DoubleMatrix2D W = new DenseDoubleMatrix2D(rows, U.columns());
+            scaleRows(invdiag, 1, U, 0, W);
+            DoubleMatrix2D K = UV.getV().zMult(W, null, 1, 0, true, false);
+            for (int i = 0; i < K.rows(); i++) {
+                K.setQuick(i, i, K.getQuick(i, i) + 1);
+            }
+            DenseDoubleLUDecomposition lu = new DenseDoubleLUDecomposition(K);
+            if (!lu.isNonsingular())
+                throw new IllegalArgumentException("Matrix is singular.");
+            DinvU = W;
+            capacitance = lu;
+        }
+        return capacitance;
+    }
+
+    /*
+     * C(i,:) = alpha*d[i]*B(i,:) + beta*C(i,:), concurrently over the rows.
+     */
+    private static void scaleRows(final double[] d, final double alpha, final DoubleMatrix2D B, final double beta,
+            final DoubleMatrix2D C) {
+        final int rows = C.rows();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && ((long) rows * C.columns() >= ConcurrencyUtils.getThreadsBeginN_2D()) && (rows > 1)) {
+            nthreads = Math.min(nthreads, rows);
+            Future<?>[] futures = new Future[nthreads];
+            int k = rows / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstRow = j * k;
+                final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        scaleRows(d, alpha, B, beta, C, firstRow, lastRow);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            scaleRows(d, alpha, B, beta, C, 0, rows);
+        }
+    }
+
+    private static void scaleRows(double[] d, double alpha, DoubleMatrix2D B, double beta, DoubleMatrix2D C,
+            int firstRow, int lastRow) {
+        int columns = C.columns();
+        for (int i = firstRow; i < lastRow; i++) {
+            double s = alpha * d[i];
+            for (int j = 0; j < columns; j++) {
+                C.setQuick(i, j, s * B.getQuick(i, j) + beta * C.getQuick(i, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 1-d matrix (aka <i>vector</i>) holding <tt>double</tt> elements in
+ * direct (off-heap) memory. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in a direct <tt>java.nio.ByteBuffer</tt>, hence
+ * they do not count towards the Java heap and are never moved by the garbage
+ * collector. The memory is either allocated by this vector or wraps an
+ * existing buffer without copying. See {@link DirectDoubleMatrix2D} for the
+ * lifetime of the memory. Note that this implementation is not synchronized.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class DirectDoubleMatrix1D extends WrapperDoubleMatrix1D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Number of elements read by one bulk operation.
+     */
+    private static final int BLOCK_SIZE = 1 << 12;
+
+    transient ChunkedDoubleBuffer elements;
+
+    /*
+     * Whether the memory is owned (and thus released) by this vector.
+     */
+    private final boolean ownsMemory;
+
+    /**
+     * Constructs a matrix with a given number of cells. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param size
+     *            the number of cells the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>size<0</tt>.
+     */
+    public DirectDoubleMatrix1D(int size) {
+        this(size, ChunkedDoubleBuffer.allocateDirect(size, ChunkedDoubleBuffer.DEFAULT_CHUNK_SHIFT), true);
+    }
+
+    /**
+     * Constructs a matrix viewing the elements between the position and the
+     * limit of the given buffer; no elements are copied. The elements are read
+     * in the byte order of the buffer. The memory is not released by
+     * {@link #close()}, it remains owned by the creator of the buffer.
+     *
+     * @param buffer
+     *            the buffer holding the elements.
+     */
+    public DirectDoubleMatrix1D(ByteBuffer buffer) {
+        this(buffer.remaining() / 8, ChunkedDoubleBuffer.wrap(buffer), false);
+    }
+
+    DirectDoubleMatrix1D(int size, ChunkedDoubleBuffer elements, boolean ownsMemory) {
+        super(null);
+        setUp(size);
+        if (elements.size() < size)
+            throw new IllegalArgumentException("elements.size() < size");
+        this.elements = elements;
+        this.ownsMemory = ownsMemory;
+        content = this;
+    }
+
+    public double aggregate(final cern.colt.function.tdouble.DoubleDoubleFunction aggr,
+            final cern.colt.function.tdouble.DoubleFunction f) {
+        if (size == 0)
+            return Double.NaN;
+        double a = 0;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_1D())) {
+            nthreads = Math.min(nthreads, size);
+            Future<?>[] futures = new Future[nthreads];
+            int k = size / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Callable<Double>() {
+                    public Double call() throws Exception {
+                        return Double.valueOf(aggregate(firstIdx, lastIdx, aggr, f));
+                    }
+                });
+            }
+            a = ConcurrencyUtils.waitForCompletion(futures, aggr);
+        } else {
+            a = aggregate(0, size, aggr, f);
+        }
+        return a;
+    }
+
+    public DoubleMatrix1D assign(final double value) {
+        elements.fill(0, size, value);
+        return this;
+    }
+
+    public DoubleMatrix1D assign(final double[] values) {
+        if (values.length != size)
+            throw new IllegalArgumentException("Must have same dimensions: length=" + values.length + " size()="
+                    + size());
+        elements.put(0, values, 0, size);
+        return this;
+    }
+
+    public DoubleMatrix1D assign(DoubleMatrix1D source) {
+        if (source == this)
+            return this;
+        checkSize(source);
+        if (source instanceof DenseDoubleMatrix1D && !source.isView()) {
+            elements.put(0, (double[]) source.elements(), 0, size);
+            return this;
+        }
+        if (source instanceof DirectDoubleMatrix1D) {
+            ChunkedDoubleBuffer other = ((DirectDoubleMatrix1D) source).elements;
+            double[] block = new double[Math.min(size, BLOCK_SIZE)];
+            for (int i = 0; i < size; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, size - i);
+                other.get(i, block, 0, n);
+                elements.put(i, block, 0, n);
+            }
+            return this;
+        }
+        return super.assign(source);
+    }
+
+    /**
+     * Releases the memory allocated by this matrix without waiting for the
+     * garbage collector. Wrapped memory is not released. This matrix (and any
+     * of its views) must not be used after it has been closed.
+     */
+    public void close() {
+        ChunkedDoubleBuffer elems = elements;
+        elements = null;
+        if (ownsMemory && elems != null)
+            elems.free();
+    }
+
+    /**
+     * Returns the chunks holding the elements of this matrix. Unless the
+     * matrix has more than 2^27 cells, there is exactly one chunk.
+     *
+     * @return the chunks holding the elements of this matrix.
+     */
+    public DoubleBuffer[] elements() {
+        return elements.chunks();
+    }
+
+    public double getQuick(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this matrix has been closed.
+     *
+     * @return <tt>true</tt> if this matrix has been closed.
+     */
+    public boolean isClosed() {
+        return elements == null;
+    }
+
+    public DoubleMatrix1D like(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public DoubleMatrix2D like2D(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public void setQuick(int index, double value) {
+        elements.put(index, value);
+    }
+
+    public double[] toArray() {
+        double[] values = new double[size];
+        elements.get(0, values, 0, size);
+        return values;
+    }
+
+    public double zDotProduct(DoubleMatrix1D y, int from, int length) {
+        if (from < 0 || length <= 0)
+            return 0;
+        int tail = (int) Math.min(Math.min(size, y.size()), from + length);
+        if (tail <= from)
+            return 0;
+        double sum = 0;
+        double[] block = new double[Math.min(tail - from, BLOCK_SIZE)];
+        if (y instanceof DenseDoubleMatrix1D && !y.isView()) {
+            double[] yElements = (double[]) y.elements();
+            for (int i = from; i < tail; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, tail - i);
+                elements.get(i, block, 0, n);
+                for (int k = 0; k < n; k++) {
+                    sum += block[k] * yElements[i + k];
+                }
+            }
+        } else {
+            for (int i = from; i < tail; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, tail - i);
+                elements.get(i, block, 0, n);
+                for (int k = 0; k < n; k++) {
+                    sum += block[k] * y.getQuick(i + k);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private double aggregate(int firstIdx, int lastIdx, cern.colt.function.tdouble.DoubleDoubleFunction aggr,
+            cern.colt.function.tdouble.DoubleFunction f) {
+        double[] block = new double[Math.min(lastIdx - firstIdx, BLOCK_SIZE)];
+        double a = f.apply(elements.get(firstIdx));
+        for (int i = firstIdx + 1; i < lastIdx; i += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, lastIdx - i);
+            elements.get(i, block, 0, n);
+            for (int k = 0; k < n; k++) {
+                a = aggr.apply(a, f.apply(block[k]));
+            }
+        }
+        return a;
+    }
+
+    protected DoubleMatrix1D getContent() {
+        return this;
+    }
+}
@@ -0,0 +1,723 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 2-d matrix holding <tt>double</tt> elements in direct (off-heap)
+ * memory. First see the <a href="package-summary.html">package summary</a> and
+ * javadoc <a href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in row major order in one or more direct
+ * <tt>java.nio.ByteBuffer</tt>s of at most 1 GB each, hence they do not
+ * count towards the Java heap, are never moved by the garbage collector and
+ * the number of cells can exceed 2^31. The memory is either allocated by this
+ * matrix or wraps an existing buffer without copying, e.g. memory filled by
+ * native code and passed through JNI <tt>NewDirectByteBuffer</tt>.
+ * <p>
+ * The memory allocated by a matrix is released by {@link #close()}, without
+ * waiting for the garbage collector. A closed matrix (and any of its views)
+ * must not be used anymore.
+ * <p>
+ * <tt>aggregate</tt> and <tt>assign</tt> read and write whole rows with bulk
+ * operations. <tt>zMult</tt> works out-of-core: the operands are read in
+ * panels that fit into a configurable memory budget and the next panel is read
+ * asynchronously while the current one is multiplied, so the matrix can be
+ * larger than the physical memory (see {@link MappedDoubleMatrix2D}). All
+ * other operations (including views) work element by element. Note that this
+ * implementation is not synchronized.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class DirectDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Number of bytes read by one block of a streaming kernel.
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Default memory budget (in bytes) of the out-of-core <tt>zMult</tt>
+     * operations.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 1L << 26;
+
+    transient ChunkedDoubleBuffer elements;
+
+    /*
+     * Whether the memory is owned (and thus released) by this matrix.
+     */
+    private final boolean ownsMemory;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns. All entries
+     * are initially <tt>0</tt>.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt>.
+     */
+    public DirectDoubleMatrix2D(int rows, int columns) {
+        this(rows, columns, ChunkedDoubleBuffer.allocateDirect((long) rows * columns,
+                ChunkedDoubleBuffer.DEFAULT_CHUNK_SHIFT), true);
+    }
+
+    /**
+     * Constructs a matrix viewing the elements between the position and the
+     * limit of the given buffer; no elements are copied. The elements are read
+     * in the byte order of the buffer. The memory is not released by
+     * {@link #close()}, it remains owned by the creator of the buffer.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param buffer
+     *            the buffer holding <tt>rows*columns</tt> elements in row
+     *            major order.
+     * @throws IllegalArgumentException
+     *             if <tt>buffer.remaining() < 8*rows*columns</tt>.
+     */
+    public DirectDoubleMatrix2D(int rows, int columns, ByteBuffer buffer) {
+        this(rows, columns, ChunkedDoubleBuffer.wrap(buffer), false);
+    }
+
+    DirectDoubleMatrix2D(int rows, int columns, ChunkedDoubleBuffer elements, boolean ownsMemory) {
+        super(null);
+        try {
+            setUp(rows, columns);
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        if (elements.size() < (long) rows * columns)
+            throw new IllegalArgumentException("elements.size() < rows*columns");
+        this.elements = elements;
+        this.ownsMemory = ownsMemory;
+        content = this;
+    }
+
+    public double aggregate(final cern.colt.function.tdouble.DoubleDoubleFunction aggr,
+            final cern.colt.function.tdouble.DoubleFunction f) {
+        if (size() == 0)
+            return Double.NaN;
+        double a = 0;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, rows);
+            Future<?>[] futures = new Future[nthreads];
+            int k = rows / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstRow = j * k;
+                final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+                futures[j] = ConcurrencyUtils.submit(new Callable<Double>() {
+                    public Double call() throws Exception {
+                        return Double.valueOf(aggregateRows(firstRow, lastRow, aggr, f));
+                    }
+                });
+            }
+            a = ConcurrencyUtils.waitForCompletion(futures, aggr);
+        } else {
+            a = aggregateRows(0, rows, aggr, f);
+        }
+        return a;
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || (size() < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, rows);
+        if (nthreads == 0)
+            return this;
+        Future<?>[] futures = new Future[nthreads];
+        int k = rows / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstRow = j * k;
+            final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    double[] row = new double[columns];
+                    for (int r = firstRow; r < lastRow; r++) {
+                        long idx = (long) r * columns;
+                        elements.get(idx, row, 0, columns);
+                        for (int c = 0; c < columns; c++) {
+                            row[c] = function.apply(row[c]);
+                        }
+                        elements.put(idx, row, 0, columns);
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        elements.fill(0, size(), value);
+        return this;
+    }
+
+    public DoubleMatrix2D assign(final double[] values) {
+        if (values.length != size())
+            throw new IllegalArgumentException("Must have same length: length=" + values.length + " rows()*columns()="
+                    + size());
+        elements.put(0, values, 0, values.length);
+        return this;
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof DenseDoubleMatrix2D && !source.isView()) {
+            elements.put(0, (double[]) source.elements(), 0, (int) size());
+            return this;
+        }
+        if (source instanceof DirectDoubleMatrix2D) {
+            ChunkedDoubleBuffer other = ((DirectDoubleMatrix2D) source).elements;
+            double[] row = new double[columns];
+            for (int r = 0; r < rows; r++) {
+                long idx = (long) r * columns;
+                other.get(idx, row, 0, columns);
+                elements.put(idx, row, 0, columns);
+            }
+            return this;
+        }
+        return super.assign(source);
+    }
+
+    /**
+     * Releases the memory allocated by this matrix without waiting for the
+     * garbage collector. Wrapped memory is not released. This matrix (and any
+     * of its views) must not be used after it has been closed.
+     */
+    public void close() {
+        ChunkedDoubleBuffer elems = elements;
+        elements = null;
+        if (ownsMemory && elems != null)
+            elems.free();
+    }
+
+    /**
+     * Returns the chunks holding the elements of this matrix. Element
+     * <tt>[row,column]</tt> is stored at index <tt>row*columns+column</tt>
+     * and chunk <tt>i</tt> holds the indexes
+     * <tt>[i*chunks[0].capacity(), (i+1)*chunks[0].capacity())</tt>. Unless
+     * the matrix has more than 2^27 cells, there is exactly one chunk.
+     *
+     * @return the chunks holding the elements of this matrix.
+     */
+    public DoubleBuffer[] elements() {
+        return elements.chunks();
+    }
+
+    public double getQuick(int row, int column) {
+        return elements.get((long) row * columns + column);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this matrix has been closed.
+     *
+     * @return <tt>true</tt> if this matrix has been closed.
+     */
+    public boolean isClosed() {
+        return elements == null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this matrix cannot be modified.
+     *
+     * @return <tt>true</tt> if this matrix cannot be modified.
+     */
+    public boolean isReadOnly() {
+        return elements.isReadOnly();
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        if ((long) rows * columns > Integer.MAX_VALUE)
+            return new DenseLargeDoubleMatrix2D(rows, columns);
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        elements.put((long) row * columns + column, value);
+    }
+
+    /**
+     * Returns the number of cells which is <tt>rows()*columns()</tt>, computed
+     * in <tt>long</tt> arithmetic since it may exceed
+     * <tt>Integer.MAX_VALUE</tt>.
+     */
+    public long size() {
+        return (long) rows * columns;
+    }
+
+    /**
+     * Linear algebraic matrix-vector multiplication;
+     * <tt>z = alpha * A * y + beta*z</tt> or
+     * <tt>z = alpha * A' * y + beta*z</tt>. The rows of this matrix are read
+     * in panels that fit into the memory budget; the next panel is read
+     * asynchronously while the current one is multiplied in parallel.
+     *
+     * @see #setMemoryBudget(long)
+     */
+    public DoubleMatrix1D zMult(final DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        final DoubleMatrix1D zz;
+        if (z == null) {
+            zz = new DenseDoubleMatrix1D(m);
+        } else {
+            zz = z;
+        }
+        if (n != y.size() || m > zz.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + zz.toStringShort());
+        if (m == 0)
+            return zz;
+        if (n == 0)
+            return zz.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        final double[] yElements = y.toArray();
+        PanelReader reader = new PanelReader(this, panelRows(2L * columns));
+        if (transposeA) {
+            final double[] s = new double[columns];
+            int firstRow;
+            while ((firstRow = reader.advance()) >= 0) {
+                final double[] panel = reader.panel();
+                final int height = reader.height();
+                final int r0 = firstRow;
+                forEachRange(columns, (long) height * columns, new RangeProcedure() {
+                    public void apply(int first, int last) {
+                        for (int r = 0, idx = 0; r < height; r++, idx += columns) {
+                            double yr = yElements[r0 + r];
+                            if (yr != 0) {
+                                for (int c = first; c < last; c++) {
+                                    s[c] += panel[idx + c] * yr;
+                                }
+                            }
+                        }
+                    }
+                });
+            }
+            for (int c = 0; c < columns; c++) {
+                zz.setQuick(c, alpha * s[c] + beta * zz.getQuick(c));
+            }
+        } else {
+            int firstRow;
+            while ((firstRow = reader.advance()) >= 0) {
+                final double[] panel = reader.panel();
+                final int r0 = firstRow;
+                forEachRange(reader.height(), (long) reader.height() * columns, new RangeProcedure() {
+                    public void apply(int first, int last) {
+                        for (int r = first, idx = first * columns; r < last; r++) {
+                            double s = 0;
+                            for (int c = 0; c < columns; c++) {
+                                s += panel[idx++] * yElements[c];
+                            }
+                            zz.setQuick(r0 + r, alpha * s + beta * zz.getQuick(r0 + r));
+                        }
+                    }
+                });
+            }
+        }
+        return zz;
+    }
+
+    /**
+     * Linear algebraic matrix-matrix multiplication;
+     * <tt>C = alpha * op(A) x op(B) + beta*C</tt>, where <tt>A == this</tt>.
+     * The product is computed out-of-core: the rows of this matrix are read in
+     * panels and <tt>B</tt> is read in blocks of columns, such that all
+     * operands that are held on the heap fit into the memory budget. The next
+     * panel is read asynchronously while the current one is multiplied in
+     * parallel. With <tt>transposeA</tt> set (e.g. <tt>A'A</tt> or
+     * <tt>A'B</tt> for a tall matrix <tt>A</tt>), the panels of <tt>A</tt>
+     * and <tt>B</tt> are streamed together and only the result is held in
+     * memory.
+     *
+     * @see #setMemoryBudget(long)
+     */
+    public DoubleMatrix2D zMult(final DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, final boolean transposeB) {
+        final DoubleMatrix2D BB = transposeB ? B.viewDice() : B;
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        final int p = BB.columns();
+        final DoubleMatrix2D CC;
+        if (C == null) {
+            CC = like(m, p);
+        } else {
+            CC = C;
+        }
+        if (BB.rows() != n)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort());
+        if (CC.rows() != m || CC.columns() != p)
+            throw new IllegalArgumentException("Incompatibe result matrix: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort() + ", "
+                    + CC.toStringShort());
+        if (this == CC || B == CC)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        if (m == 0 || p == 0)
+            return CC;
+        if (transposeA) {
+            if ((long) m * p > Integer.MAX_VALUE)
+                return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+            transposeMult(BB, CC, alpha, beta);
+        } else {
+            mult(BB, CC, alpha, beta);
+        }
+        return CC;
+    }
+
+    /**
+     * Returns the maximum number of bytes of heap memory used by the
+     * out-of-core <tt>zMult</tt> operations to hold panels of the operands.
+     *
+     * @return the memory budget in bytes.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the maximum number of bytes of heap memory used by the out-of-core
+     * <tt>zMult</tt> operations to hold panels of the operands. Larger panels
+     * mean fewer passes over <tt>B</tt>; the budget is exceeded only if a
+     * single row (or, for <tt>A'B</tt>, the result) does not fit into it.
+     *
+     * @param memoryBudget
+     *            the memory budget in bytes.
+     * @throws IllegalArgumentException
+     *             if <tt>memoryBudget <= 0</tt>.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("memoryBudget <= 0");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Hints that the given rows are going to be read soon. Called by the
+     * streaming kernels before a block of rows is processed; the default
+     * implementation does nothing.
+     *
+     * @param firstRow
+     *            the first row.
+     * @param lastRow
+     *            the row after the last row.
+     */
+    protected void readAhead(int firstRow, int lastRow) {
+    }
+
+    /*
+     * C = alpha*A*B + beta*C: A is read in row panels, B in column blocks.
+     */
+    private void mult(final DoubleMatrix2D B, final DoubleMatrix2D C, final double alpha, final double beta) {
+        final int n = columns;
+        final int p = B.columns();
+        // half of the budget for a block of B, half for two panels of A
+        int blockColumns = (int) Math.max(1, Math.min(p, memoryBudget / 2 / (8L * Math.max(1, n))));
+        final double[] block = new double[n * blockColumns];
+        for (int c0 = 0; c0 < p; c0 += blockColumns) {
+            final int c1 = Math.min(p, c0 + blockColumns);
+            final int width = c1 - c0;
+            final int col0 = c0;
+            readColumns(B, c0, c1, block);
+            PanelReader reader = new PanelReader(this, panelRows(4L * n));
+            int firstRow;
+            while ((firstRow = reader.advance()) >= 0) {
+                final double[] panel = reader.panel();
+                final int r0 = firstRow;
+                forEachRange(reader.height(), (long) reader.height() * n * width, new RangeProcedure() {
+                    public void apply(int first, int last) {
+                        double[] s = new double[width];
+                        for (int r = first; r < last; r++) {
+                            java.util.Arrays.fill(s, 0);
+                            int idx = r * n;
+                            for (int k = 0; k < n; k++) {
+                                double a = panel[idx + k];
+                                if (a != 0) {
+                                    for (int j = 0, b = k * width; j < width; j++) {
+                                        s[j] += a * block[b + j];
+                                    }
+                                }
+                            }
+                            for (int j = 0; j < width; j++) {
+                                C.setQuick(r0 + r, col0 + j, alpha * s[j] + beta * C.getQuick(r0 + r, col0 + j));
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /*
+     * C = alpha*A'*B + beta*C: the row panels of A and B are streamed
+     * together, C is accumulated on the heap.
+     */
+    private void transposeMult(final DoubleMatrix2D B, final DoubleMatrix2D C, final double alpha, final double beta) {
+        final int n = columns;
+        final int p = B.columns();
+        final double[] s = new double[n * p];
+        final boolean self = B == this;
+        long budget = Math.max(0, memoryBudget - 8L * n * p);
+        int panelRows = (int) Math.max(1, Math.min(rows, budget / (16L * (self ? n : n + p))));
+        PanelReader readerA = new PanelReader(this, panelRows);
+        PanelReader readerB = self ? null : new PanelReader(B, panelRows);
+        while (readerA.advance() >= 0) {
+            final double[] a = readerA.panel();
+            if (!self)
+                readerB.advance();
+            final double[] b = self ? a : readerB.panel();
+            final int height = readerA.height();
+            forEachRange(n, (long) height * n * p, new RangeProcedure() {
+                public void apply(int first, int last) {
+                    for (int r = 0; r < height; r++) {
+                        int idxA = r * n;
+                        int idxB = r * p;
+                        for (int i = first; i < last; i++) {
+                            double ari = a[idxA + i];
+                            if (ari != 0) {
+                                for (int j = 0, idx = i * p; j < p; j++) {
+                                    s[idx + j] += ari * b[idxB + j];
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                C.setQuick(i, j, alpha * s[i * p + j] + beta * C.getQuick(i, j));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows of a panel, such that two panels of the given
+     * number of elements per row fit into the memory budget.
+     */
+    private int panelRows(long elementsPerRow) {
+        return (int) Math.max(1, Math.min(rows, memoryBudget / (8L * Math.max(1, elementsPerRow))));
+    }
+
+    /**
+     * Copies the columns <tt>[firstColumn, lastColumn)</tt> of M into dst (row
+     * major).
+     */
+    private static void readColumns(DoubleMatrix2D M, int firstColumn, int lastColumn, double[] dst) {
+        int width = lastColumn - firstColumn;
+        int rows = M.rows();
+        if (M instanceof DirectDoubleMatrix2D) {
+            ChunkedDoubleBuffer elems = ((DirectDoubleMatrix2D) M).elements;
+            long columns = M.columns();
+            for (int r = 0; r < rows; r++) {
+                elems.get(r * columns + firstColumn, dst, r * width, width);
+            }
+        } else {
+            for (int r = 0, idx = 0; r < rows; r++) {
+                for (int c = firstColumn; c < lastColumn; c++) {
+                    dst[idx++] = M.getQuick(r, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the rows <tt>[firstRow, lastRow)</tt> of M into dst (row major).
+     */
+    private static void readRows(DoubleMatrix2D M, int firstRow, int lastRow, double[] dst) {
+        int columns = M.columns();
+        if (M instanceof DirectDoubleMatrix2D) {
+            ((DirectDoubleMatrix2D) M).elements.get((long) firstRow * columns, dst, 0, (lastRow - firstRow)
+                    * columns);
+        } else {
+            for (int r = firstRow, idx = 0; r < lastRow; r++) {
+                for (int c = 0; c < columns; c++) {
+                    dst[idx++] = M.getQuick(r, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits <tt>[0, n)</tt> into ranges that are processed concurrently if
+     * the amount of work is large enough.
+     */
+    private static void forEachRange(int n, long work, final RangeProcedure procedure) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (work >= ConcurrencyUtils.getThreadsBeginN_2D()) && (n > 1)) {
+            nthreads = Math.min(nthreads, n);
+            Future<?>[] futures = new Future[nthreads];
+            int k = n / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int first = j * k;
+                final int last = (j == nthreads - 1) ? n : first + k;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(first, last);
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, n);
+        }
+    }
+
+    private interface RangeProcedure {
+        void apply(int first, int last);
+    }
+
+    /**
+     * Reads the rows of a matrix into heap memory one panel at a time. While a
+     * panel is being processed, the next one is read by another thread, so
+     * that I/O (page faults of a memory-mapped matrix) overlaps with
+     * computation.
+     */
+    private static class PanelReader {
+
+        private final DoubleMatrix2D source;
+
+        private final int panelRows;
+
+        private double[] current;
+
+        private double[] next;
+
+        private int currentRow = -1;
+
+        private int nextRow = 0;
+
+        private Future<?> pending;
+
+        PanelReader(DoubleMatrix2D source, int panelRows) {
+            this.source = source;
+            this.panelRows = Math.max(1, Math.min(source.rows(), panelRows));
+            this.current = new double[this.panelRows * source.columns()];
+            this.next = new double[this.panelRows * source.columns()];
+            schedule();
+        }
+
+        /**
+         * Makes the next panel current and returns its first row, or -1 if all
+         * rows have been read.
+         */
+        int advance() {
+            if (nextRow >= source.rows())
+                return -1;
+            ConcurrencyUtils.waitForCompletion(new Future[] { pending });
+            double[] tmp = current;
+            current = next;
+            next = tmp;
+            currentRow = nextRow;
+            nextRow += panelRows;
+            schedule();
+            return currentRow;
+        }
+
+        /**
+         * Returns the current panel, row major.
+         */
+        double[] panel() {
+            return current;
+        }
+
+        /**
+         * Returns the number of rows of the current panel.
+         */
+        int height() {
+            return Math.min(source.rows(), currentRow + panelRows) - currentRow;
+        }
+
+        private void schedule() {
+            if (nextRow >= source.rows())
+                return;
+            final double[] buffer = next;
+            final int firstRow = nextRow;
+            final int lastRow = Math.min(source.rows(), nextRow + panelRows);
+            pending = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    readRows(source, firstRow, lastRow, buffer);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of rows read by one block of a streaming kernel.
+     */
+    private int blockRows() {
+        return Math.max(1, BLOCK_SIZE / (8 * Math.max(1, columns)));
+    }
+
+    private double aggregateRows(int firstRow, int lastRow, cern.colt.function.tdouble.DoubleDoubleFunction aggr,
+            cern.colt.function.tdouble.DoubleFunction f) {
+        int blockRows = blockRows();
+        double[] row = new double[columns];
+        double a = 0;
+        boolean first = true;
+        for (int r0 = firstRow; r0 < lastRow; r0 += blockRows) {
+            int r1 = Math.min(lastRow, r0 + blockRows);
+            if (r1 < lastRow)
+                readAhead(r1, Math.min(lastRow, r1 + blockRows));
+            for (int r = r0; r < r1; r++) {
+                elements.get((long) r * columns, row, 0, columns);
+                int c = 0;
+                if (first) {
+                    a = f.apply(row[0]);
+                    c = 1;
+                    first = false;
+                }
+                for (; c < columns; c++) {
+                    a = aggr.apply(a, f.apply(row[c]));
+                }
+            }
+        }
+        return a;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+}
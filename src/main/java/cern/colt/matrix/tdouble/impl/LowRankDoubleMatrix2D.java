@@ -0,0 +1,408 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleQRDecomposition;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition;
+
+/**
+ * Low-rank 2-d matrix holding <tt>double</tt> elements. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * An <tt>m x n</tt> matrix of rank at most <tt>k</tt> is stored in factored
+ * form <tt>A = U*V'</tt>, where <tt>U</tt> is <tt>m x k</tt> and <tt>V</tt>
+ * is <tt>n x k</tt>. <tt>zMult</tt> never forms <tt>A</tt>: <tt>A*y</tt> is
+ * computed as <tt>U*(V'*y)</tt> in <tt>O((m+n)*k)</tt> time. The sum of two
+ * low-rank matrices is formed exactly by concatenating the factors, which adds
+ * the ranks; {@link #compress(double, int)} truncates the rank again with a
+ * QR decomposition of the factors followed by an SVD of the small
+ * <tt>k x k</tt> core. Setting a single cell adds a rank-one correction, so
+ * the rank grows by one with every cell set; the <tt>assign</tt> methods
+ * instead replace the factors with an exact factorization of the new values,
+ * of rank <tt>min(m,n)</tt>. Use {@link #compress(double)} to truncate the
+ * rank afterwards. The factors themselves are never modified, so factors
+ * passed to the constructor stay unchanged. Note that this implementation is
+ * not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*(m+n)*k</tt>.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(k)</tt> for the basic operations <tt>get</tt> and <tt>getQuick</tt>,
+ * <tt>O((m+n)*k)</tt> for <tt>set</tt> and <tt>setQuick</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class LowRankDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The factors, A = U*V'.
+     */
+    private DoubleMatrix2D U;
+
+    private DoubleMatrix2D V;
+
+    /**
+     * Constructs an <tt>rows x columns</tt> matrix of rank <tt>0</tt>, i.e. a
+     * zero matrix.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt>.
+     */
+    public LowRankDoubleMatrix2D(int rows, int columns) {
+        this(new DenseDoubleMatrix2D(rows, 0), new DenseDoubleMatrix2D(columns, 0));
+    }
+
+    /**
+     * Constructs the matrix <tt>U*V'</tt>. The factors are not copied.
+     *
+     * @param U
+     *            the left factor, <tt>rows x k</tt>.
+     * @param V
+     *            the right factor, <tt>columns x k</tt>.
+     * @throws IllegalArgumentException
+     *             if <tt>U.columns() != V.columns()</tt>.
+     */
+    public LowRankDoubleMatrix2D(DoubleMatrix2D U, DoubleMatrix2D V) {
+        super(null);
+        if (U.columns() != V.columns())
+            throw new IllegalArgumentException("Incompatible args: " + U.toStringShort() + ", " + V.toStringShort());
+        setUp(U.rows(), V.rows());
+        this.U = U;
+        this.V = V;
+        content = this;
+    }
+
+    /**
+     * Sets all cells to the given value. The result has rank <tt>1</tt> (or
+     * <tt>0</tt> if <tt>value == 0</tt>).
+     *
+     * @param value
+     *            the value to be filled into the cells.
+     * @return <tt>this</tt> (for convenience only).
+     */
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        if (function instanceof cern.jet.math.tdouble.DoubleMult) { // x[i] = mult*x[i]
+            double alpha = ((cern.jet.math.tdouble.DoubleMult) function).multiplicator;
+            if (alpha == alpha && !Double.isInfinite(alpha)) {
+                U = U.copy().assign(function);
+                return this;
+            }
+        }
+        return setDense(toDense().assign(function));
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleProcedure cond,
+            final cern.colt.function.tdouble.DoubleFunction function) {
+        return setDense(toDense().assign(cond, function));
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleProcedure cond, final double value) {
+        return setDense(toDense().assign(cond, value));
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        if (value == 0) {
+            U = new DenseDoubleMatrix2D(rows, 0);
+            V = new DenseDoubleMatrix2D(columns, 0);
+        } else {
+            U = new DenseDoubleMatrix2D(rows, 1).assign(value);
+            V = new DenseDoubleMatrix2D(columns, 1).assign(1);
+        }
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double[] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    public DoubleMatrix2D assign(double[][] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    public DoubleMatrix2D assign(float[] values) {
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(values));
+    }
+
+    /**
+     * Replaces all cell values with the values of another matrix. The factors
+     * of another low-rank matrix are copied; any other matrix is stored
+     * exactly, with rank <tt>min(rows(), columns())</tt>.
+     *
+     * @param source
+     *            the source matrix to copy from (may be identical to the
+     *            receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if
+     *             <tt>columns() != source.columns() || rows() != source.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof LowRankDoubleMatrix2D) {
+            LowRankDoubleMatrix2D other = (LowRankDoubleMatrix2D) source;
+            U = other.U.copy();
+            V = other.V.copy();
+            return this;
+        }
+        return setDense(new DenseDoubleMatrix2D(rows, columns).assign(source));
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D y, cern.colt.function.tdouble.DoubleDoubleFunction function) {
+        return setDense(toDense().assign(y, function));
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D y, cern.colt.function.tdouble.DoubleDoubleFunction function,
+            cern.colt.list.tint.IntArrayList rowList, cern.colt.list.tint.IntArrayList columnList) {
+        return setDense(toDense().assign(y, function, rowList, columnList));
+    }
+
+    /**
+     * Returns a low-rank approximation of this matrix. The factors are
+     * orthogonalized (<tt>U = Qu*Ru</tt>, <tt>V = Qv*Rv</tt>) and the singular
+     * values of the <tt>k x k</tt> core <tt>Ru*Rv'</tt> smaller than
+     * <tt>tolerance</tt> times the largest one are dropped. This takes
+     * <tt>O((m+n)*k^2 + k^3)</tt> time. The result is the best approximation
+     * of its rank in the 2-norm.
+     *
+     * @param tolerance
+     *            relative tolerance of the dropped singular values.
+     * @param maxRank
+     *            upper bound on the rank of the result.
+     * @return a new low-rank matrix with orthogonal columns in <tt>V</tt>.
+     */
+    public LowRankDoubleMatrix2D compress(double tolerance, int maxRank) {
+        int k = U.columns();
+        if (k == 0)
+            return new LowRankDoubleMatrix2D(rows, columns);
+        DoubleMatrix2D Qu = null;
+        DoubleMatrix2D Ru = dense(U);
+        if (rows >= k) {
+            DenseDoubleQRDecomposition qr = new DenseDoubleQRDecomposition(Ru);
+            Qu = qr.getQ(true);
+            Ru = qr.getR(true);
+        }
+        DoubleMatrix2D Qv = null;
+        DoubleMatrix2D Rv = dense(V);
+        if (columns >= k) {
+            DenseDoubleQRDecomposition qr = new DenseDoubleQRDecomposition(Rv);
+            Qv = qr.getQ(true);
+            Rv = qr.getR(true);
+        }
+        DoubleMatrix2D core = Ru.zMult(Rv, null, 1, 0, false, true);
+        DenseDoubleSingularValueDecomposition svd = new DenseDoubleSingularValueDecomposition(dense(core), true,
+                false);
+        double[] s = svd.getSingularValues();
+        int r = 0;
+        while (r < s.length && r < maxRank && s[r] > tolerance * s[0]) {
+            r++;
+        }
+        DoubleMatrix2D W = svd.getU().viewPart(0, 0, core.rows(), r).copy();
+        for (int j = 0; j < r; j++) {
+            W.viewColumn(j).assign(cern.jet.math.tdouble.DoubleFunctions.mult(s[j]));
+        }
+        DoubleMatrix2D Z = svd.getV().viewPart(0, 0, core.columns(), r);
+        DoubleMatrix2D newU = Qu == null ? dense(W) : Qu.zMult(W, null);
+        DoubleMatrix2D newV = Qv == null ? dense(Z) : Qv.zMult(Z, null);
+        return new LowRankDoubleMatrix2D(newU, newV);
+    }
+
+    /**
+     * Returns a low-rank approximation of this matrix. Equivalent to
+     * <tt>compress(tolerance, Integer.MAX_VALUE)</tt>.
+     *
+     * @param tolerance
+     *            relative tolerance of the dropped singular values.
+     * @return a new low-rank matrix.
+     */
+    public LowRankDoubleMatrix2D compress(double tolerance) {
+        return compress(tolerance, Integer.MAX_VALUE);
+    }
+
+    public double getQuick(int row, int column) {
+        double sum = 0;
+        for (int l = U.columns(); --l >= 0;) {
+            sum += U.getQuick(row, l) * V.getQuick(column, l);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the left factor <tt>U</tt> (not a copy).
+     *
+     * @return <tt>U</tt>.
+     */
+    public DoubleMatrix2D getU() {
+        return U;
+    }
+
+    /**
+     * Returns the right factor <tt>V</tt> (not a copy).
+     *
+     * @return <tt>V</tt>.
+     */
+    public DoubleMatrix2D getV() {
+        return V;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        return setDense(toDense().forEachNonZero(function));
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Returns the sum of this matrix and <tt>B</tt>. The factors are
+     * concatenated, <tt>[U1 U2]*[V1 V2]'</tt>, so the rank of the result is
+     * the sum of the ranks; use {@link #compress(double, int)} to truncate it.
+     *
+     * @param B
+     *            the second summand.
+     * @return a new low-rank matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>B</tt> has a different shape.
+     */
+    public LowRankDoubleMatrix2D plus(LowRankDoubleMatrix2D B) {
+        checkShape(B);
+        return new LowRankDoubleMatrix2D(concat(U, B.U), concat(V, B.V));
+    }
+
+    /**
+     * Returns the rank of the factorization, i.e. the number of columns of
+     * <tt>U</tt> and <tt>V</tt>. The rank of the matrix may be smaller.
+     *
+     * @return <tt>k</tt>.
+     */
+    public int rank() {
+        return U.columns();
+    }
+
+    /**
+     * Sets a cell by adding the rank-one correction
+     * <tt>(value - A(row,column)) * e_row * e_column'</tt>, which raises the
+     * rank by one. Setting many cells one by one is therefore expensive; use
+     * one of the <tt>assign</tt> methods instead.
+     */
+    public void setQuick(int row, int column, double value) {
+        double delta = value - getQuick(row, column);
+        if (delta == 0)
+            return;
+        DoubleMatrix2D u = new DenseDoubleMatrix2D(rows, 1);
+        u.setQuick(row, 0, delta);
+        DoubleMatrix2D v = new DenseDoubleMatrix2D(columns, 1);
+        v.setQuick(column, 0, 1);
+        U = concat(U, u);
+        V = concat(V, v);
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rowsA);
+        }
+        if (columnsA != y.size() || rowsA > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + ((transposeA ? viewDice() : this).toStringShort())
+                    + ", " + y.toStringShort() + ", " + z.toStringShort());
+        DoubleMatrix2D left = transposeA ? V : U;
+        DoubleMatrix2D right = transposeA ? U : V;
+        DoubleMatrix1D t = right.zMult(y, null, 1, 0, true);
+        return left.zMult(t, z, alpha, beta, false);
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rowsA, B.columns());
+        }
+        if (B.rows() != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rowsA || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        DoubleMatrix2D left = transposeA ? V : U;
+        DoubleMatrix2D right = transposeA ? U : V;
+        DoubleMatrix2D T = right.zMult(B, null, 1, 0, true, false);
+        return left.zMult(T, C, alpha, beta, false, false);
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * Returns [A B].
+     */
+    static DoubleMatrix2D concat(DoubleMatrix2D A, DoubleMatrix2D B) {
+        DoubleMatrix2D AB = new DenseDoubleMatrix2D(A.rows(), A.columns() + B.columns());
+        AB.viewPart(0, 0, A.rows(), A.columns()).assign(A);
+        AB.viewPart(0, A.columns(), B.rows(), B.columns()).assign(B);
+        return AB;
+    }
+
+    /*
+     * Replaces the factors with the exact factorization A*I' (or I*A' if A is
+     * wide). A is not copied.
+     */
+    DoubleMatrix2D setDense(DoubleMatrix2D A) {
+        if (columns <= rows) {
+            U = A;
+            V = DoubleFactory2D.dense.identity(columns);
+        } else {
+            U = DoubleFactory2D.dense.identity(rows);
+            V = A.viewDice().copy();
+        }
+        return this;
+    }
+
+    /*
+     * Returns U*V' as a new dense matrix.
+     */
+    DoubleMatrix2D toDense() {
+        if (U.columns() == 0)
+            return new DenseDoubleMatrix2D(rows, columns);
+        return U.zMult(V, null, 1, 0, false, true);
+    }
+
+    private static DoubleMatrix2D dense(DoubleMatrix2D A) {
+        if (A instanceof DenseDoubleMatrix2D && !A.isView())
+            return A;
+        return new DenseDoubleMatrix2D(A.rows(), A.columns()).assign(A);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Future;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 2-d matrix holding <tt>double</tt> elements in a memory-mapped file.
+ * First see the <a href="package-summary.html">package summary</a> and javadoc
+ * <a href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in row major order in a file (or a region of a file)
+ * and are never copied to the Java heap. Opening a matrix only maps the file,
+ * pages are read on demand by the operating system and cached in the page
+ * cache. This allows to work with matrices that are larger than the physical
+ * memory. The file is mapped in chunks of at most 1 GB, hence the number of
+ * cells can exceed 2^31.
+ * <p>
+ * The mapping mode determines whether the matrix can be modified:
+ * <tt>READ_ONLY</tt> matrices throw <tt>java.nio.ReadOnlyBufferException</tt>
+ * on <tt>set</tt>, changes made to <tt>READ_WRITE</tt> matrices are written
+ * back to the file and changes made to <tt>PRIVATE</tt> (copy-on-write)
+ * matrices are visible only in this matrix.
+ * <p>
+ * <tt>zMult</tt> and <tt>aggregate</tt> stream the rows of the matrix
+ * sequentially in blocks and prefetch the next block asynchronously, so that
+ * I/O overlaps with computation. All other operations (including views) work
+ * element by element through the page cache. {@link #close()} unmaps the file
+ * without waiting for the garbage collector. Note that this implementation is
+ * not synchronized.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class MappedDoubleMatrix2D extends DirectDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maps a file holding <tt>rows*columns</tt> elements in the native byte
+     * order.
+     *
+     * @param file
+     *            the file.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param mode
+     *            <tt>READ_ONLY</tt>, <tt>READ_WRITE</tt> or <tt>PRIVATE</tt>
+     *            (copy-on-write).
+     * @throws IOException
+     *             if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt> or if the file is too short
+     *             and the mode is not <tt>READ_WRITE</tt>.
+     */
+    public MappedDoubleMatrix2D(File file, int rows, int columns, FileChannel.MapMode mode) throws IOException {
+        this(file, 0, rows, columns, mode, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps a region of a file holding <tt>rows*columns</tt> elements. A file
+     * opened in <tt>READ_WRITE</tt> mode is extended if necessary.
+     *
+     * @param file
+     *            the file.
+     * @param position
+     *            the position (in bytes) within the file at which the elements
+     *            start.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param mode
+     *            <tt>READ_ONLY</tt>, <tt>READ_WRITE</tt> or <tt>PRIVATE</tt>
+     *            (copy-on-write).
+     * @param order
+     *            the byte order of the elements in the file.
+     * @throws IOException
+     *             if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt> or if the file is too short
+     *             and the mode is not <tt>READ_WRITE</tt>.
+     */
+    public MappedDoubleMatrix2D(File file, long position, int rows, int columns, FileChannel.MapMode mode,
+            ByteOrder order) throws IOException {
+        this(rows, columns, map(file, position, (long) rows * columns, mode, order,
+                ChunkedDoubleBuffer.DEFAULT_CHUNK_SHIFT));
+    }
+
+    MappedDoubleMatrix2D(int rows, int columns, ChunkedDoubleBuffer elements) {
+        super(rows, columns, elements, true);
+    }
+
+    static ChunkedDoubleBuffer map(File file, long position, long size, FileChannel.MapMode mode, ByteOrder order,
+            int chunkShift) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+        try {
+            return ChunkedDoubleBuffer.map(raf.getChannel(), position, size, mode, order, chunkShift);
+        } finally {
+            raf.close(); // the mapping remains valid
+        }
+    }
+
+    /**
+     * Writes changes made to a <tt>READ_WRITE</tt> matrix to the storage
+     * device.
+     */
+    public void force() {
+        elements.force();
+    }
+
+    /**
+     * Returns <tt>true</tt> if the elements of this matrix are likely to be
+     * resident in physical memory.
+     *
+     * @return <tt>true</tt> if the elements of this matrix are likely to be
+     *         resident in physical memory.
+     */
+    public boolean isLoaded() {
+        return elements.isLoaded();
+    }
+
+    /**
+     * Loads the elements of this matrix into physical memory.
+     */
+    public void load() {
+        elements.load();
+    }
+
+    /**
+     * Asynchronously brings the given rows into physical memory, as a hint to
+     * the operating system before a sequential pass over the rows. Closing
+     * the matrix stops a pending prefetch and waits for it before the file is
+     * unmapped.
+     *
+     * @param firstRow
+     *            the first row to prefetch.
+     * @param lastRow
+     *            the row after the last row to prefetch.
+     * @return the future of the prefetch task.
+     */
+    public Future<?> prefetch(final int firstRow, final int lastRow) {
+        checkRow(firstRow);
+        if (lastRow < firstRow || lastRow > rows)
+            throw new IndexOutOfBoundsException("lastRow: " + lastRow);
+        final ChunkedDoubleBuffer elems = elements;
+        return ConcurrencyUtils.submit(new Runnable() {
+            public void run() {
+                elems.touch((long) firstRow * columns, (long) lastRow * columns);
+            }
+        });
+    }
+
+    protected void readAhead(int firstRow, int lastRow) {
+        prefetch(firstRow, lastRow);
+    }
+}
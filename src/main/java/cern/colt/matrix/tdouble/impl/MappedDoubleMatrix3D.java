@@ -0,0 +1,234 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 3-d matrix holding <tt>double</tt> elements in a memory-mapped file.
+ * First see the <a href="package-summary.html">package summary</a> and javadoc
+ * <a href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in slice major, then row major order in a file (or a
+ * region of a file) and are never copied to the Java heap. See
+ * {@link MappedDoubleMatrix2D} for the meaning of the mapping modes. Note that
+ * this implementation is not synchronized.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class MappedDoubleMatrix3D extends WrapperDoubleMatrix3D {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient ChunkedDoubleBuffer elements;
+
+    /**
+     * Maps a file holding <tt>slices*rows*columns</tt> elements in the native
+     * byte order.
+     *
+     * @param file
+     *            the file.
+     * @param slices
+     *            the number of slices the matrix shall have.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param mode
+     *            <tt>READ_ONLY</tt>, <tt>READ_WRITE</tt> or <tt>PRIVATE</tt>
+     *            (copy-on-write).
+     * @throws IOException
+     *             if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException
+     *             if <tt>slices<0 || rows<0 || columns<0</tt> or if the file
+     *             is too short and the mode is not <tt>READ_WRITE</tt>.
+     */
+    public MappedDoubleMatrix3D(File file, int slices, int rows, int columns, FileChannel.MapMode mode)
+            throws IOException {
+        this(file, 0, slices, rows, columns, mode, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps a region of a file holding <tt>slices*rows*columns</tt> elements. A
+     * file opened in <tt>READ_WRITE</tt> mode is extended if necessary.
+     *
+     * @param file
+     *            the file.
+     * @param position
+     *            the position (in bytes) within the file at which the elements
+     *            start.
+     * @param slices
+     *            the number of slices the matrix shall have.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param mode
+     *            <tt>READ_ONLY</tt>, <tt>READ_WRITE</tt> or <tt>PRIVATE</tt>
+     *            (copy-on-write).
+     * @param order
+     *            the byte order of the elements in the file.
+     * @throws IOException
+     *             if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException
+     *             if <tt>slices<0 || rows<0 || columns<0</tt> or if the file
+     *             is too short and the mode is not <tt>READ_WRITE</tt>.
+     */
+    public MappedDoubleMatrix3D(File file, long position, int slices, int rows, int columns, FileChannel.MapMode mode,
+            ByteOrder order) throws IOException {
+        this(slices, rows, columns, MappedDoubleMatrix2D.map(file, position, (long) slices * rows * columns, mode,
+                order, ChunkedDoubleBuffer.DEFAULT_CHUNK_SHIFT));
+    }
+
+    MappedDoubleMatrix3D(int slices, int rows, int columns, ChunkedDoubleBuffer elements) {
+        super(null);
+        try {
+            setUp(slices, rows, columns);
+        } catch (IllegalArgumentException exc) { // we can hold slices*rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        if (elements.size() < (long) slices * rows * columns)
+            throw new IllegalArgumentException("elements.size() < slices*rows*columns");
+        this.elements = elements;
+        content = this;
+    }
+
+    public DoubleMatrix3D assign(double value) {
+        elements.fill(0, size(), value);
+        return this;
+    }
+
+    /**
+     * Unmaps the file without waiting for the garbage collector. This matrix
+     * (and any of its views) must not be used after it has been closed.
+     */
+    public void close() {
+        ChunkedDoubleBuffer elems = elements;
+        elements = null;
+        if (elems != null)
+            elems.free();
+    }
+
+    /**
+     * Returns the chunks holding the elements of this matrix. Element
+     * <tt>[slice,row,column]</tt> is stored at index
+     * <tt>(slice*rows+row)*columns+column</tt>.
+     *
+     * @return the chunks holding the elements of this matrix.
+     */
+    public DoubleBuffer[] elements() {
+        return elements.chunks();
+    }
+
+    /**
+     * Writes changes made to a <tt>READ_WRITE</tt> matrix to the storage
+     * device.
+     */
+    public void force() {
+        elements.force();
+    }
+
+    public double getQuick(int slice, int row, int column) {
+        return elements.get(((long) slice * rows + row) * columns + column);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the elements of this matrix are likely to be
+     * resident in physical memory.
+     *
+     * @return <tt>true</tt> if the elements of this matrix are likely to be
+     *         resident in physical memory.
+     */
+    public boolean isLoaded() {
+        return elements.isLoaded();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this matrix cannot be modified.
+     *
+     * @return <tt>true</tt> if this matrix cannot be modified.
+     */
+    public boolean isReadOnly() {
+        return elements.isReadOnly();
+    }
+
+    public DoubleMatrix3D like(int slices, int rows, int columns) {
+        if ((long) slices * rows * columns > Integer.MAX_VALUE)
+            return new DenseLargeDoubleMatrix3D(slices, rows, columns);
+        return new DenseDoubleMatrix3D(slices, rows, columns);
+    }
+
+    public DoubleMatrix2D like2D(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Loads the elements of this matrix into physical memory.
+     */
+    public void load() {
+        elements.load();
+    }
+
+    /**
+     * Asynchronously brings the given slices into physical memory.
+     *
+     * @param firstSlice
+     *            the first slice to prefetch.
+     * @param lastSlice
+     *            the slice after the last slice to prefetch.
+     * @return the future of the prefetch task.
+     */
+    public Future<?> prefetch(final int firstSlice, final int lastSlice) {
+        checkSlice(firstSlice);
+        if (lastSlice < firstSlice || lastSlice > slices)
+            throw new IndexOutOfBoundsException("lastSlice: " + lastSlice);
+        final long length = (long) rows * columns;
+        final ChunkedDoubleBuffer elems = elements;
+        return ConcurrencyUtils.submit(new Runnable() {
+            public void run() {
+                elems.touch(firstSlice * length, lastSlice * length);
+            }
+        });
+    }
+
+    public void setQuick(int slice, int row, int column, double value) {
+        elements.put(((long) slice * rows + row) * columns + column, value);
+    }
+
+    /**
+     * Returns the number of cells which is
+     * <tt>slices()*rows()*columns()</tt>, computed in <tt>long</tt>
+     * arithmetic since it may exceed <tt>Integer.MAX_VALUE</tt>.
+     */
+    public long size() {
+        return (long) slices * rows * columns;
+    }
+
+    protected DoubleMatrix3D getContent() {
+        return this;
+    }
+}
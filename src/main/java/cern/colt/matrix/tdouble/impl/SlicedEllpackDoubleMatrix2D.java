@@ -0,0 +1,571 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Sparse 2-d matrix holding <tt>double</tt> elements in the sliced ELLPACK
+ * (SELL-C-sigma) format. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The rows are grouped into chunks of <tt>C</tt> consecutive rows. Within a
+ * chunk all rows are padded to the length of the longest row of the chunk and
+ * stored column by column, so element <tt>j</tt> of the <tt>C</tt> rows of a
+ * chunk are adjacent in memory. The inner loop of <tt>zMult</tt> then runs
+ * over the <tt>C</tt> rows of a chunk with unit stride and no dependence on
+ * the row lengths. To keep the padding small, the rows are sorted by
+ * decreasing length within windows of <tt>sigma</tt> rows before they are
+ * chunked; <tt>sigma = 1</tt> keeps the original order. Padding entries have
+ * the value <tt>0</tt>.
+ * <p>
+ * The matrix is built from a {@link SparseRCDoubleMatrix2D}. A new entry is
+ * stored in the padding of its row; if the row has no padding left, its chunk
+ * is widened by one column and the following chunks are moved, so the matrix
+ * is best set up before it is converted. Note that this implementation is not
+ * synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 12*(nnz + padding) + 12*rows()</tt>. Matrices with rows
+ * of nearly equal length need almost no padding.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(w)</tt> for the basic operations <tt>get</tt>, <tt>getQuick</tt>,
+ * <tt>set</tt> and <tt>setQuick</tt>, where <tt>w</tt> is the width of the
+ * chunk of the row; <tt>O(nnz + padding)</tt> for a <tt>set</tt> that widens a
+ * chunk. <tt>zMult</tt> takes <tt>O(nnz + padding)</tt> time and is split
+ * between the threads by chunks.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class SlicedEllpackDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Chunk height C.
+     */
+    private int chunkHeight;
+
+    /*
+     * Sorting scope sigma.
+     */
+    private int sigma;
+
+    /*
+     * Original row of every stored row.
+     */
+    private int[] permutation;
+
+    /*
+     * Stored row of every original row.
+     */
+    private int[] inversePermutation;
+
+    /*
+     * Number of nonzeros of every stored row.
+     */
+    private int[] rowLengths;
+
+    /*
+     * Offset of the first element of every chunk; chunk k has width
+     * (chunkPointers[k+1] - chunkPointers[k]) / chunkHeight.
+     */
+    private int[] chunkPointers;
+
+    private int[] columnIndexes;
+
+    private double[] values;
+
+    /**
+     * Constructs a matrix with a copy of the given row-compressed matrix and
+     * chunks of <tt>8</tt> rows sorted within windows of <tt>256</tt> rows.
+     *
+     * @param A
+     *            the matrix to be copied.
+     */
+    public SlicedEllpackDoubleMatrix2D(SparseRCDoubleMatrix2D A) {
+        this(A, 8, 256);
+    }
+
+    /**
+     * Constructs a matrix with a copy of the given row-compressed matrix.
+     *
+     * @param A
+     *            the matrix to be copied.
+     * @param chunkHeight
+     *            the number of rows of a chunk, <tt>C</tt>.
+     * @param sigma
+     *            the number of rows within which the rows are sorted by
+     *            length; <tt>1</tt> keeps the original order.
+     * @throws IllegalArgumentException
+     *             if <tt>chunkHeight &lt; 1 || sigma &lt; 1</tt>.
+     */
+    public SlicedEllpackDoubleMatrix2D(SparseRCDoubleMatrix2D A, int chunkHeight, int sigma) {
+        super(null);
+        if (chunkHeight < 1 || sigma < 1)
+            throw new IllegalArgumentException("Illegal chunk height or sorting scope: " + chunkHeight + ", " + sigma);
+        try {
+            setUp(A.rows(), A.columns());
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        this.chunkHeight = chunkHeight;
+        this.sigma = sigma;
+        content = this;
+        build(A.getRowPointers(), A.getColumnIndexes(), A.getValues());
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int r = 0; r < rows; r++) {
+            cardinality += rowLengths[r];
+        }
+        return cardinality;
+    }
+
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        for (int r = 0; r < rows; r++) {
+            int row = permutation[r];
+            int idx = chunkPointers[r / chunkHeight] + r % chunkHeight;
+            for (int j = 0; j < rowLengths[r]; j++, idx += chunkHeight) {
+                double value = values[idx];
+                if (value != 0) {
+                    double result = function.apply(row, columnIndexes[idx], value);
+                    if (result != value)
+                        values[idx] = result;
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of rows of a chunk.
+     *
+     * @return <tt>C</tt>.
+     */
+    public int getChunkHeight() {
+        return chunkHeight;
+    }
+
+    public double getQuick(int row, int column) {
+        int idx = find(row, column);
+        return idx < 0 ? 0 : values[idx];
+    }
+
+    /**
+     * Returns a new row-compressed matrix with the same elements.
+     *
+     * @return this matrix in row-compressed form.
+     */
+    public SparseRCDoubleMatrix2D getRowCompressed() {
+        final int[] rowPointers = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            rowPointers[i + 1] = rowPointers[i] + rowLengths[inversePermutation[i]];
+        }
+        final int[] indexes = new int[rowPointers[rows]];
+        final double[] elements = new double[rowPointers[rows]];
+        forEachChunk(new ChunkProcedure() {
+            public void apply(int firstChunk, int lastChunk) {
+                int last = Math.min(rows, lastChunk * chunkHeight);
+                for (int r = firstChunk * chunkHeight; r < last; r++) {
+                    int pos = rowPointers[permutation[r]];
+                    int idx = chunkPointers[r / chunkHeight] + r % chunkHeight;
+                    for (int j = 0; j < rowLengths[r]; j++, idx += chunkHeight) {
+                        indexes[pos] = columnIndexes[idx];
+                        elements[pos++] = values[idx];
+                    }
+                }
+            }
+        });
+        return new SparseRCDoubleMatrix2D(rows, columns, rowPointers, indexes, elements);
+    }
+
+    /**
+     * Returns the number of rows within which the rows are sorted by length.
+     *
+     * @return <tt>sigma</tt>.
+     */
+    public int getSigma() {
+        return sigma;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Sets the matrix cell at coordinate <tt>[row,column]</tt> to the
+     * specified value. A new entry is stored in the padding of its row, the
+     * chunk of the row is widened by one column if there is none left. Setting
+     * an entry to zero removes it and turns its slot into padding.
+     */
+    public void setQuick(int row, int column, double value) {
+        int idx = find(row, column);
+        if (idx >= 0) {
+            if (value != 0) {
+                values[idx] = value;
+            } else {
+                remove(row, idx);
+            }
+            return;
+        }
+        if (value == 0)
+            return;
+        int r = inversePermutation[row];
+        int chunk = r / chunkHeight;
+        int width = (chunkPointers[chunk + 1] - chunkPointers[chunk]) / chunkHeight;
+        if (rowLengths[r] == width)
+            widenChunk(chunk);
+        idx = chunkPointers[chunk] + r % chunkHeight + rowLengths[r] * chunkHeight;
+        columnIndexes[idx] = column;
+        values[idx] = value;
+        rowLengths[r]++;
+    }
+
+    /**
+     * Releases any superfluous internal memory.
+     */
+    public void trimToSize() {
+        int size = chunkPointers[chunkPointers.length - 1];
+        if (columnIndexes.length > size) {
+            int[] indexes = new int[size];
+            System.arraycopy(columnIndexes, 0, indexes, 0, size);
+            columnIndexes = indexes;
+            double[] elements = new double[size];
+            System.arraycopy(values, 0, elements, 0, size);
+            values = elements;
+        }
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            final boolean transposeA) {
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+
+        if (z == null)
+            z = new DenseDoubleMatrix1D(rowsA);
+
+        if (!(y instanceof DenseDoubleMatrix1D && z instanceof DenseDoubleMatrix1D)) {
+            return super.zMult(y, z, alpha, beta, transposeA);
+        }
+
+        if (columnsA != y.size() || rowsA > z.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + z.toStringShort());
+
+        if (y == z)
+            y = y.copy();
+
+        DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
+        final double[] elementsZ = zz.elements;
+        final int strideZ = zz.stride();
+        final int zeroZ = (int) zz.index(0);
+
+        DenseDoubleMatrix1D yy = (DenseDoubleMatrix1D) y;
+        final double[] elementsY = yy.elements;
+        final int strideY = yy.stride();
+        final int zeroY = (int) yy.index(0);
+
+        if (!transposeA) {
+            forEachChunk(new ChunkProcedure() {
+                public void apply(int firstChunk, int lastChunk) {
+                    double[] sums = new double[chunkHeight];
+                    for (int k = firstChunk; k < lastChunk; k++) {
+                        int idx = chunkPointers[k];
+                        int end = chunkPointers[k + 1];
+                        for (int l = 0; l < chunkHeight; l++) {
+                            sums[l] = 0;
+                        }
+                        while (idx < end) {
+                            for (int l = 0; l < chunkHeight; l++, idx++) {
+                                sums[l] += values[idx] * elementsY[zeroY + strideY * columnIndexes[idx]];
+                            }
+                        }
+                        int first = k * chunkHeight;
+                        int last = Math.min(rows, first + chunkHeight);
+                        for (int r = first; r < last; r++) {
+                            int zidx = zeroZ + strideZ * permutation[r];
+                            double sum = sums[r - first];
+                            elementsZ[zidx] = beta == 0 ? alpha * sum : alpha * sum + beta * elementsZ[zidx];
+                        }
+                    }
+                }
+            });
+        } else {
+            if (beta != 1) {
+                for (int i = 0, zidx = zeroZ; i < rowsA; i++, zidx += strideZ) {
+                    elementsZ[zidx] = beta == 0 ? 0 : beta * elementsZ[zidx];
+                }
+            }
+            final int nchunks = chunkPointers.length - 1;
+            int nthreads = ConcurrencyUtils.getNumberOfThreads();
+            if ((nthreads > 1) && (nchunks > 1) && (chunkPointers[nchunks] >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+                // every thread scatters into its own buffer
+                nthreads = Math.min(nthreads, nchunks);
+                final double[][] buffers = new double[nthreads][];
+                Future<?>[] futures = new Future[nthreads];
+                for (int j = 0; j < nthreads; j++) {
+                    final int firstChunk = (int) ((long) nchunks * j / nthreads);
+                    final int lastChunk = (int) ((long) nchunks * (j + 1) / nthreads);
+                    final int threadID = j;
+                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                        public void run() {
+                            double[] buffer = new double[rowsA];
+                            scatter(firstChunk, lastChunk, elementsY, zeroY, strideY, alpha, buffer, 0, 1);
+                            buffers[threadID] = buffer;
+                        }
+                    });
+                }
+                ConcurrencyUtils.waitForCompletion(futures);
+                for (int j = 0; j < nthreads; j++) {
+                    double[] buffer = buffers[j];
+                    for (int i = 0, zidx = zeroZ; i < rowsA; i++, zidx += strideZ) {
+                        elementsZ[zidx] += buffer[i];
+                    }
+                }
+            } else {
+                scatter(0, nchunks, elementsY, zeroY, strideY, alpha, elementsZ, zeroZ, strideZ);
+            }
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        final int rowsA = transposeA ? columns : rows;
+        final int columnsA = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rowsA, B.columns());
+        }
+        if (B.rows() != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rowsA || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        if (!(B instanceof DenseDoubleMatrix2D && C instanceof DenseDoubleMatrix2D))
+            return super.zMult(B, C, alpha, beta, transposeA, false);
+        // one concurrent product per column
+        for (int j = 0; j < B.columns(); j++) {
+            zMult(B.viewColumn(j), C.viewColumn(j), alpha, beta, transposeA);
+        }
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    private void build(final int[] rowPointers, final int[] indexes, final double[] elements) {
+        final int nchunks = (rows + chunkHeight - 1) / chunkHeight;
+        permutation = new int[rows];
+        inversePermutation = new int[rows];
+        rowLengths = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            permutation[r] = r;
+        }
+        if (sigma > 1) {
+            // sort by decreasing row length within every window of sigma rows
+            for (int first = 0; first < rows; first += sigma) {
+                final int last = Math.min(rows, first + sigma);
+                cern.colt.GenericSorting.mergeSort(first, last, new cern.colt.function.tint.IntComparator() {
+                    public int compare(int a, int b) {
+                        int la = rowPointers[permutation[a] + 1] - rowPointers[permutation[a]];
+                        int lb = rowPointers[permutation[b] + 1] - rowPointers[permutation[b]];
+                        return la > lb ? -1 : (la < lb ? 1 : 0);
+                    }
+                }, new cern.colt.Swapper() {
+                    public void swap(int a, int b) {
+                        int tmp = permutation[a];
+                        permutation[a] = permutation[b];
+                        permutation[b] = tmp;
+                    }
+                });
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            inversePermutation[permutation[r]] = r;
+            rowLengths[r] = rowPointers[permutation[r] + 1] - rowPointers[permutation[r]];
+        }
+        chunkPointers = new int[nchunks + 1];
+        long size = 0;
+        for (int k = 0; k < nchunks; k++) {
+            int width = 0;
+            int last = Math.min(rows, (k + 1) * chunkHeight);
+            for (int r = k * chunkHeight; r < last; r++) {
+                width = Math.max(width, rowLengths[r]);
+            }
+            size += (long) width * chunkHeight;
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("matrix too large");
+            chunkPointers[k + 1] = (int) size;
+        }
+        columnIndexes = new int[(int) size];
+        values = new double[(int) size];
+        forEachChunk(new ChunkProcedure() {
+            public void apply(int firstChunk, int lastChunk) {
+                int last = Math.min(rows, lastChunk * chunkHeight);
+                for (int r = firstChunk * chunkHeight; r < last; r++) {
+                    int k = r / chunkHeight;
+                    int width = (chunkPointers[k + 1] - chunkPointers[k]) / chunkHeight;
+                    int idx = chunkPointers[k] + r % chunkHeight;
+                    int low = rowPointers[permutation[r]];
+                    int j = 0;
+                    for (; j < rowLengths[r]; j++, idx += chunkHeight) {
+                        columnIndexes[idx] = indexes[low + j];
+                        values[idx] = elements[low + j];
+                    }
+                    // padding repeats the last column index with a zero value
+                    int column = rowLengths[r] == 0 ? 0 : indexes[low + rowLengths[r] - 1];
+                    for (; j < width; j++, idx += chunkHeight) {
+                        columnIndexes[idx] = column;
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+     * Returns the index of the element at [row,column], or -1.
+     */
+    private int find(int row, int column) {
+        int r = inversePermutation[row];
+        int idx = chunkPointers[r / chunkHeight] + r % chunkHeight;
+        for (int j = 0; j < rowLengths[r]; j++, idx += chunkHeight) {
+            if (columnIndexes[idx] == column)
+                return idx;
+        }
+        return -1;
+    }
+
+    /*
+     * Removes the element at the given index of the given row; the following
+     * elements of the row move down by one and the last slot becomes padding.
+     */
+    private void remove(int row, int idx) {
+        int r = inversePermutation[row];
+        int end = chunkPointers[r / chunkHeight] + r % chunkHeight + (rowLengths[r] - 1) * chunkHeight;
+        for (; idx < end; idx += chunkHeight) {
+            columnIndexes[idx] = columnIndexes[idx + chunkHeight];
+            values[idx] = values[idx + chunkHeight];
+        }
+        // padding repeats the last column index with a zero value
+        values[end] = 0;
+        rowLengths[r]--;
+    }
+
+    /*
+     * Appends a column of padding to the given chunk and moves the following
+     * chunks; the capacity grows by half so that repeated insertions take
+     * amortized linear time.
+     */
+    private void widenChunk(int chunk) {
+        int nchunks = chunkPointers.length - 1;
+        int size = chunkPointers[nchunks];
+        if ((long) size + chunkHeight > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        if (size + chunkHeight > columnIndexes.length) {
+            int capacity = (int) Math.max(size + chunkHeight, Math.min(Integer.MAX_VALUE, (long) size * 3 / 2));
+            int[] indexes = new int[capacity];
+            System.arraycopy(columnIndexes, 0, indexes, 0, size);
+            columnIndexes = indexes;
+            double[] elements = new double[capacity];
+            System.arraycopy(values, 0, elements, 0, size);
+            values = elements;
+        }
+        int end = chunkPointers[chunk + 1];
+        System.arraycopy(columnIndexes, end, columnIndexes, end + chunkHeight, size - end);
+        System.arraycopy(values, end, values, end + chunkHeight, size - end);
+        // padding repeats the last column index with a zero value
+        for (int l = 0; l < chunkHeight; l++) {
+            columnIndexes[end + l] = end == chunkPointers[chunk] ? 0 : columnIndexes[end - chunkHeight + l];
+            values[end + l] = 0;
+        }
+        for (int k = chunk + 1; k <= nchunks; k++) {
+            chunkPointers[k] += chunkHeight;
+        }
+    }
+
+    private void scatter(int firstChunk, int lastChunk, double[] elementsY, int zeroY, int strideY, double alpha,
+            double[] elementsZ, int zeroZ, int strideZ) {
+        int last = Math.min(rows, lastChunk * chunkHeight);
+        for (int r = firstChunk * chunkHeight; r < last; r++) {
+            double yElem = alpha * elementsY[zeroY + strideY * permutation[r]];
+            int idx = chunkPointers[r / chunkHeight] + r % chunkHeight;
+            for (int j = 0; j < rowLengths[r]; j++, idx += chunkHeight) {
+                elementsZ[zeroZ + strideZ * columnIndexes[idx]] += values[idx] * yElem;
+            }
+        }
+    }
+
+    /*
+     * Applies the procedure to ranges of chunks, concurrently if there is
+     * enough work. The ranges hold about the same number of stored elements.
+     */
+    private void forEachChunk(final ChunkProcedure procedure) {
+        int nchunks = chunkPointers.length - 1;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        long size = chunkPointers[nchunks] + rows;
+        if ((nthreads > 1) && (nchunks > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, nchunks);
+            Future<?>[] futures = new Future[nthreads];
+            int firstChunk = 0;
+            for (int j = 0; j < nthreads; j++) {
+                int lastChunk = firstChunk;
+                if (j == nthreads - 1) {
+                    lastChunk = nchunks;
+                } else {
+                    long target = size * (j + 1) / nthreads;
+                    while (lastChunk < nchunks - (nthreads - 1 - j)
+                            && (lastChunk == firstChunk || (long) chunkPointers[lastChunk] + (long) lastChunk
+                                    * chunkHeight < target)) {
+                        lastChunk++;
+                    }
+                }
+                final int first = firstChunk;
+                final int last = lastChunk;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(first, last);
+                    }
+                });
+                firstChunk = lastChunk;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, nchunks);
+        }
+    }
+
+    private interface ChunkProcedure {
+        void apply(int firstChunk, int lastChunk);
+    }
+}
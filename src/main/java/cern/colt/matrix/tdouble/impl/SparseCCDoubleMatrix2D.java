@@ -9,21 +9,16 @@ It is provided "as is" without expressed or implied warranty.
 package cern.colt.matrix.tdouble.impl;
 
 import java.util.Arrays;
-import java.util.concurrent.Future;
 
 import cern.colt.list.tdouble.DoubleArrayList;
 import cern.colt.list.tint.IntArrayList;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_add;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_cumsum;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_dropzeros;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_dupl;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_multiply;
-import edu.emory.mathcs.csparsej.tdouble.Dcs_transpose;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_util;
 import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
-import edu.emory.mathcs.utils.ConcurrencyUtils;
 
 /**
  * Sparse column-compressed 2-d matrix holding <tt>double</tt> elements. First
@@ -285,35 +280,18 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             throw new IllegalArgumentException("value cannot be 0");
         }
 
-        int nz = Math.max(rowIndexes.length, 1);
-        dcs = Dcs_util.cs_spalloc(rows, columns, nz, true, false);
-        int[] w = new int[columns];
-        int[] Cp = dcs.p;
-        int[] Ci = dcs.i;
-        double[] Cx = dcs.x;
-        for (int k = 0; k < nz; k++)
-            w[columnIndexes[k]]++;
-        Dcs_cumsum.cs_cumsum(Cp, w, columns);
-        int p;
-        for (int k = 0; k < nz; k++) {
-            Ci[p = w[columnIndexes[k]]++] = rowIndexes[k];
-            if (Cx != null)
-                Cx[p] = value;
-        }
-        if (removeDuplicates) {
-            if (!Dcs_dupl.cs_dupl(dcs)) { //remove duplicates
-                throw new IllegalArgumentException("Exception occured in cs_dupl()!");
-            }
-        }
-        if (sortRowIndexes) {
-            //sort row indexes
-            dcs = Dcs_transpose.cs_transpose(dcs, true);
-            dcs = Dcs_transpose.cs_transpose(dcs, true);
-            if (dcs == null) {
-                throw new IllegalArgumentException("Exception occured in cs_transpose()!");
-            }
-            rowIndexesSorted = true;
-        }
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(columns, rows,
+                new int[][] { columnIndexes }, new int[][] { rowIndexes }, null,
+                new int[] { columnIndexes.length }, value, removeDuplicates, false, sortRowIndexes);
+        dcs = new Dcs();
+        dcs.m = rows;
+        dcs.n = columns;
+        dcs.i = C.indexes;
+        dcs.p = C.pointers;
+        dcs.x = C.values;
+        dcs.nz = -1; // column-compressed
+        dcs.nzmax = C.values.length;
+        rowIndexesSorted = sortRowIndexes;
     }
 
     /**
@@ -351,38 +329,18 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         } else if (rowIndexes.length != values.length) {
             throw new IllegalArgumentException("rowIndexes.length != values.length");
         }
-        int nz = Math.max(rowIndexes.length, 1);
-        dcs = Dcs_util.cs_spalloc(rows, columns, nz, true, false);
-        int[] w = new int[columns];
-        int[] Cp = dcs.p;
-        int[] Ci = dcs.i;
-        double[] Cx = dcs.x;
-        for (int k = 0; k < nz; k++)
-            w[columnIndexes[k]]++;
-        Dcs_cumsum.cs_cumsum(Cp, w, columns);
-        int p;
-        for (int k = 0; k < nz; k++) {
-            Ci[p = w[columnIndexes[k]]++] = rowIndexes[k];
-            if (Cx != null)
-                Cx[p] = values[k];
-        }
-        if (removeZeroes) {
-            Dcs_dropzeros.cs_dropzeros(dcs); //remove zeroes
-        }
-        if (removeDuplicates) {
-            if (!Dcs_dupl.cs_dupl(dcs)) { //remove duplicates
-                throw new IllegalArgumentException("Exception occured in cs_dupl()!");
-            }
-        }
-        //sort row indexes
-        if (sortRowIndexes) {
-            dcs = Dcs_transpose.cs_transpose(dcs, true);
-            dcs = Dcs_transpose.cs_transpose(dcs, true);
-            if (dcs == null) {
-                throw new IllegalArgumentException("Exception occured in cs_transpose()!");
-            }
-            rowIndexesSorted = true;
-        }
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(columns, rows,
+                new int[][] { columnIndexes }, new int[][] { rowIndexes }, new double[][] { values },
+                new int[] { columnIndexes.length }, 0, removeDuplicates, removeZeroes, sortRowIndexes);
+        dcs = new Dcs();
+        dcs.m = rows;
+        dcs.n = columns;
+        dcs.i = C.indexes;
+        dcs.p = C.pointers;
+        dcs.x = C.values;
+        dcs.nz = -1; // column-compressed
+        dcs.nzmax = C.values.length;
+        rowIndexesSorted = sortRowIndexes;
     }
 
     public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
@@ -581,7 +539,34 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         return dense;
     }
 
-    public synchronized double getQuick(int row, int column) {
+    /**
+     * Returns a new matrix <tt>B</tt> with
+     * <tt>B[i,j] = this[rowIndexes[i],columnIndexes[j]]</tt>, like
+     * {@link #viewSelection(int[], int[])}. This method creates a new object
+     * (not a view), so changes in the returned matrix are NOT reflected in
+     * this matrix. The columns are copied concurrently; sorted row indexes
+     * stay sorted.
+     * 
+     * @param rowIndexes
+     *            the row permutation, or <tt>null</tt> for the identity.
+     * @param columnIndexes
+     *            the column permutation, or <tt>null</tt> for the identity.
+     * @return the permuted matrix
+     * @throws IndexOutOfBoundsException
+     *             if an argument is not a permutation of the rows or columns.
+     */
+    public SparseCCDoubleMatrix2D getPermuted(int[] rowIndexes, int[] columnIndexes) {
+        if (columnIndexes != null)
+            CompressedDoubleMatrixKernels.inverse(columnIndexes, columns);
+        int[] rowInverse = rowIndexes == null ? null : CompressedDoubleMatrixKernels.inverse(rowIndexes, rows);
+        CompressedDoubleMatrixKernels.Compressed P = CompressedDoubleMatrixKernels.permute(columns, dcs.p, dcs.i,
+                dcs.x, columnIndexes, rowInverse, rowIndexesSorted);
+        SparseCCDoubleMatrix2D B = new SparseCCDoubleMatrix2D(rows, columns, P.indexes, P.pointers, P.values);
+        B.rowIndexesSorted = rowIndexesSorted;
+        return B;
+    }
+
+    public double getQuick(int row, int column) {
         //        int k = cern.colt.Sorting.binarySearchFromTo(dcs.i, row, dcs.p[column], dcs.p[column + 1] - 1);
         int k = searchFromTo(dcs.i, row, dcs.p[column], dcs.p[column + 1] - 1);
         double v = 0;
@@ -598,11 +583,12 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
      * @return this matrix in a row-compressed form
      */
     public SparseRCDoubleMatrix2D getRowCompressed() {
-        Dcs dcst = Dcs_transpose.cs_transpose(dcs, true);
+        CompressedDoubleMatrixKernels.Compressed C = CompressedDoubleMatrixKernels.transpose(columns, rows, dcs.p,
+                dcs.i, dcs.x);
         SparseRCDoubleMatrix2D rc = new SparseRCDoubleMatrix2D(rows, columns);
-        rc.columnIndexes = dcst.i;
-        rc.rowPointers = dcst.p;
-        rc.values = dcst.x;
+        rc.columnIndexes = C.indexes;
+        rc.rowPointers = C.pointers;
+        rc.values = C.values;
         rc.columnIndexesSorted = true;
         return rc;
     }
@@ -624,9 +610,10 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
      * @return the transpose of this matrix
      */
     public SparseCCDoubleMatrix2D getTranspose() {
-        Dcs dcst = Dcs_transpose.cs_transpose(dcs, true);
-        SparseCCDoubleMatrix2D tr = new SparseCCDoubleMatrix2D(columns, rows);
-        tr.dcs = dcst;
+        CompressedDoubleMatrixKernels.Compressed C = CompressedDoubleMatrixKernels.transpose(columns, rows, dcs.p,
+                dcs.i, dcs.x);
+        SparseCCDoubleMatrix2D tr = new SparseCCDoubleMatrix2D(columns, rows, C.indexes, C.pointers, C.values);
+        tr.rowIndexesSorted = true;
         return tr;
     }
 
@@ -678,11 +665,13 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
      * Sorts row indexes
      */
     public void sortRowIndexes() {
-        dcs = Dcs_transpose.cs_transpose(dcs, true);
-        dcs = Dcs_transpose.cs_transpose(dcs, true);
-        if (dcs == null) {
-            throw new IllegalArgumentException("Exception occured in cs_transpose()!");
-        }
+        CompressedDoubleMatrixKernels.Compressed C = CompressedDoubleMatrixKernels.transpose(columns, rows, dcs.p,
+                dcs.i, dcs.x);
+        C = CompressedDoubleMatrixKernels.transpose(rows, columns, C.pointers, C.indexes, C.values);
+        dcs.p = C.pointers;
+        dcs.i = C.indexes;
+        dcs.x = C.values;
+        dcs.nzmax = C.values.length;
         rowIndexesSorted = true;
     }
 
@@ -725,7 +714,6 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         final int rowsA = transposeA ? columns : rows;
         final int columnsA = transposeA ? rows : columns;
 
-        boolean ignore = (z == null || transposeA);
         if (z == null)
             z = new DenseDoubleMatrix1D(rowsA);
 
@@ -738,6 +726,9 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
                     + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
                     + z.toStringShort());
 
+        if (y == z)
+            y = y.copy();
+
         DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
         final double[] elementsZ = zz.elements;
         final int strideZ = zz.stride();
@@ -748,148 +739,22 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         final int strideY = yy.stride();
         final int zeroY = (int) yy.index(0);
 
-        final int[] rowIndexesA = dcs.i;
-        final int[] columnPointersA = dcs.p;
-        final double[] valuesA = dcs.x;
-
-        int zidx = zeroZ;
-        int nthreads = ConcurrencyUtils.getNumberOfThreads();
-        if (!transposeA) {
-            if ((!ignore) && (beta / alpha != 1.0)) {
-                z.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta / alpha));
-            }
-
-            if ((nthreads > 1) && (cardinality() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
-                nthreads = 2;
-                Future<?>[] futures = new Future[nthreads];
-                final double[] result = new double[rowsA];
-                int k = columns / nthreads;
-                for (int j = 0; j < nthreads; j++) {
-                    final int firstColumn = j * k;
-                    final int lastColumn = (j == nthreads - 1) ? columns : firstColumn + k;
-                    final int threadID = j;
-                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                        public void run() {
-                            if (threadID == 0) {
-                                for (int i = firstColumn; i < lastColumn; i++) {
-                                    int high = columnPointersA[i + 1];
-                                    double yElem = elementsY[zeroY + strideY * i];
-                                    for (int k = columnPointersA[i]; k < high; k++) {
-                                        int j = rowIndexesA[k];
-                                        elementsZ[zeroZ + strideZ * j] += valuesA[k] * yElem;
-                                    }
-                                }
-                            } else {
-                                for (int i = firstColumn; i < lastColumn; i++) {
-                                    int high = columnPointersA[i + 1];
-                                    double yElem = elementsY[zeroY + strideY * i];
-                                    for (int k = columnPointersA[i]; k < high; k++) {
-                                        int j = rowIndexesA[k];
-                                        result[j] += valuesA[k] * yElem;
-                                    }
-                                }
-                            }
-                        }
-                    });
-                }
-                ConcurrencyUtils.waitForCompletion(futures);
-                int rem = rowsA % 10;
-                for (int j = rem; j < rowsA; j += 10) {
-                    elementsZ[zeroZ + j * strideZ] += result[j];
-                    elementsZ[zeroZ + (j + 1) * strideZ] += result[j + 1];
-                    elementsZ[zeroZ + (j + 2) * strideZ] += result[j + 2];
-                    elementsZ[zeroZ + (j + 3) * strideZ] += result[j + 3];
-                    elementsZ[zeroZ + (j + 4) * strideZ] += result[j + 4];
-                    elementsZ[zeroZ + (j + 5) * strideZ] += result[j + 5];
-                    elementsZ[zeroZ + (j + 6) * strideZ] += result[j + 6];
-                    elementsZ[zeroZ + (j + 7) * strideZ] += result[j + 7];
-                    elementsZ[zeroZ + (j + 8) * strideZ] += result[j + 8];
-                    elementsZ[zeroZ + (j + 9) * strideZ] += result[j + 9];
-                }
-                for (int j = 0; j < rem; j++) {
-                    elementsZ[zeroZ + j * strideZ] += result[j];
-                }
-            } else {
-                for (int i = 0; i < columns; i++) {
-                    int high = columnPointersA[i + 1];
-                    double yElem = elementsY[zeroY + strideY * i];
-                    for (int k = columnPointersA[i]; k < high; k++) {
-                        int j = rowIndexesA[k];
-                        elementsZ[zeroZ + strideZ * j] += valuesA[k] * yElem;
-                    }
-                }
-            }
-            if (alpha != 1.0) {
-                z.assign(cern.jet.math.tdouble.DoubleFunctions.mult(alpha));
-            }
+        if (transposeA) {
+            CompressedDoubleMatrixKernels.gather(rowsA, dcs.p, dcs.i, dcs.x, elementsY, zeroY, strideY, elementsZ, zeroZ,
+                    strideZ, alpha, beta);
         } else {
-            if ((nthreads > 1) && (cardinality() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
-                Future<?>[] futures = new Future[nthreads];
-                int k = columns / nthreads;
-                for (int j = 0; j < nthreads; j++) {
-                    final int firstColumn = j * k;
-                    final int lastColumn = (j == nthreads - 1) ? columns : firstColumn + k;
-                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                        public void run() {
-                            int zidx = zeroZ + firstColumn * strideZ;
-                            int k = dcs.p[firstColumn];
-                            for (int i = firstColumn; i < lastColumn; i++) {
-                                double sum = 0;
-                                int high = dcs.p[i + 1];
-                                for (; k + 10 < high; k += 10) {
-                                    int ind = k + 9;
-                                    sum += valuesA[ind] * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                            * elementsY[zeroY + strideY * dcs.i[ind--]];
-                                }
-                                for (; k < high; k++) {
-                                    sum += valuesA[k] * elementsY[dcs.i[k]];
-                                }
-                                elementsZ[zidx] = alpha * sum + beta * elementsZ[zidx];
-                                zidx += strideZ;
-                            }
-                        }
-                    });
-                }
-                ConcurrencyUtils.waitForCompletion(futures);
-            } else {
-                int k = dcs.p[0];
-                for (int i = 0; i < columns; i++) {
-                    double sum = 0;
-                    int high = dcs.p[i + 1];
-                    for (; k + 10 < high; k += 10) {
-                        int ind = k + 9;
-                        sum += valuesA[ind] * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]] + valuesA[ind]
-                                * elementsY[zeroY + strideY * dcs.i[ind--]];
-                    }
-                    for (; k < high; k++) {
-                        sum += valuesA[k] * elementsY[dcs.i[k]];
-                    }
-                    elementsZ[zidx] = alpha * sum + beta * elementsZ[zidx];
-                    zidx += strideZ;
-                }
-            }
+            CompressedDoubleMatrixKernels.scatter(columnsA, dcs.p, dcs.i, dcs.x, elementsY, zeroY, strideY, elementsZ,
+                    zeroZ, strideZ, rowsA, alpha, beta);
         }
         return z;
     }
 
     public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, double beta,
             final boolean transposeA, boolean transposeB) {
+        if (B instanceof DiagonalDoubleMatrix2D && !B.isView() && (C == null || C instanceof DenseDoubleMatrix2D)) {
+            // scales the columns of op(A) without a general sparse product
+            return ((DiagonalDoubleMatrix2D) B).multLeft(this, C, alpha, beta, transposeA, transposeB);
+        }
         int rowsA = rows;
         int columnsA = columns;
         if (transposeA) {
@@ -906,7 +771,7 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         boolean ignore = (C == null);
         if (C == null) {
             if (B instanceof SparseCCDoubleMatrix2D) {
-                C = new SparseCCDoubleMatrix2D(rowsA, p, (rowsA * p));
+                C = new SparseCCDoubleMatrix2D(rowsA, p, 0);
             } else {
                 C = new DenseDoubleMatrix2D(rowsA, p);
             }
@@ -921,16 +786,13 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         if (this == C || B == C)
             throw new IllegalArgumentException("Matrices must not be identical");
 
-        if (!ignore && beta != 1.0) {
-            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
-        }
-
         if ((B instanceof DenseDoubleMatrix2D) && (C instanceof DenseDoubleMatrix2D)) {
+            // the rows of op(A) are the columns of A' (plain) or of A (transposed)
             SparseCCDoubleMatrix2D AA;
             if (transposeA) {
-                AA = getTranspose();
-            } else {
                 AA = this;
+            } else {
+                AA = getTranspose();
             }
             DenseDoubleMatrix2D BB;
             if (transposeB) {
@@ -938,36 +800,16 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             } else {
                 BB = (DenseDoubleMatrix2D) B;
             }
-            DenseDoubleMatrix2D CC = (DenseDoubleMatrix2D) C;
-            int[] columnPointersA = AA.dcs.p;
-            int[] rowIndexesA = AA.dcs.i;
-            double[] valuesA = AA.dcs.x;
-
-            int zeroB = (int) BB.index(0, 0);
-            int rowStrideB = BB.rowStride();
-            int columnStrideB = BB.columnStride();
-            double[] elementsB = BB.elements;
-
-            int zeroC = (int) CC.index(0, 0);
-            int rowStrideC = CC.rowStride();
-            int columnStrideC = CC.columnStride();
-            double[] elementsC = CC.elements;
-
-            for (int jj = 0; jj < columnsB; jj++) {
-                for (int kk = 0; kk < columnsA; kk++) {
-                    int high = columnPointersA[kk + 1];
-                    double yElem = elementsB[zeroB + kk * rowStrideB + jj * columnStrideB];
-                    for (int ii = columnPointersA[kk]; ii < high; ii++) {
-                        int j = rowIndexesA[ii];
-                        elementsC[zeroC + j * rowStrideC + jj * columnStrideC] += valuesA[ii] * yElem;
-                    }
-                }
-            }
-            if (alpha != 1.0) {
-                C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(alpha));
-            }
+            CompressedDoubleMatrixKernels.compressedTimesDense(rowsA, AA.dcs.p, AA.dcs.i, AA.dcs.x, BB,
+                    (DenseDoubleMatrix2D) C, alpha, ignore ? 0 : beta);
+            return C;
+        }
 
-        } else if ((B instanceof SparseCCDoubleMatrix2D) && (C instanceof SparseCCDoubleMatrix2D)) {
+        if (!ignore && beta != 1.0) {
+            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        }
+
+        if ((B instanceof SparseCCDoubleMatrix2D) && (C instanceof SparseCCDoubleMatrix2D)) {
             SparseCCDoubleMatrix2D AA;
             if (transposeA) {
                 AA = getTranspose();
@@ -979,13 +821,19 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
                 BB = BB.getTranspose();
             }
             SparseCCDoubleMatrix2D CC = (SparseCCDoubleMatrix2D) C;
-            CC.dcs = Dcs_multiply.cs_multiply(AA.dcs, BB.dcs);
-            if (CC.dcs == null) {
-                throw new IllegalArgumentException("Exception occured in cs_multiply()");
-            }
-            if (alpha != 1.0) {
-                CC.assign(cern.jet.math.tdouble.DoubleFunctions.mult(alpha));
+            // column j of C combines the columns of op(A) selected by column j of op(B)
+            CompressedDoubleMatrixKernels.Compressed product = CompressedDoubleMatrixKernels.multiply(p, BB.dcs.p,
+                    BB.dcs.i, BB.dcs.x, AA.dcs.p, AA.dcs.i, AA.dcs.x, rowsA, alpha, null, null);
+            if (!ignore && beta != 0) {
+                // C has already been scaled by beta
+                product = CompressedDoubleMatrixKernels.add(p, product.pointers, product.indexes, product.values,
+                        CC.dcs.p, CC.dcs.i, CC.dcs.x, rowsA);
             }
+            CC.dcs.p = product.pointers;
+            CC.dcs.i = product.indexes;
+            CC.dcs.x = product.values;
+            CC.dcs.nzmax = product.values.length;
+            CC.rowIndexesSorted = false;
         } else {
             if (transposeB) {
                 B = B.viewDice();
@@ -1019,6 +867,50 @@ public class SparseCCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         return C;
     }
 
+    /**
+     * Returns <tt>alpha * op(A) * op(B)</tt>, where <tt>A</tt> is this matrix,
+     * computed only at the positions of the nonzeros of <tt>mask</tt> (the
+     * values of <tt>mask</tt> are ignored). The product is formed by a
+     * concurrent two-pass (symbolic, then numeric) algorithm, so neither the
+     * full product nor a dense-sized result is ever allocated.
+     * 
+     * @param B
+     *            the second source matrix.
+     * @param mask
+     *            the sparsity pattern of the result, or <tt>null</tt> to
+     *            compute the full product.
+     * @param alpha
+     *            the scaling factor.
+     * @param transposeA
+     *            whether A must be transposed.
+     * @param transposeB
+     *            whether B must be transposed.
+     * @return a new column-compressed matrix of size
+     *         <tt>op(A).rows() x op(B).columns()</tt>.
+     * @throws IllegalArgumentException
+     *             if the dimensions of <tt>op(A)</tt>, <tt>op(B)</tt> and
+     *             <tt>mask</tt> do not agree.
+     */
+    public SparseCCDoubleMatrix2D zMultMasked(SparseCCDoubleMatrix2D B, SparseCCDoubleMatrix2D mask, double alpha,
+            boolean transposeA, boolean transposeB) {
+        int rowsA = transposeA ? columns : rows;
+        int columnsA = transposeA ? rows : columns;
+        int rowsB = transposeB ? B.columns : B.rows;
+        int columnsB = transposeB ? B.rows : B.columns;
+        if (rowsB != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort());
+        if (mask != null && (mask.rows != rowsA || mask.columns != columnsB))
+            throw new IllegalArgumentException("Incompatible mask: " + toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort() + ", " + mask.toStringShort());
+        SparseCCDoubleMatrix2D AA = transposeA ? getTranspose() : this;
+        SparseCCDoubleMatrix2D BB = transposeB ? B.getTranspose() : B;
+        CompressedDoubleMatrixKernels.Compressed product = CompressedDoubleMatrixKernels.multiply(columnsB,
+                BB.dcs.p, BB.dcs.i, BB.dcs.x, AA.dcs.p, AA.dcs.i, AA.dcs.x, rowsA, alpha, mask == null ? null
+                        : mask.dcs.p, mask == null ? null : mask.dcs.i);
+        return new SparseCCDoubleMatrix2D(rowsA, columnsB, product.indexes, product.pointers, product.values);
+    }
+
     protected DoubleMatrix2D getContent() {
         return this;
     }
@@ -0,0 +1,1120 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.list.tdouble.DoubleArrayList;
+import cern.colt.list.tint.IntArrayList;
+import cern.colt.map.tdouble.AbstractLongDoubleMap;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Sparse 3-d matrix holding <tt>double</tt> elements in compressed sparse fiber
+ * (CSF) form. First see the <a href="package-summary.html">package summary</a>
+ * and javadoc <a href="package-tree.html">tree view</a> to get the broad
+ * picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The non-zero cells are grouped into fibers, i.e. the cells of a slice that
+ * are in the same row. The fibers of slice <tt>s</tt> are
+ * <tt>slicePointers[s]</tt> to <tt>slicePointers[s+1]-1</tt>, in increasing
+ * order of their rows <tt>rowIndexes[f]</tt>, and the cells of fiber
+ * <tt>f</tt> are <tt>rowPointers[f]</tt> to <tt>rowPointers[f+1]-1</tt>, in
+ * increasing order of their columns <tt>columnIndexes[k]</tt>, with the values
+ * <tt>values[k]</tt>. Each slice is thus stored like a
+ * {@link SparseRCDoubleMatrix2D} without its empty rows.
+ * <p>
+ * The tensor-times-vector and tensor-times-matrix products along any mode
+ * ({@link #zMult(DoubleMatrix1D, DoubleMatrix2D, int)},
+ * {@link #zMult(DoubleMatrix2D, DoubleMatrix3D, int)}), the matricized tensor
+ * times Khatri-Rao product
+ * ({@link #zMultKhatriRao(DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix2D, int)}
+ * ) and {@link #forEachNonZero(int, int, cern.colt.function.tdouble.IntIntDoubleFunction)}
+ * walk the fibers without any lookups. The products are computed in parallel,
+ * the slices or the rows being split among the threads so that each of them
+ * writes its own part of the result. Views of this matrix are wrappers, which
+ * do not have these methods. Note that this implementation is not
+ * synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 4*slices + 8*fibers + 12*nonZeros</tt>. Thus, a 1000 x
+ * 1000 x 1000 matrix with 10^8 non-zero cells in 10^7 fibers consumes about
+ * 1.3 GB, a fraction of what a {@link SparseDoubleMatrix3D} needs.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>get</tt> and <tt>getQuick</tt> take <tt>O(log(nnz))</tt> time; setting a
+ * cell that changes from or to zero moves the cells after it and takes
+ * <tt>O(nnz)</tt> time, except when appending cells slice-by-slice,
+ * row-by-row, column-by-column.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+public class SparseCSFDoubleMatrix3D extends WrapperDoubleMatrix3D {
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The fibers of slice s are slicePointers[s] to slicePointers[s+1]-1.
+     */
+    protected int[] slicePointers;
+
+    /*
+     * The cells of fiber f are in row rowIndexes[f]; they are rowPointers[f]
+     * to rowPointers[f+1]-1.
+     */
+    protected int[] rowIndexes;
+
+    protected int[] rowPointers;
+
+    /*
+     * The cell k is in column columnIndexes[k] and has the value values[k].
+     */
+    protected int[] columnIndexes;
+
+    protected double[] values;
+
+    /**
+     * Constructs a matrix with the same non-zero cells as the given matrix.
+     * The cells of a {@link SparseDoubleMatrix3D} are read from its hash map
+     * and sorted in parallel, slice by slice.
+     *
+     * @param A
+     *            the matrix to be converted.
+     */
+    public SparseCSFDoubleMatrix3D(DoubleMatrix3D A) {
+        this(A.slices(), A.rows(), A.columns(), 0);
+        if (A instanceof SparseCSFDoubleMatrix3D) {
+            SparseCSFDoubleMatrix3D csf = (SparseCSFDoubleMatrix3D) A;
+            int nfibers = csf.slicePointers[slices];
+            int nnz = csf.rowPointers[nfibers];
+            System.arraycopy(csf.slicePointers, 0, slicePointers, 0, slices + 1);
+            rowIndexes = new int[nfibers];
+            rowPointers = new int[nfibers + 1];
+            columnIndexes = new int[nnz];
+            values = new double[nnz];
+            System.arraycopy(csf.rowIndexes, 0, rowIndexes, 0, nfibers);
+            System.arraycopy(csf.rowPointers, 0, rowPointers, 0, nfibers + 1);
+            System.arraycopy(csf.columnIndexes, 0, columnIndexes, 0, nnz);
+            System.arraycopy(csf.values, 0, values, 0, nnz);
+        } else if (A instanceof SparseDoubleMatrix3D && !A.isView()) {
+            AbstractLongDoubleMap map = ((SparseDoubleMatrix3D) A).elements();
+            final int n = map.size();
+            final int[] cellSlices = new int[n];
+            final int[] cellRows = new int[n];
+            final int[] cellColumns = new int[n];
+            final double[] cellValues = new double[n];
+            final long sliceSize = (long) rows * columns;
+            map.forEachPair(new cern.colt.function.tdouble.LongDoubleProcedure() {
+                int k = 0;
+
+                public boolean apply(long key, double value) {
+                    long index = key % sliceSize;
+                    cellSlices[k] = (int) (key / sliceSize);
+                    cellRows[k] = (int) (index / columns);
+                    cellColumns[k] = (int) (index % columns);
+                    cellValues[k++] = value;
+                    return true;
+                }
+            });
+            assemble(cellSlices, cellRows, cellColumns, cellValues, n);
+        } else {
+            IntArrayList sliceList = new IntArrayList();
+            IntArrayList rowList = new IntArrayList();
+            IntArrayList columnList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            A.getNonZeros(sliceList, rowList, columnList, valueList);
+            assemble(sliceList.elements(), rowList.elements(), columnList.elements(), valueList.elements(),
+                    valueList.size());
+        }
+    }
+
+    /**
+     * Constructs a matrix with a given number of slices, rows and columns. All
+     * entries are initially <tt>0</tt>.
+     *
+     * @param slices
+     *            the number of slices the matrix shall have.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>slices<0 || rows<0 || columns<0</tt>.
+     */
+    public SparseCSFDoubleMatrix3D(int slices, int rows, int columns) {
+        this(slices, rows, columns, (int) Math.min(10L * slices, (long) slices * rows * columns));
+    }
+
+    /**
+     * Constructs a matrix with a given number of slices, rows and columns. All
+     * entries are initially <tt>0</tt>.
+     *
+     * @param slices
+     *            the number of slices the matrix shall have.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param nzmax
+     *            the number of non-zero cells the matrix can hold without
+     *            growing
+     * @throws IllegalArgumentException
+     *             if <tt>slices<0 || rows<0 || columns<0</tt>.
+     */
+    public SparseCSFDoubleMatrix3D(int slices, int rows, int columns, int nzmax) {
+        super(null);
+        setUp(slices, rows, columns);
+        slicePointers = new int[slices + 1];
+        rowIndexes = new int[Math.min(nzmax, slices * rows)];
+        rowPointers = new int[rowIndexes.length + 1];
+        columnIndexes = new int[nzmax];
+        values = new double[nzmax];
+    }
+
+    /**
+     * Constructs a matrix from the given cells in coordinate form. The cells
+     * may be given in any order; the values of cells given more than once are
+     * summed up.
+     *
+     * @param slices
+     *            the number of slices the matrix shall have.
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param sliceIndexes
+     *            the slices of the cells
+     * @param rowIndexes
+     *            the rows of the cells
+     * @param columnIndexes
+     *            the columns of the cells
+     * @param values
+     *            the values of the cells
+     * @throws IllegalArgumentException
+     *             if the arrays do not have the same length.
+     * @throws IndexOutOfBoundsException
+     *             if a cell is out of bounds.
+     */
+    public SparseCSFDoubleMatrix3D(int slices, int rows, int columns, int[] sliceIndexes, int[] rowIndexes,
+            int[] columnIndexes, double[] values) {
+        this(slices, rows, columns, 0);
+        int n = values.length;
+        if (sliceIndexes.length != n || rowIndexes.length != n || columnIndexes.length != n) {
+            throw new IllegalArgumentException(
+                    "sliceIndexes, rowIndexes, columnIndexes and values must have the same length");
+        }
+        for (int k = 0; k < n; k++) {
+            if (sliceIndexes[k] < 0 || sliceIndexes[k] >= slices || rowIndexes[k] < 0 || rowIndexes[k] >= rows
+                    || columnIndexes[k] < 0 || columnIndexes[k] >= columns)
+                throw new IndexOutOfBoundsException("slice:" + sliceIndexes[k] + ", row:" + rowIndexes[k]
+                        + ", column:" + columnIndexes[k]);
+        }
+        assemble(sliceIndexes, rowIndexes, columnIndexes, values, n);
+    }
+
+    public DoubleMatrix3D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        if (function instanceof cern.jet.math.tdouble.DoubleMult) { // x[i] = mult*x[i]
+            final double alpha = ((cern.jet.math.tdouble.DoubleMult) function).multiplicator;
+            if (alpha == 1)
+                return this;
+            if (alpha != alpha || Double.isInfinite(alpha))
+                return super.assign(function);
+            int nnz = rowPointers[slicePointers[slices]];
+            for (int k = 0; k < nnz; k++) {
+                values[k] *= alpha;
+            }
+            removeZeroes();
+        } else if (function.apply(0) == 0) { // the zero cells are left unchanged
+            int nnz = rowPointers[slicePointers[slices]];
+            for (int k = 0; k < nnz; k++) {
+                values[k] = function.apply(values[k]);
+            }
+            removeZeroes();
+        } else {
+            super.assign(function);
+        }
+        return this;
+    }
+
+    public DoubleMatrix3D assign(double value) {
+        if (value == 0) {
+            java.util.Arrays.fill(slicePointers, 0);
+            rowPointers[0] = 0;
+        } else {
+            super.assign(value);
+        }
+        return this;
+    }
+
+    public int cardinality() {
+        return rowPointers[slicePointers[slices]];
+    }
+
+    public Object elements() {
+        return values;
+    }
+
+    /**
+     * Applies a function to each non-zero cell of a slice along the given
+     * mode, i.e. of <tt>viewSlice(index)</tt> (mode 0),
+     * <tt>viewRow(index)</tt> (mode 1) or <tt>viewColumn(index)</tt> (mode 2),
+     * and updates the cell with the value returned. The function is given the
+     * row and the column of the cell in the slice and its value.
+     *
+     * @param mode
+     *            the mode, <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     * @param index
+     *            the index of the slice along <tt>mode</tt>
+     * @param function
+     *            a function taking as argument the row, the column and the
+     *            value of a cell.
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if <tt>mode</tt> is not <tt>0</tt>, <tt>1</tt> or <tt>2</tt>.
+     * @throws IndexOutOfBoundsException
+     *             if <tt>index</tt> is out of bounds.
+     */
+    public DoubleMatrix3D forEachNonZero(int mode, int index,
+            final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        if (index < 0 || index >= dimension(mode))
+            throw new IndexOutOfBoundsException("Attempted to access " + toStringShort() + " at mode=" + mode
+                    + ", index=" + index);
+        boolean zeroes = false;
+        if (mode == 0) {
+            for (int f = slicePointers[index]; f < slicePointers[index + 1]; f++) {
+                for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                    zeroes |= apply(function, rowIndexes[f], k);
+                }
+            }
+        } else if (mode == 1) {
+            for (int s = 0; s < slices; s++) {
+                int f = cern.colt.Sorting.binarySearchFromTo(rowIndexes, index, slicePointers[s],
+                        slicePointers[s + 1] - 1);
+                if (f >= 0) {
+                    for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                        zeroes |= apply(function, s, k);
+                    }
+                }
+            }
+        } else {
+            for (int s = 0; s < slices; s++) {
+                for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                    int k = cern.colt.Sorting.binarySearchFromTo(columnIndexes, index, rowPointers[f],
+                            rowPointers[f + 1] - 1);
+                    if (k >= 0) {
+                        double value = values[k];
+                        double r = function.apply(s, rowIndexes[f], value);
+                        if (r != value) {
+                            values[k] = r;
+                            zeroes |= r == 0;
+                        }
+                    }
+                }
+            }
+        }
+        if (zeroes)
+            removeZeroes();
+        return this;
+    }
+
+    /**
+     * Returns the column indexes of the cells. The array may be longer than the
+     * number of non-zero cells, see {@link #trimToSize()}.
+     *
+     * @return column indexes
+     */
+    public int[] getColumnIndexes() {
+        return columnIndexes;
+    }
+
+    public void getNonZeros(IntArrayList sliceList, IntArrayList rowList, IntArrayList columnList,
+            DoubleArrayList valueList) {
+        sliceList.clear();
+        rowList.clear();
+        columnList.clear();
+        valueList.clear();
+        for (int s = 0; s < slices; s++) {
+            for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                    sliceList.add(s);
+                    rowList.add(rowIndexes[f]);
+                    columnList.add(columnIndexes[k]);
+                    valueList.add(values[k]);
+                }
+            }
+        }
+    }
+
+    public synchronized double getQuick(int slice, int row, int column) {
+        int f = cern.colt.Sorting.binarySearchFromTo(rowIndexes, row, slicePointers[slice],
+                slicePointers[slice + 1] - 1);
+        if (f < 0)
+            return 0;
+        int k = cern.colt.Sorting.binarySearchFromTo(columnIndexes, column, rowPointers[f], rowPointers[f + 1] - 1);
+        return k >= 0 ? values[k] : 0;
+    }
+
+    /**
+     * Returns the rows of the fibers. The array may be longer than the number
+     * of fibers, see {@link #trimToSize()}.
+     *
+     * @return row indexes
+     */
+    public int[] getRowIndexes() {
+        return rowIndexes;
+    }
+
+    /**
+     * Returns the pointers from the fibers to their cells.
+     *
+     * @return row pointers
+     */
+    public int[] getRowPointers() {
+        return rowPointers;
+    }
+
+    /**
+     * Returns the pointers from the slices to their fibers.
+     *
+     * @return slice pointers
+     */
+    public int[] getSlicePointers() {
+        return slicePointers;
+    }
+
+    /**
+     * Returns the values of the cells. The array may be longer than the number
+     * of non-zero cells, see {@link #trimToSize()}.
+     *
+     * @return values
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public DoubleMatrix3D like(int slices, int rows, int columns) {
+        return new SparseCSFDoubleMatrix3D(slices, rows, columns);
+    }
+
+    public DoubleMatrix2D like2D(int rows, int columns) {
+        return new SparseRCDoubleMatrix2D(rows, columns);
+    }
+
+    public synchronized void setQuick(int slice, int row, int column, double value) {
+        int f = cern.colt.Sorting.binarySearchFromTo(rowIndexes, row, slicePointers[slice],
+                slicePointers[slice + 1] - 1);
+        if (f < 0) {
+            if (value == 0)
+                return;
+            f = -f - 1;
+            insertFiber(slice, f, row);
+        }
+        int k = cern.colt.Sorting.binarySearchFromTo(columnIndexes, column, rowPointers[f], rowPointers[f + 1] - 1);
+        if (k >= 0) {
+            if (value == 0)
+                removeCell(slice, f, k);
+            else
+                values[k] = value;
+        } else if (value != 0) {
+            insertCell(f, -k - 1, column, value);
+        }
+    }
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(slices).append(" x ").append(rows).append(" x ").append(columns).append(
+                " sparse matrix, nnz = ").append(cardinality()).append('\n');
+        for (int s = 0; s < slices; s++) {
+            for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                    builder.append('(').append(s).append(',').append(rowIndexes[f]).append(',').append(
+                            columnIndexes[k]).append(')').append('\t').append(values[k]).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    public void trimToSize() {
+        int nfibers = slicePointers[slices];
+        reallocFibers(nfibers);
+        reallocCells(rowPointers[nfibers]);
+    }
+
+    public DoubleMatrix1D vectorize() {
+        // the cells of a slice are stacked column by column
+        int nnz = cardinality();
+        final int[] indexes = new int[nnz];
+        final double[] elements = new double[nnz];
+        for (int s = 0; s < slices; s++) {
+            int from = rowPointers[slicePointers[s]];
+            int to = rowPointers[slicePointers[s + 1]];
+            for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                    indexes[k] = (s * columns + columnIndexes[k]) * rows + rowIndexes[f];
+                    elements[k] = values[k];
+                }
+            }
+            cern.colt.GenericSorting.quickSort(from, to, new cern.colt.function.tint.IntComparator() {
+                public int compare(int a, int b) {
+                    return indexes[a] < indexes[b] ? -1 : (indexes[a] == indexes[b] ? 0 : 1);
+                }
+            }, new cern.colt.Swapper() {
+                public void swap(int a, int b) {
+                    int tmp = indexes[a];
+                    indexes[a] = indexes[b];
+                    indexes[b] = tmp;
+                    double v = elements[a];
+                    elements[a] = elements[b];
+                    elements[b] = v;
+                }
+            });
+        }
+        return new SparseSortedDoubleMatrix1D((int) size(), indexes, elements);
+    }
+
+    /**
+     * Computes the tensor-times-vector product along the given mode,
+     * <tt>z(i,j) = Sum(this(k,i,j) * y(k))</tt> (mode 0),
+     * <tt>z(i,j) = Sum(this(i,k,j) * y(k))</tt> (mode 1) or
+     * <tt>z(i,j) = Sum(this(i,j,k) * y(k))</tt> (mode 2).
+     *
+     * @param y
+     *            the vector, of size <tt>slices()</tt>, <tt>rows()</tt> or
+     *            <tt>columns()</tt>.
+     * @param z
+     *            the matrix where results are to be stored; its dimensions are
+     *            those of this matrix without <tt>mode</tt>. Set this parameter
+     *            to <tt>null</tt> to return a new dense matrix.
+     * @param mode
+     *            the mode, <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     * @return <tt>z</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if <tt>mode</tt> is not <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     *             or if <tt>y</tt> or <tt>z</tt> have incompatible sizes.
+     */
+    public DoubleMatrix2D zMult(DoubleMatrix1D y, DoubleMatrix2D z, int mode) {
+        final int zRows = mode == 0 ? rows : slices;
+        final int zColumns = mode == 2 ? rows : columns;
+        if (z == null)
+            z = new DenseDoubleMatrix2D(zRows, zColumns);
+        if (y.size() != dimension(mode) || z.rows() != zRows || z.columns() != zColumns)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + y.toStringShort()
+                    + ", " + z.toStringShort() + ", mode=" + mode);
+        final double[] yElements = y.toArray();
+        final double[] zElements = isDense(z) ? (double[]) z.elements() : new double[zRows * zColumns];
+        java.util.Arrays.fill(zElements, 0);
+        if (mode == 0) {
+            forEachPart(partitionRows(), new Procedure() {
+                public void apply(int part, int firstRow, int lastRow) {
+                    for (int s = 0; s < slices; s++) {
+                        double ys = yElements[s];
+                        for (int f = firstFiber(s, firstRow); f < slicePointers[s + 1] && rowIndexes[f] < lastRow; f++) {
+                            int idx = rowIndexes[f] * zColumns;
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                zElements[idx + columnIndexes[k]] += values[k] * ys;
+                            }
+                        }
+                    }
+                }
+            });
+        } else if (mode == 1) {
+            forEachPart(partitionSlices(), new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        int idx = s * zColumns;
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            double yr = yElements[rowIndexes[f]];
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                zElements[idx + columnIndexes[k]] += values[k] * yr;
+                            }
+                        }
+                    }
+                }
+            });
+        } else {
+            forEachPart(partitionSlices(), new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        int idx = s * zColumns;
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            double sum = 0;
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                sum += values[k] * yElements[columnIndexes[k]];
+                            }
+                            zElements[idx + rowIndexes[f]] = sum;
+                        }
+                    }
+                }
+            });
+        }
+        if (!isDense(z))
+            z.assign(zElements);
+        return z;
+    }
+
+    /**
+     * Computes the tensor-times-matrix product along the given mode,
+     * <tt>Z(i,j,l) = Sum(this(k,j,l) * U(i,k))</tt> (mode 0),
+     * <tt>Z(i,j,l) = Sum(this(i,k,l) * U(j,k))</tt> (mode 1) or
+     * <tt>Z(i,j,l) = Sum(this(i,j,k) * U(l,k))</tt> (mode 2).
+     *
+     * @param U
+     *            the matrix, with <tt>slices()</tt>, <tt>rows()</tt> or
+     *            <tt>columns()</tt> columns.
+     * @param Z
+     *            the matrix where results are to be stored; its dimensions are
+     *            those of this matrix with <tt>U.rows()</tt> along
+     *            <tt>mode</tt>. Set this parameter to <tt>null</tt> to return a
+     *            new dense matrix.
+     * @param mode
+     *            the mode, <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     * @return <tt>Z</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if <tt>mode</tt> is not <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     *             or if <tt>U</tt> or <tt>Z</tt> have incompatible sizes.
+     */
+    public DoubleMatrix3D zMult(DoubleMatrix2D U, DoubleMatrix3D Z, int mode) {
+        final int m = U.rows();
+        final int zSlices = mode == 0 ? m : slices;
+        final int zRows = mode == 1 ? m : rows;
+        final int zColumns = mode == 2 ? m : columns;
+        if (Z == null)
+            Z = new DenseDoubleMatrix3D(zSlices, zRows, zColumns);
+        if (U.columns() != dimension(mode) || Z.slices() != zSlices || Z.rows() != zRows || Z.columns() != zColumns)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + U.toStringShort()
+                    + ", " + Z.toStringShort() + ", mode=" + mode);
+        // U'
+        final double[] u = new double[U.columns() * m];
+        for (int i = 0; i < m; i++) {
+            for (int k = 0; k < U.columns(); k++) {
+                u[k * m + i] = U.getQuick(i, k);
+            }
+        }
+        final double[] zElements = isDense(Z) ? (double[]) Z.elements() : new double[zSlices * zRows * zColumns];
+        java.util.Arrays.fill(zElements, 0);
+        if (mode == 0) {
+            forEachPart(partitionRows(), new Procedure() {
+                public void apply(int part, int firstRow, int lastRow) {
+                    for (int s = 0; s < slices; s++) {
+                        int us = s * m;
+                        for (int f = firstFiber(s, firstRow); f < slicePointers[s + 1] && rowIndexes[f] < lastRow; f++) {
+                            int idx = rowIndexes[f] * columns;
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                double value = values[k];
+                                int zk = idx + columnIndexes[k];
+                                for (int i = 0; i < m; i++) {
+                                    zElements[zk + i * rows * columns] += value * u[us + i];
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        } else if (mode == 1) {
+            forEachPart(partitionSlices(), new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        int idx = s * m * columns;
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            int ur = rowIndexes[f] * m;
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                double value = values[k];
+                                int zk = idx + columnIndexes[k];
+                                for (int j = 0; j < m; j++) {
+                                    zElements[zk + j * columns] += value * u[ur + j];
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        } else {
+            forEachPart(partitionSlices(), new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            int zf = (s * rows + rowIndexes[f]) * m;
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                double value = values[k];
+                                int uc = columnIndexes[k] * m;
+                                for (int l = 0; l < m; l++) {
+                                    zElements[zf + l] += value * u[uc + l];
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        if (!isDense(Z))
+            Z.assign(zElements);
+        return Z;
+    }
+
+    /**
+     * Computes the product of this matrix, matricized along the given mode,
+     * and the Khatri-Rao product of the factor matrices of the two other modes
+     * (MTTKRP), <tt>z(i,r) = Sum(this(i,j,k) * B(j,r) * C(k,r))</tt> (mode
+     * 0), <tt>z(j,r) = Sum(this(i,j,k) * B(i,r) * C(k,r))</tt> (mode 1) or
+     * <tt>z(k,r) = Sum(this(i,j,k) * B(i,r) * C(j,r))</tt> (mode 2).
+     * <p>
+     * Along mode 2 each thread sums up into its own copy of <tt>z</tt>.
+     *
+     * @param B
+     *            the factor matrix of the first of the two other modes
+     * @param C
+     *            the factor matrix of the second of the two other modes
+     * @param z
+     *            the matrix where results are to be stored, with
+     *            <tt>slices()</tt>, <tt>rows()</tt> or <tt>columns()</tt> rows
+     *            and <tt>B.columns()</tt> columns. Set this parameter to
+     *            <tt>null</tt> to return a new dense matrix.
+     * @param mode
+     *            the mode, <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     * @return <tt>z</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if <tt>mode</tt> is not <tt>0</tt>, <tt>1</tt> or <tt>2</tt>
+     *             or if <tt>B</tt>, <tt>C</tt> or <tt>z</tt> have incompatible
+     *             sizes.
+     */
+    public DoubleMatrix2D zMultKhatriRao(DoubleMatrix2D B, DoubleMatrix2D C, DoubleMatrix2D z, int mode) {
+        final int rank = B.columns();
+        final int zRows = dimension(mode);
+        if (z == null)
+            z = new DenseDoubleMatrix2D(zRows, rank);
+        if (B.rows() != (mode == 0 ? rows : slices) || C.rows() != (mode == 2 ? rows : columns)
+                || C.columns() != rank || z.rows() != zRows || z.columns() != rank)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + B.toStringShort()
+                    + ", " + C.toStringShort() + ", " + z.toStringShort() + ", mode=" + mode);
+        final double[] b = rowMajor(B);
+        final double[] c = rowMajor(C);
+        final double[] zElements = isDense(z) ? (double[]) z.elements() : new double[zRows * rank];
+        java.util.Arrays.fill(zElements, 0);
+        if (mode == 0) {
+            forEachPart(partitionSlices(), new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    double[] t = new double[rank];
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        int zs = s * rank;
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            fiberTimes(f, c, t);
+                            int br = rowIndexes[f] * rank;
+                            for (int r = 0; r < rank; r++) {
+                                zElements[zs + r] += b[br + r] * t[r];
+                            }
+                        }
+                    }
+                }
+            });
+        } else if (mode == 1) {
+            forEachPart(partitionRows(), new Procedure() {
+                public void apply(int part, int firstRow, int lastRow) {
+                    double[] t = new double[rank];
+                    for (int s = 0; s < slices; s++) {
+                        int bs = s * rank;
+                        for (int f = firstFiber(s, firstRow); f < slicePointers[s + 1] && rowIndexes[f] < lastRow; f++) {
+                            fiberTimes(f, c, t);
+                            int zr = rowIndexes[f] * rank;
+                            for (int r = 0; r < rank; r++) {
+                                zElements[zr + r] += b[bs + r] * t[r];
+                            }
+                        }
+                    }
+                }
+            });
+        } else {
+            int[] bounds = partitionSlices();
+            final double[][] partial = new double[bounds.length - 1][];
+            partial[0] = zElements;
+            forEachPart(bounds, new Procedure() {
+                public void apply(int part, int firstSlice, int lastSlice) {
+                    if (partial[part] == null)
+                        partial[part] = new double[zElements.length];
+                    double[] zp = partial[part];
+                    double[] t = new double[rank];
+                    for (int s = firstSlice; s < lastSlice; s++) {
+                        int bs = s * rank;
+                        for (int f = slicePointers[s]; f < slicePointers[s + 1]; f++) {
+                            int cr = rowIndexes[f] * rank;
+                            for (int r = 0; r < rank; r++) {
+                                t[r] = b[bs + r] * c[cr + r];
+                            }
+                            for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                                double value = values[k];
+                                int zc = columnIndexes[k] * rank;
+                                for (int r = 0; r < rank; r++) {
+                                    zp[zc + r] += value * t[r];
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+            for (int p = 1; p < partial.length; p++) {
+                for (int i = 0; i < zElements.length; i++) {
+                    zElements[i] += partial[p][i];
+                }
+            }
+        }
+        if (!isDense(z))
+            z.assign(zElements);
+        return z;
+    }
+
+    protected DoubleMatrix3D getContent() {
+        return this;
+    }
+
+    /*
+     * A task working on the slices or rows from first to last-1.
+     */
+    private interface Procedure {
+        void apply(int part, int first, int last);
+    }
+
+    /*
+     * Runs the procedure on each part, in parallel.
+     */
+    private static void forEachPart(int[] bounds, final Procedure procedure) {
+        int nparts = bounds.length - 1;
+        if (nparts == 1) {
+            procedure.apply(0, bounds[0], bounds[1]);
+            return;
+        }
+        Future<?>[] futures = new Future[nparts];
+        for (int j = 0; j < nparts; j++) {
+            final int part = j;
+            final int first = bounds[j];
+            final int last = bounds[j + 1];
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    procedure.apply(part, first, last);
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+    }
+
+    /*
+     * Splits 0..n-1 into parts with about the same number of cells, given the
+     * number of cells before each index.
+     */
+    private static int[] partition(int[] cellsBefore, int n) {
+        int nparts = 1;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (cellsBefore[n] >= ConcurrencyUtils.getThreadsBeginN_3D())) {
+            nparts = Math.max(1, Math.min(nthreads, n));
+        }
+        int[] bounds = new int[nparts + 1];
+        int i = 0;
+        for (int j = 1; j < nparts; j++) {
+            long target = (long) cellsBefore[n] * j / nparts;
+            while (i < n && cellsBefore[i] < target) {
+                i++;
+            }
+            bounds[j] = i;
+        }
+        bounds[nparts] = n;
+        return bounds;
+    }
+
+    private int[] partitionSlices() {
+        int[] cellsBefore = new int[slices + 1];
+        for (int s = 0; s <= slices; s++) {
+            cellsBefore[s] = rowPointers[slicePointers[s]];
+        }
+        return partition(cellsBefore, slices);
+    }
+
+    private int[] partitionRows() {
+        int[] cellsBefore = new int[rows + 1];
+        int nfibers = slicePointers[slices];
+        for (int f = 0; f < nfibers; f++) {
+            cellsBefore[rowIndexes[f] + 1] += rowPointers[f + 1] - rowPointers[f];
+        }
+        for (int r = 0; r < rows; r++) {
+            cellsBefore[r + 1] += cellsBefore[r];
+        }
+        return partition(cellsBefore, rows);
+    }
+
+    /*
+     * Builds the fibers from cells in coordinate form.
+     */
+    private void assemble(int[] cellSlices, int[] cellRows, int[] cellColumns, double[] cellValues, int n) {
+        // bucket the cells by slice
+        final int[] start = new int[slices + 1];
+        for (int k = 0; k < n; k++) {
+            start[cellSlices[k] + 1]++;
+        }
+        for (int s = 0; s < slices; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] next = new int[slices];
+        System.arraycopy(start, 0, next, 0, slices);
+        final int[] r = new int[n];
+        final int[] c = new int[n];
+        final double[] v = new double[n];
+        for (int k = 0; k < n; k++) {
+            int p = next[cellSlices[k]]++;
+            r[p] = cellRows[k];
+            c[p] = cellColumns[k];
+            v[p] = cellValues[k];
+        }
+        // sort the cells of each slice, sum up the duplicates and drop the zeros
+        final int[] cellsBefore = new int[slices + 1];
+        final int[] fibersBefore = new int[slices + 1];
+        int[] bounds = partition(start, slices);
+        forEachPart(bounds, new Procedure() {
+            public void apply(int part, int firstSlice, int lastSlice) {
+                for (int s = firstSlice; s < lastSlice; s++) {
+                    int from = start[s];
+                    int to = start[s + 1];
+                    cern.colt.GenericSorting.quickSort(from, to, new cern.colt.function.tint.IntComparator() {
+                        public int compare(int a, int b) {
+                            if (r[a] != r[b])
+                                return r[a] < r[b] ? -1 : 1;
+                            return c[a] < c[b] ? -1 : (c[a] == c[b] ? 0 : 1);
+                        }
+                    }, new cern.colt.Swapper() {
+                        public void swap(int a, int b) {
+                            int tmp = r[a];
+                            r[a] = r[b];
+                            r[b] = tmp;
+                            tmp = c[a];
+                            c[a] = c[b];
+                            c[b] = tmp;
+                            double value = v[a];
+                            v[a] = v[b];
+                            v[b] = value;
+                        }
+                    });
+                    int nz = from;
+                    int nf = 0;
+                    for (int k = from; k < to;) {
+                        int row = r[k];
+                        int column = c[k];
+                        double sum = v[k++];
+                        while (k < to && r[k] == row && c[k] == column) {
+                            sum += v[k++];
+                        }
+                        if (sum != 0) {
+                            if (nz == from || r[nz - 1] != row)
+                                nf++;
+                            r[nz] = row;
+                            c[nz] = column;
+                            v[nz++] = sum;
+                        }
+                    }
+                    cellsBefore[s + 1] = nz - from;
+                    fibersBefore[s + 1] = nf;
+                }
+            }
+        });
+        for (int s = 0; s < slices; s++) {
+            cellsBefore[s + 1] += cellsBefore[s];
+            fibersBefore[s + 1] += fibersBefore[s];
+        }
+        slicePointers = fibersBefore;
+        rowIndexes = new int[fibersBefore[slices]];
+        rowPointers = new int[fibersBefore[slices] + 1];
+        columnIndexes = new int[cellsBefore[slices]];
+        values = new double[cellsBefore[slices]];
+        rowPointers[fibersBefore[slices]] = cellsBefore[slices];
+        forEachPart(bounds, new Procedure() {
+            public void apply(int part, int firstSlice, int lastSlice) {
+                for (int s = firstSlice; s < lastSlice; s++) {
+                    int f = fibersBefore[s];
+                    int nz = cellsBefore[s];
+                    int from = start[s];
+                    int to = from + cellsBefore[s + 1] - cellsBefore[s];
+                    for (int k = from; k < to; k++) {
+                        if (k == from || r[k - 1] != r[k]) {
+                            rowIndexes[f] = r[k];
+                            rowPointers[f++] = nz;
+                        }
+                        columnIndexes[nz] = c[k];
+                        values[nz++] = v[k];
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean apply(cern.colt.function.tdouble.IntIntDoubleFunction function, int i, int k) {
+        double value = values[k];
+        double r = function.apply(i, columnIndexes[k], value);
+        if (r != value) {
+            values[k] = r;
+            return r == 0;
+        }
+        return false;
+    }
+
+    private int dimension(int mode) {
+        switch (mode) {
+        case 0:
+            return slices;
+        case 1:
+            return rows;
+        case 2:
+            return columns;
+        default:
+            throw new IllegalArgumentException("mode must be 0, 1 or 2: " + mode);
+        }
+    }
+
+    /*
+     * t = Sum(values[k] * C(columnIndexes[k],:)) over the cells of the fiber.
+     */
+    private void fiberTimes(int f, double[] c, double[] t) {
+        int rank = t.length;
+        java.util.Arrays.fill(t, 0);
+        for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+            double value = values[k];
+            int ck = columnIndexes[k] * rank;
+            for (int r = 0; r < rank; r++) {
+                t[r] += value * c[ck + r];
+            }
+        }
+    }
+
+    /*
+     * The first fiber of the slice in a row not less than the given one.
+     */
+    private int firstFiber(int slice, int row) {
+        int f = cern.colt.Sorting.binarySearchFromTo(rowIndexes, row, slicePointers[slice],
+                slicePointers[slice + 1] - 1);
+        return f >= 0 ? f : -f - 1;
+    }
+
+    private void insertCell(int f, int k, int column, double value) {
+        int nfibers = slicePointers[slices];
+        int nnz = rowPointers[nfibers];
+        if (nnz == columnIndexes.length) {
+            reallocCells(Math.max(2 * nnz, 10));
+        }
+        System.arraycopy(columnIndexes, k, columnIndexes, k + 1, nnz - k);
+        System.arraycopy(values, k, values, k + 1, nnz - k);
+        columnIndexes[k] = column;
+        values[k] = value;
+        for (int g = f + 1; g <= nfibers; g++) {
+            rowPointers[g]++;
+        }
+    }
+
+    private void insertFiber(int slice, int f, int row) {
+        int nfibers = slicePointers[slices];
+        if (nfibers == rowIndexes.length) {
+            reallocFibers(Math.max(2 * nfibers, 10));
+        }
+        System.arraycopy(rowIndexes, f, rowIndexes, f + 1, nfibers - f);
+        System.arraycopy(rowPointers, f, rowPointers, f + 1, nfibers + 1 - f);
+        rowIndexes[f] = row;
+        for (int s = slice + 1; s <= slices; s++) {
+            slicePointers[s]++;
+        }
+    }
+
+    private static boolean isDense(DoubleMatrix2D z) {
+        return z instanceof DenseDoubleMatrix2D && !z.isView();
+    }
+
+    private static boolean isDense(DoubleMatrix3D Z) {
+        return Z instanceof DenseDoubleMatrix3D && !Z.isView();
+    }
+
+    private void reallocCells(int nzmax) {
+        int nnz = rowPointers[slicePointers[slices]];
+        int[] columnIndexesNew = new int[nzmax];
+        System.arraycopy(columnIndexes, 0, columnIndexesNew, 0, nnz);
+        columnIndexes = columnIndexesNew;
+        double[] valuesNew = new double[nzmax];
+        System.arraycopy(values, 0, valuesNew, 0, nnz);
+        values = valuesNew;
+    }
+
+    private void reallocFibers(int nfmax) {
+        int nfibers = slicePointers[slices];
+        int[] rowIndexesNew = new int[nfmax];
+        System.arraycopy(rowIndexes, 0, rowIndexesNew, 0, nfibers);
+        rowIndexes = rowIndexesNew;
+        int[] rowPointersNew = new int[nfmax + 1];
+        System.arraycopy(rowPointers, 0, rowPointersNew, 0, nfibers + 1);
+        rowPointers = rowPointersNew;
+    }
+
+    private void removeCell(int slice, int f, int k) {
+        int nfibers = slicePointers[slices];
+        int nnz = rowPointers[nfibers];
+        System.arraycopy(columnIndexes, k + 1, columnIndexes, k, nnz - k - 1);
+        System.arraycopy(values, k + 1, values, k, nnz - k - 1);
+        for (int g = f + 1; g <= nfibers; g++) {
+            rowPointers[g]--;
+        }
+        if (rowPointers[f] == rowPointers[f + 1]) { // the fiber is empty
+            System.arraycopy(rowIndexes, f + 1, rowIndexes, f, nfibers - f - 1);
+            System.arraycopy(rowPointers, f + 1, rowPointers, f, nfibers - f);
+            for (int s = slice + 1; s <= slices; s++) {
+                slicePointers[s]--;
+            }
+        }
+    }
+
+    /*
+     * Removes the cells set to zero and the fibers left empty.
+     */
+    private void removeZeroes() {
+        int nf = 0;
+        int nz = 0;
+        int f = 0;
+        for (int s = 0; s < slices; s++) {
+            int end = slicePointers[s + 1];
+            slicePointers[s] = nf;
+            for (; f < end; f++) {
+                int first = nz;
+                for (int k = rowPointers[f]; k < rowPointers[f + 1]; k++) {
+                    if (values[k] != 0) {
+                        columnIndexes[nz] = columnIndexes[k];
+                        values[nz++] = values[k];
+                    }
+                }
+                if (nz > first) {
+                    rowIndexes[nf] = rowIndexes[f];
+                    rowPointers[nf++] = first;
+                }
+            }
+        }
+        slicePointers[slices] = nf;
+        rowPointers[nf] = nz;
+    }
+
+    /*
+     * The elements of A in row major order.
+     */
+    private static double[] rowMajor(DoubleMatrix2D A) {
+        if (isDense(A))
+            return (double[]) A.elements();
+        int columns = A.columns();
+        double[] elements = new double[A.rows() * columns];
+        for (int i = 0; i < A.rows(); i++) {
+            for (int j = 0; j < columns; j++) {
+                elements[i * columns + j] = A.getQuick(i, j);
+            }
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,527 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Assembles a compressed sparse matrix from triplets <tt>(row, column,
+ * value)</tt>. Triplets are added one at a time or in batches, in any order
+ * and with duplicates; {@link #getRowCompressed(boolean)} and
+ * {@link #getColumnCompressed(boolean)} sum the duplicates and return a
+ * matrix with sorted indexes.
+ * <p>
+ * The matrix is built concurrently in four passes over the triplets: every
+ * thread counts the entries per row of its share of the triplets, the counts
+ * are turned into disjoint offsets for every thread and row, the threads
+ * scatter their triplets to these offsets, and finally every row is sorted
+ * and its duplicates are summed, with the rows split between the threads by
+ * their number of entries. Apart from the triplets themselves, the only large
+ * arrays are the indexes and values of the result. Note that this class is
+ * not synchronized.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * SparseDoubleMatrix2DBuilder builder = new SparseDoubleMatrix2DBuilder(rows, columns);
+ * for (each element) {
+ *     builder.add(elementRows, elementColumns, elementValues);
+ * }
+ * SparseRCDoubleMatrix2D A = builder.getRowCompressed(false);
+ * </pre>
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+public class SparseDoubleMatrix2DBuilder {
+
+    /*
+     * Rows with at most this many entries are sorted by insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final int rows;
+
+    private final int columns;
+
+    private final List<int[]> rowBatches = new ArrayList<int[]>();
+
+    private final List<int[]> columnBatches = new ArrayList<int[]>();
+
+    private final List<double[]> valueBatches = new ArrayList<double[]>();
+
+    /*
+     * The batch filled by add(int, int, double).
+     */
+    private int[] openRows;
+
+    private int[] openColumns;
+
+    private double[] openValues;
+
+    private int openSize;
+
+    private long size;
+
+    /**
+     * Constructs an empty builder for a <tt>rows x columns</tt> matrix.
+     *
+     * @param rows
+     *            the number of rows of the matrix.
+     * @param columns
+     *            the number of columns of the matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>rows &lt; 0 || columns &lt; 0</tt>.
+     */
+    public SparseDoubleMatrix2DBuilder(int rows, int columns) {
+        if (rows < 0 || columns < 0)
+            throw new IllegalArgumentException("negative size");
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Adds a triplet. If there already is a triplet with the same row and
+     * column, the values are summed.
+     *
+     * @param row
+     *            the row index.
+     * @param column
+     *            the column index.
+     * @param value
+     *            the value.
+     * @throws IndexOutOfBoundsException
+     *             if <tt>row</tt> or <tt>column</tt> is out of range.
+     */
+    public void add(int row, int column, double value) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            throw new IndexOutOfBoundsException("row:" + row + ", column:" + column);
+        if (openRows == null || openSize == openRows.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(16, 3L * openSize / 2 + 1));
+            int[] newRows = new int[capacity];
+            int[] newColumns = new int[capacity];
+            double[] newValues = new double[capacity];
+            if (openSize > 0) {
+                System.arraycopy(openRows, 0, newRows, 0, openSize);
+                System.arraycopy(openColumns, 0, newColumns, 0, openSize);
+                System.arraycopy(openValues, 0, newValues, 0, openSize);
+            }
+            openRows = newRows;
+            openColumns = newColumns;
+            openValues = newValues;
+        }
+        openRows[openSize] = row;
+        openColumns[openSize] = column;
+        openValues[openSize++] = value;
+        size++;
+    }
+
+    /**
+     * Adds a batch of triplets. The arrays are copied, so the caller can reuse
+     * them for the next batch. The indexes are checked when the matrix is
+     * built.
+     *
+     * @param rowIndexes
+     *            the row indexes.
+     * @param columnIndexes
+     *            the column indexes.
+     * @param values
+     *            the values.
+     * @throws IllegalArgumentException
+     *             if the arrays have different lengths.
+     */
+    public void add(int[] rowIndexes, int[] columnIndexes, double[] values) {
+        if (rowIndexes.length != columnIndexes.length || rowIndexes.length != values.length)
+            throw new IllegalArgumentException("Incompatible args: " + rowIndexes.length + ", "
+                    + columnIndexes.length + ", " + values.length);
+        if (rowIndexes.length == 0)
+            return;
+        rowBatches.add(rowIndexes.clone());
+        columnBatches.add(columnIndexes.clone());
+        valueBatches.add(values.clone());
+        size += rowIndexes.length;
+    }
+
+    /**
+     * Removes all triplets.
+     */
+    public void clear() {
+        rowBatches.clear();
+        columnBatches.clear();
+        valueBatches.clear();
+        openRows = null;
+        openColumns = null;
+        openValues = null;
+        openSize = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns a new column-compressed matrix with the sum of the triplets. The
+     * row indexes are sorted.
+     *
+     * @param removeZeroes
+     *            if true, then entries that sum to exactly zero are removed.
+     * @return the assembled matrix.
+     * @throws IndexOutOfBoundsException
+     *             if a triplet is out of range.
+     */
+    public SparseCCDoubleMatrix2D getColumnCompressed(boolean removeZeroes) {
+        CompressedDoubleMatrixKernels.Compressed C = compress(columns, rows, columnBatches(), rowBatches(),
+                valueBatches(), lengths(), 0, true, removeZeroes, true);
+        SparseCCDoubleMatrix2D A = new SparseCCDoubleMatrix2D(rows, columns, C.indexes, C.pointers, C.values);
+        A.rowIndexesSorted = true;
+        return A;
+    }
+
+    /**
+     * Returns a new row-compressed matrix with the sum of the triplets. The
+     * column indexes are sorted.
+     *
+     * @param removeZeroes
+     *            if true, then entries that sum to exactly zero are removed.
+     * @return the assembled matrix.
+     * @throws IndexOutOfBoundsException
+     *             if a triplet is out of range.
+     */
+    public SparseRCDoubleMatrix2D getRowCompressed(boolean removeZeroes) {
+        CompressedDoubleMatrixKernels.Compressed C = compress(rows, columns, rowBatches(), columnBatches(),
+                valueBatches(), lengths(), 0, true, removeZeroes, true);
+        SparseRCDoubleMatrix2D A = new SparseRCDoubleMatrix2D(rows, columns, C.pointers, C.indexes, C.values);
+        A.columnIndexesSorted = true;
+        return A;
+    }
+
+    /**
+     * Returns the number of triplets added so far.
+     *
+     * @return the number of triplets.
+     */
+    public long size() {
+        return size;
+    }
+
+    private int[][] rowBatches() {
+        return batches(rowBatches, openRows);
+    }
+
+    private int[][] columnBatches() {
+        return batches(columnBatches, openColumns);
+    }
+
+    private double[][] valueBatches() {
+        double[][] batches = valueBatches.toArray(new double[valueBatches.size() + (openSize > 0 ? 1 : 0)][]);
+        if (openSize > 0)
+            batches[batches.length - 1] = openValues;
+        return batches;
+    }
+
+    private int[][] batches(List<int[]> list, int[] open) {
+        int[][] batches = list.toArray(new int[list.size() + (openSize > 0 ? 1 : 0)][]);
+        if (openSize > 0)
+            batches[batches.length - 1] = open;
+        return batches;
+    }
+
+    /*
+     * The lengths of the batches; the open batch is not full.
+     */
+    private int[] lengths() {
+        int[] lengths = new int[rowBatches.size() + (openSize > 0 ? 1 : 0)];
+        for (int b = 0; b < rowBatches.size(); b++) {
+            lengths[b] = rowBatches.get(b).length;
+        }
+        if (openSize > 0)
+            lengths[lengths.length - 1] = openSize;
+        return lengths;
+    }
+
+    /**
+     * Compresses the triplets <tt>(major[b][k], minor[b][k], values[b][k])</tt>
+     * of all batches <tt>b</tt> and <tt>k &lt; lengths[b]</tt> into
+     * <tt>n</tt> outer vectors with inner indexes less than <tt>m</tt>. If
+     * <tt>values</tt> is <tt>null</tt>, all triplets have the given value.
+     * Without sorting and summing, the entries of an outer vector keep the
+     * order of the triplets. Removing zeroes drops the entries that are
+     * exactly zero (after summing); small values are kept.
+     */
+    static CompressedDoubleMatrixKernels.Compressed compress(final int n, final int m, final int[][] major,
+            final int[][] minor, final double[][] values, final int[] lengths, final double value,
+            final boolean sumDuplicates, final boolean removeZeroes, final boolean sort) {
+        final long[] offsets = new long[major.length + 1];
+        for (int b = 0; b < major.length; b++) {
+            offsets[b + 1] = offsets[b] + lengths[b];
+        }
+        final long total = offsets[major.length];
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        final int nz = (int) total;
+
+        // split the triplets between the threads; every thread keeps an n-long
+        // histogram, so the histograms must not outgrow the triplets
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if (nz < ConcurrencyUtils.getThreadsBeginN_2D())
+            nthreads = 1;
+        nthreads = (int) Math.max(1, Math.min(nthreads, total / Math.max(1, n)));
+        final int[][] counts = new int[nthreads][];
+        final long[] bad = new long[nthreads];
+        Arrays.fill(bad, -1);
+
+        // pass 1: histograms
+        forEachPart(nthreads, new PartProcedure() {
+            public void apply(int part, int nparts) {
+                int[] count = new int[n];
+                long first = total * part / nparts;
+                long last = total * (part + 1) / nparts;
+                for (int b = batch(offsets, first); first < last; b++) {
+                    int[] I = major[b];
+                    int[] J = minor[b];
+                    int low = (int) (first - offsets[b]);
+                    int high = (int) (Math.min(last, offsets[b + 1]) - offsets[b]);
+                    for (int k = low; k < high; k++) {
+                        int i = I[k];
+                        int j = J[k];
+                        if (i < 0 || i >= n || j < 0 || j >= m) {
+                            bad[part] = offsets[b] + k;
+                            return;
+                        }
+                        count[i]++;
+                    }
+                    first = offsets[b] + high;
+                }
+                counts[part] = count;
+            }
+        });
+        for (int t = 0; t < nthreads; t++) {
+            if (bad[t] >= 0) {
+                int b = batch(offsets, bad[t]);
+                int k = (int) (bad[t] - offsets[b]);
+                throw new IndexOutOfBoundsException("outer:" + major[b][k] + ", inner:" + minor[b][k]);
+            }
+        }
+
+        // pass 2: offsets for every thread and outer vector
+        final int[] pointers = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int sum = 0;
+            for (int t = 0; t < nthreads; t++) {
+                int c = counts[t][i];
+                counts[t][i] = pointers[i] + sum;
+                sum += c;
+            }
+            pointers[i + 1] = pointers[i] + sum;
+        }
+
+        // pass 3: scatter
+        final int[] indexes = new int[Math.max(nz, 1)];
+        final double[] elements = new double[Math.max(nz, 1)];
+        forEachPart(nthreads, new PartProcedure() {
+            public void apply(int part, int nparts) {
+                int[] position = counts[part];
+                long first = total * part / nparts;
+                long last = total * (part + 1) / nparts;
+                for (int b = batch(offsets, first); first < last; b++) {
+                    int[] I = major[b];
+                    int[] J = minor[b];
+                    double[] X = values == null ? null : values[b];
+                    int low = (int) (first - offsets[b]);
+                    int high = (int) (Math.min(last, offsets[b + 1]) - offsets[b]);
+                    for (int k = low; k < high; k++) {
+                        int p = position[I[k]]++;
+                        indexes[p] = J[k];
+                        elements[p] = X == null ? value : X[k];
+                    }
+                    first = offsets[b] + high;
+                }
+                counts[part] = null;
+            }
+        });
+        if (!sort && !sumDuplicates && !removeZeroes)
+            return new CompressedDoubleMatrixKernels.Compressed(pointers, indexes, elements);
+
+        // pass 4: sort, sum and drop zeroes within every outer vector
+        final int[] lengthsOut = new int[n];
+        final int[] parts = outerParts(n, pointers, nthreads);
+        forEachPart(parts.length - 1, new PartProcedure() {
+            public void apply(int part, int nparts) {
+                int[] marker = sumDuplicates && !sort ? new int[m] : null;
+                if (marker != null)
+                    Arrays.fill(marker, -1);
+                long[] keys = null;
+                int[] indexesWork = null;
+                double[] elementsWork = null;
+                for (int i = parts[part]; i < parts[part + 1]; i++) {
+                    int low = pointers[i];
+                    int high = pointers[i + 1];
+                    int len = high - low;
+                    if (sort && len > 1) {
+                        if (len <= INSERTION_SORT_THRESHOLD) {
+                            insertionSort(indexes, elements, low, high);
+                        } else {
+                            if (keys == null || keys.length < len) {
+                                keys = new long[len];
+                                indexesWork = new int[len];
+                                elementsWork = new double[len];
+                            }
+                            // the position breaks ties, so the sort is stable
+                            for (int k = 0; k < len; k++) {
+                                keys[k] = ((long) indexes[low + k] << 32) | k;
+                            }
+                            Arrays.sort(keys, 0, len);
+                            for (int k = 0; k < len; k++) {
+                                int from = low + (int) keys[k];
+                                indexesWork[k] = indexes[from];
+                                elementsWork[k] = elements[from];
+                            }
+                            System.arraycopy(indexesWork, 0, indexes, low, len);
+                            System.arraycopy(elementsWork, 0, elements, low, len);
+                        }
+                    }
+                    int q = low;
+                    if (sumDuplicates && sort) {
+                        for (int k = low; k < high; k++) {
+                            if (q > low && indexes[q - 1] == indexes[k]) {
+                                elements[q - 1] += elements[k];
+                            } else {
+                                indexes[q] = indexes[k];
+                                elements[q++] = elements[k];
+                            }
+                        }
+                    } else if (sumDuplicates) {
+                        for (int k = low; k < high; k++) {
+                            int j = indexes[k];
+                            if (marker[j] >= low) {
+                                elements[marker[j]] += elements[k];
+                            } else {
+                                marker[j] = q;
+                                indexes[q] = j;
+                                elements[q++] = elements[k];
+                            }
+                        }
+                    } else {
+                        q = high;
+                    }
+                    if (removeZeroes) {
+                        int r = low;
+                        for (int k = low; k < q; k++) {
+                            if (elements[k] != 0) {
+                                indexes[r] = indexes[k];
+                                elements[r++] = elements[k];
+                            }
+                        }
+                        q = r;
+                    }
+                    lengthsOut[i] = q - low;
+                }
+            }
+        });
+        final int[] pointersOut = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            pointersOut[i + 1] = pointersOut[i] + lengthsOut[i];
+        }
+        if (pointersOut[n] == nz)
+            return new CompressedDoubleMatrixKernels.Compressed(pointers, indexes, elements);
+
+        // pass 5: close the gaps left by removed entries
+        final int[] indexesOut = new int[Math.max(pointersOut[n], 1)];
+        final double[] elementsOut = new double[Math.max(pointersOut[n], 1)];
+        forEachPart(parts.length - 1, new PartProcedure() {
+            public void apply(int part, int nparts) {
+                for (int i = parts[part]; i < parts[part + 1]; i++) {
+                    System.arraycopy(indexes, pointers[i], indexesOut, pointersOut[i], lengthsOut[i]);
+                    System.arraycopy(elements, pointers[i], elementsOut, pointersOut[i], lengthsOut[i]);
+                }
+            }
+        });
+        return new CompressedDoubleMatrixKernels.Compressed(pointersOut, indexesOut, elementsOut);
+    }
+
+    /*
+     * Returns the batch holding the triplet with the given global position.
+     */
+    private static int batch(long[] offsets, long position) {
+        int low = 0;
+        int high = offsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static void insertionSort(int[] indexes, double[] elements, int low, int high) {
+        for (int k = low + 1; k < high; k++) {
+            int j = indexes[k];
+            double x = elements[k];
+            int l = k - 1;
+            while (l >= low && indexes[l] > j) {
+                indexes[l + 1] = indexes[l];
+                elements[l + 1] = elements[l];
+                l--;
+            }
+            indexes[l + 1] = j;
+            elements[l + 1] = x;
+        }
+    }
+
+    /*
+     * Splits the outer vectors into parts with about the same number of
+     * entries.
+     */
+    private static int[] outerParts(int n, int[] pointers, int nthreads) {
+        nthreads = Math.max(1, Math.min(nthreads, n));
+        int[] parts = new int[nthreads + 1];
+        parts[nthreads] = n;
+        long work = (long) pointers[n] + n;
+        for (int j = 1; j < nthreads; j++) {
+            long target = work * j / nthreads;
+            int low = parts[j - 1];
+            int high = n;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if ((long) pointers[mid] + mid < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            parts[j] = low;
+        }
+        return parts;
+    }
+
+    private static void forEachPart(final int nparts, final PartProcedure procedure) {
+        if (nparts == 1) {
+            procedure.apply(0, 1);
+            return;
+        }
+        Future<?>[] futures = new Future[nparts];
+        for (int j = 0; j < nparts; j++) {
+            final int part = j;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    procedure.apply(part, nparts);
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+    }
+
+    private interface PartProcedure {
+        void apply(int part, int nparts);
+    }
+}
@@ -9,14 +9,11 @@ It is provided "as is" without expressed or implied warranty.
 package cern.colt.matrix.tdouble.impl;
 
 import java.util.Arrays;
-import java.util.concurrent.Future;
 
 import cern.colt.list.tdouble.DoubleArrayList;
 import cern.colt.list.tint.IntArrayList;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.jet.math.tdouble.DoubleFunctions;
-import edu.emory.mathcs.utils.ConcurrencyUtils;
 
 /**
  * Sparse row-compressed 2-d matrix holding <tt>double</tt> elements. First see
@@ -255,26 +252,13 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             throw new IllegalArgumentException("value cannot be 0");
         }
 
-        int nz = Math.max(rowIndexes.length, 1);
-        this.columnIndexes = new int[nz];
-        this.values = new double[nz];
-        this.rowPointers = new int[rows + 1];
-        int[] w = new int[rows];
-        int r;
-        for (int k = 0; k < nz; k++) {
-            w[rowIndexes[k]]++;
-        }
-        cumsum(this.rowPointers, w, rows);
-        for (int k = 0; k < nz; k++) {
-            this.columnIndexes[r = w[rowIndexes[k]]++] = columnIndexes[k];
-            this.values[r] = value;
-        }
-        if (removeDuplicates) {
-            removeDuplicates();
-        }
-        if (sortColumnIndexes) {
-            sortColumnIndexes();
-        }
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(rows, columns,
+                new int[][] { rowIndexes }, new int[][] { columnIndexes }, null, new int[] { rowIndexes.length },
+                value, removeDuplicates, false, sortColumnIndexes);
+        this.rowPointers = C.pointers;
+        this.columnIndexes = C.indexes;
+        this.values = C.values;
+        columnIndexesSorted = sortColumnIndexes;
     }
 
     /**
@@ -312,29 +296,13 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         } else if (rowIndexes.length != values.length) {
             throw new IllegalArgumentException("rowIndexes.length != values.length");
         }
-        int nz = Math.max(rowIndexes.length, 1);
-        this.columnIndexes = new int[nz];
-        this.values = new double[nz];
-        this.rowPointers = new int[rows + 1];
-        int[] w = new int[rows];
-        int r;
-        for (int k = 0; k < nz; k++) {
-            w[rowIndexes[k]]++;
-        }
-        cumsum(this.rowPointers, w, rows);
-        for (int k = 0; k < nz; k++) {
-            this.columnIndexes[r = w[rowIndexes[k]]++] = columnIndexes[k];
-            this.values[r] = values[k];
-        }
-        if (removeZeroes) {
-            removeZeroes();
-        }
-        if (removeDuplicates) {
-            removeDuplicates();
-        }
-        if (sortColumnIndexes) {
-            sortColumnIndexes();
-        }
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(rows, columns,
+                new int[][] { rowIndexes }, new int[][] { columnIndexes }, new double[][] { values },
+                new int[] { rowIndexes.length }, 0, removeDuplicates, removeZeroes, sortColumnIndexes);
+        this.rowPointers = C.pointers;
+        this.columnIndexes = C.indexes;
+        this.values = C.values;
+        columnIndexesSorted = sortColumnIndexes;
     }
 
     /**
@@ -367,6 +335,36 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         this.values = values;
     }
 
+    /**
+     * Constructs a matrix from its rows. The non-zero cells of the rows are
+     * copied, so subsequent changes in <tt>rows</tt> are not reflected in the
+     * matrix, and vice-versa.
+     * 
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param rows
+     *            the rows
+     * @throws IllegalArgumentException
+     *             if <tt>rows[i].size() != columns</tt> for some row.
+     */
+    public SparseRCDoubleMatrix2D(int columns, SparseSortedDoubleMatrix1D[] rows) {
+        this(rows.length, columns, 0);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].size() != columns)
+                throw new IllegalArgumentException("Incompatible args: rows[" + i + "].size()=" + rows[i].size()
+                        + ", columns=" + columns);
+            rowPointers[i + 1] = rowPointers[i] + rows[i].cardinality();
+        }
+        columnIndexes = new int[rowPointers[rows.length]];
+        values = new double[rowPointers[rows.length]];
+        for (int i = 0; i < rows.length; i++) {
+            int nnz = rows[i].cardinality();
+            System.arraycopy(rows[i].getIndexes(), 0, columnIndexes, rowPointers[i], nnz);
+            System.arraycopy(rows[i].getValues(), 0, values, rowPointers[i], nnz);
+        }
+        columnIndexesSorted = true;
+    }
+
     public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
         if (function instanceof cern.jet.math.tdouble.DoubleMult) { // x[i] = mult*x[i]
             final double alpha = ((cern.jet.math.tdouble.DoubleMult) function).multiplicator;
@@ -427,6 +425,30 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             columnIndexes = other.getRowIndexes();
             values = other.getValues();
             columnIndexesSorted = true;
+        } else if (source instanceof SlicedEllpackDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D other = ((SlicedEllpackDoubleMatrix2D) source).getRowCompressed();
+            rowPointers = other.rowPointers;
+            columnIndexes = other.columnIndexes;
+            values = other.values;
+            columnIndexesSorted = false;
+        } else if (source instanceof BlockSparseRowDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D other = ((BlockSparseRowDoubleMatrix2D) source).getRowCompressed();
+            rowPointers = other.rowPointers;
+            columnIndexes = other.columnIndexes;
+            values = other.values;
+            columnIndexesSorted = true;
+        } else if (source instanceof SymmetricSparseRCDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D other = ((SymmetricSparseRCDoubleMatrix2D) source).getRowCompressed();
+            rowPointers = other.rowPointers;
+            columnIndexes = other.columnIndexes;
+            values = other.values;
+            columnIndexesSorted = true;
+        } else if (source instanceof ConcurrentSparseDoubleMatrix2D) {
+            SparseRCDoubleMatrix2D other = ((ConcurrentSparseDoubleMatrix2D) source).getRowCompressed(true);
+            rowPointers = other.rowPointers;
+            columnIndexes = other.columnIndexes;
+            values = other.values;
+            columnIndexesSorted = true;
         } else {
             assign(0);
             source.forEachNonZero(new cern.colt.function.tdouble.IntIntDoubleFunction() {
@@ -626,7 +648,35 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         return dense;
     }
 
-    public synchronized double getQuick(int row, int column) {
+    /**
+     * Returns a new matrix <tt>B</tt> with
+     * <tt>B[i,j] = this[rowIndexes[i],columnIndexes[j]]</tt>, like
+     * {@link #viewSelection(int[], int[])}. This method creates a new object
+     * (not a view), so changes in the returned matrix are NOT reflected in
+     * this matrix. The rows are copied concurrently; sorted column indexes stay
+     * sorted.
+     * 
+     * @param rowIndexes
+     *            the row permutation, or <tt>null</tt> for the identity.
+     * @param columnIndexes
+     *            the column permutation, or <tt>null</tt> for the identity.
+     * @return the permuted matrix
+     * @throws IndexOutOfBoundsException
+     *             if an argument is not a permutation of the rows or columns.
+     */
+    public SparseRCDoubleMatrix2D getPermuted(int[] rowIndexes, int[] columnIndexes) {
+        if (rowIndexes != null)
+            CompressedDoubleMatrixKernels.inverse(rowIndexes, rows);
+        int[] columnInverse = columnIndexes == null ? null : CompressedDoubleMatrixKernels.inverse(columnIndexes,
+                columns);
+        CompressedDoubleMatrixKernels.Compressed P = CompressedDoubleMatrixKernels.permute(rows, rowPointers,
+                this.columnIndexes, values, rowIndexes, columnInverse, columnIndexesSorted);
+        SparseRCDoubleMatrix2D B = new SparseRCDoubleMatrix2D(rows, columns, P.pointers, P.indexes, P.values);
+        B.columnIndexesSorted = columnIndexesSorted;
+        return B;
+    }
+
+    public double getQuick(int row, int column) {
         //        int k = cern.colt.Sorting.binarySearchFromTo(columnIndexes, column, rowPointers[row], rowPointers[row + 1] - 1);
         int k = searchFromTo(columnIndexes, column, rowPointers[row], rowPointers[row + 1] - 1);
 
@@ -636,6 +686,44 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         return v;
     }
 
+    /**
+     * Returns a copy of the given row as a sorted sparse vector. This method
+     * creates a new object (not a view), so changes in the returned vector are
+     * NOT reflected in this matrix.
+     * 
+     * @param row
+     *            the index of the row
+     * @return the row
+     * @throws IndexOutOfBoundsException
+     *             if <tt>row<0 || row>=rows()</tt>.
+     */
+    public SparseSortedDoubleMatrix1D getRow(int row) {
+        checkRow(row);
+        int low = rowPointers[row];
+        int nnz = rowPointers[row + 1] - low;
+        final int[] indexes = new int[nnz];
+        final double[] rowValues = new double[nnz];
+        System.arraycopy(columnIndexes, low, indexes, 0, nnz);
+        System.arraycopy(values, low, rowValues, 0, nnz);
+        if (!columnIndexesSorted) {
+            cern.colt.GenericSorting.quickSort(0, nnz, new cern.colt.function.tint.IntComparator() {
+                public int compare(int a, int b) {
+                    return indexes[a] < indexes[b] ? -1 : (indexes[a] == indexes[b] ? 0 : 1);
+                }
+            }, new cern.colt.Swapper() {
+                public void swap(int a, int b) {
+                    int index = indexes[a];
+                    indexes[a] = indexes[b];
+                    indexes[b] = index;
+                    double value = rowValues[a];
+                    rowValues[a] = rowValues[b];
+                    rowValues[b] = value;
+                }
+            });
+        }
+        return new SparseSortedDoubleMatrix1D(columns, indexes, rowValues);
+    }
+
     /**
      * Returns row pointers
      * 
@@ -653,28 +741,13 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
      * @return the transpose of this matrix
      */
     public SparseRCDoubleMatrix2D getTranspose() {
-        int nnz = rowPointers[rows];
-        int[] w = new int[columns];
-        int[] rowPointersT = new int[columns + 1];
-        int[] columnIndexesT = new int[nnz];
-        double[] valuesT = new double[nnz];
-
-        for (int p = 0; p < nnz; p++) {
-            w[columnIndexes[p]]++;
-        }
-        cumsum(rowPointersT, w, columns);
-        int q;
-        for (int j = 0; j < rows; j++) {
-            int high = rowPointers[j + 1];
-            for (int p = rowPointers[j]; p < high; p++) {
-                columnIndexesT[q = w[columnIndexes[p]]++] = j;
-                valuesT[q] = values[p];
-            }
-        }
+        CompressedDoubleMatrixKernels.Compressed C = CompressedDoubleMatrixKernels.transpose(rows, columns,
+                rowPointers, columnIndexes, values);
         SparseRCDoubleMatrix2D T = new SparseRCDoubleMatrix2D(columns, rows);
-        T.rowPointers = rowPointersT;
-        T.columnIndexes = columnIndexesT;
-        T.values = valuesT;
+        T.rowPointers = C.pointers;
+        T.columnIndexes = C.indexes;
+        T.values = C.values;
+        T.columnIndexesSorted = true;
         return T;
     }
 
@@ -815,7 +888,6 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         final int rowsA = transposeA ? columns : rows;
         final int columnsA = transposeA ? rows : columns;
 
-        boolean ignore = (z == null || !transposeA);
         if (z == null)
             z = new DenseDoubleMatrix1D(rowsA);
 
@@ -828,203 +900,35 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
                     + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
                     + z.toStringShort());
 
+        if (y == z)
+            y = y.copy();
+
         DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
         final double[] elementsZ = zz.elements;
         final int strideZ = zz.stride();
-        final int zeroZ = (int) z.index(0);
+        final int zeroZ = (int) zz.index(0);
 
         DenseDoubleMatrix1D yy = (DenseDoubleMatrix1D) y;
         final double[] elementsY = yy.elements;
         final int strideY = yy.stride();
-        final int zeroY = (int) y.index(0);
-        int nthreads = ConcurrencyUtils.getNumberOfThreads();
-
-        if (transposeA) {
-            if ((!ignore) && (beta != 1.0))
-                z.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
-
-            if ((nthreads > 1) && (cardinality() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
-                nthreads = 2;
-                Future<?>[] futures = new Future[nthreads];
-                final double[] result = new double[rowsA];
-                int k = rows / nthreads;
-                for (int j = 0; j < nthreads; j++) {
-                    final int firstRow = j * k;
-                    final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
-                    final int threadID = j;
-                    futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                        public void run() {
-                            if (threadID == 0) {
-                                for (int i = firstRow; i < lastRow; i++) {
-                                    int high = rowPointers[i + 1];
-                                    double yElem = alpha * elementsY[zeroY + strideY * i];
-                                    for (int k = rowPointers[i]; k < high; k++) {
-                                        int j = columnIndexes[k];
-                                        elementsZ[zeroZ + strideZ * j] += values[k] * yElem;
-                                    }
-                                }
-                            } else {
-                                for (int i = firstRow; i < lastRow; i++) {
-                                    int high = rowPointers[i + 1];
-                                    double yElem = alpha * elementsY[zeroY + strideY * i];
-                                    for (int k = rowPointers[i]; k < high; k++) {
-                                        int j = columnIndexes[k];
-                                        result[j] += values[k] * yElem;
-                                    }
-                                }
-                            }
-                        }
-                    });
-                }
-                ConcurrencyUtils.waitForCompletion(futures);
-                int rem = rowsA % 10;
-                for (int j = rem; j < rowsA; j += 10) {
-                    elementsZ[zeroZ + j * strideZ] += result[j];
-                    elementsZ[zeroZ + (j + 1) * strideZ] += result[j + 1];
-                    elementsZ[zeroZ + (j + 2) * strideZ] += result[j + 2];
-                    elementsZ[zeroZ + (j + 3) * strideZ] += result[j + 3];
-                    elementsZ[zeroZ + (j + 4) * strideZ] += result[j + 4];
-                    elementsZ[zeroZ + (j + 5) * strideZ] += result[j + 5];
-                    elementsZ[zeroZ + (j + 6) * strideZ] += result[j + 6];
-                    elementsZ[zeroZ + (j + 7) * strideZ] += result[j + 7];
-                    elementsZ[zeroZ + (j + 8) * strideZ] += result[j + 8];
-                    elementsZ[zeroZ + (j + 9) * strideZ] += result[j + 9];
-                }
-                for (int j = 0; j < rem; j++) {
-                    elementsZ[zeroZ + j * strideZ] += result[j];
-                }
-            } else {
-                for (int i = 0; i < rows; i++) {
-                    int high = rowPointers[i + 1];
-                    double yElem = alpha * elementsY[zeroY + strideY * i];
-                    for (int k = rowPointers[i]; k < high; k++) {
-                        int j = columnIndexes[k];
-                        elementsZ[zeroZ + strideZ * j] += values[k] * yElem;
-                    }
-                }
-            }
-
-            return z;
-        }
+        final int zeroY = (int) yy.index(0);
 
-        if ((nthreads > 1) && (cardinality() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
-            nthreads = Math.min(nthreads, rows);
-            Future<?>[] futures = new Future[nthreads];
-            int k = rows / nthreads;
-            for (int j = 0; j < nthreads; j++) {
-                final int firstRow = j * k;
-                final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
-                futures[j] = ConcurrencyUtils.submit(new Runnable() {
-                    public void run() {
-                        int zidx = zeroZ + firstRow * strideZ;
-                        int k = rowPointers[firstRow];
-                        if (beta == 0.0) {
-                            for (int i = firstRow; i < lastRow; i++) {
-                                double sum = 0;
-                                int high = rowPointers[i + 1];
-                                for (; k + 10 < high; k += 10) {
-                                    int ind = k + 9;
-                                    sum += values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]];
-                                }
-                                for (; k < high; k++) {
-                                    sum += values[k] * elementsY[columnIndexes[k]];
-                                }
-                                elementsZ[zidx] = alpha * sum;
-                                zidx += strideZ;
-                            }
-                        } else {
-                            for (int i = firstRow; i < lastRow; i++) {
-                                double sum = 0;
-                                int high = rowPointers[i + 1];
-                                for (; k + 10 < high; k += 10) {
-                                    int ind = k + 9;
-                                    sum += values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]]
-                                            + values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]];
-                                }
-                                for (; k < high; k++) {
-                                    sum += values[k] * elementsY[columnIndexes[k]];
-                                }
-                                elementsZ[zidx] = alpha * sum + beta * elementsZ[zidx];
-                                zidx += strideZ;
-                            }
-                        }
-                    }
-                });
-            }
-            ConcurrencyUtils.waitForCompletion(futures);
+        if (!transposeA) {
+            CompressedDoubleMatrixKernels.gather(rowsA, rowPointers, columnIndexes, values, elementsY, zeroY, strideY,
+                    elementsZ, zeroZ, strideZ, alpha, beta);
         } else {
-            int zidx = zeroZ;
-            int k = rowPointers[0];
-            if (beta == 0.0) {
-                for (int i = 0; i < rows; i++) {
-                    double sum = 0;
-                    int high = rowPointers[i + 1];
-                    for (; k + 10 < high; k += 10) {
-                        int ind = k + 9;
-                        sum += values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]];
-                    }
-                    for (; k < high; k++) {
-                        sum += values[k] * elementsY[columnIndexes[k]];
-                    }
-                    elementsZ[zidx] = alpha * sum;
-                    zidx += strideZ;
-                }
-            } else {
-                for (int i = 0; i < rows; i++) {
-                    double sum = 0;
-                    int high = rowPointers[i + 1];
-                    for (; k + 10 < high; k += 10) {
-                        int ind = k + 9;
-                        sum += values[ind] * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]] + values[ind]
-                                * elementsY[zeroY + strideY * columnIndexes[ind--]];
-                    }
-                    for (; k < high; k++) {
-                        sum += values[k] * elementsY[columnIndexes[k]];
-                    }
-                    elementsZ[zidx] = alpha * sum + beta * elementsZ[zidx];
-                    zidx += strideZ;
-                }
-            }
+            CompressedDoubleMatrixKernels.scatter(columnsA, rowPointers, columnIndexes, values, elementsY, zeroY,
+                    strideY, elementsZ, zeroZ, strideZ, rowsA, alpha, beta);
         }
         return z;
     }
 
     public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, double beta,
             final boolean transposeA, boolean transposeB) {
+        if (B instanceof DiagonalDoubleMatrix2D && !B.isView() && (C == null || C instanceof DenseDoubleMatrix2D)) {
+            // scales the columns of op(A) without a general sparse product
+            return ((DiagonalDoubleMatrix2D) B).multLeft(this, C, alpha, beta, transposeA, transposeB);
+        }
         int rowsA = rows;
         int columnsA = columns;
         if (transposeA) {
@@ -1041,7 +945,7 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         boolean ignore = (C == null);
         if (C == null) {
             if (B instanceof SparseRCDoubleMatrix2D) {
-                C = new SparseRCDoubleMatrix2D(rowsA, p, (rowsA * p));
+                C = new SparseRCDoubleMatrix2D(rowsA, p, 0);
             } else {
                 C = new DenseDoubleMatrix2D(rowsA, p);
             }
@@ -1056,10 +960,6 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         if (this == C || B == C)
             throw new IllegalArgumentException("Matrices must not be identical");
 
-        if (!ignore && beta != 1.0) {
-            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
-        }
-
         if ((B instanceof DenseDoubleMatrix2D) && (C instanceof DenseDoubleMatrix2D)) {
             SparseRCDoubleMatrix2D AA;
             if (transposeA) {
@@ -1073,21 +973,16 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             } else {
                 BB = (DenseDoubleMatrix2D) B;
             }
+            CompressedDoubleMatrixKernels.compressedTimesDense(rowsA, AA.rowPointers, AA.columnIndexes, AA.values,
+                    BB, (DenseDoubleMatrix2D) C, alpha, ignore ? 0 : beta);
+            return C;
+        }
 
-            DenseDoubleMatrix2D CC = (DenseDoubleMatrix2D) C;
-            int[] rowPointersA = AA.rowPointers;
-            int[] columnIndexesA = AA.columnIndexes;
-            double[] valuesA = AA.values;
-
-            for (int ii = 0; ii < rowsA; ii++) {
-                int highA = rowPointersA[ii + 1];
-                for (int ka = rowPointersA[ii]; ka < highA; ka++) {
-                    double scal = valuesA[ka] * alpha;
-                    int jj = columnIndexesA[ka];
-                    CC.viewRow(ii).assign(BB.viewRow(jj), DoubleFunctions.plusMultSecond(scal));
-                }
-            }
-        } else if ((B instanceof SparseRCDoubleMatrix2D) && (C instanceof SparseRCDoubleMatrix2D)) {
+        if (!ignore && beta != 1.0) {
+            C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(beta));
+        }
+
+        if ((B instanceof SparseRCDoubleMatrix2D) && (C instanceof SparseRCDoubleMatrix2D)) {
             SparseRCDoubleMatrix2D AA;
             SparseRCDoubleMatrix2D BB;
             SparseRCDoubleMatrix2D CC = (SparseRCDoubleMatrix2D) C;
@@ -1101,64 +996,18 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
             } else {
                 BB = (SparseRCDoubleMatrix2D) B;
             }
-
-            int[] rowPointersA = AA.rowPointers;
-            int[] columnIndexesA = AA.columnIndexes;
-            double[] valuesA = AA.values;
-
-            int[] rowPointersB = BB.rowPointers;
-            int[] columnIndexesB = BB.columnIndexes;
-            double[] valuesB = BB.values;
-
-            int[] rowPointersC = CC.rowPointers;
-            int[] columnIndexesC = CC.columnIndexes;
-            double[] valuesC = CC.values;
-            int nzmax = valuesC.length;
-
-            int[] iw = new int[columnsB + 1];
-            for (int i = 0; i < iw.length; i++) {
-                iw[i] = -1;
+            CompressedDoubleMatrixKernels.Compressed product = CompressedDoubleMatrixKernels.multiply(rowsA,
+                    AA.rowPointers, AA.columnIndexes, AA.values, BB.rowPointers, BB.columnIndexes, BB.values, p,
+                    alpha, null, null);
+            if (!ignore && beta != 0) {
+                // C has already been scaled by beta
+                product = CompressedDoubleMatrixKernels.add(rowsA, product.pointers, product.indexes,
+                        product.values, CC.rowPointers, CC.columnIndexes, CC.values, p);
             }
-            int len = -1;
-            for (int ii = 0; ii < rowsA; ii++) {
-                int highA = rowPointersA[ii + 1];
-                for (int ka = rowPointersA[ii]; ka < highA; ka++) {
-                    double scal = valuesA[ka] * alpha;
-                    int jj = columnIndexesA[ka];
-                    int highB = rowPointersB[jj + 1];
-                    for (int kb = rowPointersB[jj]; kb < highB; kb++) {
-                        int jcol = columnIndexesB[kb];
-                        int jpos = iw[jcol];
-                        if (jpos == -1) {
-                            len++;
-                            if (len >= nzmax) {
-                                throw new IllegalArgumentException(
-                                        "The max number of nonzero elements in C is too small.");
-                            }
-                            columnIndexesC[len] = jcol;
-                            iw[jcol] = len;
-                            valuesC[len] = scal * valuesB[kb];
-                        } else {
-                            valuesC[jpos] += scal * valuesB[kb];
-                        }
-                    }
-                }
-                for (int k = rowPointersC[ii]; k < len + 1; k++) {
-                    iw[columnIndexesC[k]] = -1;
-                }
-                rowPointersC[ii + 1] = len + 1;
-
-                //                int length = rowPointersC[ii + 1] - rowPointersC[ii];
-                //                IntMatrix1D columnIndexesCPart = columnIndexesC.viewPart(rowPointersC[ii], length);
-                //                int[] indexes = cern.colt.matrix.tint.algo.IntSorting.quickSort.sortIndex(columnIndexesCPart);
-                //                Arrays.sort(columnIndexesCElements, rowPointersC[ii], rowPointersC[ii + 1]);
-                //                DoubleMatrix1D valuesCPart = valuesC.viewPart(rowPointersC[ii], length).viewSelection(indexes);
-                //                valuesC.viewPart(rowPointersC[ii], length).assign(valuesCPart);
-            }
-            //            CC.columnIndexes.elements((int[]) columnIndexesC.elements());
-            //            CC.columnIndexes.setSize(columnIndexesSize);
-            //            CC.values.elements((double[]) valuesC.elements());
-            //            CC.values.setSize(columnIndexesSize);
+            CC.rowPointers = product.pointers;
+            CC.columnIndexes = product.indexes;
+            CC.values = product.values;
+            CC.columnIndexesSorted = false;
         } else {
             if (transposeB) {
                 B = B.viewDice();
@@ -1191,17 +1040,48 @@ public class SparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
         return C;
     }
 
-    private double cumsum(int[] p, int[] c, int n) {
-        int nz = 0;
-        double nz2 = 0;
-        for (int k = 0; k < n; k++) {
-            p[k] = nz;
-            nz += c[k];
-            nz2 += c[k];
-            c[k] = p[k];
-        }
-        p[n] = nz;
-        return (nz2);
+    /**
+     * Returns <tt>alpha * op(A) * op(B)</tt>, where <tt>A</tt> is this matrix,
+     * computed only at the positions of the nonzeros of <tt>mask</tt> (the
+     * values of <tt>mask</tt> are ignored). The product is formed by a
+     * concurrent two-pass (symbolic, then numeric) algorithm, so neither the
+     * full product nor a dense-sized result is ever allocated.
+     * 
+     * @param B
+     *            the second source matrix.
+     * @param mask
+     *            the sparsity pattern of the result, or <tt>null</tt> to
+     *            compute the full product.
+     * @param alpha
+     *            the scaling factor.
+     * @param transposeA
+     *            whether A must be transposed.
+     * @param transposeB
+     *            whether B must be transposed.
+     * @return a new row-compressed matrix of size
+     *         <tt>op(A).rows() x op(B).columns()</tt>.
+     * @throws IllegalArgumentException
+     *             if the dimensions of <tt>op(A)</tt>, <tt>op(B)</tt> and
+     *             <tt>mask</tt> do not agree.
+     */
+    public SparseRCDoubleMatrix2D zMultMasked(SparseRCDoubleMatrix2D B, SparseRCDoubleMatrix2D mask, double alpha,
+            boolean transposeA, boolean transposeB) {
+        int rowsA = transposeA ? columns : rows;
+        int columnsA = transposeA ? rows : columns;
+        int rowsB = transposeB ? B.columns : B.rows;
+        int columnsB = transposeB ? B.rows : B.columns;
+        if (rowsB != columnsA)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort());
+        if (mask != null && (mask.rows != rowsA || mask.columns != columnsB))
+            throw new IllegalArgumentException("Incompatible mask: " + toStringShort() + ", "
+                    + (transposeB ? B.viewDice() : B).toStringShort() + ", " + mask.toStringShort());
+        SparseRCDoubleMatrix2D AA = transposeA ? getTranspose() : this;
+        SparseRCDoubleMatrix2D BB = transposeB ? B.getTranspose() : B;
+        CompressedDoubleMatrixKernels.Compressed product = CompressedDoubleMatrixKernels.multiply(rowsA,
+                AA.rowPointers, AA.columnIndexes, AA.values, BB.rowPointers, BB.columnIndexes, BB.values, columnsB,
+                alpha, mask == null ? null : mask.rowPointers, mask == null ? null : mask.columnIndexes);
+        return new SparseRCDoubleMatrix2D(rowsA, columnsB, product.pointers, product.indexes, product.values);
     }
 
     private void realloc(int nzmax) {
@@ -0,0 +1,525 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import cern.colt.list.tdouble.DoubleArrayList;
+import cern.colt.list.tint.IntArrayList;
+import cern.colt.list.tlong.LongArrayList;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Sparse 1-d matrix (aka <i>vector</i>) holding <tt>double</tt> elements in
+ * compressed form: the indexes of the non-zero cells in increasing order and
+ * their values, like a row of a {@link SparseRCDoubleMatrix2D}. First see the
+ * <a href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * Dot products, <tt>x = a*x + b*y</tt> (the union of the non-zero cells) and
+ * <tt>x = x * y</tt> (their intersection) with another
+ * <tt>SparseSortedDoubleMatrix1D</tt> are computed by merging the two index
+ * lists, without any lookups. With a {@link DenseDoubleMatrix1D} the cells of
+ * the dense vector at the non-zero indexes are gathered directly, and
+ * {@link DenseDoubleMatrix1D#assign(DoubleMatrix1D, cern.colt.function.tdouble.DoubleDoubleFunction)}
+ * scatters a sorted vector the same way. Note that this implementation is not
+ * synchronized.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>get</tt> and <tt>getQuick</tt> take <tt>O(log(nnz))</tt> time; setting a
+ * cell that changes from or to zero moves the cells after it and takes
+ * <tt>O(nnz)</tt> time, except when appending cells in increasing order.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ */
+public class SparseSortedDoubleMatrix1D extends WrapperDoubleMatrix1D {
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The elements of the matrix: the cell indexes[k] has the value
+     * values[k], for k < nnz.
+     */
+    protected int[] indexes;
+
+    protected double[] values;
+
+    protected int nnz;
+
+    /**
+     * Constructs a matrix with a copy of the given values. The values are
+     * copied. So subsequent changes in <tt>values</tt> are not reflected in the
+     * matrix, and vice-versa.
+     *
+     * @param values
+     *            The values to be filled into the new matrix.
+     */
+    public SparseSortedDoubleMatrix1D(double[] values) {
+        this(values.length, 0);
+        assign(values);
+    }
+
+    /**
+     * Constructs a matrix with a given number of cells. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param size
+     *            the number of cells the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>size<0</tt>.
+     */
+    public SparseSortedDoubleMatrix1D(int size) {
+        this(size, Math.min(size, 10));
+    }
+
+    /**
+     * Constructs a matrix with a given number of cells. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param size
+     *            the number of cells the matrix shall have.
+     * @param nzmax
+     *            the number of non-zero cells the matrix can hold without
+     *            growing
+     * @throws IllegalArgumentException
+     *             if <tt>size<0</tt>.
+     */
+    public SparseSortedDoubleMatrix1D(int size, int nzmax) {
+        super(null);
+        setUp(size);
+        indexes = new int[nzmax];
+        values = new double[nzmax];
+    }
+
+    /**
+     * Constructs a matrix with given non-zero cells. The arrays are not copied.
+     *
+     * @param size
+     *            the number of cells the matrix shall have.
+     * @param indexes
+     *            the indexes of the non-zero cells, in increasing order
+     * @param values
+     *            the values of the non-zero cells
+     * @throws IllegalArgumentException
+     *             if <tt>indexes.length != values.length</tt> or if the
+     *             indexes are not increasing or are out of bounds.
+     */
+    public SparseSortedDoubleMatrix1D(int size, int[] indexes, double[] values) {
+        super(null);
+        setUp(size);
+        if (indexes.length != values.length) {
+            throw new IllegalArgumentException("indexes.length != values.length");
+        }
+        for (int k = 0; k < indexes.length; k++) {
+            if (indexes[k] < 0 || indexes[k] >= size || (k > 0 && indexes[k] <= indexes[k - 1]))
+                throw new IllegalArgumentException("indexes must be increasing and in [0, " + size + ")");
+        }
+        this.indexes = indexes;
+        this.values = values;
+        this.nnz = indexes.length;
+    }
+
+    public double aggregate(cern.colt.function.tdouble.DoubleDoubleFunction aggr,
+            cern.colt.function.tdouble.DoubleFunction f) {
+        if (size == 0)
+            return Double.NaN;
+        if (aggr == cern.jet.math.tdouble.DoubleFunctions.plus && f.apply(0) == 0) {
+            double a = 0;
+            for (int k = 0; k < nnz; k++) {
+                a += f.apply(values[k]);
+            }
+            return a;
+        }
+        if (aggr == cern.jet.math.tdouble.DoubleFunctions.max || aggr == cern.jet.math.tdouble.DoubleFunctions.min) {
+            // the zero cells all give the same value, which only needs to be aggregated once
+            double a = nnz < size ? f.apply(0) : f.apply(values[0]);
+            for (int k = 0; k < nnz; k++) {
+                a = aggr.apply(a, f.apply(values[k]));
+            }
+            return a;
+        }
+        return super.aggregate(aggr, f);
+    }
+
+    public DoubleMatrix1D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        if (function instanceof cern.jet.math.tdouble.DoubleMult) { // x[i] = mult*x[i]
+            final double alpha = ((cern.jet.math.tdouble.DoubleMult) function).multiplicator;
+            if (alpha == 1)
+                return this;
+            if (alpha != alpha || Double.isInfinite(alpha))
+                return super.assign(function);
+            for (int k = 0; k < nnz; k++) {
+                values[k] *= alpha;
+            }
+            removeZeroes();
+        } else if (function.apply(0) == 0) { // the zero cells are left unchanged
+            for (int k = 0; k < nnz; k++) {
+                values[k] = function.apply(values[k]);
+            }
+            removeZeroes();
+        } else {
+            super.assign(function);
+        }
+        return this;
+    }
+
+    public DoubleMatrix1D assign(double value) {
+        if (value == 0) {
+            nnz = 0;
+        } else {
+            if (indexes.length < size) {
+                indexes = new int[size];
+                values = new double[size];
+            }
+            for (int i = 0; i < size; i++) {
+                indexes[i] = i;
+                values[i] = value;
+            }
+            nnz = size;
+        }
+        return this;
+    }
+
+    public DoubleMatrix1D assign(double[] values) {
+        if (values.length != size)
+            throw new IllegalArgumentException("Must have same number of cells: length=" + values.length + "size()="
+                    + size());
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != 0)
+                cardinality++;
+        }
+        if (indexes.length < cardinality) {
+            this.indexes = new int[cardinality];
+            this.values = new double[cardinality];
+        }
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != 0) {
+                this.indexes[k] = i;
+                this.values[k++] = values[i];
+            }
+        }
+        nnz = cardinality;
+        return this;
+    }
+
+    public DoubleMatrix1D assign(DoubleMatrix1D source) {
+        if (source == this)
+            return this; // nothing to do
+        checkSize(source);
+        if (source instanceof SparseSortedDoubleMatrix1D) {
+            SparseSortedDoubleMatrix1D other = (SparseSortedDoubleMatrix1D) source;
+            if (indexes.length < other.nnz) {
+                indexes = new int[other.nnz];
+                values = new double[other.nnz];
+            }
+            System.arraycopy(other.indexes, 0, indexes, 0, other.nnz);
+            System.arraycopy(other.values, 0, values, 0, other.nnz);
+            nnz = other.nnz;
+        } else if (source instanceof SparseDoubleMatrix1D && !source.isView()) {
+            LongArrayList keyList = new LongArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            ((SparseDoubleMatrix1D) source).elements().pairsSortedByKey(keyList, valueList);
+            int cardinality = keyList.size();
+            indexes = new int[cardinality];
+            values = new double[cardinality];
+            for (int k = 0; k < cardinality; k++) {
+                indexes[k] = (int) keyList.getQuick(k);
+            }
+            System.arraycopy(valueList.elements(), 0, values, 0, cardinality);
+            nnz = cardinality;
+        } else {
+            assign(source.toArray());
+        }
+        return this;
+    }
+
+    public DoubleMatrix1D assign(DoubleMatrix1D y, cern.colt.function.tdouble.DoubleDoubleFunction function) {
+        checkSize(y);
+        if (y instanceof SparseSortedDoubleMatrix1D) {
+            SparseSortedDoubleMatrix1D yy = (SparseSortedDoubleMatrix1D) y;
+            if (function instanceof cern.jet.math.tdouble.DoublePlusMultSecond) { // x[i] = x[i] + alpha*y[i]
+                double alpha = ((cern.jet.math.tdouble.DoublePlusMultSecond) function).multiplicator;
+                if (alpha != 0)
+                    union(1, yy, alpha);
+                return this;
+            }
+            if (function instanceof cern.jet.math.tdouble.DoublePlusMultFirst) { // x[i] = alpha*x[i] + y[i]
+                union(((cern.jet.math.tdouble.DoublePlusMultFirst) function).multiplicator, yy, 1);
+                return this;
+            }
+            if (function == cern.jet.math.tdouble.DoubleFunctions.mult) { // x[i] = x[i] * y[i]
+                intersection(yy);
+                return this;
+            }
+        } else if (function == cern.jet.math.tdouble.DoubleFunctions.mult) { // x[i] = x[i] * y[i]
+            if (y instanceof DenseDoubleMatrix1D) {
+                double[] elementsY = (double[]) y.elements();
+                int zeroY = (int) y.index(0);
+                int strideY = y.stride();
+                for (int k = 0; k < nnz; k++) {
+                    values[k] *= elementsY[zeroY + indexes[k] * strideY];
+                }
+            } else {
+                for (int k = 0; k < nnz; k++) {
+                    values[k] *= y.getQuick(indexes[k]);
+                }
+            }
+            removeZeroes();
+            return this;
+        }
+        return super.assign(y, function);
+    }
+
+    public int cardinality() {
+        return nnz;
+    }
+
+    public Object elements() {
+        return values;
+    }
+
+    /**
+     * Returns the indexes of the non-zero cells; only the first
+     * {@link #cardinality()} elements are used.
+     *
+     * @return the indexes of the non-zero cells
+     */
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public void getNonZeros(IntArrayList indexList, DoubleArrayList valueList) {
+        indexList.clear();
+        valueList.clear();
+        for (int k = 0; k < nnz; k++) {
+            indexList.add(indexes[k]);
+            valueList.add(values[k]);
+        }
+    }
+
+    public synchronized double getQuick(int index) {
+        int k = cern.colt.Sorting.binarySearchFromTo(indexes, index, 0, nnz - 1);
+        return k >= 0 ? values[k] : 0;
+    }
+
+    /**
+     * Returns the values of the non-zero cells; only the first
+     * {@link #cardinality()} elements are used.
+     *
+     * @return the values of the non-zero cells
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public DoubleMatrix1D like(int size) {
+        return new SparseSortedDoubleMatrix1D(size);
+    }
+
+    public DoubleMatrix2D like2D(int rows, int columns) {
+        return new SparseRCDoubleMatrix2D(rows, columns);
+    }
+
+    public synchronized void setQuick(int index, double value) {
+        int k = cern.colt.Sorting.binarySearchFromTo(indexes, index, 0, nnz - 1);
+        if (k >= 0) { // found
+            if (value == 0) {
+                System.arraycopy(indexes, k + 1, indexes, k, nnz - k - 1);
+                System.arraycopy(values, k + 1, values, k, nnz - k - 1);
+                nnz--;
+            } else {
+                values[k] = value;
+            }
+        } else if (value != 0) {
+            k = -k - 1;
+            if (nnz == indexes.length) {
+                realloc(Math.max(2 * nnz, 10));
+            }
+            System.arraycopy(indexes, k, indexes, k + 1, nnz - k);
+            System.arraycopy(values, k, values, k + 1, nnz - k);
+            indexes[k] = index;
+            values[k] = value;
+            nnz++;
+        }
+    }
+
+    public void toArray(double[] values) {
+        if (values.length < size)
+            throw new IllegalArgumentException("values too small");
+        java.util.Arrays.fill(values, 0, size, 0);
+        for (int k = 0; k < nnz; k++) {
+            values[indexes[k]] = this.values[k];
+        }
+    }
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("1 x ").append(size).append(" sparse matrix, nnz = ").append(nnz).append('\n');
+        for (int k = 0; k < nnz; k++) {
+            builder.append('(').append(indexes[k]).append(')').append('\t').append(values[k]).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public void trimToSize() {
+        realloc(nnz);
+    }
+
+    public double zDotProduct(DoubleMatrix1D y, int from, int length) {
+        if (from < 0 || length <= 0)
+            return 0;
+        int tail = from + length;
+        if (size < tail)
+            tail = size;
+        if (y.size() < tail)
+            tail = (int) y.size();
+        if (tail <= from)
+            return 0;
+        int first = position(indexes, nnz, from);
+        int last = position(indexes, nnz, tail);
+        double sum = 0;
+        if (y instanceof SparseSortedDoubleMatrix1D) {
+            SparseSortedDoubleMatrix1D yy = (SparseSortedDoubleMatrix1D) y;
+            int[] indexesY = yy.indexes;
+            double[] valuesY = yy.values;
+            int ka = first;
+            int kb = position(indexesY, yy.nnz, from);
+            int lastY = position(indexesY, yy.nnz, tail);
+            while (ka < last && kb < lastY) {
+                int ia = indexes[ka];
+                int ib = indexesY[kb];
+                if (ia == ib) {
+                    sum += values[ka++] * valuesY[kb++];
+                } else if (ia < ib) {
+                    ka++;
+                } else {
+                    kb++;
+                }
+            }
+        } else if (y instanceof DenseDoubleMatrix1D) {
+            double[] elementsY = (double[]) y.elements();
+            int zeroY = (int) y.index(0);
+            int strideY = y.stride();
+            for (int k = first; k < last; k++) {
+                sum += values[k] * elementsY[zeroY + indexes[k] * strideY];
+            }
+        } else {
+            for (int k = first; k < last; k++) {
+                sum += values[k] * y.getQuick(indexes[k]);
+            }
+        }
+        return sum;
+    }
+
+    public double zDotProduct(DoubleMatrix1D y, int from, int length, IntArrayList nonZeroIndexes) {
+        return zDotProduct(y, from, length);
+    }
+
+    protected DoubleMatrix1D getContent() {
+        return this;
+    }
+
+    /*
+     * Returns the position of the first of the first n indexes that is not
+     * smaller than index.
+     */
+    private static int position(int[] indexes, int n, int index) {
+        int k = cern.colt.Sorting.binarySearchFromTo(indexes, index, 0, n - 1);
+        return k >= 0 ? k : -k - 1;
+    }
+
+    /*
+     * x = a*x + b*y by merging the non-zero cells; numerical zeros are not
+     * stored.
+     */
+    private void union(double a, SparseSortedDoubleMatrix1D y, double b) {
+        int[] indexesY = y.indexes;
+        double[] valuesY = y.values;
+        int nnzY = y.nnz;
+        int[] indexesC = new int[Math.max(indexes.length, nnz + nnzY)];
+        double[] valuesC = new double[indexesC.length];
+        int ka = 0;
+        int kb = 0;
+        int kc = 0;
+        while (ka < nnz || kb < nnzY) {
+            int ia = ka < nnz ? indexes[ka] : Integer.MAX_VALUE;
+            int ib = kb < nnzY ? indexesY[kb] : Integer.MAX_VALUE;
+            int i;
+            double v;
+            if (ia == ib) {
+                i = ia;
+                v = a * values[ka++] + b * valuesY[kb++];
+            } else if (ia < ib) {
+                i = ia;
+                v = a * values[ka++];
+            } else {
+                i = ib;
+                v = b * valuesY[kb++];
+            }
+            if (v != 0) {
+                indexesC[kc] = i;
+                valuesC[kc++] = v;
+            }
+        }
+        indexes = indexesC;
+        values = valuesC;
+        nnz = kc;
+    }
+
+    /*
+     * x = x * y by merging the non-zero cells, in place.
+     */
+    private void intersection(SparseSortedDoubleMatrix1D y) {
+        int[] indexesY = y.indexes;
+        double[] valuesY = y.values;
+        int nnzY = y.nnz;
+        int ka = 0;
+        int kb = 0;
+        int kc = 0;
+        while (ka < nnz && kb < nnzY) {
+            int ia = indexes[ka];
+            int ib = indexesY[kb];
+            if (ia == ib) {
+                double v = values[ka++] * valuesY[kb++];
+                if (v != 0) {
+                    indexes[kc] = ia;
+                    values[kc++] = v;
+                }
+            } else if (ia < ib) {
+                ka++;
+            } else {
+                kb++;
+            }
+        }
+        nnz = kc;
+    }
+
+    private void realloc(int nzmax) {
+        int[] indexesNew = new int[nzmax];
+        double[] valuesNew = new double[nzmax];
+        System.arraycopy(indexes, 0, indexesNew, 0, nnz);
+        System.arraycopy(values, 0, valuesNew, 0, nnz);
+        indexes = indexesNew;
+        values = valuesNew;
+    }
+
+    private void removeZeroes() {
+        int kc = 0;
+        for (int k = 0; k < nnz; k++) {
+            if (values[k] != 0) {
+                indexes[kc] = indexes[k];
+                values[kc++] = values[k];
+            }
+        }
+        nnz = kc;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Symmetric 2-d matrix holding <tt>double</tt> elements in packed storage.
+ * First see the <a href="package-summary.html">package summary</a> and
+ * javadoc <a href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * Only the upper triangle including the diagonal is stored, column by column,
+ * in the LAPACK packed format: <tt>A(i,j) = A(j,i)</tt> with
+ * <tt>i &lt;= j</tt> is kept in <tt>elements[i + j*(j+1)/2]</tt>. Setting a
+ * cell sets its mirror cell as well, so the matrix is always symmetric.
+ * <tt>zMult</tt> works directly on the packed storage (like the BLAS routines
+ * <tt>dspmv</tt> and <tt>dsymm</tt>). The matrix is accepted as is by
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition}
+ * and
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition}
+ * , and by
+ * {@link cern.colt.matrix.tdouble.algo.SmpDoubleBlas#dsymv(boolean, double, DoubleMatrix2D, DoubleMatrix1D, double, DoubleMatrix1D)}
+ * . Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*n*(n+1)/2</tt>, where <tt>n = rows() = columns()</tt>.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class SymmetricDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The packed upper triangle.
+     */
+    private double[] elements;
+
+    /**
+     * Constructs an <tt>n x n</tt> symmetric matrix. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param n
+     *            the number of rows and columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>n<0</tt> or <tt>n*(n+1)/2 > Integer.MAX_VALUE</tt>.
+     */
+    public SymmetricDoubleMatrix2D(int n) {
+        super(null);
+        setUp(n, n);
+        if ((long) n * (n + 1) / 2 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        this.elements = new double[TriangularDoubleMatrix2D.offset(n)];
+        content = this;
+    }
+
+    /**
+     * Constructs a symmetric matrix holding the upper triangle of the given
+     * square matrix. The strictly lower triangle of <tt>A</tt> is not
+     * referenced.
+     *
+     * @param A
+     *            the source matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square.
+     */
+    public SymmetricDoubleMatrix2D(DoubleMatrix2D A) {
+        this(A.rows());
+        if (A.columns() != rows)
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        assign(A);
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        for (int i = elements.length; --i >= 0;) {
+            elements[i] = function.apply(elements[i]);
+        }
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        java.util.Arrays.fill(elements, value);
+        return this;
+    }
+
+    /**
+     * Replaces all cell values of the receiver with the values of another
+     * matrix. Only the upper triangle of <tt>source</tt> is referenced.
+     *
+     * @param source
+     *            the source matrix to copy from (may be identical to the
+     *            receiver).
+     * @return <tt>this</tt> (for convenience only).
+     * @throws IllegalArgumentException
+     *             if
+     *             <tt>columns() != source.columns() || rows() != source.rows()</tt>
+     */
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof SymmetricDoubleMatrix2D) {
+            System.arraycopy(((SymmetricDoubleMatrix2D) source).elements, 0, elements, 0, elements.length);
+            return this;
+        }
+        for (int j = 0; j < columns; j++) {
+            int idx = TriangularDoubleMatrix2D.offset(j);
+            for (int i = 0; i <= j; i++) {
+                elements[idx++] = source.getQuick(i, j);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the packed upper triangle of this matrix: <tt>A(i,j)</tt> with
+     * <tt>i &lt;= j</tt> is kept in <tt>elements()[i + j*(j+1)/2]</tt>.
+     *
+     * @return the packed upper triangle.
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    public double getQuick(int row, int column) {
+        if (row <= column) {
+            return elements[row + TriangularDoubleMatrix2D.offset(column)];
+        } else {
+            return elements[column + TriangularDoubleMatrix2D.offset(row)];
+        }
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        if (row <= column) {
+            elements[row + TriangularDoubleMatrix2D.offset(column)] = value;
+        } else {
+            elements[column + TriangularDoubleMatrix2D.offset(row)] = value;
+        }
+    }
+
+    public double[][] toArray() {
+        final double[][] values = new double[rows][columns];
+        for (int j = 0; j < columns; j++) {
+            int idx = TriangularDoubleMatrix2D.offset(j);
+            for (int i = 0; i <= j; i++) {
+                values[i][j] = elements[idx];
+                values[j][i] = elements[idx++];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the upper triangle of this matrix, column by column, in an
+     * <tt>n x n</tt> column major array (the layout used by LAPACK). The
+     * strictly lower triangle is <tt>0</tt>.
+     *
+     * @return the upper triangle in column major order.
+     */
+    public double[] toUpperColumnMajor() {
+        double[] values = new double[rows * columns];
+        for (int j = 0; j < columns; j++) {
+            System.arraycopy(elements, TriangularDoubleMatrix2D.offset(j), values, j * rows, j + 1);
+        }
+        return values;
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rows);
+        }
+        if (columns != y.size() || rows > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + y.toStringShort()
+                    + ", " + z.toStringShort());
+        TriangularDoubleMatrix2D.mult(elements, rows, TriangularDoubleMatrix2D.SYMMETRIC, y, z, alpha, beta);
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rows, B.columns());
+        }
+        if (B.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rows || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        TriangularDoubleMatrix2D.mult(elements, rows, TriangularDoubleMatrix2D.SYMMETRIC, B, C, alpha, beta);
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+}
@@ -0,0 +1,564 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Sparse symmetric 2-d matrix holding <tt>double</tt> elements, of which only
+ * the upper triangle is stored. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The diagonal and the upper triangle are kept in a row-compressed matrix with
+ * sorted column indexes, see {@link #getUpper()}. An element below the
+ * diagonal is read and written through its mirror above the diagonal, so the
+ * matrix is symmetric at all times.
+ * <p>
+ * <tt>zMult</tt> visits every stored element once and uses it twice: for the
+ * row it is stored in and, mirrored, for the row of its column. The rows are
+ * split between the threads by the number of stored elements; every thread
+ * accumulates its mirrored contributions in a buffer of its own, which are
+ * summed afterwards, so no two threads write to the same location. Note that
+ * this implementation is not synchronized.
+ * <p>
+ * {@link cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleICC} and
+ * {@link cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition}
+ * work on the upper triangle directly; other algorithms can use the full
+ * matrix returned by {@link #getRowCompressed()}.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 12*nnz(triu(A)) + 4*rows()</tt>, about half of the
+ * memory of a {@link SparseRCDoubleMatrix2D} holding both triangles.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(log w)</tt> for the basic operations <tt>get</tt> and
+ * <tt>getQuick</tt>, where <tt>w</tt> is the number of stored elements in the
+ * row; <tt>O(nnz)</tt> for <tt>set</tt> and <tt>setQuick</tt> of a new
+ * element.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class SymmetricSparseRCDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SparseRCDoubleMatrix2D upper;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns. All
+     * entries are initially <tt>0</tt>.
+     *
+     * @param n
+     *            the number of rows and columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>n<0</tt>.
+     */
+    public SymmetricSparseRCDoubleMatrix2D(int n) {
+        this(new SparseRCDoubleMatrix2D(n, n), false);
+    }
+
+    /**
+     * Constructs a matrix with a copy of the diagonal and the upper triangle
+     * of the given matrix. The lower triangle of <tt>A</tt> is ignored.
+     *
+     * @param A
+     *            a square matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square.
+     */
+    public SymmetricSparseRCDoubleMatrix2D(SparseRCDoubleMatrix2D A) {
+        this(triu(A), false);
+    }
+
+    /**
+     * Constructs a matrix with the given upper triangle. The column indexes of
+     * every row must be distinct, and not less than the index of the row. The
+     * arrays are not copied, unless the column indexes have to be sorted.
+     *
+     * @param n
+     *            the number of rows and columns the matrix shall have.
+     * @param rowPointers
+     *            row pointers of the upper triangle.
+     * @param columnIndexes
+     *            column indexes of the upper triangle.
+     * @param values
+     *            numerical values of the upper triangle.
+     * @throws IllegalArgumentException
+     *             if a column index is less than the index of its row, not
+     *             less than <tt>n</tt>, or appears twice in its row.
+     */
+    public SymmetricSparseRCDoubleMatrix2D(int n, int[] rowPointers, int[] columnIndexes, double[] values) {
+        this(new SparseRCDoubleMatrix2D(n, n, rowPointers, columnIndexes, values), true);
+    }
+
+    private SymmetricSparseRCDoubleMatrix2D(SparseRCDoubleMatrix2D upper, boolean check) {
+        super(null);
+        if (upper.rows() != upper.columns())
+            throw new IllegalArgumentException("Matrix must be square: " + upper.toStringShort());
+        try {
+            setUp(upper.rows(), upper.columns());
+        } catch (IllegalArgumentException exc) { // we can hold rows*columns>Integer.MAX_VALUE cells !
+            if (!"matrix too large".equals(exc.getMessage()))
+                throw exc;
+        }
+        if (check) {
+            boolean sorted = true;
+            int[] marks = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                for (int k = upper.rowPointers[i]; k < upper.rowPointers[i + 1]; k++) {
+                    int j = upper.columnIndexes[k];
+                    if (j < i || j >= rows)
+                        throw new IllegalArgumentException("Element outside the upper triangle: row:" + i
+                                + ", column:" + j);
+                    if (marks[j] == i + 1)
+                        throw new IllegalArgumentException("Duplicate element: row:" + i + ", column:" + j);
+                    marks[j] = i + 1;
+                    if (k > upper.rowPointers[i] && upper.columnIndexes[k - 1] > j)
+                        sorted = false;
+                }
+            }
+            if (!sorted)
+                upper.sortColumnIndexes();
+        }
+        upper.columnIndexesSorted = true;
+        this.upper = upper;
+        content = this;
+    }
+
+    /**
+     * Assigns the result of a function to each cell. The function is applied
+     * once to every element of the diagonal and the upper triangle; the
+     * elements below the diagonal take the value of their mirrors. If
+     * <tt>function.apply(0) == 0</tt> only the stored elements are visited.
+     */
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        if (function.apply(0) == 0) {
+            int[] rowPointers = upper.rowPointers;
+            int[] columnIndexes = upper.columnIndexes;
+            double[] values = upper.values;
+            // map the stored elements, dropping the ones that became zero
+            int nz = 0;
+            for (int i = 0; i < rows; i++) {
+                int p = rowPointers[i];
+                rowPointers[i] = nz;
+                for (; p < rowPointers[i + 1]; p++) {
+                    double value = function.apply(values[p]);
+                    if (value != 0) {
+                        values[nz] = value;
+                        columnIndexes[nz++] = columnIndexes[p];
+                    }
+                }
+            }
+            rowPointers[rows] = nz;
+        } else {
+            for (int i = 0; i < rows; i++) {
+                for (int j = i; j < columns; j++) {
+                    setQuick(i, j, function.apply(getQuick(i, j)));
+                }
+            }
+        }
+        return this;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        int[] rowPointers = upper.rowPointers;
+        int[] columnIndexes = upper.columnIndexes;
+        double[] values = upper.values;
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                if (values[k] != 0)
+                    cardinality += columnIndexes[k] == i ? 1 : 2;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Applies the function once to every stored element of the diagonal and
+     * the upper triangle, and stores the value returned. The mirrors below the
+     * diagonal take the same value; the function is not called for them.
+     */
+    public DoubleMatrix2D forEachNonZero(final cern.colt.function.tdouble.IntIntDoubleFunction function) {
+        int[] rowPointers = upper.rowPointers;
+        int[] columnIndexes = upper.columnIndexes;
+        double[] values = upper.values;
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int j = columnIndexes[k];
+                double value = values[k];
+                if (value != 0) {
+                    double result = function.apply(i, j, value);
+                    if (result != value)
+                        values[k] = result;
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns a new matrix <tt>B</tt> with
+     * <tt>B[i,j] = this[indexes[i],indexes[j]]</tt>, which is symmetric too.
+     * This method creates a new object (not a view), so changes in the
+     * returned matrix are NOT reflected in this matrix. The elements are
+     * moved to the upper triangle of <tt>B</tt> concurrently.
+     * 
+     * @param indexes
+     *            the permutation of the rows and columns.
+     * @return the permuted matrix
+     * @throws IndexOutOfBoundsException
+     *             if <tt>indexes</tt> is not a permutation of the rows.
+     */
+    public SymmetricSparseRCDoubleMatrix2D getPermuted(int[] indexes) {
+        final int[] inverse = CompressedDoubleMatrixKernels.inverse(indexes, rows);
+        final int[] rowPointers = upper.rowPointers;
+        final int[] columnIndexes = upper.columnIndexes;
+        final double[] values = upper.values;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if (rowPointers[rows] < ConcurrencyUtils.getThreadsBeginN_2D())
+            nthreads = 1;
+        nthreads = Math.max(1, Math.min(nthreads, rows));
+        final int[][] major = new int[nthreads][];
+        final int[][] minor = new int[nthreads][];
+        final double[][] elements = new double[nthreads][];
+        final int[] lengths = new int[nthreads];
+        Future<?>[] futures = new Future[nthreads];
+        for (int j = 0; j < nthreads; j++) {
+            final int firstRow = (int) ((long) rows * j / nthreads);
+            final int lastRow = (int) ((long) rows * (j + 1) / nthreads);
+            final int batch = j;
+            Runnable task = new Runnable() {
+                public void run() {
+                    int offset = rowPointers[firstRow];
+                    int length = rowPointers[lastRow] - offset;
+                    int[] majorBatch = new int[length];
+                    int[] minorBatch = new int[length];
+                    double[] elementsBatch = new double[length];
+                    System.arraycopy(values, offset, elementsBatch, 0, length);
+                    for (int i = firstRow; i < lastRow; i++) {
+                        int pi = inverse[i];
+                        for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                            int pj = inverse[columnIndexes[k]];
+                            majorBatch[k - offset] = Math.min(pi, pj);
+                            minorBatch[k - offset] = Math.max(pi, pj);
+                        }
+                    }
+                    major[batch] = majorBatch;
+                    minor[batch] = minorBatch;
+                    elements[batch] = elementsBatch;
+                    lengths[batch] = length;
+                }
+            };
+            if (nthreads == 1) {
+                task.run();
+            } else {
+                futures[j] = ConcurrencyUtils.submit(task);
+            }
+        }
+        if (nthreads > 1)
+            ConcurrencyUtils.waitForCompletion(futures);
+        CompressedDoubleMatrixKernels.Compressed C = SparseDoubleMatrix2DBuilder.compress(rows, rows, major, minor,
+                elements, lengths, 0, false, false, true);
+        return new SymmetricSparseRCDoubleMatrix2D(new SparseRCDoubleMatrix2D(rows, rows, C.pointers, C.indexes,
+                C.values), false);
+    }
+
+    public double getQuick(int row, int column) {
+        if (row > column) {
+            int tmp = row;
+            row = column;
+            column = tmp;
+        }
+        int k = cern.colt.Sorting.binarySearchFromTo(upper.columnIndexes, column, upper.rowPointers[row],
+                upper.rowPointers[row + 1] - 1);
+        return k >= 0 ? upper.values[k] : 0;
+    }
+
+    /**
+     * Returns a new row-compressed matrix holding both triangles of this
+     * matrix, with sorted column indexes.
+     *
+     * @return this matrix in row-compressed form.
+     */
+    public SparseRCDoubleMatrix2D getRowCompressed() {
+        int[] rowPointersU = upper.rowPointers;
+        int[] columnIndexesU = upper.columnIndexes;
+        double[] valuesU = upper.values;
+        // lower part of row j: mirrors of the elements above the diagonal in column j
+        int[] rowPointers = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointersU[i]; k < rowPointersU[i + 1]; k++) {
+                rowPointers[columnIndexesU[k] + 1]++;
+                if (columnIndexesU[k] != i)
+                    rowPointers[i + 1]++;
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            rowPointers[i + 1] += rowPointers[i];
+        }
+        int nnz = rowPointers[rows];
+        int[] columnIndexes = new int[nnz];
+        double[] values = new double[nnz];
+        int[] next = new int[rows];
+        System.arraycopy(rowPointers, 0, next, 0, rows);
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointersU[i]; k < rowPointersU[i + 1]; k++) {
+                int j = columnIndexesU[k];
+                if (j != i) {
+                    columnIndexes[next[j]] = i;
+                    values[next[j]++] = valuesU[k];
+                }
+            }
+            // the lower part of row i is complete, since it comes from rows < i
+            for (int k = rowPointersU[i]; k < rowPointersU[i + 1]; k++) {
+                columnIndexes[next[i]] = columnIndexesU[k];
+                values[next[i]++] = valuesU[k];
+            }
+        }
+        SparseRCDoubleMatrix2D A = new SparseRCDoubleMatrix2D(rows, columns, rowPointers, columnIndexes, values);
+        A.columnIndexesSorted = true;
+        return A;
+    }
+
+    /**
+     * Returns the diagonal and the upper triangle of this matrix. The returned
+     * matrix is backed by this matrix, and its column indexes are sorted.
+     *
+     * @return the upper triangle.
+     */
+    public SparseRCDoubleMatrix2D getUpper() {
+        return upper;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new SparseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    /**
+     * Sets the matrix cell at coordinate <tt>[row,column]</tt> and its mirror
+     * <tt>[column,row]</tt> to the specified value.
+     */
+    public void setQuick(int row, int column, double value) {
+        if (row > column) {
+            int tmp = row;
+            row = column;
+            column = tmp;
+        }
+        int k = cern.colt.Sorting.binarySearchFromTo(upper.columnIndexes, column, upper.rowPointers[row],
+                upper.rowPointers[row + 1] - 1);
+        if (k >= 0) {
+            if (value == 0)
+                upper.remove(row, k);
+            else
+                upper.values[k] = value;
+        } else if (value != 0) {
+            upper.insert(row, column, -k - 1, value);
+        }
+    }
+
+    public void trimToSize() {
+        upper.trimToSize();
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, final double alpha, final double beta,
+            boolean transposeA) {
+        if (z == null)
+            z = new DenseDoubleMatrix1D(rows);
+
+        if (!(y instanceof DenseDoubleMatrix1D && z instanceof DenseDoubleMatrix1D)) {
+            return super.zMult(y, z, alpha, beta, transposeA);
+        }
+
+        if (columns != y.size() || rows > z.size())
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + y.toStringShort()
+                    + ", " + z.toStringShort());
+
+        DenseDoubleMatrix1D zz = (DenseDoubleMatrix1D) z;
+        final double[] elementsZ = zz.elements;
+        final int strideZ = zz.stride();
+        final int zeroZ = (int) zz.index(0);
+
+        DenseDoubleMatrix1D yy = (DenseDoubleMatrix1D) y;
+        final double[] elementsY = yy.elements;
+        final int strideY = yy.stride();
+        final int zeroY = (int) yy.index(0);
+
+        final double[] result = new double[rows];
+        final int[] firstRows = partition();
+        final int nparts = firstRows.length - 1;
+        if (nparts > 1) {
+            final double[][] buffers = new double[nparts][];
+            Future<?>[] futures = new Future[nparts];
+            for (int j = 0; j < nparts; j++) {
+                final int firstRow = firstRows[j];
+                final int lastRow = firstRows[j + 1];
+                final int threadID = j;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        // mirrored elements only reach the rows from firstRow on
+                        double[] buffer = new double[rows - firstRow];
+                        multiply(firstRow, lastRow, elementsY, zeroY, strideY, result, buffer, firstRow);
+                        buffers[threadID] = buffer;
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            for (int j = 0; j < nparts; j++) {
+                final int firstRow = firstRows[j];
+                final int lastRow = firstRows[j + 1];
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        for (int i = firstRow; i < lastRow; i++) {
+                            double sum = result[i];
+                            for (int t = 0; t < nparts && firstRows[t] <= i; t++) {
+                                sum += buffers[t][i - firstRows[t]];
+                            }
+                            int zidx = zeroZ + strideZ * i;
+                            elementsZ[zidx] = beta == 0 ? alpha * sum : alpha * sum + beta * elementsZ[zidx];
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            multiply(0, rows, elementsY, zeroY, strideY, result, result, 0);
+            for (int i = 0, zidx = zeroZ; i < rows; i++, zidx += strideZ) {
+                elementsZ[zidx] = beta == 0 ? alpha * result[i] : alpha * result[i] + beta * elementsZ[zidx];
+            }
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rows, B.columns());
+        }
+        if (B.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + B.toStringShort());
+        if (C.rows() != rows || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + B.toStringShort() + ", " + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        if (!(B instanceof DenseDoubleMatrix2D && C instanceof DenseDoubleMatrix2D))
+            return super.zMult(B, C, alpha, beta, transposeA, false);
+        // one concurrent product per column
+        for (int j = 0; j < B.columns(); j++) {
+            zMult(B.viewColumn(j), C.viewColumn(j), alpha, beta, false);
+        }
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * result[i] = sum(A[i,j] * y[j]) over the stored elements of the rows
+     * firstRow to lastRow - 1, and buffer[j - offset] += A[i,j] * y[i] for
+     * their mirrors.
+     */
+    private void multiply(int firstRow, int lastRow, double[] elementsY, int zeroY, int strideY, double[] result,
+            double[] buffer, int offset) {
+        int[] rowPointers = upper.rowPointers;
+        int[] columnIndexes = upper.columnIndexes;
+        double[] values = upper.values;
+        for (int i = firstRow; i < lastRow; i++) {
+            double yi = elementsY[zeroY + strideY * i];
+            double sum = 0;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int j = columnIndexes[k];
+                double value = values[k];
+                sum += value * elementsY[zeroY + strideY * j];
+                if (j != i)
+                    buffer[j - offset] += value * yi;
+            }
+            result[i] += sum;
+        }
+    }
+
+    /*
+     * Returns the first rows of the parts the rows are split into, which hold
+     * about the same number of stored elements, or a single part if there is
+     * not enough work for the threads.
+     */
+    private int[] partition() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        int[] rowPointers = upper.rowPointers;
+        long size = (long) rowPointers[rows] + rows;
+        if ((nthreads <= 1) || (rows < 2) || (size < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            return new int[] { 0, rows };
+        }
+        nthreads = Math.min(nthreads, rows);
+        int[] firstRows = new int[nthreads + 1];
+        int row = 0;
+        for (int j = 1; j < nthreads; j++) {
+            long target = size * j / nthreads;
+            row = Math.max(row, firstRows[j - 1] + 1);
+            while (row < rows - (nthreads - j) && (long) rowPointers[row] + row < target) {
+                row++;
+            }
+            firstRows[j] = row;
+        }
+        firstRows[nthreads] = rows;
+        return firstRows;
+    }
+
+    private static SparseRCDoubleMatrix2D triu(SparseRCDoubleMatrix2D A) {
+        int n = A.rows();
+        if (n != A.columns())
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        int[] rowPointersA = A.rowPointers;
+        int[] columnIndexesA = A.columnIndexes;
+        double[] valuesA = A.values;
+        int[] rowPointers = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int count = 0;
+            for (int k = rowPointersA[i]; k < rowPointersA[i + 1]; k++) {
+                if (columnIndexesA[k] >= i)
+                    count++;
+            }
+            rowPointers[i + 1] = rowPointers[i] + count;
+        }
+        int[] columnIndexes = new int[rowPointers[n]];
+        double[] values = new double[rowPointers[n]];
+        for (int i = 0; i < n; i++) {
+            int pos = rowPointers[i];
+            for (int k = rowPointersA[i]; k < rowPointersA[i + 1]; k++) {
+                if (columnIndexesA[k] >= i) {
+                    columnIndexes[pos] = columnIndexesA[k];
+                    values[pos++] = valuesA[k];
+                }
+            }
+        }
+        SparseRCDoubleMatrix2D U = new SparseRCDoubleMatrix2D(n, n, rowPointers, columnIndexes, values);
+        if (!A.columnIndexesSorted)
+            U.sortColumnIndexes();
+        return U;
+    }
+}
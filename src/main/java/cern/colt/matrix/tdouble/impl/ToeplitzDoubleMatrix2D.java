@@ -0,0 +1,426 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Toeplitz 2-d matrix holding <tt>double</tt> elements. First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * A Toeplitz matrix is constant along each diagonal, <tt>A[i,j] = c[i-j]</tt>
+ * for <tt>i>=j</tt> and <tt>A[i,j] = r[j-i]</tt> for <tt>i&lt;j</tt>. Only
+ * the first column <tt>c</tt> and the first row <tt>r</tt> are stored.
+ * Setting any element sets the whole diagonal it belongs to.
+ * <p>
+ * <tt>zMult</tt> embeds the matrix into a {@link CirculantDoubleMatrix2D} of
+ * size <tt>L >= rows+columns-1</tt> (a power of 2) and multiplies in
+ * <tt>O(L*log(L))</tt> time. Square systems are solved directly by the
+ * Levinson algorithm in <tt>O(n^2)</tt> time and <tt>O(n)</tt> memory, which
+ * requires all leading principal submatrices to be nonsingular (e.g. a
+ * symmetric positive definite matrix). For large systems, an iterative solver
+ * with a {@link cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleCirculant}
+ * preconditioner needs <tt>O(n*log(n))</tt> time per iteration. Note that
+ * this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*(rows+columns)</tt> (plus <tt>24*L</tt> for the
+ * cached circulant embedding).
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class ToeplitzDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The first column; column[0] is the main diagonal.
+     */
+    private double[] column;
+
+    /*
+     * The first row; row[0] is not used.
+     */
+    private double[] row;
+
+    private transient CirculantDoubleMatrix2D embedding;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns. All entries
+     * are initially <tt>0</tt>.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @throws IllegalArgumentException
+     *             if <tt>rows<0 || columns<0</tt>.
+     */
+    public ToeplitzDoubleMatrix2D(int rows, int columns) {
+        super(null);
+        setUp(rows, columns);
+        this.column = new double[Math.max(1, rows)];
+        this.row = new double[Math.max(1, columns)];
+        content = this;
+    }
+
+    /**
+     * Constructs a matrix with the given first column and first row. The values
+     * are copied; <tt>row[0]</tt> is ignored (the diagonal is
+     * <tt>column[0]</tt>).
+     *
+     * @param column
+     *            the first column.
+     * @param row
+     *            the first row.
+     */
+    public ToeplitzDoubleMatrix2D(double[] column, double[] row) {
+        this(column.length, row.length);
+        System.arraycopy(column, 0, this.column, 0, column.length);
+        System.arraycopy(row, 0, this.row, 0, row.length);
+        if (row.length > 0 && column.length > 0)
+            this.row[0] = column[0];
+    }
+
+    /**
+     * Constructs a symmetric matrix with the given first column (which is also
+     * the first row). The values are copied.
+     *
+     * @param column
+     *            the first column.
+     */
+    public ToeplitzDoubleMatrix2D(double[] column) {
+        this(column, column);
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        java.util.Arrays.fill(column, value);
+        java.util.Arrays.fill(row, value);
+        embedding = null;
+        return this;
+    }
+
+    /**
+     * Returns the first column of this matrix; a copy.
+     *
+     * @return the first column of this matrix.
+     */
+    public double[] getFirstColumn() {
+        double[] c = new double[rows];
+        System.arraycopy(column, 0, c, 0, rows);
+        return c;
+    }
+
+    /**
+     * Returns the first row of this matrix; a copy.
+     *
+     * @return the first row of this matrix.
+     */
+    public double[] getFirstRow() {
+        double[] r = new double[columns];
+        System.arraycopy(row, 0, r, 0, columns);
+        if (columns > 0 && rows > 0)
+            r[0] = column[0];
+        return r;
+    }
+
+    public double getQuick(int row, int column) {
+        int k = row - column;
+        return k >= 0 ? this.column[k] : this.row[-k];
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        int k = row - column;
+        if (k >= 0) {
+            this.column[k] = value;
+            if (k == 0)
+                this.row[0] = value;
+        } else {
+            this.row[-k] = value;
+        }
+        embedding = null;
+    }
+
+    /**
+     * Solves <tt>A*x = b</tt> by the Levinson algorithm in <tt>O(n^2)</tt>
+     * time.
+     *
+     * @param b
+     *            the right-hand side.
+     * @return <tt>x</tt>; a new vector.
+     * @throws IllegalArgumentException
+     *             if the matrix is not square, if <tt>b.size() != rows()</tt>
+     *             or if a leading principal submatrix is singular.
+     */
+    public DoubleMatrix1D solve(DoubleMatrix1D b) {
+        checkSquare();
+        if (b.size() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + b.toStringShort());
+        double[] x = new double[rows];
+        levinson(b.toArray(), x, new double[rows + 1], new double[rows + 1]);
+        return new DenseDoubleMatrix1D(x);
+    }
+
+    /**
+     * Solves <tt>A*X = B</tt> by the Levinson algorithm; the columns of
+     * <tt>B</tt> are solved concurrently.
+     *
+     * @param B
+     *            the right-hand sides.
+     * @return <tt>X</tt>; a new matrix.
+     * @throws IllegalArgumentException
+     *             if the matrix is not square, if <tt>B.rows() != rows()</tt>
+     *             or if a leading principal submatrix is singular.
+     */
+    public DoubleMatrix2D solve(final DoubleMatrix2D B) {
+        checkSquare();
+        if (B.rows() != rows)
+            throw new IllegalArgumentException("Incompatible args: " + toStringShort() + ", " + B.toStringShort());
+        final DoubleMatrix2D X = new DenseDoubleMatrix2D(rows, B.columns());
+        int ncolumns = B.columns();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || ((long) rows * rows * ncolumns < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, ncolumns);
+        if (nthreads == 0)
+            return X;
+        Future<?>[] futures = new Future[nthreads];
+        int k = ncolumns / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstColumn = j * k;
+            final int lastColumn = (j == nthreads - 1) ? ncolumns : firstColumn + k;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    double[] b = new double[rows];
+                    double[] x = new double[rows];
+                    double[] g = new double[rows + 1];
+                    double[] h = new double[rows + 1];
+                    for (int c = firstColumn; c < lastColumn; c++) {
+                        for (int r = 0; r < rows; r++) {
+                            b[r] = B.getQuick(r, c);
+                        }
+                        levinson(b, x, g, h);
+                        for (int r = 0; r < rows; r++) {
+                            X.setQuick(r, c, x[r]);
+                        }
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        return X;
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        int m = transposeA ? columns : rows;
+        int n = transposeA ? rows : columns;
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(m);
+        }
+        if (n != y.size() || m > z.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + z.toStringShort());
+        if (m == 0)
+            return z;
+        CirculantDoubleMatrix2D C = embedding();
+        double[] a = new double[2 * C.rows()];
+        for (int i = 0; i < n; i++) {
+            a[2 * i] = y.getQuick(i);
+        }
+        C.mult(a, transposeA);
+        for (int i = 0; i < m; i++) {
+            z.setQuick(i, alpha * a[2 * i] + beta * z.getQuick(i));
+        }
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(final DoubleMatrix2D B, DoubleMatrix2D C, final double alpha, final double beta,
+            final boolean transposeA, boolean transposeB) {
+        final DoubleMatrix2D BB = transposeB ? B.viewDice() : B;
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(m, BB.columns());
+        }
+        if (BB.rows() != n)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort());
+        if (C.rows() != m || C.columns() != BB.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + BB.toStringShort() + ", "
+                    + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        final int ncolumns = BB.columns();
+        if (m == 0 || ncolumns == 0)
+            return C;
+        final CirculantDoubleMatrix2D E = embedding();
+        final DoubleMatrix2D CC = C;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || ((long) E.rows() * ncolumns < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, ncolumns);
+        if (nthreads > 1) {
+            ConcurrencyUtils.setThreadsBeginN_1D_FFT_2Threads(Integer.MAX_VALUE);
+            ConcurrencyUtils.setThreadsBeginN_1D_FFT_4Threads(Integer.MAX_VALUE);
+        }
+        Future<?>[] futures = new Future[nthreads];
+        int k = ncolumns / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstColumn = j * k;
+            final int lastColumn = (j == nthreads - 1) ? ncolumns : firstColumn + k;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    double[] a = new double[2 * E.rows()];
+                    for (int c = firstColumn; c < lastColumn; c++) {
+                        java.util.Arrays.fill(a, 0);
+                        for (int i = 0; i < n; i++) {
+                            a[2 * i] = BB.getQuick(i, c);
+                        }
+                        E.mult(a, transposeA);
+                        for (int i = 0; i < m; i++) {
+                            CC.setQuick(i, c, alpha * a[2 * i] + beta * CC.getQuick(i, c));
+                        }
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        if (nthreads > 1)
+            ConcurrencyUtils.resetThreadsBeginN_FFT();
+        return C;
+    }
+
+    /**
+     * Returns the element on the <tt>k</tt>-th diagonal, i.e.
+     * <tt>A[i,i-k]</tt>.
+     */
+    double diagonal(int k) {
+        return k >= 0 ? column[k] : row[-k];
+    }
+
+    private void checkSquare() {
+        if (rows != columns)
+            throw new IllegalArgumentException("Matrix must be square: " + toStringShort());
+    }
+
+    /*
+     * The circulant matrix whose upper left rows x columns block is this matrix.
+     */
+    private CirculantDoubleMatrix2D embedding() {
+        CirculantDoubleMatrix2D C = embedding;
+        if (C == null) {
+            int L = 1;
+            while (L < rows + columns - 1) {
+                L <<= 1;
+            }
+            double[] c = new double[L];
+            System.arraycopy(column, 0, c, 0, rows);
+            for (int k = 1; k < columns; k++) {
+                c[L - k] = row[k];
+            }
+            C = new CirculantDoubleMatrix2D(c);
+            C.getEigenvalues();
+            embedding = C;
+        }
+        return C;
+    }
+
+    /*
+     * Levinson algorithm for a general (nonsymmetric) Toeplitz matrix; see
+     * Numerical Recipes, section 2.8. The arrays g and h (of length n+1) are
+     * work space; indexes are 1-based as in the reference.
+     */
+    private void levinson(double[] b, double[] x, double[] g, double[] h) {
+        int n = rows;
+        if (n == 0)
+            return;
+        double t0 = diagonal(0);
+        if (t0 == 0)
+            throw new IllegalArgumentException("Matrix has a singular principal minor.");
+        // x and b are 0-based
+        x[0] = b[0] / t0;
+        if (n == 1)
+            return;
+        g[1] = diagonal(-1) / t0;
+        h[1] = diagonal(1) / t0;
+        for (int m = 1; m <= n; m++) {
+            int m1 = m + 1;
+            double sxn = -b[m1 - 1];
+            double sd = -t0;
+            for (int j = 1; j <= m; j++) {
+                sxn += diagonal(m1 - j) * x[j - 1];
+                sd += diagonal(m1 - j) * g[m - j + 1];
+            }
+            if (sd == 0)
+                throw new IllegalArgumentException("Matrix has a singular principal minor.");
+            x[m1 - 1] = sxn / sd;
+            for (int j = 1; j <= m; j++) {
+                x[j - 1] -= x[m1 - 1] * g[m - j + 1];
+            }
+            if (m1 == n)
+                return;
+            double sgn = -diagonal(-m1);
+            double shn = -diagonal(m1);
+            double sgd = -t0;
+            for (int j = 1; j <= m; j++) {
+                sgn += diagonal(j - m1) * g[j];
+                shn += diagonal(m1 - j) * h[j];
+                sgd += diagonal(j - m1) * h[m - j + 1];
+            }
+            if (sgd == 0)
+                throw new IllegalArgumentException("Matrix has a singular principal minor.");
+            g[m1] = sgn / sgd;
+            h[m1] = shn / sd;
+            int k = m;
+            int m2 = (m + 1) >> 1;
+            double pp = g[m1];
+            double qq = h[m1];
+            for (int j = 1; j <= m2; j++) {
+                double pt1 = g[j];
+                double pt2 = g[k];
+                double qt1 = h[j];
+                double qt2 = h[k];
+                g[j] = pt1 - pp * qt2;
+                g[k] = pt2 - pp * qt1;
+                h[j] = qt1 - qq * pt2;
+                h[k--] = qt2 - qq * pt1;
+            }
+        }
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+}
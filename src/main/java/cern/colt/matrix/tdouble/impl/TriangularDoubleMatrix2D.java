@@ -0,0 +1,365 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Square triangular 2-d matrix holding <tt>double</tt> elements in packed
+ * storage. First see the <a href="package-summary.html">package summary</a>
+ * and javadoc <a href="package-tree.html">tree view</a> to get the broad
+ * picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * Only the upper (or lower) triangle including the diagonal is stored, in the
+ * LAPACK packed format: an upper triangular matrix is stored column by column,
+ * <tt>A(i,j)</tt> with <tt>i &lt;= j</tt> is kept in
+ * <tt>elements[i + j*(j+1)/2]</tt>; a lower triangular matrix is stored row by
+ * row, <tt>A(i,j)</tt> with <tt>j &lt;= i</tt> is kept in
+ * <tt>elements[j + i*(i+1)/2]</tt>. Cells outside the triangle are always
+ * <tt>0</tt>; setting them has no effect. <tt>zMult</tt> works directly on the
+ * packed storage (like the BLAS routines <tt>dtpmv</tt> and <tt>dtrmm</tt>)
+ * and splits the rows among threads so that every thread gets the same number
+ * of elements. Note that this implementation is not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 8*n*(n+1)/2</tt>, where <tt>n = rows() = columns()</tt>.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class TriangularDoubleMatrix2D extends WrapperDoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Shapes of the packed kernels: the lower triangle, the upper triangle, or
+     * the whole symmetric matrix.
+     */
+    static final int LOWER = 0;
+
+    static final int UPPER = 1;
+
+    static final int SYMMETRIC = 2;
+
+    /*
+     * The packed triangle.
+     */
+    private double[] elements;
+
+    private boolean isUpperTriangular;
+
+    /**
+     * Constructs an <tt>n x n</tt> triangular matrix. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param n
+     *            the number of rows and columns the matrix shall have.
+     * @param isUpperTriangular
+     *            true for an upper triangular matrix, false for a lower
+     *            triangular matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>n<0</tt> or <tt>n*(n+1)/2 > Integer.MAX_VALUE</tt>.
+     */
+    public TriangularDoubleMatrix2D(int n, boolean isUpperTriangular) {
+        super(null);
+        setUp(n, n);
+        if ((long) n * (n + 1) / 2 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("matrix too large");
+        this.isUpperTriangular = isUpperTriangular;
+        this.elements = new double[offset(n)];
+        content = this;
+    }
+
+    /**
+     * Constructs a triangular matrix holding the upper (or lower) triangle of
+     * the given square matrix.
+     *
+     * @param A
+     *            the source matrix.
+     * @param isUpperTriangular
+     *            true for an upper triangular matrix, false for a lower
+     *            triangular matrix.
+     * @throws IllegalArgumentException
+     *             if <tt>A</tt> is not square.
+     */
+    public TriangularDoubleMatrix2D(DoubleMatrix2D A, boolean isUpperTriangular) {
+        this(A.rows(), isUpperTriangular);
+        if (A.columns() != rows)
+            throw new IllegalArgumentException("Matrix must be square: " + A.toStringShort());
+        assign(A);
+    }
+
+    public DoubleMatrix2D assign(final cern.colt.function.tdouble.DoubleFunction function) {
+        for (int i = elements.length; --i >= 0;) {
+            elements[i] = function.apply(elements[i]);
+        }
+        return this;
+    }
+
+    public DoubleMatrix2D assign(double value) {
+        java.util.Arrays.fill(elements, value);
+        return this;
+    }
+
+    public DoubleMatrix2D assign(DoubleMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof TriangularDoubleMatrix2D
+                && ((TriangularDoubleMatrix2D) source).isUpperTriangular == isUpperTriangular) {
+            System.arraycopy(((TriangularDoubleMatrix2D) source).elements, 0, elements, 0, elements.length);
+            return this;
+        }
+        for (int i = 0; i < rows; i++) {
+            int first = isUpperTriangular ? i : 0;
+            int last = isUpperTriangular ? rows - 1 : i;
+            for (int j = first; j <= last; j++) {
+                setQuick(i, j, source.getQuick(i, j));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the packed triangle of this matrix.
+     *
+     * @return the packed triangle.
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    public double getQuick(int row, int column) {
+        if (isUpperTriangular) {
+            return row <= column ? elements[row + offset(column)] : 0;
+        } else {
+            return column <= row ? elements[column + offset(row)] : 0;
+        }
+    }
+
+    /**
+     * Returns whether this matrix is upper triangular.
+     *
+     * @return true if this matrix is upper triangular, false if it is lower
+     *         triangular.
+     */
+    public boolean isUpperTriangular() {
+        return isUpperTriangular;
+    }
+
+    public DoubleMatrix2D like(int rows, int columns) {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    public DoubleMatrix1D like1D(int size) {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, double value) {
+        if (isUpperTriangular) {
+            if (row <= column)
+                elements[row + offset(column)] = value;
+        } else {
+            if (column <= row)
+                elements[column + offset(row)] = value;
+        }
+    }
+
+    public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+        if (z == null) {
+            z = new DenseDoubleMatrix1D(rows);
+        }
+        if (columns != y.size() || rows > z.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + z.toStringShort());
+        // the lower triangle (row by row) and the transposed upper triangle
+        // have the same packed storage
+        boolean lower = isUpperTriangular == transposeA;
+        mult(elements, rows, lower ? LOWER : UPPER, y, z, alpha, beta);
+        return z;
+    }
+
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha, double beta, boolean transposeA,
+            boolean transposeB) {
+        if (transposeB)
+            B = B.viewDice();
+        if (C == null) {
+            C = new DenseDoubleMatrix2D(rows, B.columns());
+        }
+        if (B.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:"
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + B.toStringShort());
+        if (C.rows() != rows || C.columns() != B.columns())
+            throw new IllegalArgumentException("Incompatibe result matrix: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + B.toStringShort() + ", "
+                    + C.toStringShort());
+        if (this == C || B == C)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        boolean lower = isUpperTriangular == transposeA;
+        mult(elements, rows, lower ? LOWER : UPPER, B, C, alpha, beta);
+        return C;
+    }
+
+    protected DoubleMatrix2D getContent() {
+        return this;
+    }
+
+    /*
+     * Position of the first element of the row (column) i in a packed lower
+     * (upper) triangle. The product can overflow an int for n <= 65535, but
+     * the unsigned shift gives the right result.
+     */
+    static int offset(int i) {
+        return (i * (i + 1)) >>> 1;
+    }
+
+    /*
+     * z = alpha*A*y + beta*z, where A is the n x n matrix of the given shape
+     * stored in the packed array a.
+     */
+    static void mult(final double[] a, final int n, final int shape, DoubleMatrix1D y, final DoubleMatrix1D z,
+            final double alpha, final double beta) {
+        final double[] x;
+        if (y instanceof DenseDoubleMatrix1D && !y.isView()) {
+            x = (double[]) y.elements();
+        } else {
+            x = y.toArray();
+        }
+        forEachRange(n, shape, new RangeProcedure() {
+            public void apply(int firstRow, int lastRow) {
+                double[] t = new double[lastRow - firstRow];
+                multRows(a, n, shape, x, 1, t, firstRow, lastRow);
+                for (int i = firstRow; i < lastRow; i++) {
+                    z.setQuick(i, alpha * t[i - firstRow] + beta * z.getQuick(i));
+                }
+            }
+        });
+    }
+
+    /*
+     * C = alpha*A*B + beta*C, where A is the n x n matrix of the given shape
+     * stored in the packed array a.
+     */
+    static void mult(final double[] a, final int n, final int shape, DoubleMatrix2D B, final DoubleMatrix2D C,
+            final double alpha, final double beta) {
+        final int k = B.columns();
+        final double[] x;
+        if (B instanceof DenseDoubleMatrix2D && !B.isView()) {
+            x = (double[]) B.elements();
+        } else {
+            x = new double[n * k];
+            for (int r = 0; r < n; r++) {
+                for (int c = 0; c < k; c++) {
+                    x[r * k + c] = B.getQuick(r, c);
+                }
+            }
+        }
+        forEachRange(n, shape, new RangeProcedure() {
+            public void apply(int firstRow, int lastRow) {
+                double[] t = new double[(lastRow - firstRow) * k];
+                multRows(a, n, shape, x, k, t, firstRow, lastRow);
+                for (int i = firstRow; i < lastRow; i++) {
+                    for (int c = 0; c < k; c++) {
+                        C.setQuick(i, c, alpha * t[(i - firstRow) * k + c] + beta * C.getQuick(i, c));
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+     * t = A[firstRow..lastRow-1,:]*x, where x is n x k and t is
+     * (lastRow-firstRow) x k, both stored row by row.
+     */
+    private static void multRows(double[] a, int n, int shape, double[] x, int k, double[] t, int firstRow,
+            int lastRow) {
+        for (int i = firstRow; i < lastRow; i++) {
+            int ti = (i - firstRow) * k;
+            if (shape != UPPER) {
+                // A(i,j), j <= i, is a[j + offset(i)]
+                int idx = offset(i);
+                for (int j = 0; j <= i; j++) {
+                    double aij = a[idx++];
+                    if (aij != 0) {
+                        int xj = j * k;
+                        for (int c = 0; c < k; c++) {
+                            t[ti + c] += aij * x[xj + c];
+                        }
+                    }
+                }
+            }
+            if (shape != LOWER) {
+                // A(i,j), j >= i, is a[i + offset(j)]
+                int j = shape == UPPER ? i : i + 1;
+                for (; j < n; j++) {
+                    double aij = a[i + offset(j)];
+                    if (aij != 0) {
+                        int xj = j * k;
+                        for (int c = 0; c < k; c++) {
+                            t[ti + c] += aij * x[xj + c];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Splits the rows among threads so that every thread gets the same number
+     * of elements of the matrix of the given shape.
+     */
+    private static void forEachRange(int n, int shape, final RangeProcedure procedure) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && ((long) n * n >= ConcurrencyUtils.getThreadsBeginN_2D()) && (n >= nthreads)) {
+            Future<?>[] futures = new Future[nthreads];
+            int firstRow = 0;
+            for (int j = 0; j < nthreads; j++) {
+                int lastRow;
+                if (j == nthreads - 1) {
+                    lastRow = n;
+                } else if (shape == LOWER) {
+                    lastRow = (int) Math.round(n * Math.sqrt((double) (j + 1) / nthreads));
+                } else if (shape == UPPER) {
+                    lastRow = n - (int) Math.round(n * Math.sqrt((double) (nthreads - j - 1) / nthreads));
+                } else {
+                    lastRow = (int) ((long) n * (j + 1) / nthreads);
+                }
+                lastRow = Math.max(firstRow, Math.min(lastRow, n));
+                final int first = firstRow;
+                final int last = lastRow;
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        procedure.apply(first, last);
+                    }
+                });
+                firstRow = lastRow;
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+        } else {
+            procedure.apply(0, n);
+        }
+    }
+
+    private interface RangeProcedure {
+        void apply(int firstRow, int lastRow);
+    }
+}
@@ -58,11 +58,17 @@ public class WrapperDoubleMatrix1D extends DoubleMatrix1D {
     }
 
     public DoubleMatrix2D reshape(int rows, int columns) {
-        throw new IllegalArgumentException("This method is not supported.");
+        if (rows * columns != size) {
+            throw new IllegalArgumentException("rows*columns != size");
+        }
+        return new DenseDoubleMatrix1D(toArray()).reshape(rows, columns);
     }
 
     public DoubleMatrix3D reshape(int slices, int rows, int columns) {
-        throw new IllegalArgumentException("This method is not supported.");
+        if (slices * rows * columns != size) {
+            throw new IllegalArgumentException("slices*rows*columns != size");
+        }
+        return new DenseDoubleMatrix1D(toArray()).reshape(slices, rows, columns);
     }
 
     public synchronized void setQuick(int index, double value) {
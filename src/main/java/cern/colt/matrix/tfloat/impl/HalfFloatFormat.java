@@ -0,0 +1,139 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tfloat.impl;
+
+/**
+ * 16-bit floating point formats used by {@link HalfFloatMatrix1D} and
+ * {@link HalfFloatMatrix2D} to store <tt>float</tt> elements in half the
+ * memory. Values are rounded to the nearest representable value (ties to
+ * even) when encoded and are decoded exactly.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public enum HalfFloatFormat {
+
+    /**
+     * bfloat16: the upper 16 bits of an IEEE 754 single (8 exponent bits, 7
+     * mantissa bits). Same range as <tt>float</tt>, about 3 significant
+     * decimal digits.
+     */
+    BFLOAT16 {
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if ((bits & 0x7fffffff) > 0x7f800000) // NaN, keep it quiet
+                return (short) ((bits >>> 16) | 0x40);
+            bits += 0x7fff + ((bits >>> 16) & 1);
+            return (short) (bits >>> 16);
+        }
+
+        public float decode(short value) {
+            return Float.intBitsToFloat(value << 16);
+        }
+    },
+
+    /**
+     * IEEE 754 half precision (5 exponent bits, 10 mantissa bits). Largest
+     * finite value is 65504, about 3.3 significant decimal digits.
+     */
+    FLOAT16 {
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            int sign = (bits >>> 16) & 0x8000;
+            int abs = bits & 0x7fffffff;
+            if (abs >= 0x7f800000) // infinity or NaN
+                return (short) (sign | 0x7c00 | (abs > 0x7f800000 ? 0x200 | ((abs >>> 13) & 0x3ff) : 0));
+            if (abs >= 0x477ff000) // rounds to infinity
+                return (short) (sign | 0x7c00);
+            if (abs >= 0x38800000) { // normal
+                int r = abs - 0x38000000;
+                r += 0x0fff + ((r >>> 13) & 1);
+                return (short) (sign | (r >>> 13));
+            }
+            if (abs <= 0x33000000) // rounds to zero
+                return (short) sign;
+            // subnormal
+            int e = abs >>> 23;
+            int m = (abs & 0x7fffff) | 0x800000;
+            int shift = 126 - e;
+            int r = m >>> shift;
+            int rem = m & ((1 << shift) - 1);
+            int half = 1 << (shift - 1);
+            if (rem > half || (rem == half && (r & 1) != 0))
+                r++;
+            return (short) (sign | r);
+        }
+
+        public float decode(short value) {
+            return FLOAT16_TABLE[value & 0xffff];
+        }
+    };
+
+    /*
+     * All 2^16 half precision values.
+     */
+    private static final float[] FLOAT16_TABLE = new float[1 << 16];
+
+    static {
+        for (int h = 0; h < FLOAT16_TABLE.length; h++) {
+            int sign = (h & 0x8000) << 16;
+            int exp = (h >>> 10) & 0x1f;
+            int mant = h & 0x3ff;
+            float value;
+            if (exp == 0x1f) {
+                value = Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+            } else if (exp == 0) {
+                value = mant * 5.9604645E-8f; // 2^-24
+                if (sign != 0)
+                    value = -value;
+            } else {
+                value = Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+            }
+            FLOAT16_TABLE[h] = value;
+        }
+    }
+
+    /**
+     * Returns the 16-bit representation of the given value.
+     *
+     * @param value
+     *            the value.
+     * @return the 16-bit representation of the value.
+     */
+    public abstract short encode(float value);
+
+    /**
+     * Returns the value of the given 16-bit representation.
+     *
+     * @param value
+     *            the 16-bit representation.
+     * @return the value.
+     */
+    public abstract float decode(short value);
+
+    /**
+     * Encodes <tt>src[srcPos..srcPos+length-1]</tt> into
+     * <tt>dst[dstPos..dstPos+length-1]</tt>.
+     */
+    public void encode(float[] src, int srcPos, short[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstPos + i] = encode(src[srcPos + i]);
+        }
+    }
+
+    /**
+     * Decodes <tt>src[srcPos..srcPos+length-1]</tt> into
+     * <tt>dst[dstPos..dstPos+length-1]</tt>.
+     */
+    public void decode(short[] src, int srcPos, float[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstPos + i] = decode(src[srcPos + i]);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tfloat.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tfloat.FloatMatrix1D;
+import cern.colt.matrix.tfloat.FloatMatrix2D;
+import cern.colt.matrix.tfloat.FloatMatrix3D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 1-d matrix (aka <i>vector</i>) holding <tt>float</tt> elements in
+ * 16-bit storage (bfloat16 or IEEE half precision). First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in a <tt>short[]</tt> and rounded to the
+ * {@link HalfFloatFormat} of the vector when set. See
+ * {@link HalfFloatMatrix2D} for details. Note that this implementation is not
+ * synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 2*size()</tt>.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class HalfFloatMatrix1D extends WrapperFloatMatrix1D {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Number of elements decoded by one block operation.
+     */
+    private static final int BLOCK_SIZE = 1 << 10;
+
+    private final HalfFloatFormat format;
+
+    private short[] elements;
+
+    /**
+     * Constructs a matrix with a given number of cells. All entries are
+     * initially <tt>0</tt>.
+     *
+     * @param size
+     *            the number of cells the matrix shall have.
+     * @param format
+     *            the storage format.
+     * @throws IllegalArgumentException
+     *             if <tt>size<0</tt>.
+     */
+    public HalfFloatMatrix1D(int size, HalfFloatFormat format) {
+        super(null);
+        setUp(size);
+        this.format = format;
+        this.elements = new short[size];
+        content = this;
+    }
+
+    /**
+     * Constructs a matrix with the same size as the given matrix and the
+     * values of its elements rounded to the given format.
+     *
+     * @param source
+     *            the source matrix.
+     * @param format
+     *            the storage format.
+     */
+    public HalfFloatMatrix1D(FloatMatrix1D source, HalfFloatFormat format) {
+        this((int) source.size(), format);
+        assign(source);
+    }
+
+    /**
+     * Constructs a matrix with the same size as the given matrix and the
+     * values of its elements rounded to the given format.
+     *
+     * @param source
+     *            the source matrix.
+     * @param format
+     *            the storage format.
+     */
+    public HalfFloatMatrix1D(DoubleMatrix1D source, HalfFloatFormat format) {
+        this((int) source.size(), format);
+        for (int i = 0; i < size; i++) {
+            elements[i] = format.encode((float) source.getQuick(i));
+        }
+    }
+
+    public float aggregate(final cern.colt.function.tfloat.FloatFloatFunction aggr,
+            final cern.colt.function.tfloat.FloatFunction f) {
+        if (size == 0)
+            return Float.NaN;
+        float a = 0;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (size >= ConcurrencyUtils.getThreadsBeginN_1D())) {
+            nthreads = Math.min(nthreads, size);
+            Future<?>[] futures = new Future[nthreads];
+            int k = size / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstIdx = j * k;
+                final int lastIdx = (j == nthreads - 1) ? size : firstIdx + k;
+                futures[j] = ConcurrencyUtils.submit(new Callable<Float>() {
+                    public Float call() throws Exception {
+                        return Float.valueOf(aggregate(firstIdx, lastIdx, aggr, f));
+                    }
+                });
+            }
+            a = ConcurrencyUtils.waitForCompletion(futures, aggr);
+        } else {
+            a = aggregate(0, size, aggr, f);
+        }
+        return a;
+    }
+
+    public FloatMatrix1D assign(final cern.colt.function.tfloat.FloatFunction function) {
+        float[] block = new float[Math.min(size, BLOCK_SIZE)];
+        for (int i = 0; i < size; i += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, size - i);
+            format.decode(elements, i, block, 0, n);
+            for (int k = 0; k < n; k++) {
+                block[k] = function.apply(block[k]);
+            }
+            format.encode(block, 0, elements, i, n);
+        }
+        return this;
+    }
+
+    public FloatMatrix1D assign(final float value) {
+        java.util.Arrays.fill(elements, format.encode(value));
+        return this;
+    }
+
+    public FloatMatrix1D assign(final float[] values) {
+        if (values.length != size)
+            throw new IllegalArgumentException("Must have same dimensions: length=" + values.length + " size()="
+                    + size());
+        format.encode(values, 0, elements, 0, size);
+        return this;
+    }
+
+    public FloatMatrix1D assign(FloatMatrix1D source) {
+        if (source == this)
+            return this;
+        checkSize(source);
+        if (source instanceof DenseFloatMatrix1D && !source.isView()) {
+            format.encode((float[]) source.elements(), 0, elements, 0, size);
+            return this;
+        }
+        if (source instanceof HalfFloatMatrix1D) {
+            HalfFloatMatrix1D other = (HalfFloatMatrix1D) source;
+            if (other.format == format) {
+                System.arraycopy(other.elements, 0, elements, 0, size);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    elements[i] = format.encode(other.format.decode(other.elements[i]));
+                }
+            }
+            return this;
+        }
+        return super.assign(source);
+    }
+
+    /**
+     * Returns the elements of this matrix in the storage format.
+     *
+     * @return the elements of this matrix.
+     */
+    public short[] elements() {
+        return elements;
+    }
+
+    /**
+     * Returns the storage format of this matrix.
+     *
+     * @return the storage format of this matrix.
+     */
+    public HalfFloatFormat getFormat() {
+        return format;
+    }
+
+    public float getQuick(int index) {
+        return format.decode(elements[index]);
+    }
+
+    public FloatMatrix1D like(int size) {
+        return new DenseFloatMatrix1D(size);
+    }
+
+    public FloatMatrix2D like2D(int rows, int columns) {
+        return new DenseFloatMatrix2D(rows, columns);
+    }
+
+    public FloatMatrix2D reshape(int rows, int columns) {
+        return toDenseFloat().reshape(rows, columns);
+    }
+
+    public FloatMatrix3D reshape(int slices, int rows, int columns) {
+        return toDenseFloat().reshape(slices, rows, columns);
+    }
+
+    public void setQuick(int index, float value) {
+        elements[index] = format.encode(value);
+    }
+
+    public float[] toArray() {
+        float[] values = new float[size];
+        format.decode(elements, 0, values, 0, size);
+        return values;
+    }
+
+    /**
+     * Returns a dense <tt>double</tt> matrix holding the (decoded) elements of
+     * this matrix.
+     *
+     * @return a dense <tt>double</tt> copy of this matrix.
+     */
+    public DenseDoubleMatrix1D toDenseDouble() {
+        DenseDoubleMatrix1D M = new DenseDoubleMatrix1D(size);
+        double[] elems = M.elements();
+        for (int i = 0; i < size; i++) {
+            elems[i] = format.decode(elements[i]);
+        }
+        return M;
+    }
+
+    /**
+     * Returns a dense <tt>float</tt> matrix holding the (decoded) elements of
+     * this matrix.
+     *
+     * @return a dense <tt>float</tt> copy of this matrix.
+     */
+    public DenseFloatMatrix1D toDenseFloat() {
+        return new DenseFloatMatrix1D(toArray());
+    }
+
+    public float zDotProduct(FloatMatrix1D y, int from, int length) {
+        if (from < 0 || length <= 0)
+            return 0;
+        int tail = (int) Math.min(Math.min(size, y.size()), (long) from + length);
+        if (tail <= from)
+            return 0;
+        float sum = 0;
+        float[] block = new float[Math.min(tail - from, BLOCK_SIZE)];
+        if (y instanceof HalfFloatMatrix1D) {
+            HalfFloatMatrix1D other = (HalfFloatMatrix1D) y;
+            float[] blockY = new float[block.length];
+            for (int i = from; i < tail; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, tail - i);
+                format.decode(elements, i, block, 0, n);
+                other.format.decode(other.elements, i, blockY, 0, n);
+                for (int k = 0; k < n; k++) {
+                    sum += block[k] * blockY[k];
+                }
+            }
+        } else if (y instanceof DenseFloatMatrix1D && !y.isView()) {
+            float[] yElements = (float[]) y.elements();
+            for (int i = from; i < tail; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, tail - i);
+                format.decode(elements, i, block, 0, n);
+                for (int k = 0; k < n; k++) {
+                    sum += block[k] * yElements[i + k];
+                }
+            }
+        } else {
+            for (int i = from; i < tail; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, tail - i);
+                format.decode(elements, i, block, 0, n);
+                for (int k = 0; k < n; k++) {
+                    sum += block[k] * y.getQuick(i + k);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private float aggregate(int firstIdx, int lastIdx, cern.colt.function.tfloat.FloatFloatFunction aggr,
+            cern.colt.function.tfloat.FloatFunction f) {
+        float[] block = new float[Math.min(lastIdx - firstIdx, BLOCK_SIZE)];
+        float a = f.apply(format.decode(elements[firstIdx]));
+        for (int i = firstIdx + 1; i < lastIdx; i += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, lastIdx - i);
+            format.decode(elements, i, block, 0, n);
+            for (int k = 0; k < n; k++) {
+                a = aggr.apply(a, f.apply(block[k]));
+            }
+        }
+        return a;
+    }
+
+    protected FloatMatrix1D getContent() {
+        return this;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+Copyright (C) 1999 CERN - European Organization for Nuclear Research.
+Permission to use, copy, modify, distribute and sell this software and its documentation for any purpose
+is hereby granted without fee, provided that the above copyright notice appear in all copies and
+that both that copyright notice and this permission notice appear in supporting documentation.
+CERN makes no representations about the suitability of this software for any purpose.
+It is provided "as is" without expressed or implied warranty.
+ */
+package cern.colt.matrix.tfloat.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tfloat.FloatMatrix1D;
+import cern.colt.matrix.tfloat.FloatMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Dense 2-d matrix holding <tt>float</tt> elements in 16-bit storage
+ * (bfloat16 or IEEE half precision). First see the <a
+ * href="package-summary.html">package summary</a> and javadoc <a
+ * href="package-tree.html">tree view</a> to get the broad picture.
+ * <p>
+ * <b>Implementation:</b>
+ * <p>
+ * The elements are stored in row major order in a <tt>short[]</tt> and
+ * rounded to the {@link HalfFloatFormat} of the matrix when set. This halves
+ * the memory (and the memory bandwidth) of a {@link DenseFloatMatrix2D} at the
+ * cost of precision, which suits matrices whose values are only known to a
+ * few digits, e.g. the weights of a model that is scored with
+ * <tt>zMult</tt>.
+ * <p>
+ * <tt>zMult</tt>, <tt>aggregate</tt> and <tt>assign</tt> decode whole rows
+ * into a <tt>float</tt> buffer and accumulate in <tt>float</tt>; results are
+ * returned in ordinary (dense <tt>float</tt>) matrices. All other operations
+ * (including views) work element by element. Note that this implementation is
+ * not synchronized.
+ * <p>
+ * <b>Memory requirements:</b>
+ * <p>
+ * <tt>memory [bytes] = 2*rows()*columns()</tt>.
+ * <p>
+ * <b>Time complexity:</b>
+ * <p>
+ * <tt>O(1)</tt> (i.e. constant time) for the basic operations <tt>get</tt>,
+ * <tt>getQuick</tt>, <tt>set</tt>, <tt>setQuick</tt> and <tt>size</tt>.
+ *
+ * @author Piotr Wendykier (piotr.wendykier@gmail.com)
+ *
+ */
+public class HalfFloatMatrix2D extends WrapperFloatMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HalfFloatFormat format;
+
+    private short[] elements;
+
+    /**
+     * Constructs a matrix with a given number of rows and columns. All entries
+     * are initially <tt>0</tt>.
+     *
+     * @param rows
+     *            the number of rows the matrix shall have.
+     * @param columns
+     *            the number of columns the matrix shall have.
+     * @param format
+     *            the storage format.
+     * @throws IllegalArgumentException
+     *             if
+     *             <tt>rows<0 || columns<0 || (float)columns*rows > Integer.MAX_VALUE</tt>
+     *             .
+     */
+    public HalfFloatMatrix2D(int rows, int columns, HalfFloatFormat format) {
+        super(null);
+        setUp(rows, columns);
+        this.format = format;
+        this.elements = new short[rows * columns];
+        content = this;
+    }
+
+    /**
+     * Constructs a matrix with the same shape as the given matrix and the
+     * values of its elements rounded to the given format.
+     *
+     * @param source
+     *            the source matrix.
+     * @param format
+     *            the storage format.
+     */
+    public HalfFloatMatrix2D(FloatMatrix2D source, HalfFloatFormat format) {
+        this(source.rows(), source.columns(), format);
+        assign(source);
+    }
+
+    /**
+     * Constructs a matrix with the same shape as the given matrix and the
+     * values of its elements rounded to the given format.
+     *
+     * @param source
+     *            the source matrix.
+     * @param format
+     *            the storage format.
+     */
+    public HalfFloatMatrix2D(DoubleMatrix2D source, HalfFloatFormat format) {
+        this(source.rows(), source.columns(), format);
+        for (int r = 0, idx = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                elements[idx++] = format.encode((float) source.getQuick(r, c));
+            }
+        }
+    }
+
+    public float aggregate(final cern.colt.function.tfloat.FloatFloatFunction aggr,
+            final cern.colt.function.tfloat.FloatFunction f) {
+        if (size() == 0)
+            return Float.NaN;
+        float a = 0;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads > 1) && (size() >= ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = Math.min(nthreads, rows);
+            Future<?>[] futures = new Future[nthreads];
+            int k = rows / nthreads;
+            for (int j = 0; j < nthreads; j++) {
+                final int firstRow = j * k;
+                final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+                futures[j] = ConcurrencyUtils.submit(new Callable<Float>() {
+                    public Float call() throws Exception {
+                        return Float.valueOf(aggregateRows(firstRow, lastRow, aggr, f));
+                    }
+                });
+            }
+            a = ConcurrencyUtils.waitForCompletion(futures, aggr);
+        } else {
+            a = aggregateRows(0, rows, aggr, f);
+        }
+        return a;
+    }
+
+    public FloatMatrix2D assign(final cern.colt.function.tfloat.FloatFunction function) {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || (size() < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, rows);
+        if (nthreads == 0)
+            return this;
+        Future<?>[] futures = new Future[nthreads];
+        int k = rows / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstRow = j * k;
+            final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    float[] row = new float[columns];
+                    for (int r = firstRow, idx = firstRow * columns; r < lastRow; r++, idx += columns) {
+                        format.decode(elements, idx, row, 0, columns);
+                        for (int c = 0; c < columns; c++) {
+                            row[c] = function.apply(row[c]);
+                        }
+                        format.encode(row, 0, elements, idx, columns);
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        return this;
+    }
+
+    public FloatMatrix2D assign(float value) {
+        java.util.Arrays.fill(elements, format.encode(value));
+        return this;
+    }
+
+    public FloatMatrix2D assign(final float[] values) {
+        if (values.length != size())
+            throw new IllegalArgumentException("Must have same length: length=" + values.length + " rows()*columns()="
+                    + rows() * columns());
+        format.encode(values, 0, elements, 0, values.length);
+        return this;
+    }
+
+    public FloatMatrix2D assign(FloatMatrix2D source) {
+        if (source == this)
+            return this;
+        checkShape(source);
+        if (source instanceof DenseFloatMatrix2D && !source.isView()) {
+            format.encode((float[]) source.elements(), 0, elements, 0, elements.length);
+            return this;
+        }
+        if (source instanceof HalfFloatMatrix2D) {
+            HalfFloatMatrix2D other = (HalfFloatMatrix2D) source;
+            if (other.format == format) {
+                System.arraycopy(other.elements, 0, elements, 0, elements.length);
+            } else {
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = format.encode(other.format.decode(other.elements[i]));
+                }
+            }
+            return this;
+        }
+        return super.assign(source);
+    }
+
+    /**
+     * Returns the elements of this matrix in the storage format. Element
+     * <tt>[row,column]</tt> is stored at index <tt>row*columns+column</tt>.
+     *
+     * @return the elements of this matrix.
+     */
+    public short[] elements() {
+        return elements;
+    }
+
+    /**
+     * Returns the storage format of this matrix.
+     *
+     * @return the storage format of this matrix.
+     */
+    public HalfFloatFormat getFormat() {
+        return format;
+    }
+
+    public float getQuick(int row, int column) {
+        return format.decode(elements[row * columns + column]);
+    }
+
+    public FloatMatrix2D like(int rows, int columns) {
+        return new DenseFloatMatrix2D(rows, columns);
+    }
+
+    public FloatMatrix1D like1D(int size) {
+        return new DenseFloatMatrix1D(size);
+    }
+
+    public void setQuick(int row, int column, float value) {
+        elements[row * columns + column] = format.encode(value);
+    }
+
+    /**
+     * Returns a dense <tt>double</tt> matrix holding the (decoded) elements of
+     * this matrix.
+     *
+     * @return a dense <tt>double</tt> copy of this matrix.
+     */
+    public DenseDoubleMatrix2D toDenseDouble() {
+        DenseDoubleMatrix2D M = new DenseDoubleMatrix2D(rows, columns);
+        double[] elems = M.elements();
+        for (int i = 0; i < elements.length; i++) {
+            elems[i] = format.decode(elements[i]);
+        }
+        return M;
+    }
+
+    /**
+     * Returns a dense <tt>float</tt> matrix holding the (decoded) elements of
+     * this matrix.
+     *
+     * @return a dense <tt>float</tt> copy of this matrix.
+     */
+    public DenseFloatMatrix2D toDenseFloat() {
+        DenseFloatMatrix2D M = new DenseFloatMatrix2D(rows, columns);
+        format.decode(elements, 0, M.elements(), 0, elements.length);
+        return M;
+    }
+
+    public FloatMatrix1D zMult(final FloatMatrix1D y, FloatMatrix1D z, final float alpha, final float beta,
+            final boolean transposeA) {
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        final FloatMatrix1D zz;
+        if (z == null) {
+            zz = new DenseFloatMatrix1D(m);
+        } else {
+            zz = z;
+        }
+        if (n != y.size() || m > zz.size())
+            throw new IllegalArgumentException("Incompatible args: "
+                    + ((transposeA ? viewDice() : this).toStringShort()) + ", " + y.toStringShort() + ", "
+                    + zz.toStringShort());
+        final float[] yElements = y.toArray();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || (size() < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, rows);
+        if (nthreads == 0)
+            return zz.assign(cern.jet.math.tfloat.FloatFunctions.mult(beta));
+        Future<?>[] futures = new Future[nthreads];
+        final float[][] partial = transposeA ? new float[nthreads][columns] : null;
+        int k = rows / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstRow = j * k;
+            final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+            final int thread = j;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    float[] row = new float[columns];
+                    if (transposeA) {
+                        float[] s = partial[thread];
+                        for (int r = firstRow, idx = firstRow * columns; r < lastRow; r++, idx += columns) {
+                            float yr = yElements[r];
+                            if (yr != 0) {
+                                format.decode(elements, idx, row, 0, columns);
+                                for (int c = 0; c < columns; c++) {
+                                    s[c] += row[c] * yr;
+                                }
+                            }
+                        }
+                    } else {
+                        for (int r = firstRow, idx = firstRow * columns; r < lastRow; r++, idx += columns) {
+                            format.decode(elements, idx, row, 0, columns);
+                            float s = 0;
+                            for (int c = 0; c < columns; c++) {
+                                s += row[c] * yElements[c];
+                            }
+                            zz.setQuick(r, alpha * s + beta * zz.getQuick(r));
+                        }
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        if (transposeA) {
+            for (int c = 0; c < columns; c++) {
+                float s = 0;
+                for (int j = 0; j < nthreads; j++) {
+                    s += partial[j][c];
+                }
+                zz.setQuick(c, alpha * s + beta * zz.getQuick(c));
+            }
+        }
+        return zz;
+    }
+
+    public FloatMatrix2D zMult(final FloatMatrix2D B, FloatMatrix2D C, final float alpha, final float beta,
+            final boolean transposeA, final boolean transposeB) {
+        if (transposeA)
+            return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+        final FloatMatrix2D BB = transposeB ? B.viewDice() : B;
+        final int p = BB.columns();
+        final FloatMatrix2D CC;
+        if (C == null) {
+            CC = new DenseFloatMatrix2D(rows, p);
+        } else {
+            CC = C;
+        }
+        if (BB.rows() != columns)
+            throw new IllegalArgumentException("Matrix2D inner dimensions must agree:" + toStringShort() + ", "
+                    + BB.toStringShort());
+        if (CC.rows() != rows || CC.columns() != p)
+            throw new IllegalArgumentException("Incompatibe result matrix: " + toStringShort() + ", "
+                    + BB.toStringShort() + ", " + CC.toStringShort());
+        if (this == CC || B == CC)
+            throw new IllegalArgumentException("Matrices must not be identical");
+        final float[] bElements;
+        if (BB instanceof HalfFloatMatrix2D) {
+            bElements = ((HalfFloatMatrix2D) BB).toDenseFloat().elements();
+        } else if (BB instanceof DenseFloatMatrix2D && !BB.isView()) {
+            bElements = (float[]) BB.elements();
+        } else {
+            bElements = new DenseFloatMatrix2D(BB.toArray()).elements();
+        }
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((nthreads < 1) || (size() * p < ConcurrencyUtils.getThreadsBeginN_2D())) {
+            nthreads = 1;
+        }
+        nthreads = Math.min(nthreads, rows);
+        if (nthreads == 0 || p == 0)
+            return CC;
+        Future<?>[] futures = new Future[nthreads];
+        int k = rows / nthreads;
+        for (int j = 0; j < nthreads; j++) {
+            final int firstRow = j * k;
+            final int lastRow = (j == nthreads - 1) ? rows : firstRow + k;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    float[] row = new float[columns];
+                    float[] s = new float[p];
+                    for (int r = firstRow, idx = firstRow * columns; r < lastRow; r++, idx += columns) {
+                        format.decode(elements, idx, row, 0, columns);
+                        java.util.Arrays.fill(s, 0);
+                        for (int i = 0, b = 0; i < columns; i++, b += p) {
+                            float a = row[i];
+                            if (a != 0) {
+                                for (int c = 0; c < p; c++) {
+                                    s[c] += a * bElements[b + c];
+                                }
+                            }
+                        }
+                        for (int c = 0; c < p; c++) {
+                            CC.setQuick(r, c, alpha * s[c] + beta * CC.getQuick(r, c));
+                        }
+                    }
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        return CC;
+    }
+
+    private float aggregateRows(int firstRow, int lastRow, cern.colt.function.tfloat.FloatFloatFunction aggr,
+            cern.colt.function.tfloat.FloatFunction f) {
+        float[] row = new float[columns];
+        float a = 0;
+        boolean first = true;
+        for (int r = firstRow, idx = firstRow * columns; r < lastRow; r++, idx += columns) {
+            format.decode(elements, idx, row, 0, columns);
+            int c = 0;
+            if (first) {
+                a = f.apply(row[0]);
+                c = 1;
+                first = false;
+            }
+            for (; c < columns; c++) {
+                a = aggr.apply(a, f.apply(row[c]));
+            }
+        }
+        return a;
+    }
+
+    protected FloatMatrix2D getContent() {
+        return this;
+    }
+}
@@ -58,11 +58,17 @@ public class WrapperFloatMatrix1D extends FloatMatrix1D {
     }
 
     public FloatMatrix2D reshape(int rows, int columns) {
-        throw new IllegalArgumentException("This method is not supported.");
+        if (rows * columns != size) {
+            throw new IllegalArgumentException("rows*columns != size");
+        }
+        return new DenseFloatMatrix1D(toArray()).reshape(rows, columns);
     }
 
     public FloatMatrix3D reshape(int slices, int rows, int columns) {
-        throw new IllegalArgumentException("This method is not supported.");
+        if (slices * rows * columns != size) {
+            throw new IllegalArgumentException("slices*rows*columns != size");
+        }
+        return new DenseFloatMatrix1D(toArray()).reshape(slices, rows, columns);
     }
 
     public synchronized void setQuick(int index, float value) {
@@ -2,7 +2,10 @@ package cern.colt.matrix.tdouble;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebraTest;
 import cern.colt.matrix.tdouble.algo.solver.AllDoubleMatrixSolverTests;
+import cern.colt.matrix.tdouble.impl.BandDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.CirculantDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.DenseColumnDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.DenseColumnDoubleMatrix2DViewTest;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1DTest;
@@ -17,10 +20,19 @@ import cern.colt.matrix.tdouble.impl.DenseLargeDoubleMatrix3DTest;
 import cern.colt.matrix.tdouble.impl.DenseLargeDoubleMatrix3DViewTest;
 import cern.colt.matrix.tdouble.impl.DiagonalDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.DiagonalDoubleMatrix2DViewTest;
+import cern.colt.matrix.tdouble.impl.DirectDoubleMatrix1DTest;
+import cern.colt.matrix.tdouble.impl.DirectDoubleMatrix1DViewTest;
+import cern.colt.matrix.tdouble.impl.DirectDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.DirectDoubleMatrix2DViewTest;
+import cern.colt.matrix.tdouble.impl.MappedDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.MappedDoubleMatrix2DViewTest;
+import cern.colt.matrix.tdouble.impl.MappedDoubleMatrix3DTest;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2DViewTest;
 import cern.colt.matrix.tdouble.impl.SparseCCMDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.SparseCCMDoubleMatrix2DViewTest;
+import cern.colt.matrix.tdouble.impl.SparseCSFDoubleMatrix3DTest;
+import cern.colt.matrix.tdouble.impl.SparseCSFDoubleMatrix3DViewTest;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix1DTest;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix1DViewTest;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2DTest;
@@ -31,6 +43,21 @@ import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2DViewTest;
 import cern.colt.matrix.tdouble.impl.SparseRCMDoubleMatrix2DTest;
 import cern.colt.matrix.tdouble.impl.SparseRCMDoubleMatrix2DViewTest;
+import cern.colt.matrix.tdouble.impl.SparseSortedDoubleMatrix1DTest;
+import cern.colt.matrix.tdouble.impl.SparseSortedDoubleMatrix1DViewTest;
+import cern.colt.matrix.tdouble.impl.SymmetricDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.ToeplitzDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.TriangularDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.BlockDiagonalDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.LowRankDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.DiagonalPlusLowRankDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.DiagonalDoubleMatrix2DZMultTest;
+import cern.colt.matrix.tdouble.impl.CompressedDoubleMatrixKernelsTest;
+import cern.colt.matrix.tdouble.impl.SlicedEllpackDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.BlockSparseRowDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2DBuilderTest;
+import cern.colt.matrix.tdouble.impl.ConcurrentSparseDoubleMatrix2DTest;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2DTest;
 
 public class AllDoubleMatrixTests {
 
@@ -40,6 +67,10 @@ public class AllDoubleMatrixTests {
         suite.addTestSuite(DenseDoubleMatrix1DViewTest.class);
         suite.addTestSuite(SparseDoubleMatrix1DTest.class);
         suite.addTestSuite(SparseDoubleMatrix1DViewTest.class);
+        suite.addTestSuite(SparseSortedDoubleMatrix1DTest.class);
+        suite.addTestSuite(SparseSortedDoubleMatrix1DViewTest.class);
+        suite.addTestSuite(DirectDoubleMatrix1DTest.class);
+        suite.addTestSuite(DirectDoubleMatrix1DViewTest.class);
 
         suite.addTestSuite(DenseDoubleMatrix2DTest.class);
         suite.addTestSuite(DenseDoubleMatrix2DViewTest.class);
@@ -47,6 +78,13 @@ public class AllDoubleMatrixTests {
         suite.addTestSuite(DenseColumnDoubleMatrix2DViewTest.class);
         suite.addTestSuite(DenseLargeDoubleMatrix2DTest.class);
         suite.addTestSuite(DenseLargeDoubleMatrix2DViewTest.class);
+        suite.addTestSuite(DirectDoubleMatrix2DTest.class);
+        suite.addTestSuite(DirectDoubleMatrix2DViewTest.class);
+        suite.addTestSuite(MappedDoubleMatrix2DTest.class);
+        suite.addTestSuite(MappedDoubleMatrix2DViewTest.class);
+        suite.addTestSuite(CirculantDoubleMatrix2DTest.class);
+        suite.addTestSuite(BandDoubleMatrix2DTest.class);
+        suite.addTestSuite(ToeplitzDoubleMatrix2DTest.class);
 
         suite.addTestSuite(SparseDoubleMatrix2DTest.class);
         suite.addTestSuite(SparseDoubleMatrix2DViewTest.class);
@@ -67,8 +105,24 @@ public class AllDoubleMatrixTests {
         suite.addTestSuite(DenseDoubleMatrix3DViewTest.class);
         suite.addTestSuite(SparseDoubleMatrix3DTest.class);
         suite.addTestSuite(SparseDoubleMatrix3DViewTest.class);
+        suite.addTestSuite(SparseCSFDoubleMatrix3DTest.class);
+        suite.addTestSuite(SparseCSFDoubleMatrix3DViewTest.class);
         suite.addTestSuite(DenseLargeDoubleMatrix3DTest.class);
         suite.addTestSuite(DenseLargeDoubleMatrix3DViewTest.class);
+        suite.addTestSuite(MappedDoubleMatrix3DTest.class);
+        suite.addTestSuite(SymmetricDoubleMatrix2DTest.class);
+        suite.addTestSuite(TriangularDoubleMatrix2DTest.class);
+        suite.addTestSuite(BlockDiagonalDoubleMatrix2DTest.class);
+        suite.addTestSuite(LowRankDoubleMatrix2DTest.class);
+        suite.addTestSuite(DiagonalPlusLowRankDoubleMatrix2DTest.class);
+        suite.addTestSuite(DiagonalDoubleMatrix2DZMultTest.class);
+        suite.addTestSuite(CompressedDoubleMatrixKernelsTest.class);
+        suite.addTestSuite(SlicedEllpackDoubleMatrix2DTest.class);
+        suite.addTestSuite(BlockSparseRowDoubleMatrix2DTest.class);
+        suite.addTestSuite(SparseDoubleMatrix2DBuilderTest.class);
+        suite.addTestSuite(ConcurrentSparseDoubleMatrix2DTest.class);
+        suite.addTestSuite(SymmetricSparseRCDoubleMatrix2DTest.class);
+        suite.addTestSuite(SparseDoubleAlgebraTest.class);
 
         suite.addTest(AllDoubleMatrixSolverTests.suite());
 
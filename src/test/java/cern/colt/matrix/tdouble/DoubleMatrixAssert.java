@@ -0,0 +1,37 @@
+package cern.colt.matrix.tdouble;
+
+import junit.framework.Assert;
+
+/**
+ * Assertions comparing matrices element by element within a tolerance.
+ */
+public class DoubleMatrixAssert extends Assert {
+
+    private DoubleMatrixAssert() {
+    }
+
+    /**
+     * Asserts that two vectors have the same size and that their elements
+     * differ by at most <tt>tol</tt>.
+     */
+    public static void assertClose(DoubleMatrix1D expected, DoubleMatrix1D actual, double tol) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getQuick(i), actual.getQuick(i), tol);
+        }
+    }
+
+    /**
+     * Asserts that two matrices have the same shape and that their elements
+     * differ by at most <tt>tol</tt>.
+     */
+    public static void assertClose(DoubleMatrix2D expected, DoubleMatrix2D actual, double tol) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int r = 0; r < expected.rows(); r++) {
+            for (int c = 0; c < expected.columns(); c++) {
+                assertEquals(expected.getQuick(r, c), actual.getQuick(r, c), tol);
+            }
+        }
+    }
+}
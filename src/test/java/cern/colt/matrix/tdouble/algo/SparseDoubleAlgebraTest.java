@@ -0,0 +1,452 @@
+package cern.colt.matrix.tdouble.algo;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.CSparseDoubleLUDecomposition;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleKLUDecomposition;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+import edu.ufl.cise.klu.common.KLU_symbolic;
+
+public class SparseDoubleAlgebraTest extends TestCase {
+
+    protected double TOL = 1e-10;
+
+    protected int GRID = 15;
+
+    protected SparseDoubleAlgebra algebra = SparseDoubleAlgebra.DEFAULT;
+
+    public SparseDoubleAlgebraTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_1D(1);
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    public void testPermute() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            Random random = new Random(t);
+            DoubleMatrix2D A = new DenseDoubleMatrix2D(40, 30);
+            for (int k = 0; k < 300; k++) {
+                A.setQuick(random.nextInt(40), random.nextInt(30), random.nextDouble());
+            }
+            int[] p = shuffle(40, random);
+            int[] q = shuffle(30, random);
+            SparseRCDoubleMatrix2D Arc = new SparseRCDoubleMatrix2D(A.toArray());
+            Arc.sortColumnIndexes();
+            SparseRCDoubleMatrix2D R = (SparseRCDoubleMatrix2D) algebra.permute(Arc, p, q);
+            assertTrue(R.hasColumnIndexesSorted());
+            assertSorted(R.getRowPointers(), R.getColumnIndexes(), 40);
+            assertEquals(A.viewSelection(p, q), R);
+            SparseCCDoubleMatrix2D C = (SparseCCDoubleMatrix2D) algebra.permute(Arc.getColumnCompressed(), p,
+                    q);
+            assertSorted(C.getColumnPointers(), C.getRowIndexes(), 30);
+            assertEquals(A.viewSelection(p, q), C);
+            assertEquals(A.viewSelection(null, q), Arc.getPermuted(null, q));
+
+            SymmetricSparseRCDoubleMatrix2D S = new SymmetricSparseRCDoubleMatrix2D(laplacian());
+            int n = S.rows();
+            int[] r = shuffle(n, random);
+            DoubleMatrix2D P = algebra.permute(S, r);
+            assertTrue(P instanceof SymmetricSparseRCDoubleMatrix2D);
+            assertEquals(S.viewSelection(r, r), P);
+            assertEquals(S.viewSelection(r, r), algebra.permute(laplacian(), r));
+
+            DoubleMatrix1D x = new DenseDoubleMatrix1D(40);
+            for (int i = 0; i < 40; i++) {
+                x.setQuick(i, random.nextDouble());
+            }
+            DoubleMatrix1D y = algebra.permute(x, p);
+            for (int i = 0; i < 40; i++) {
+                assertEquals(x.getQuick(p[i]), y.getQuick(i), 0);
+            }
+            y = algebra.permute(y, algebra.permutationInverse(p));
+            for (int i = 0; i < 40; i++) {
+                assertEquals(x.getQuick(i), y.getQuick(i), 0);
+            }
+            assertEquals(x.getQuick(p[3]), algebra.permute(x.viewPart(0, 40), p).getQuick(3), 0);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+        try {
+            algebra.permute(laplacian(), new int[] { 0 });
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+        try {
+            algebra.permutationInverse(new int[] { 0, 2, 2 });
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    public void testOrderings() {
+        SparseRCDoubleMatrix2D L = laplacian();
+        int n = L.rows();
+        // a random numbering destroys the banded structure of the grid
+        SparseRCDoubleMatrix2D A = (SparseRCDoubleMatrix2D) algebra.permute(L, shuffle(n, new Random(0)));
+        int bandwidth = bandwidth(A);
+        int fill = fill(A);
+
+        int[] p = algebra.reverseCuthillMcKee(A);
+        assertPermutation(p, n);
+        assertTrue(bandwidth(algebra.permute(A, p)) <= GRID + 1);
+        assertTrue(bandwidth(algebra.permute(A, p)) < bandwidth);
+
+        p = algebra.amd(A);
+        assertPermutation(p, n);
+        assertTrue(fill(algebra.permute(A, p)) < fill);
+        assertEquals(fill(algebra.permute(A, p)), fill(algebra.permute(A.getColumnCompressed(), p)));
+
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            p = algebra.nestedDissection(A);
+            assertPermutation(p, n);
+            assertTrue(fill(algebra.permute(A, p)) < fill);
+            p = algebra.nestedDissection(new SymmetricSparseRCDoubleMatrix2D(A));
+            assertPermutation(p, n);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+
+        // disconnected graph with isolated vertices
+        DoubleMatrix2D D = new DenseDoubleMatrix2D(100, 100);
+        for (int i = 0; i < 100; i++) {
+            D.setQuick(i, i, 1);
+            if (i % 10 != 0) {
+                D.setQuick(i, i - 1, 1);
+                D.setQuick(i - 1, i, 1);
+            }
+        }
+        SparseRCDoubleMatrix2D Drc = new SparseRCDoubleMatrix2D(D.toArray());
+        assertPermutation(algebra.reverseCuthillMcKee(Drc), 100);
+        assertPermutation(algebra.nestedDissection(Drc), 100);
+        assertPermutation(algebra.nestedDissection(new SparseRCDoubleMatrix2D(100, 100)), 100);
+
+        int[] q = algebra.columnAmd(new SparseRCDoubleMatrix2D(A.viewPart(0, 0, 30, 20).toArray()));
+        assertPermutation(q, 20);
+        assertPermutation(algebra.columnAmd(A), n);
+    }
+
+    public void testTriangularSolver() {
+        int n = 60;
+        Random random = new Random(0);
+        // lower triangle with a random pattern, upper triangle with a different one
+        DoubleMatrix2D A = new DenseDoubleMatrix2D(n, n);
+        for (int i = 0; i < n; i++) {
+            A.setQuick(i, i, 2 + random.nextDouble());
+            for (int k = 0; k < 3; k++) {
+                int j = random.nextInt(n);
+                if (j != i)
+                    A.setQuick(i, j, random.nextDouble() - 0.5);
+            }
+        }
+        DoubleMatrix2D L = A.copy();
+        DoubleMatrix2D U = A.copy();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (j > i)
+                    L.setQuick(i, j, 0);
+                else if (j < i)
+                    U.setQuick(i, j, 0);
+            }
+        }
+        DoubleMatrix2D unitL = L.copy();
+        for (int i = 0; i < n; i++) {
+            unitL.setQuick(i, i, 1);
+        }
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(n);
+        for (int i = 0; i < n; i++) {
+            b.setQuick(i, random.nextDouble());
+        }
+        SparseRCDoubleMatrix2D Arc = new SparseRCDoubleMatrix2D(A.toArray());
+        SparseCCDoubleMatrix2D Acc = Arc.getColumnCompressed();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            assertClose(b, L.zMult(algebra.solveTriangular(Arc, b, true, false), null), TOL);
+            assertClose(b, U.zMult(algebra.solveTriangular(Arc, b, false, false), null), TOL);
+            assertClose(b, unitL.zMult(algebra.solveTriangular(Arc, b, true, true), null), TOL);
+            assertClose(b, L.zMult(algebra.solveTriangular(Acc, b, true, false), null), TOL);
+            assertClose(b, U.zMult(algebra.solveTriangular(Acc, b, false, false), null), TOL);
+
+            SparseDoubleTriangularSolver solver = algebra.triangularSolver(Arc, false, false);
+            DoubleMatrix1D x = b.copy();
+            solver.getTranspose().solve(x);
+            assertClose(b, U.zMult(x, null, 1, 0, true), TOL);
+            // strided view
+            DoubleMatrix1D y = new DenseDoubleMatrix1D(2 * n).viewStrides(2);
+            y.assign(b);
+            solver.solve(y);
+            assertClose(b, U.zMult(y, null), TOL);
+
+            DoubleMatrix1D c = new DenseDoubleMatrix1D(GRID * GRID);
+            for (int i = 0; i < GRID * GRID; i++) {
+                c.setQuick(i, random.nextDouble());
+            }
+            DoubleMatrix1D z = c.copy();
+            algebra.chol(laplacian(), 1).solve(z);
+            assertClose(c, laplacian().zMult(z, null), TOL);
+            z = c.copy();
+            algebra.lu(laplacian(), 1).solve(z);
+            assertClose(c, laplacian().zMult(z, null), TOL);
+            // underdetermined system
+            DoubleMatrix2D W = new SparseRCDoubleMatrix2D(A.viewPart(0, 0, 40, n).toArray());
+            z = algebra.solve(W, b.viewPart(0, 40));
+            assertClose(b.viewPart(0, 40), W.zMult(z, null), TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+
+        // new values with the same pattern are picked up without a new analysis
+        SparseDoubleTriangularSolver solver = algebra.triangularSolver(Arc, false, false);
+        Arc.getValues()[0] *= 2;
+        U.setQuick(0, 0, 2 * U.getQuick(0, 0));
+        DoubleMatrix1D x = b.copy();
+        solver.solve(x);
+        assertClose(b, U.zMult(x, null), TOL);
+
+        // a dense triangle is one chain, a diagonal has no dependencies
+        DoubleMatrix2D D = new DenseDoubleMatrix2D(n, n).assign(1);
+        SparseDoubleTriangularSolver chain = algebra.triangularSolver(new SparseRCDoubleMatrix2D(D.toArray()), true,
+                true);
+        assertEquals(n, chain.getNumberOfLevels());
+        assertEquals(n, chain.getTranspose().getNumberOfLevels());
+        assertSame(chain, chain.getTranspose().getTranspose());
+        assertEquals(1, algebra.triangularSolver(new SparseRCDoubleMatrix2D(DoubleFactory2D.sparse.identity(n)
+                .toArray()), false, false).getNumberOfLevels());
+        try {
+            algebra.triangularSolver(new SparseRCDoubleMatrix2D(n, n), true, false);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testRefactor() {
+        Random random = new Random(0);
+        final DoubleMatrix1D b = new DenseDoubleMatrix1D(GRID * GRID);
+        for (int i = 0; i < b.size(); i++) {
+            b.setQuick(i, random.nextDouble());
+        }
+        // same pattern, new values: symmetric ones for Cholesky, arbitrary ones for LU
+        final SparseRCDoubleMatrix2D A = laplacian();
+        SparseRCDoubleMatrix2D B = laplacian();
+        SparseRCDoubleMatrix2D C = laplacian();
+        double[] valuesB = B.getValues();
+        double[] valuesC = C.getValues();
+        for (int k = 0; k < valuesB.length; k++) {
+            if (valuesB[k] > 0) {
+                valuesB[k] = 5 + random.nextDouble();
+                valuesC[k] = 5 + random.nextDouble();
+            } else {
+                valuesC[k] = -0.5 - 0.5 * random.nextDouble();
+            }
+        }
+
+        SparseDoubleCholeskyDecomposition chol = new SparseDoubleCholeskyDecomposition(A, 1);
+        DoubleMatrix1D x = b.copy();
+        chol.solve(x);
+        assertClose(b, A.zMult(x, null), TOL);
+        chol.refactor(B);
+        x = b.copy();
+        chol.solve(x);
+        assertClose(b, B.zMult(x, null), TOL);
+
+        SparseDoubleLUDecomposition[] lus = { new CSparseDoubleLUDecomposition(A, 1, true),
+                new SparseDoubleKLUDecomposition(A, 0, true) };
+        for (int d = 0; d < lus.length; d++) {
+            x = b.copy();
+            lus[d].solve(x);
+            assertClose(b, A.zMult(x, null), TOL);
+            lus[d].refactor(C);
+            x = b.copy();
+            lus[d].solve(x);
+            assertClose(b, C.zMult(x, null), TOL);
+            lus[d].refactor(C.getColumnCompressed());
+            x = b.copy();
+            lus[d].solve(x);
+            assertClose(b, C.zMult(x, null), TOL);
+            // the order of the row indexes within a column does not matter
+            lus[d].refactor(reverseColumns(C.getColumnCompressed()));
+            x = b.copy();
+            lus[d].solve(x);
+            assertClose(b, C.zMult(x, null), TOL);
+            try {
+                lus[d].refactor(new SparseRCDoubleMatrix2D(DoubleFactory2D.sparse.identity(GRID * GRID).toArray()));
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        chol.refactor(reverseColumns(B.getColumnCompressed()));
+        x = b.copy();
+        chol.solve(x);
+        assertClose(b, B.zMult(x, null), TOL);
+
+        // one symbolic analysis shared by concurrent factorizations
+        final Dcss symbolicChol = chol.getSymbolicAnalysis();
+        final Dcss symbolicLU = (Dcss) lus[0].getSymbolicAnalysis();
+        final KLU_symbolic symbolicKLU = (KLU_symbolic) lus[1].getSymbolicAnalysis();
+        final SparseRCDoubleMatrix2D[] matrices = new SparseRCDoubleMatrix2D[4];
+        final DoubleMatrix1D[][] solutions = new DoubleMatrix1D[4][3];
+        Future<?>[] futures = new Future[4];
+        for (int j = 0; j < 4; j++) {
+            matrices[j] = laplacian();
+            double[] values = matrices[j].getValues();
+            for (int k = 0; k < values.length; k++) {
+                if (values[k] > 0)
+                    values[k] += j;
+            }
+            final int idx = j;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    for (int d = 0; d < 3; d++) {
+                        solutions[idx][d] = b.copy();
+                    }
+                    new SparseDoubleCholeskyDecomposition(matrices[idx], symbolicChol).solve(solutions[idx][0]);
+                    new CSparseDoubleLUDecomposition(matrices[idx], symbolicLU, true).solve(solutions[idx][1]);
+                    new SparseDoubleKLUDecomposition(matrices[idx], symbolicKLU, true).solve(solutions[idx][2]);
+                }
+            });
+        }
+        ConcurrencyUtils.waitForCompletion(futures);
+        for (int j = 0; j < 4; j++) {
+            for (int d = 0; d < 3; d++) {
+                assertClose(b, matrices[j].zMult(solutions[j][d], null), TOL);
+            }
+        }
+        try {
+            new SparseDoubleKLUDecomposition(new SparseRCDoubleMatrix2D(3, 3), symbolicKLU, true);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        // a symbolic analysis is rejected for a matrix with another pattern
+        int n = GRID * GRID;
+        DoubleMatrix2D D = laplacian().getColumnCompressed().copy();
+        D.setQuick(0, n - 1, -0.5);
+        D.setQuick(n - 1, 0, -0.5);
+        try {
+            new SparseDoubleCholeskyDecomposition(D, symbolicChol);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new CSparseDoubleLUDecomposition(D, symbolicLU, false);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new SparseDoubleKLUDecomposition(D, symbolicKLU, false);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /*
+     * Returns a copy of A with the row indexes of every column in reverse
+     * order.
+     */
+    private SparseCCDoubleMatrix2D reverseColumns(SparseCCDoubleMatrix2D A) {
+        int[] columnPointers = A.getColumnPointers().clone();
+        int[] rowIndexes = A.getRowIndexes().clone();
+        double[] values = A.getValues().clone();
+        for (int j = 0; j < A.columns(); j++) {
+            for (int lo = columnPointers[j], hi = columnPointers[j + 1] - 1; lo < hi; lo++, hi--) {
+                int i = rowIndexes[lo];
+                rowIndexes[lo] = rowIndexes[hi];
+                rowIndexes[hi] = i;
+                double v = values[lo];
+                values[lo] = values[hi];
+                values[hi] = v;
+            }
+        }
+        return new SparseCCDoubleMatrix2D(A.rows(), A.columns(), rowIndexes, columnPointers, values);
+    }
+
+    private SparseRCDoubleMatrix2D laplacian() {
+        int n = GRID * GRID;
+        DoubleMatrix2D L = new DenseDoubleMatrix2D(n, n);
+        for (int i = 0; i < GRID; i++) {
+            for (int j = 0; j < GRID; j++) {
+                int v = i * GRID + j;
+                L.setQuick(v, v, 4);
+                if (i > 0) {
+                    L.setQuick(v, v - GRID, -1);
+                    L.setQuick(v - GRID, v, -1);
+                }
+                if (j > 0) {
+                    L.setQuick(v, v - 1, -1);
+                    L.setQuick(v - 1, v, -1);
+                }
+            }
+        }
+        return new SparseRCDoubleMatrix2D(L.toArray());
+    }
+
+    private int[] shuffle(int n, Random random) {
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) {
+            p[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = p[i];
+            p[i] = p[j];
+            p[j] = tmp;
+        }
+        return p;
+    }
+
+    private int bandwidth(DoubleMatrix2D A) {
+        int bandwidth = 0;
+        for (int i = 0; i < A.rows(); i++) {
+            for (int j = 0; j < A.columns(); j++) {
+                if (A.getQuick(i, j) != 0)
+                    bandwidth = Math.max(bandwidth, Math.abs(i - j));
+            }
+        }
+        return bandwidth;
+    }
+
+    private int fill(DoubleMatrix2D A) {
+        return new SparseDoubleCholeskyDecomposition(A, 0).getL().cardinality();
+    }
+
+    private void assertPermutation(int[] p, int n) {
+        assertEquals(n, p.length);
+        assertEquals(n, algebra.permutationInverse(p).length);
+    }
+
+    private void assertSorted(int[] pointers, int[] indexes, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i] + 1; k < pointers[i + 1]; k++) {
+                assertTrue(indexes[k - 1] < indexes[k]);
+            }
+        }
+    }
+
+    private void assertEquals(DoubleMatrix2D expected, DoubleMatrix2D actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int r = 0; r < expected.rows(); r++) {
+            for (int c = 0; c < expected.columns(); c++) {
+                assertEquals(expected.getQuick(r, c), actual.getQuick(r, c), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.BandDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class BandDoubleDecompositionTest extends TestCase {
+
+    protected int N = 200;
+
+    protected int NRHS = 4;
+
+    protected double TOL = 1e-9;
+
+    protected Random r = new Random(0);
+
+    public BandDoubleDecompositionTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    /*
+     * Random diagonally dominant band matrix. If pivot is true, adjacent rows
+     * are interchanged so that pivoting is required.
+     */
+    private BandDoubleMatrix2D random(int n, int kl, int ku, boolean pivot) {
+        int shift = pivot ? 1 : 0;
+        BandDoubleMatrix2D A = new BandDoubleMatrix2D(n, n, kl, ku);
+        for (int i = 0; i < n; i++) {
+            int row = pivot ? (i % 2 == 0 ? Math.min(i + 1, n - 1) : i - 1) : i;
+            for (int j = Math.max(0, i - kl + shift); j <= Math.min(n - 1, i + ku - shift); j++) {
+                A.setQuick(row, j, 0.5 - r.nextDouble());
+            }
+            A.setQuick(row, i, kl + ku + 1);
+        }
+        return A;
+    }
+
+    private BandDoubleMatrix2D randomSPD(int n, int kd) {
+        BandDoubleMatrix2D A = new BandDoubleMatrix2D(n, n, kd, kd);
+        for (int i = 0; i < n; i++) {
+            for (int j = Math.max(0, i - kd); j < i; j++) {
+                double value = 0.5 - r.nextDouble();
+                A.setQuick(i, j, value);
+                A.setQuick(j, i, value);
+            }
+            A.setQuick(i, i, kd + 1);
+        }
+        return A;
+    }
+
+    private DoubleMatrix2D rhs(int n, int ncolumns) {
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(n, ncolumns);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < ncolumns; j++) {
+                B.setQuick(i, j, 0.5 - r.nextDouble());
+            }
+        }
+        return B;
+    }
+
+    private void assertSolution(DoubleMatrix2D A, DoubleMatrix2D X, DoubleMatrix2D B) {
+        DoubleMatrix2D AX = A.zMult(X, null);
+        for (int i = 0; i < B.rows(); i++) {
+            for (int j = 0; j < B.columns(); j++) {
+                assertEquals(B.getQuick(i, j), AX.getQuick(i, j), TOL);
+            }
+        }
+    }
+
+    public void testLU() {
+        int[][] bandwidths = { { 1, 1 }, { 2, 3 }, { 4, 0 }, { 0, 4 }, { 0, 0 } };
+        for (int k = 0; k < bandwidths.length; k++) {
+            for (int d = 0; d < 2; d++) {
+                boolean pivot = d == 1 && bandwidths[k][0] > 0 && bandwidths[k][1] > 0;
+                BandDoubleMatrix2D A = random(N, bandwidths[k][0], bandwidths[k][1], pivot);
+                BandDoubleLUDecomposition lu = new BandDoubleLUDecomposition(A);
+                assertTrue(lu.isNonsingular());
+                DoubleMatrix2D B = rhs(N, NRHS);
+                DoubleMatrix2D X = B.copy();
+                lu.solve(X);
+                assertSolution(A, X, B);
+                DoubleMatrix1D x = B.viewColumn(0).copy();
+                lu.solve(x);
+                for (int i = 0; i < N; i++) {
+                    assertEquals(X.getQuick(i, 0), x.getQuick(i), TOL);
+                }
+            }
+        }
+    }
+
+    public void testLUDet() {
+        BandDoubleMatrix2D A = random(7, 2, 1, true);
+        DenseDoubleLUDecompositionQuick dense = new DenseDoubleLUDecompositionQuick();
+        DoubleMatrix2D Adense = new DenseDoubleMatrix2D(7, 7).assign(A);
+        dense.decompose(Adense);
+        double det = dense.det();
+        assertEquals(det, new BandDoubleLUDecomposition(A).det(), Math.abs(det) * TOL);
+        assertEquals(det, new BandDoubleSpikeDecomposition(A, 1).det(), Math.abs(det) * TOL);
+        A = random(60, 2, 1, false);
+        Adense = new DenseDoubleMatrix2D(60, 60).assign(A);
+        dense.decompose(Adense);
+        det = dense.det();
+        BandDoubleSpikeDecomposition spike = new BandDoubleSpikeDecomposition(A, 4);
+        assertEquals(4, spike.getPartitions());
+        assertEquals(det, spike.det(), Math.abs(det) * TOL);
+    }
+
+    public void testLUSingular() {
+        BandDoubleMatrix2D A = new BandDoubleMatrix2D(5, 5, 1, 1);
+        A.setQuick(0, 0, 1);
+        BandDoubleLUDecomposition lu = new BandDoubleLUDecomposition(A);
+        assertFalse(lu.isNonsingular());
+        assertEquals(0, lu.det(), 0);
+        try {
+            lu.solve(new DenseDoubleMatrix1D(5));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertFalse(new BandDoubleSpikeDecomposition(A, 2).isNonsingular());
+    }
+
+    public void testSpike() {
+        int[][] bandwidths = { { 1, 1 }, { 2, 3 }, { 3, 0 }, { 0, 2 }, { 0, 0 } };
+        for (int k = 0; k < bandwidths.length; k++) {
+            BandDoubleMatrix2D A = random(N, bandwidths[k][0], bandwidths[k][1], false);
+            for (int p = 1; p <= 8; p *= 2) {
+                BandDoubleSpikeDecomposition spike = new BandDoubleSpikeDecomposition(A, p);
+                assertEquals(p, spike.getPartitions());
+                DoubleMatrix2D B = rhs(N, NRHS);
+                DoubleMatrix2D X = B.copy();
+                spike.solve(X);
+                assertSolution(A, X, B);
+                DoubleMatrix1D x = B.viewColumn(1).copy();
+                spike.solve(x);
+                for (int i = 0; i < N; i++) {
+                    assertEquals(X.getQuick(i, 1), x.getQuick(i), TOL);
+                }
+            }
+        }
+        // symmetric positive definite, and more partitions than fit
+        BandDoubleMatrix2D A = randomSPD(N, 5);
+        BandDoubleSpikeDecomposition spike = new BandDoubleSpikeDecomposition(A, 100);
+        assertEquals(N / 20, spike.getPartitions());
+        DoubleMatrix2D B = rhs(N, NRHS);
+        DoubleMatrix2D X = B.copy();
+        spike.solve(X);
+        assertSolution(A, X, B);
+        // singular diagonal block, falls back to a single partition
+        A = random(N, 1, 1, false);
+        A.setQuick(N / 2 - 1, N / 2 - 1, 0);
+        A.setQuick(N / 2 - 1, N / 2 - 2, 0);
+        spike = new BandDoubleSpikeDecomposition(A, 2);
+        assertEquals(1, spike.getPartitions());
+        X = B.copy();
+        spike.solve(X);
+        assertSolution(A, X, B);
+    }
+
+    public void testCholesky() {
+        for (int kd = 0; kd <= 4; kd += 2) {
+            BandDoubleMatrix2D A = randomSPD(N, kd);
+            BandDoubleCholeskyDecomposition chol = new BandDoubleCholeskyDecomposition(A);
+            BandDoubleMatrix2D L = chol.getL();
+            assertEquals(kd, L.lowerBandwidth());
+            assertEquals(0, L.upperBandwidth());
+            DoubleMatrix2D LLt = L.zMult(new DenseDoubleMatrix2D(N, N).assign(L), null, 1, 0, false, true);
+            for (int i = 0; i < N; i++) {
+                for (int j = 0; j < N; j++) {
+                    assertEquals(A.getQuick(i, j), LLt.getQuick(i, j), TOL);
+                }
+            }
+            DoubleMatrix2D B = rhs(N, NRHS);
+            DoubleMatrix2D X = B.copy();
+            chol.solve(X);
+            assertSolution(A, X, B);
+            DoubleMatrix1D x = B.viewColumn(2).copy();
+            chol.solve(x);
+            for (int i = 0; i < N; i++) {
+                assertEquals(X.getQuick(i, 2), x.getQuick(i), TOL);
+            }
+        }
+        BandDoubleMatrix2D A = randomSPD(10, 1);
+        A.setQuick(5, 5, -1);
+        try {
+            new BandDoubleCholeskyDecomposition(A);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package cern.colt.matrix.tdouble.algo.decomposition;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SparseDoubleSupernodalCholeskyDecompositionTest extends TestCase {
+
+    protected int GRID = 8;
+
+    protected double TOL = 1e-10;
+
+    protected Random r = new Random(0);
+
+    public SparseDoubleSupernodalCholeskyDecompositionTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    /*
+     * 7-point Laplacian on a GRID^3 grid with a random positive shift on the
+     * diagonal.
+     */
+    private SparseRCDoubleMatrix2D laplacian() {
+        int n = GRID * GRID * GRID;
+        SparseDoubleMatrix2D A = new SparseDoubleMatrix2D(n, n);
+        for (int i = 0; i < GRID; i++) {
+            for (int j = 0; j < GRID; j++) {
+                for (int k = 0; k < GRID; k++) {
+                    int v = (i * GRID + j) * GRID + k;
+                    A.setQuick(v, v, 6 + r.nextDouble());
+                    if (i > 0) {
+                        A.setQuick(v, v - GRID * GRID, -1);
+                        A.setQuick(v - GRID * GRID, v, -1);
+                    }
+                    if (j > 0) {
+                        A.setQuick(v, v - GRID, -1);
+                        A.setQuick(v - GRID, v, -1);
+                    }
+                    if (k > 0) {
+                        A.setQuick(v, v - 1, -1);
+                        A.setQuick(v - 1, v, -1);
+                    }
+                }
+            }
+        }
+        return A.getRowCompressed(true);
+    }
+
+    public void testFactor() {
+        SparseRCDoubleMatrix2D A = laplacian();
+        int n = A.rows();
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(n);
+        for (int i = 0; i < n; i++) {
+            b.setQuick(i, 0.5 - r.nextDouble());
+        }
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int order = 0; order <= 1; order++) {
+                SparseDoubleSupernodalCholeskyDecomposition chol = new SparseDoubleSupernodalCholeskyDecomposition(
+                        A, order);
+                assertTrue(chol.getNumberOfSupernodes() < n);
+                // the factor is unique, so it must be the one of the scalar decomposition
+                assertEquals(new SparseDoubleCholeskyDecomposition(A, order).getL(), chol.getL());
+                assertEquals(chol.getL().viewDice(), chol.getLtranspose());
+                DoubleMatrix1D x = b.copy();
+                chol.solve(x);
+                assertEquals(b, A.zMult(x, null));
+                // strided view
+                x = new DenseDoubleMatrix1D(2 * n).viewStrides(2).assign(b);
+                chol.solve(x);
+                assertEquals(b, A.zMult(x, null));
+            }
+            // only the upper triangle is used
+            SparseDoubleSupernodalCholeskyDecomposition chol = new SparseDoubleSupernodalCholeskyDecomposition(
+                    new SymmetricSparseRCDoubleMatrix2D(A), 1);
+            DoubleMatrix1D x = b.copy();
+            chol.solve(x);
+            assertEquals(b, A.zMult(x, null));
+            chol = new SparseDoubleSupernodalCholeskyDecomposition(A.getColumnCompressed(), 1);
+            assertTrue(chol.getL() instanceof SparseCCDoubleMatrix2D);
+            x = b.copy();
+            chol.solve(x);
+            assertEquals(b, A.zMult(x, null));
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testDense() {
+        int n = 100;
+        DoubleMatrix2D A = new SparseCCDoubleMatrix2D(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                double v = 0.5 - r.nextDouble();
+                A.setQuick(i, j, v);
+                A.setQuick(j, i, v);
+            }
+            A.setQuick(i, i, n);
+        }
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            SparseDoubleSupernodalCholeskyDecomposition chol = new SparseDoubleSupernodalCholeskyDecomposition(A, 0);
+            assertEquals(1, chol.getNumberOfSupernodes());
+            DoubleMatrix2D L = chol.getL();
+            DoubleMatrix2D LLt = L.zMult(L, null, 1, 0, false, true);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    assertEquals(A.getQuick(i, j), LLt.getQuick(i, j), TOL);
+                }
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testNotPositiveDefinite() {
+        SparseRCDoubleMatrix2D A = laplacian();
+        A.setQuick(A.rows() - 1, A.rows() - 1, -1);
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            try {
+                new SparseDoubleSupernodalCholeskyDecomposition(A, 1);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    private void assertEquals(DoubleMatrix1D expected, DoubleMatrix1D actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getQuick(i), actual.getQuick(i), TOL);
+        }
+    }
+
+    private void assertEquals(DoubleMatrix2D expected, DoubleMatrix2D actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int i = 0; i < expected.rows(); i++) {
+            for (int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.getQuick(i, j), actual.getQuick(i, j), TOL);
+            }
+        }
+    }
+}
@@ -18,6 +18,11 @@ public class AllDoubleMatrixSolverTests {
         suite.addTestSuite(DoubleCGICCTest.class);
         //                suite.addTestSuite(CGAMGTest.class);
         suite.addTestSuite(DoubleCGILUTTest.class);
+        suite.addTestSuite(DoubleCGCirculantTest.class);
+        suite.addTestSuite(DoubleCGBlockJacobiTest.class);
+        suite.addTestSuite(DoubleCGSlicedEllpackTest.class);
+        suite.addTestSuite(DoubleCGBlockILUTest.class);
+        suite.addTestSuite(DoubleCGSymmetricICCTest.class);
 
         suite.addTestSuite(DoubleCGSTest.class);
         suite.addTestSuite(DoubleCGSDiagonalTest.class);
@@ -50,6 +55,10 @@ public class AllDoubleMatrixSolverTests {
         suite.addTestSuite(DoubleBiCGstabICCTest.class);
         suite.addTestSuite(DoubleBiCGstabAMGTest.class);
         suite.addTestSuite(DoubleBiCGstabILUTTest.class);
+        suite.addTestSuite(DoubleBiCGstabCirculantTest.class);
+        suite.addTestSuite(DoubleBiCGstabBlockJacobiTest.class);
+        suite.addTestSuite(DoubleBiCGstabSlicedEllpackTest.class);
+        suite.addTestSuite(DoubleBiCGstabBlockILUTest.class);
 
         suite.addTestSuite(DoubleGMRESTest.class);
         suite.addTestSuite(DoubleGMRESDiagonalTest.class);
@@ -58,6 +67,8 @@ public class AllDoubleMatrixSolverTests {
         suite.addTestSuite(DoubleGMRESICCTest.class);
         suite.addTestSuite(DoubleGMRESAMGTest.class);
         suite.addTestSuite(DoubleGMRESILUTTest.class);
+        suite.addTestSuite(DoubleGMRESCirculantTest.class);
+        suite.addTestSuite(DoubleGMRESBlockJacobiTest.class);
 
         suite.addTestSuite(DoubleChebyshevTest.class);
         suite.addTestSuite(DoubleChebyshevDiagonalTest.class);
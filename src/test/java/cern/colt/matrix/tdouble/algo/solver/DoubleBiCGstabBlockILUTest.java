@@ -0,0 +1,19 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockILU;
+
+/**
+ * Test of DoubleBiCGstab with block ILU
+ */
+public class DoubleBiCGstabBlockILUTest extends DoubleBiCGstabTest {
+
+    public DoubleBiCGstabBlockILUTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createSolver() throws Exception {
+        super.createSolver();
+        M = new DoubleBlockILU(A.rows(), 3);
+    }
+
+}
@@ -0,0 +1,19 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockJacobi;
+
+/**
+ * Test of DoubleBiCGstab with block Jacobi preconditioner
+ */
+public class DoubleBiCGstabBlockJacobiTest extends DoubleBiCGstabTest {
+
+    public DoubleBiCGstabBlockJacobiTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createSolver() throws Exception {
+        super.createSolver();
+        M = new DoubleBlockJacobi(A.rows(), 4);
+    }
+
+}
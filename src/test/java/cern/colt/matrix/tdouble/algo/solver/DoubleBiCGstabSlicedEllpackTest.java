@@ -0,0 +1,20 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.impl.SlicedEllpackDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Test of DoubleBiCGstab on a sliced ELLPACK matrix
+ */
+public class DoubleBiCGstabSlicedEllpackTest extends DoubleBiCGstabTest {
+
+    public DoubleBiCGstabSlicedEllpackTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrix() throws Exception {
+        super.createMatrix();
+        A = new SlicedEllpackDoubleMatrix2D((SparseRCDoubleMatrix2D) A, 8, 1);
+    }
+
+}
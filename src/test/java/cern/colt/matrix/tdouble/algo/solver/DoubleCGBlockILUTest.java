@@ -0,0 +1,26 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockILU;
+import cern.colt.matrix.tdouble.impl.BlockSparseRowDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Test of DoubleCG with block ILU on a block compressed row matrix
+ */
+public class DoubleCGBlockILUTest extends DoubleCGTest {
+
+    public DoubleCGBlockILUTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrix() throws Exception {
+        super.createMatrix();
+        A = new BlockSparseRowDoubleMatrix2D((SparseRCDoubleMatrix2D) A, 3);
+    }
+
+    protected void createSolver() throws Exception {
+        super.createSolver();
+        M = new DoubleBlockILU(A.rows(), 3);
+    }
+
+}
@@ -0,0 +1,26 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleILU;
+import cern.colt.matrix.tdouble.impl.SlicedEllpackDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Test of DoubleCG with ILU on a sliced ELLPACK matrix
+ */
+public class DoubleCGSlicedEllpackTest extends DoubleCGTest {
+
+    public DoubleCGSlicedEllpackTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrix() throws Exception {
+        super.createMatrix();
+        A = new SlicedEllpackDoubleMatrix2D((SparseRCDoubleMatrix2D) A, 4, 16);
+    }
+
+    protected void createSolver() throws Exception {
+        super.createSolver();
+        M = new DoubleILU(A.rows());
+    }
+
+}
@@ -0,0 +1,20 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SymmetricSparseRCDoubleMatrix2D;
+
+/**
+ * Test of DoubleCG with ICC on a matrix storing its upper triangle
+ */
+public class DoubleCGSymmetricICCTest extends DoubleCGICCTest {
+
+    public DoubleCGSymmetricICCTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrix() throws Exception {
+        super.createMatrix();
+        A = new SymmetricSparseRCDoubleMatrix2D((SparseRCDoubleMatrix2D) A);
+    }
+
+}
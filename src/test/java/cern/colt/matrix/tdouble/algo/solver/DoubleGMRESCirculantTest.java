@@ -0,0 +1,19 @@
+package cern.colt.matrix.tdouble.algo.solver;
+
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleCirculant;
+
+/**
+ * Test of DoubleGMRES with circulant preconditioner
+ */
+public class DoubleGMRESCirculantTest extends DoubleGMRESTest {
+
+    public DoubleGMRESCirculantTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createSolver() throws Exception {
+        super.createSolver();
+        M = new DoubleCirculant(A.rows());
+    }
+
+}
@@ -0,0 +1,94 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class BandDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 23;
+
+    protected int NCOLUMNS = 19;
+
+    protected int KL = 3;
+
+    protected int KU = 2;
+
+    protected double TOL = 1e-10;
+
+    protected BandDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    public BandDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        A = new BandDoubleMatrix2D(NROWS, NCOLUMNS, KL, KU);
+        Adense = new DenseDoubleMatrix2D(NROWS, NCOLUMNS);
+        for (int r = 0; r < NROWS; r++) {
+            for (int c = 0; c < NCOLUMNS; c++) {
+                if (r - c <= KL && c - r <= KU) {
+                    double value = Math.random();
+                    A.setQuick(r, c, value);
+                    Adense.setQuick(r, c, value);
+                }
+            }
+        }
+    }
+
+    public void testGetSet() {
+        for (int r = 0; r < NROWS; r++) {
+            for (int c = 0; c < NCOLUMNS; c++) {
+                assertEquals(Adense.getQuick(r, c), A.getQuick(r, c), 0);
+            }
+        }
+        A.setQuick(KL + 1, 0, 1);
+        assertEquals(0, A.getQuick(KL + 1, 0), 0);
+        assertEquals(KL, A.lowerBandwidth());
+        assertEquals(KU, A.upperBandwidth());
+        assertEquals((KL + KU + 1) * NCOLUMNS, A.elements().length);
+        BandDoubleMatrix2D B = new BandDoubleMatrix2D(Adense, KL, KU);
+        for (int r = 0; r < NROWS; r++) {
+            for (int c = 0; c < NCOLUMNS; c++) {
+                assertEquals(Adense.getQuick(r, c), B.getQuick(r, c), 0);
+            }
+        }
+        assertEquals(Adense.cardinality(), A.cardinality());
+        assertEquals(Adense.zSum(), A.zSum(), TOL);
+    }
+
+    public void testZMult1D() {
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+        assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+        assertClose(Adense.zMult(z, y.copy(), 2, 3, true), A.zMult(z, y.copy(), 2, 3, true), TOL);
+        // views and non-dense vectors
+        DoubleMatrix1D yv = new DenseDoubleMatrix1D(2 * NCOLUMNS).assign(DoubleFunctions.random()).viewStrides(2);
+        assertClose(Adense.zMult(yv, null), A.zMult(yv, null), TOL);
+        DoubleMatrix1D ys = new SparseDoubleMatrix1D(NCOLUMNS).assign(y);
+        assertClose(Adense.zMult(ys, null), A.zMult(ys, null), TOL);
+    }
+
+    public void testZMult2D() {
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D expected = Adense.zMult(B, C.copy(), 2, 3, false, false);
+        DoubleMatrix2D result = A.zMult(B, C.copy(), 2, 3, false, false);
+        for (int j = 0; j < 5; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+        B = new DenseDoubleMatrix2D(5, NROWS).assign(DoubleFunctions.random());
+        expected = Adense.zMult(B, null, 1, 0, true, true);
+        result = A.zMult(B, null, 1, 0, true, true);
+        for (int j = 0; j < 5; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+    }
+}
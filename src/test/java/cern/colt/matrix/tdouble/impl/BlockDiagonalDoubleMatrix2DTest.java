@@ -0,0 +1,191 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockJacobi;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class BlockDiagonalDoubleMatrix2DTest extends TestCase {
+
+    protected int[] SIZES = { 5, 7, 1, 4, 6, 9 };
+
+    protected double TOL = 1e-10;
+
+    protected BlockDiagonalDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    protected int N;
+
+    public BlockDiagonalDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        DoubleMatrix2D[] blocks = new DoubleMatrix2D[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            int m = SIZES[i];
+            DoubleMatrix2D block = new DenseDoubleMatrix2D(m, m).assign(DoubleFunctions.random());
+            for (int j = 0; j < m; j++) {
+                block.setQuick(j, j, block.getQuick(j, j) + m);
+            }
+            switch (i % 4) {
+            case 1:
+                block = new SparseCCDoubleMatrix2D(block.toArray());
+                break;
+            case 2:
+                block = new SparseRCDoubleMatrix2D(block.toArray());
+                break;
+            case 3:
+                block = new SparseDoubleMatrix2D(block.toArray());
+                break;
+            }
+            blocks[i] = block;
+        }
+        A = new BlockDiagonalDoubleMatrix2D(blocks);
+        N = A.rows();
+        Adense = toDense(blocks);
+    }
+
+    public void testGetSet() {
+        assertEquals(SIZES.length, A.numberOfBlocks());
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                assertEquals(Adense.getQuick(r, c), A.getQuick(r, c), 0);
+            }
+        }
+        A.setQuick(6, 7, 3);
+        assertEquals(3, A.getBlock(1).getQuick(1, 2), 0);
+        A.setQuick(0, N - 1, 3);
+        assertEquals(0, A.getQuick(0, N - 1), 0);
+        assertEquals(5 + 7 + 1, A.rowOffset(3));
+        BlockDiagonalDoubleMatrix2D B = new BlockDiagonalDoubleMatrix2D(new DoubleMatrix2D[] {
+                new DenseDoubleMatrix2D(2, 3), new DenseDoubleMatrix2D(0, 2), new DenseDoubleMatrix2D(3, 1) });
+        assertEquals(5, B.rows());
+        assertEquals(6, B.columns());
+        B.assign(1);
+        assertEquals(1, B.getQuick(1, 2), 0);
+        assertEquals(0, B.getQuick(2, 2), 0);
+        assertEquals(0, B.getQuick(2, 4), 0);
+        assertEquals(1, B.getQuick(2, 5), 0);
+        assertEquals(9, B.cardinality());
+    }
+
+    public void testZMult() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+            DoubleMatrix1D z = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+            assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+            assertClose(Adense.zMult(y, z.copy(), 2, 3, true), A.zMult(y, z.copy(), 2, 3, true), TOL);
+            DoubleMatrix1D yv = new DenseDoubleMatrix1D(2 * N).assign(DoubleFunctions.random()).viewStrides(2);
+            assertClose(Adense.zMult(yv, null), A.zMult(yv, null), TOL);
+            DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+            DoubleMatrix2D C = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+            assertClose(Adense.zMult(B, C.copy(), 2, 3, false, false), A.zMult(B, C.copy(), 2, 3, false, false), TOL);
+            assertClose(Adense.zMult(B.viewDice(), null, 1, 0, true, true), A.zMult(B.viewDice(), null, 1, 0, true,
+                    true), TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultRectangular() {
+        DoubleMatrix2D[] blocks = new DoubleMatrix2D[] {
+                new DenseDoubleMatrix2D(3, 2).assign(DoubleFunctions.random()),
+                new DenseDoubleMatrix2D(0, 2).assign(DoubleFunctions.random()),
+                new SparseRCDoubleMatrix2D(new DenseDoubleMatrix2D(4, 6).assign(DoubleFunctions.random()).toArray()) };
+        BlockDiagonalDoubleMatrix2D R = new BlockDiagonalDoubleMatrix2D(blocks);
+        DoubleMatrix2D Rdense = new DenseDoubleMatrix2D(R.rows(), R.columns()).assign(R);
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(R.columns()).assign(DoubleFunctions.random());
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(R.rows()).assign(DoubleFunctions.random());
+        assertClose(Rdense.zMult(y, z.copy(), 2, 3, false), R.zMult(y, z.copy(), 2, 3, false), TOL);
+        assertClose(Rdense.zMult(z, y.copy(), 2, 3, true), R.zMult(z, y.copy(), 2, 3, true), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(R.rows(), 3).assign(DoubleFunctions.random());
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(R.columns(), 3).assign(DoubleFunctions.random());
+        assertClose(Rdense.zMult(B, C.copy(), 2, 3, true, false), R.zMult(B, C.copy(), 2, 3, true, false), TOL);
+    }
+
+    public void testSolve() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+            assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), A.solve(b), TOL);
+            DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 4).assign(DoubleFunctions.random());
+            assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, B), A.solve(B), TOL);
+            assertClose(DenseDoubleAlgebra.DEFAULT.inverse(Adense), A.inverse(), TOL);
+            double det = DenseDoubleAlgebra.DEFAULT.det(Adense);
+            assertEquals(det, A.det(), Math.abs(det) * TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+        A.getBlock(2).assign(0);
+        assertEquals(0, A.det(), 0);
+        try {
+            A.solve(new DenseDoubleMatrix1D(N));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testBlockJacobi() {
+        DoubleMatrix2D S = new DenseDoubleMatrix2D(N, N).assign(DoubleFunctions.random());
+        S.assign(Adense, DoubleFunctions.plus);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleBlockJacobi M = new DoubleBlockJacobi(SIZES);
+        M.setMatrix(new SparseRCDoubleMatrix2D(S.toArray()));
+        DoubleMatrix1D expected = new DenseDoubleMatrix1D(N);
+        for (int i = 0; i < SIZES.length; i++) {
+            expected.viewPart(A.rowOffset(i), SIZES[i]).assign(
+                    DenseDoubleAlgebra.DEFAULT.solve(S.viewPart(A.rowOffset(i), A.rowOffset(i), SIZES[i], SIZES[i]),
+                            b.viewPart(A.rowOffset(i), SIZES[i])));
+        }
+        assertClose(expected, M.apply(b, null), TOL);
+        M.setMatrix(S);
+        assertClose(expected, M.apply(b, null), TOL);
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(N);
+        M.transApply(b, x);
+        for (int i = 0; i < SIZES.length; i++) {
+            int o = A.rowOffset(i);
+            assertClose(b.viewPart(o, SIZES[i]), S.viewPart(o, o, SIZES[i], SIZES[i]).zMult(x.viewPart(o, SIZES[i]),
+                    null, 1, 0, true), TOL);
+        }
+        M = new DoubleBlockJacobi(A);
+        assertClose(A.solve(b), M.apply(b, null), TOL);
+        // the transposed solve factors diced views of the blocks
+        x.assign(0);
+        M.transApply(b, x);
+        assertClose(b, Adense.zMult(x, null, 1, 0, true), TOL);
+    }
+
+    public void testSolveViews() {
+        DoubleMatrix2D[] blocks = new DoubleMatrix2D[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            blocks[i] = A.getBlock(i).viewDice();
+        }
+        BlockDiagonalDoubleMatrix2D At = new BlockDiagonalDoubleMatrix2D(blocks);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense.viewDice(), b), At.solve(b), TOL);
+    }
+
+    private static DoubleMatrix2D toDense(DoubleMatrix2D[] blocks) {
+        int n = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            n += blocks[i].rows();
+        }
+        DoubleMatrix2D D = new DenseDoubleMatrix2D(n, n);
+        int offset = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            int m = blocks[i].rows();
+            D.viewPart(offset, offset, m, m).assign(blocks[i]);
+            offset += m;
+        }
+        return D;
+    }
+}
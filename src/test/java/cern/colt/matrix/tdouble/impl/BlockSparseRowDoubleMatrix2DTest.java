@@ -0,0 +1,174 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockILU;
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleBlockJacobi;
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleILU;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class BlockSparseRowDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 36;
+
+    protected int NCOLUMNS = 24;
+
+    protected int[] BLOCK_SIZES = { 1, 2, 3, 6 };
+
+    protected double TOL = 1e-10;
+
+    protected DoubleMatrix2D Adense;
+
+    protected SparseRCDoubleMatrix2D Arc;
+
+    public BlockSparseRowDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        Adense = randomBlocks(NROWS, NCOLUMNS, 3, new Random(0));
+        Arc = new SparseRCDoubleMatrix2D(Adense.toArray());
+    }
+
+    public void testGetSet() {
+        BlockSparseRowDoubleMatrix2D A = new BlockSparseRowDoubleMatrix2D(Arc, 3);
+        assertEquals(3, A.getBlockSize());
+        assertEquals(Arc.cardinality(), A.cardinality());
+        assertClose(Adense, A, TOL);
+        SparseRCDoubleMatrix2D B = A.getRowCompressed();
+        assertClose(Adense, B, TOL);
+        assertTrue(B.hasColumnIndexesSorted());
+        assertClose(Adense, new SparseRCDoubleMatrix2D(NROWS, NCOLUMNS).assign(A), TOL);
+        int nnzb = A.numberOfBlocks();
+        int[] rowPointers = A.getBlockRowPointers();
+        for (int I = 0; I < NROWS / 3; I++) {
+            for (int k = rowPointers[I] + 1; k < rowPointers[I + 1]; k++) {
+                assertTrue(A.getBlockColumnIndexes()[k - 1] < A.getBlockColumnIndexes()[k]);
+            }
+        }
+        DoubleMatrix2D expected = Adense.copy();
+        A.setQuick(4, 5, 7);
+        expected.setQuick(4, 5, 7);
+        assertEquals(nnzb, A.numberOfBlocks());
+        // a new block in the middle of the structure
+        int r = -1;
+        int c = -1;
+        for (int I = 1; I < NROWS / 3 && r < 0; I++) {
+            for (int J = 1; J < NCOLUMNS / 3 && r < 0; J++) {
+                if (Adense.viewPart(I * 3, J * 3, 3, 3).cardinality() == 0) {
+                    r = I * 3 + 1;
+                    c = J * 3 + 2;
+                }
+            }
+        }
+        A.setQuick(r, c, 0);
+        assertEquals(nnzb, A.numberOfBlocks());
+        A.setQuick(r, c, 5);
+        expected.setQuick(r, c, 5);
+        assertEquals(nnzb + 1, A.numberOfBlocks());
+        assertClose(expected, A, TOL);
+        A.trimToSize();
+        assertClose(expected, A.getRowCompressed(), TOL);
+        try {
+            new BlockSparseRowDoubleMatrix2D(Arc, 5);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testZMult() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int s = 0; s < BLOCK_SIZES.length; s++) {
+                BlockSparseRowDoubleMatrix2D A = new BlockSparseRowDoubleMatrix2D(Arc, BLOCK_SIZES[s]);
+                assertClose(Adense, A, TOL);
+                DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+                DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+                assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+                assertClose(Adense.zMult(y, null), A.zMult(y, null), TOL);
+                assertClose(Adense.zMult(z, y.copy(), 2, 3, true), A.zMult(z, y.copy(), 2, 3, true), TOL);
+                DoubleMatrix1D yv = new DenseDoubleMatrix1D(2 * NCOLUMNS).assign(DoubleFunctions.random())
+                        .viewStrides(2);
+                assertClose(Adense.zMult(yv, null), A.zMult(yv, null), TOL);
+                DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 5).assign(DoubleFunctions.random());
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 5).assign(DoubleFunctions.random());
+                assertClose(Adense.zMult(B, C.copy(), 2, 3, false, false), A.zMult(B, C.copy(), 2, 3, false, false),
+                        TOL);
+                assertClose(Adense.zMult(B.viewDice(), C.copy(), 2, 0, false, true), A.zMult(B.viewDice(),
+                        C.copy(), 2, 0, false, true), TOL);
+                assertClose(Adense.zMult(C, null, 1, 0, true, false), A.zMult(C, null, 1, 0, true, false), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testPreconditioners() {
+        int n = 30;
+        DoubleMatrix2D S = randomBlocks(n, n, 3, new Random(1));
+        for (int i = 0; i < n; i++) {
+            S.setQuick(i, i, S.getQuick(i, i) + n);
+        }
+        SparseRCDoubleMatrix2D Src = new SparseRCDoubleMatrix2D(S.toArray());
+        BlockSparseRowDoubleMatrix2D Sbsr = new BlockSparseRowDoubleMatrix2D(Src, 3);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(n).assign(DoubleFunctions.random());
+
+        // with blocks of size 1, block ILU is ILU
+        DoubleILU ilu = new DoubleILU(n);
+        ilu.setMatrix(Src);
+        DoubleBlockILU bilu = new DoubleBlockILU(n, 1);
+        bilu.setMatrix(Src);
+        assertClose(ilu.apply(b, null), bilu.apply(b, null), TOL);
+        assertClose(ilu.transApply(b, null), bilu.transApply(b, null), TOL);
+
+        // block ILU is exact on a block triangular matrix
+        DoubleMatrix2D T = S.copy();
+        for (int r = 0; r < n; r++) {
+            for (int c = (r / 3 + 1) * 3; c < n; c++) {
+                T.setQuick(r, c, 0);
+            }
+        }
+        bilu = new DoubleBlockILU(n, 3);
+        bilu.setMatrix(new BlockSparseRowDoubleMatrix2D(new SparseRCDoubleMatrix2D(T.toArray()), 3));
+        assertClose(b, T.zMult(bilu.apply(b, null), null), TOL);
+        assertClose(b, T.zMult(bilu.transApply(b, null), null, 1, 0, true), TOL);
+        bilu.setMatrix(T);
+        assertClose(b, T.zMult(bilu.apply(b, null), null), TOL);
+
+        // block Jacobi reads the diagonal blocks directly
+        DoubleBlockJacobi jacobi = new DoubleBlockJacobi(n, 3);
+        jacobi.setMatrix(Src);
+        DoubleMatrix1D expected = jacobi.apply(b, null);
+        jacobi.setMatrix(Sbsr);
+        assertClose(expected, jacobi.apply(b, null), TOL);
+    }
+
+    /*
+     * Returns a random matrix with about a third of the b x b blocks nonzero,
+     * some of them only partly filled.
+     */
+    private static DoubleMatrix2D randomBlocks(int rows, int columns, int b, Random random) {
+        DoubleMatrix2D A = new DenseDoubleMatrix2D(rows, columns);
+        for (int I = 0; I < rows / b; I++) {
+            for (int J = 0; J < columns / b; J++) {
+                if (I != J && random.nextInt(3) != 0)
+                    continue;
+                boolean partial = random.nextBoolean();
+                for (int i = 0; i < b; i++) {
+                    for (int j = 0; j < b; j++) {
+                        if (!partial || random.nextBoolean())
+                            A.setQuick(I * b + i, J * b + j, random.nextDouble() - 0.5);
+                    }
+                }
+            }
+        }
+        return A;
+    }
+}
@@ -0,0 +1,107 @@
+package cern.colt.matrix.tdouble.impl;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class CirculantDoubleMatrix2DTest extends TestCase {
+
+    protected int N = 17;
+
+    protected double TOL = 1e-10;
+
+    protected CirculantDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    public CirculantDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        double[] c = new double[N];
+        for (int i = 0; i < N; i++) {
+            c[i] = Math.random();
+        }
+        c[0] += N; // diagonally dominant
+        A = new CirculantDoubleMatrix2D(c);
+        Adense = new DenseDoubleMatrix2D(N, N);
+        for (int r = 0; r < N; r++) {
+            for (int j = 0; j < N; j++) {
+                Adense.setQuick(r, j, c[(r - j + N) % N]);
+            }
+        }
+    }
+
+    public void testGetSet() {
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                assertEquals(Adense.getQuick(r, c), A.getQuick(r, c), 0);
+            }
+        }
+        A.setQuick(0, 1, 5);
+        assertEquals(5, A.getQuick(N - 1, 0), 0);
+        assertEquals(5, A.elements()[N - 1], 0);
+    }
+
+    public void testEigenvalues() {
+        double[] lambda = A.getEigenvalues();
+        double sum = 0;
+        for (int i = 0; i < N; i++) {
+            sum += A.getQuick(i, 0);
+        }
+        assertEquals(2 * N, lambda.length);
+        assertEquals(sum, lambda[0], TOL);
+        assertEquals(0, lambda[1], TOL);
+    }
+
+    public void testZMult() {
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        for (int t = 0; t < 2; t++) {
+            boolean transpose = t == 1;
+            DoubleMatrix1D expected = Adense.zMult(y, z.copy(), 2, 3, transpose);
+            DoubleMatrix1D result = A.zMult(y, z.copy(), 2, 3, transpose);
+            for (int i = 0; i < N; i++) {
+                assertEquals(expected.getQuick(i), result.getQuick(i), TOL);
+            }
+        }
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D expected = Adense.zMult(B, null, 1, 0, true, false);
+        DoubleMatrix2D result = A.zMult(B, null, 1, 0, true, false);
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < 5; c++) {
+                assertEquals(expected.getQuick(r, c), result.getQuick(r, c), TOL);
+            }
+        }
+    }
+
+    public void testSolve() {
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleMatrix1D x = A.solve(b);
+        DoubleMatrix1D r = Adense.zMult(x, null);
+        for (int i = 0; i < N; i++) {
+            assertEquals(b.getQuick(i), r.getQuick(i), TOL);
+        }
+        x = A.solve(b, true);
+        r = Adense.zMult(x, null, 1, 0, true);
+        for (int i = 0; i < N; i++) {
+            assertEquals(b.getQuick(i), r.getQuick(i), TOL);
+        }
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 4).assign(DoubleFunctions.random());
+        DoubleMatrix2D R = Adense.zMult(A.solve(B), null);
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(B.getQuick(i, j), R.getQuick(i, j), TOL);
+            }
+        }
+        try {
+            new CirculantDoubleMatrix2D(new double[] { 1, 1 }).solve(b.viewPart(0, 2));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
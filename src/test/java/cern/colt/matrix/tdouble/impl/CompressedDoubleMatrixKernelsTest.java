@@ -0,0 +1,227 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class CompressedDoubleMatrixKernelsTest extends TestCase {
+
+    protected int NROWS = 57;
+
+    protected int NCOLUMNS = 43;
+
+    protected double TOL = 1e-10;
+
+    protected DoubleMatrix2D A;
+
+    public CompressedDoubleMatrixKernelsTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        // power-law like: a dense row, a dense column, empty rows and a few
+        // scattered nonzeros
+        Random random = new Random(0);
+        A = new DenseDoubleMatrix2D(NROWS, NCOLUMNS);
+        for (int c = 0; c < NCOLUMNS; c++) {
+            A.setQuick(3, c, random.nextDouble());
+        }
+        for (int r = 0; r < NROWS; r++) {
+            A.setQuick(r, NCOLUMNS - 2, random.nextDouble());
+        }
+        for (int r = 10; r < NROWS; r += 3) {
+            for (int c = (r * 7) % 5; c < NCOLUMNS; c += 9) {
+                A.setQuick(r, c, random.nextDouble());
+            }
+        }
+        for (int c = 0; c < NCOLUMNS; c++) {
+            A.setQuick(20, c, 0);
+            A.setQuick(21, c, 0);
+        }
+    }
+
+    public void testZMult() {
+        DoubleMatrix2D[] S = { new SparseRCDoubleMatrix2D(A.toArray()), new SparseCCDoubleMatrix2D(A.toArray()) };
+        double[] betas = { 0, 1, 3 };
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 8; t++) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int s = 0; s < S.length; s++) {
+                for (int b = 0; b < betas.length; b++) {
+                    // repeated calls reuse the scatter buffers
+                    for (int repeat = 0; repeat < 2; repeat++) {
+                        DoubleMatrix1D y = new DenseDoubleMatrix1D(3 * NCOLUMNS).assign(DoubleFunctions.random())
+                                .viewStrides(3);
+                        DoubleMatrix1D z = new DenseDoubleMatrix1D(2 * NROWS).assign(DoubleFunctions.random())
+                                .viewStrides(2);
+                        assertClose(A.zMult(y, z.copy(), 2, betas[b], false), S[s].zMult(y, z.copy(), 2, betas[b],
+                                false), TOL);
+                        assertClose(A.zMult(z, y.copy(), 2, betas[b], true), S[s].zMult(z, y.copy(), 2, betas[b],
+                                true), TOL);
+                    }
+                }
+                DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+                assertClose(A.zMult(y, null), S[s].zMult(y, null), TOL);
+                assertClose(A.zMult(y.copy(), null, 0, 0, false), S[s].zMult(y, null, 0, 0, false), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultDense() {
+        DoubleMatrix2D[] S = { new SparseRCDoubleMatrix2D(A.toArray()), new SparseCCDoubleMatrix2D(A.toArray()) };
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 5; t += 2) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int s = 0; s < S.length; s++) {
+                // sparse x dense, with 7 columns to exercise the blocked and the remaining columns
+                DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 7).assign(DoubleFunctions.random());
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 7).assign(DoubleFunctions.random());
+                assertClose(A.zMult(B, C.copy(), 2, 3, false, false), S[s].zMult(B, C.copy(), 2, 3, false, false), TOL);
+                assertClose(A.zMult(B, null), S[s].zMult(B, null), TOL);
+                DoubleMatrix2D Bt = B.viewDice().copy();
+                assertClose(A.zMult(Bt, C.copy(), 2, 0, false, true), S[s].zMult(Bt, C.copy(), 2, 0, false, true), TOL);
+                DoubleMatrix2D B2 = new DenseDoubleMatrix2D(NROWS, 6).assign(DoubleFunctions.random());
+                DoubleMatrix2D C2 = new DenseDoubleMatrix2D(NCOLUMNS, 6).assign(DoubleFunctions.random());
+                assertClose(A.zMult(B2, C2.copy(), 2, 3, true, false), S[s].zMult(B2, C2.copy(), 2, 3, true, false),
+                        TOL);
+
+                // dense x sparse
+                DoubleMatrix2D D = new DenseDoubleMatrix2D(9, NROWS).assign(DoubleFunctions.random());
+                DoubleMatrix2D E = new DenseDoubleMatrix2D(9, NCOLUMNS).assign(DoubleFunctions.random());
+                assertClose(D.zMult(A, E.copy(), 2, 3, false, false), D.zMult(S[s], E.copy(), 2, 3, false, false), TOL);
+                assertClose(D.zMult(A, null), D.zMult(S[s], null), TOL);
+                DoubleMatrix2D D2 = new DenseDoubleMatrix2D(9, NCOLUMNS).assign(DoubleFunctions.random());
+                DoubleMatrix2D E2 = new DenseDoubleMatrix2D(9, NROWS).assign(DoubleFunctions.random());
+                assertClose(D2.zMult(A, E2.copy(), 2, 3, false, true), D2.zMult(S[s], E2.copy(), 2, 3, false, true),
+                        TOL);
+                DoubleMatrix2D D3 = D.viewDice().copy();
+                assertClose(D3.zMult(A, E.copy(), 2, 0, true, false), D3.zMult(S[s], E.copy(), 2, 0, true, false), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultSparse() {
+        // a wide second operand so that both the hash and the dense accumulator are used
+        Random random = new Random(1);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 400);
+        for (int r = 0; r < NCOLUMNS; r++) {
+            B.setQuick(r, random.nextInt(400), random.nextDouble());
+        }
+        for (int c = 0; c < 400; c += 2) {
+            B.setQuick(NCOLUMNS - 2, c, random.nextDouble());
+        }
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 400);
+        for (int r = 0; r < NROWS; r += 2) {
+            C.setQuick(r, (r * 13) % 400, random.nextDouble());
+        }
+        DoubleMatrix2D M = new DenseDoubleMatrix2D(NROWS, 400);
+        for (int r = 0; r < NROWS; r++) {
+            for (int c = r % 3; c < 400; c += 3) {
+                M.setQuick(r, c, 1);
+            }
+        }
+        DoubleMatrix2D expected = A.zMult(B, null, 2, 0, false, false);
+        DoubleMatrix2D expectedC = A.zMult(B, C.copy(), 2, 3, false, false);
+        DoubleMatrix2D masked = expected.copy().assign(M, DoubleFunctions.mult);
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 5; t += 2) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            SparseRCDoubleMatrix2D Arc = new SparseRCDoubleMatrix2D(A.toArray());
+            SparseRCDoubleMatrix2D Brc = new SparseRCDoubleMatrix2D(B.toArray());
+            assertClose(expected, Arc.zMult(Brc, null, 2, 0, false, false), TOL);
+            assertClose(expectedC, Arc.zMult(Brc, new SparseRCDoubleMatrix2D(C.toArray()), 2, 3, false, false), TOL);
+            assertClose(expected, new SparseRCDoubleMatrix2D(A.viewDice().toArray()).zMult(
+                    new SparseRCDoubleMatrix2D(B.viewDice().toArray()), null, 2, 0, true, true), TOL);
+            assertClose(masked, Arc.zMultMasked(Brc, new SparseRCDoubleMatrix2D(M.toArray()), 2, false, false), TOL);
+            assertClose(expected, Arc.zMultMasked(Brc, null, 2, false, false), TOL);
+            assertEquals(expected.cardinality(), Arc.zMult(Brc, null, 2, 0, false, false).cardinality());
+            DoubleMatrix2D A2 = A.copy();
+            A2.viewColumn(NCOLUMNS - 2).assign(0);
+            assertClose(A2.zMult(B, null), new SparseRCDoubleMatrix2D(A2.toArray()).zMult(Brc, null), TOL);
+
+            SparseCCDoubleMatrix2D Acc = new SparseCCDoubleMatrix2D(A.toArray());
+            SparseCCDoubleMatrix2D Bcc = new SparseCCDoubleMatrix2D(B.toArray());
+            assertClose(expected, Acc.zMult(Bcc, null, 2, 0, false, false), TOL);
+            assertClose(expectedC, Acc.zMult(Bcc, new SparseCCDoubleMatrix2D(C.toArray()), 2, 3, false, false), TOL);
+            assertClose(expected, new SparseCCDoubleMatrix2D(A.viewDice().toArray()).zMult(
+                    new SparseCCDoubleMatrix2D(B.viewDice().toArray()), null, 2, 0, true, true), TOL);
+            assertClose(masked, Acc.zMultMasked(Bcc, new SparseCCDoubleMatrix2D(M.toArray()), 2, false, false), TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultEmpty() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        ConcurrencyUtils.setNumberOfThreads(4);
+        DoubleMatrix2D[] S = { new SparseRCDoubleMatrix2D(5, 4), new SparseCCDoubleMatrix2D(5, 4) };
+        for (int s = 0; s < S.length; s++) {
+            DoubleMatrix1D z = new DenseDoubleMatrix1D(5).assign(1);
+            S[s].zMult(new DenseDoubleMatrix1D(4).assign(1), z, 1, 2, false);
+            assertClose(new DenseDoubleMatrix1D(5).assign(2), z, TOL);
+            z = new DenseDoubleMatrix1D(4).assign(1);
+            S[s].zMult(new DenseDoubleMatrix1D(5).assign(1), z, 1, 2, true);
+            assertClose(new DenseDoubleMatrix1D(4).assign(2), z, TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testTranspose() {
+        DoubleMatrix2D AT = A.viewDice().copy();
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 8; t++) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            SparseRCDoubleMatrix2D R = new SparseRCDoubleMatrix2D(A.toArray());
+            SparseRCDoubleMatrix2D RT = R.getTranspose();
+            assertTrue(RT.hasColumnIndexesSorted());
+            assertSorted(RT.getRowPointers(), RT.getColumnIndexes(), NCOLUMNS);
+            assertClose(AT, RT, TOL);
+            SparseCCDoubleMatrix2D C = R.getColumnCompressed();
+            assertSorted(C.getColumnPointers(), C.getRowIndexes(), NCOLUMNS);
+            assertClose(A, C, TOL);
+            SparseRCDoubleMatrix2D R2 = C.getRowCompressed();
+            assertSorted(R2.getRowPointers(), R2.getColumnIndexes(), NROWS);
+            assertClose(A, R2, TOL);
+            SparseCCDoubleMatrix2D CT = C.getTranspose();
+            assertSorted(CT.getColumnPointers(), CT.getRowIndexes(), NROWS);
+            assertClose(AT, CT, TOL);
+
+            // unsorted input
+            SparseCCDoubleMatrix2D U = C.getPermuted(null, null);
+            int[] rowIndexes = U.getRowIndexes();
+            int[] columnPointers = U.getColumnPointers();
+            double[] values = U.getValues();
+            for (int c = 0; c < NCOLUMNS; c++) {
+                for (int k = columnPointers[c], l = columnPointers[c + 1] - 1; k < l; k++, l--) {
+                    int i = rowIndexes[k];
+                    rowIndexes[k] = rowIndexes[l];
+                    rowIndexes[l] = i;
+                    double v = values[k];
+                    values[k] = values[l];
+                    values[l] = v;
+                }
+            }
+            U.sortRowIndexes();
+            assertSorted(U.getColumnPointers(), U.getRowIndexes(), NCOLUMNS);
+            assertClose(A, U, TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+        assertEquals(0, new SparseRCDoubleMatrix2D(5, 0).getTranspose().getRowPointers().length - 1);
+    }
+
+    private void assertSorted(int[] pointers, int[] indexes, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i] + 1; k < pointers[i + 1]; k++) {
+                assertTrue(indexes[k - 1] < indexes[k]);
+            }
+        }
+    }
+}
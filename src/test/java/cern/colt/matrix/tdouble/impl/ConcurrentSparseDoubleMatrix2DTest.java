@@ -0,0 +1,140 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class ConcurrentSparseDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 53;
+
+    protected int NCOLUMNS = 41;
+
+    public ConcurrentSparseDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    public void testGetSet() {
+        ConcurrentSparseDoubleMatrix2D A = new ConcurrentSparseDoubleMatrix2D(NROWS, NCOLUMNS, 3);
+        A.setQuick(3, 4, 2);
+        A.addQuick(3, 4, 1);
+        A.addQuick(5, 0, -1);
+        assertEquals(3, A.getQuick(3, 4), 0);
+        assertEquals(-1, A.get(5, 0), 0);
+        assertEquals(2, A.cardinality());
+        A.addQuick(5, 0, 1);
+        A.setQuick(3, 4, 0);
+        assertEquals(0, A.cardinality());
+        A.set(NROWS - 1, NCOLUMNS - 1, 7);
+        assertEquals(7, A.getRowCompressed(true).getQuick(NROWS - 1, NCOLUMNS - 1), 0);
+        A.assign(0);
+        assertEquals(0, A.cardinality());
+        try {
+            new ConcurrentSparseDoubleMatrix2D(NROWS, NCOLUMNS, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testConcurrentAssembly() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            final ConcurrentSparseDoubleMatrix2D A = new ConcurrentSparseDoubleMatrix2D(NROWS, NCOLUMNS);
+            final int nupdates = 2000;
+            // every worker adds the same integer contributions, so the sums are exact
+            Future<?>[] futures = new Future[4];
+            for (int j = 0; j < futures.length; j++) {
+                futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                    public void run() {
+                        Random random = new Random(0);
+                        for (int k = 0; k < nupdates; k++) {
+                            A.addQuick(random.nextInt(NROWS), random.nextInt(NCOLUMNS), random.nextInt(5) + 1);
+                        }
+                    }
+                });
+            }
+            ConcurrencyUtils.waitForCompletion(futures);
+            DoubleMatrix2D expected = new DenseDoubleMatrix2D(NROWS, NCOLUMNS);
+            Random random = new Random(0);
+            for (int k = 0; k < nupdates; k++) {
+                int r = random.nextInt(NROWS);
+                int c = random.nextInt(NCOLUMNS);
+                expected.setQuick(r, c, expected.getQuick(r, c) + futures.length * (random.nextInt(5) + 1));
+            }
+            assertEquals(expected.cardinality(), A.cardinality());
+            assertEquals(expected, A);
+            SparseRCDoubleMatrix2D R = A.getRowCompressed(true);
+            assertTrue(R.hasColumnIndexesSorted());
+            assertSorted(R.getRowPointers(), R.getColumnIndexes(), NROWS);
+            assertEquals(expected, R);
+            SparseCCDoubleMatrix2D C = A.getColumnCompressed(true);
+            assertSorted(C.getColumnPointers(), C.getRowIndexes(), NCOLUMNS);
+            assertEquals(expected, C);
+            assertEquals(expected, new SparseRCDoubleMatrix2D(NROWS, NCOLUMNS).assign(A));
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testConcurrentReads() throws Exception {
+        // one stripe, so the readers race every insertion and rehash
+        final ConcurrentSparseDoubleMatrix2D A = new ConcurrentSparseDoubleMatrix2D(NROWS, NCOLUMNS, 1);
+        Future<?>[] futures = new Future[4];
+        for (int j = 0; j < futures.length; j++) {
+            final boolean writer = j % 2 == 0;
+            futures[j] = ConcurrencyUtils.submit(new Runnable() {
+                public void run() {
+                    if (writer) {
+                        for (int k = 0; k < 4 * NROWS * NCOLUMNS; k++) {
+                            A.addQuick(k % NROWS, (k / NROWS) % NCOLUMNS, 1);
+                        }
+                    } else {
+                        // the cells only grow by whole numbers
+                        double[] last = new double[NROWS * NCOLUMNS];
+                        for (int scan = 0; scan < 50; scan++) {
+                            for (int r = 0; r < NROWS; r++) {
+                                for (int c = 0; c < NCOLUMNS; c++) {
+                                    double value = A.getQuick(r, c);
+                                    assertTrue(value >= last[r * NCOLUMNS + c] && value == Math.rint(value));
+                                    last[r * NCOLUMNS + c] = value;
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (int j = 0; j < futures.length; j++) {
+            try {
+                futures[j].get();
+            } catch (ExecutionException e) {
+                fail(e.getCause().toString());
+            }
+        }
+        assertEquals(new DenseDoubleMatrix2D(NROWS, NCOLUMNS).assign(8), A);
+    }
+
+    private void assertSorted(int[] pointers, int[] indexes, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i] + 1; k < pointers[i + 1]; k++) {
+                assertTrue(indexes[k - 1] < indexes[k]);
+            }
+        }
+    }
+
+    private void assertEquals(DoubleMatrix2D expected, DoubleMatrix2D actual) {
+        for (int r = 0; r < expected.rows(); r++) {
+            for (int c = 0; c < expected.columns(); c++) {
+                assertEquals(expected.getQuick(r, c), actual.getQuick(r, c), 0);
+            }
+        }
+    }
+}
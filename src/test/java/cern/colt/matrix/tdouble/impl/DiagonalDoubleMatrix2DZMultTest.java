@@ -0,0 +1,157 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class DiagonalDoubleMatrix2DZMultTest extends TestCase {
+
+    protected int NROWS = 13;
+
+    protected int NCOLUMNS = 9;
+
+    protected int[] DINDEXES = { 0, 2, -3, 8, -12 };
+
+    protected double TOL = 1e-10;
+
+    public DiagonalDoubleMatrix2DZMultTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    public void testZMult1D() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int d = 0; d < DINDEXES.length; d++) {
+                DiagonalDoubleMatrix2D D = diagonal(NROWS, NCOLUMNS, DINDEXES[d]);
+                DoubleMatrix2D Ddense = dense(D);
+                DoubleMatrix1D y = new DenseDoubleMatrix1D(2 * NCOLUMNS).assign(DoubleFunctions.random())
+                        .viewStrides(2);
+                DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+                assertClose(Ddense.zMult(y, z.copy(), 2, 3, false), D.zMult(y, z.copy(), 2, 3, false), TOL);
+                assertClose(Ddense.zMult(z, y.copy(), 2, 3, true), D.zMult(z, y.copy(), 2, 3, true), TOL);
+                assertClose(Ddense.zMult(y, null), D.zMult(y, null), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultLeft() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int d = 0; d < DINDEXES.length; d++) {
+                DiagonalDoubleMatrix2D D = diagonal(NROWS, NCOLUMNS, DINDEXES[d]);
+                DoubleMatrix2D Ddense = dense(D);
+                for (int f = 0; f < 3; f++) {
+                    DoubleMatrix2D B = random(NCOLUMNS, 7, f);
+                    DoubleMatrix2D Bt = random(7, NCOLUMNS, f);
+                    DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 7).assign(DoubleFunctions.random());
+                    assertClose(Ddense.zMult(dense(B), null), D.zMult(B, null), TOL);
+                    assertClose(Ddense.zMult(dense(B), C.copy(), 2, 3, false, false), D.zMult(B, C.copy(), 2, 3,
+                            false, false), TOL);
+                    assertClose(Ddense.zMult(dense(Bt), C.copy(), 2, 3, false, true), D.zMult(Bt, C.copy(), 2, 3,
+                            false, true), TOL);
+                    DoubleMatrix2D B2 = random(NROWS, 7, f);
+                    DoubleMatrix2D Ct = new DenseDoubleMatrix2D(NCOLUMNS, 7).assign(DoubleFunctions.random());
+                    assertClose(Ddense.zMult(dense(B2), Ct.copy(), 2, 3, true, false), D.zMult(B2, Ct.copy(), 2, 3,
+                            true, false), TOL);
+                    assertClose(Ddense.zMult(dense(B2).viewDice(), null, 2, 0, true, true), D.zMult(B2.viewDice()
+                            .copy(), null, 2, 0, true, true), TOL);
+                }
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 7).assign(DoubleFunctions.random());
+                DoubleMatrix2D Bv = new DenseDoubleMatrix2D(7, NCOLUMNS).assign(DoubleFunctions.random()).viewDice();
+                assertClose(Ddense.zMult(Bv, C.copy(), 2, 3, false, false), D.zMult(Bv, C.copy().viewDice()
+                        .viewDice(), 2, 3, false, false), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultRight() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int d = 0; d < DINDEXES.length; d++) {
+                DiagonalDoubleMatrix2D D = diagonal(NROWS, NCOLUMNS, DINDEXES[d]);
+                DoubleMatrix2D Ddense = dense(D);
+                for (int f = 0; f < 3; f++) {
+                    DoubleMatrix2D A = random(6, NROWS, f);
+                    DoubleMatrix2D At = random(NROWS, 6, f);
+                    DoubleMatrix2D C = new DenseDoubleMatrix2D(6, NCOLUMNS).assign(DoubleFunctions.random());
+                    assertClose(dense(A).zMult(Ddense, null), A.zMult(D, null), TOL);
+                    assertClose(dense(A).zMult(Ddense, C.copy(), 2, 3, false, false), A.zMult(D, C.copy(), 2, 3,
+                            false, false), TOL);
+                    assertClose(dense(At).zMult(Ddense, C.copy(), 2, 3, true, false), At.zMult(D, C.copy(), 2, 3,
+                            true, false), TOL);
+                    DoubleMatrix2D A2 = random(6, NCOLUMNS, f);
+                    DoubleMatrix2D Ct = new DenseDoubleMatrix2D(6, NROWS).assign(DoubleFunctions.random());
+                    assertClose(dense(A2).zMult(Ddense, Ct.copy(), 2, 3, false, true), A2.zMult(D, Ct.copy(), 2, 3,
+                            false, true), TOL);
+                }
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultDiagonal() {
+        for (int d1 = 0; d1 < DINDEXES.length; d1++) {
+            DiagonalDoubleMatrix2D D1 = diagonal(NROWS, NCOLUMNS, DINDEXES[d1]);
+            for (int d2 = 0; d2 < 3; d2++) {
+                DiagonalDoubleMatrix2D D2 = diagonal(NCOLUMNS, 11, DINDEXES[d2]);
+                DoubleMatrix2D P = D1.zMult(D2, null, 2, 0, false, false);
+                assertTrue(P instanceof DiagonalDoubleMatrix2D);
+                assertClose(dense(D1).zMult(dense(D2), null, 2, 0, false, false), P, TOL);
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 11).assign(DoubleFunctions.random());
+                assertClose(dense(D1).zMult(dense(D2), C.copy(), 2, 3, false, false), D1.zMult(D2, C.copy(), 2, 3,
+                        false, false), TOL);
+                DiagonalDoubleMatrix2D D3 = diagonal(NROWS, 11, DINDEXES[d2]);
+                assertClose(dense(D1).zMult(dense(D3), null, 1, 0, true, false), D1.zMult(D3, null, 1, 0, true,
+                        false), TOL);
+            }
+        }
+    }
+
+    public void testInPlace1D() {
+        DiagonalDoubleMatrix2D D = diagonal(NROWS, NROWS, 1);
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+        DoubleMatrix1D expected = dense(D).zMult(y, null);
+        assertClose(expected, D.zMult(y, y), TOL);
+    }
+
+    private static DiagonalDoubleMatrix2D diagonal(int rows, int columns, int dindex) {
+        DiagonalDoubleMatrix2D D = new DiagonalDoubleMatrix2D(rows, columns, dindex);
+        D.assign(DoubleFunctions.random());
+        return D;
+    }
+
+    private static DoubleMatrix2D random(int rows, int columns, int format) {
+        DoubleMatrix2D A = new DenseDoubleMatrix2D(rows, columns).assign(DoubleFunctions.random());
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if ((r + 2 * c) % 3 == 0)
+                    A.setQuick(r, c, 0);
+            }
+        }
+        switch (format) {
+        case 1:
+            return new SparseRCDoubleMatrix2D(A.toArray());
+        case 2:
+            return new SparseCCDoubleMatrix2D(A.toArray());
+        default:
+            return A;
+        }
+    }
+
+    private static DoubleMatrix2D dense(DoubleMatrix2D A) {
+        return new DenseDoubleMatrix2D(A.rows(), A.columns()).assign(A);
+    }
+}
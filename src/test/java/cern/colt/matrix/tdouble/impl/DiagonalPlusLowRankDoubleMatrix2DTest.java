@@ -0,0 +1,141 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class DiagonalPlusLowRankDoubleMatrix2DTest extends TestCase {
+
+    protected int N = 41;
+
+    protected int RANK = 5;
+
+    protected double TOL = 1e-9;
+
+    protected DiagonalPlusLowRankDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    public DiagonalPlusLowRankDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        double[] d = new double[N];
+        for (int i = 0; i < N; i++) {
+            d[i] = 1 + Math.random();
+        }
+        DoubleMatrix2D U = new DenseDoubleMatrix2D(N, RANK).assign(DoubleFunctions.random());
+        DoubleMatrix2D V = new DenseDoubleMatrix2D(N, RANK).assign(DoubleFunctions.random());
+        A = new DiagonalPlusLowRankDoubleMatrix2D(d, U, V);
+        Adense = U.zMult(V, null, 1, 0, false, true);
+        for (int i = 0; i < N; i++) {
+            Adense.setQuick(i, i, Adense.getQuick(i, i) + d[i]);
+        }
+    }
+
+    public void testGetSet() {
+        assertClose(Adense, A, TOL);
+        A.setQuick(3, 3, 7);
+        assertEquals(7, A.getQuick(3, 3), TOL);
+        Adense.setQuick(3, 3, 7);
+        // off the diagonal, a rank-one correction is added
+        A.setQuick(3, 4, 7);
+        Adense.setQuick(3, 4, 7);
+        assertEquals(RANK + 1, A.getLowRank().rank());
+        assertClose(Adense, A, TOL);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), A.solve(b), TOL);
+    }
+
+    public void testAssign() {
+        A.assign(DoubleFunctions.mult(2));
+        Adense.assign(DoubleFunctions.mult(2));
+        assertClose(Adense, A, TOL);
+        A.assign(DoubleFunctions.plus(1));
+        Adense.assign(DoubleFunctions.plus(1));
+        assertClose(Adense, A, TOL);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), A.solve(b), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(N, N).assign(DoubleFunctions.random());
+        for (int i = 0; i < N; i++) {
+            B.setQuick(i, i, N);
+        }
+        A.assign(B);
+        assertClose(B, A, TOL);
+        assertEquals(N, A.getDiagonal()[0], 0);
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(B, b), A.solve(b), TOL);
+        DiagonalPlusLowRankDoubleMatrix2D C = new DiagonalPlusLowRankDoubleMatrix2D(new double[N],
+                new LowRankDoubleMatrix2D(N, N));
+        C.assign(A);
+        assertClose(B, C, TOL);
+        assertClose(B, A.copy(), TOL);
+    }
+
+    public void testOwnership() {
+        double[] d = A.getDiagonal();
+        d[0] = 100;
+        assertClose(Adense, A, TOL);
+        DiagonalPlusLowRankDoubleMatrix2D B = new DiagonalPlusLowRankDoubleMatrix2D(d, A.getLowRank());
+        d[1] = 100;
+        assertEquals(100 + A.getLowRank().getQuick(0, 0), B.getQuick(0, 0), TOL);
+        assertEquals(A.getQuick(1, 1), B.getQuick(1, 1), TOL);
+        // a sum does not share the diagonal with its summand
+        DiagonalPlusLowRankDoubleMatrix2D sum = A.plus(new LowRankDoubleMatrix2D(N, N), 0);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        A.setQuick(0, 0, 100);
+        A.setQuick(0, 1, 100);
+        assertClose(Adense, sum, TOL);
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), sum.solve(b), TOL);
+    }
+
+    public void testZMult() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+            DoubleMatrix1D z = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+            assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+            assertClose(Adense.zMult(y, z.copy(), 2, 3, true), A.zMult(y, z.copy(), 2, 3, true), TOL);
+            DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+            DoubleMatrix2D C = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+            assertClose(Adense.zMult(B, C.copy(), 2, 3, false, false), A.zMult(B, C.copy(), 2, 3, false, false), TOL);
+            assertClose(Adense.zMult(B.viewDice(), null, 1, 0, true, true), A.zMult(B.viewDice(), null, 1, 0, true,
+                    true), TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testSolve() {
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), A.solve(b), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 3).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, B), A.solve(B), TOL);
+        double det = DenseDoubleAlgebra.DEFAULT.det(Adense);
+        assertEquals(det, A.det(), Math.abs(det) * TOL);
+        assertEquals(Math.log(Math.abs(det)), A.logDet(), TOL);
+        // the cached factorization is dropped when the diagonal changes
+        A.setQuick(0, 0, A.getQuick(0, 0) + 1);
+        Adense.setQuick(0, 0, Adense.getQuick(0, 0) + 1);
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(Adense, b), A.solve(b), TOL);
+    }
+
+    public void testPlus() {
+        DoubleMatrix2D U = new DenseDoubleMatrix2D(N, 2).assign(DoubleFunctions.random());
+        LowRankDoubleMatrix2D B = new LowRankDoubleMatrix2D(U, U);
+        DiagonalPlusLowRankDoubleMatrix2D sum = A.plus(B, 0);
+        assertEquals(RANK + 2, sum.getLowRank().rank());
+        DoubleMatrix2D expected = Adense.copy().assign(U.zMult(U, null, 1, 0, false, true), DoubleFunctions.plus);
+        assertClose(expected, sum, TOL);
+        sum = A.plus(A.getLowRank(), 1e-12);
+        assertEquals(RANK, sum.getLowRank().rank());
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(DenseDoubleAlgebra.DEFAULT.solve(new DenseDoubleMatrix2D(N, N).assign(sum), b), sum.solve(b), TOL);
+    }
+}
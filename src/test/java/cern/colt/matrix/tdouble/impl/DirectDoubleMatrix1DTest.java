@@ -0,0 +1,43 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1DTest;
+
+public class DirectDoubleMatrix1DTest extends DoubleMatrix1DTest {
+
+    public DirectDoubleMatrix1DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new DirectDoubleMatrix1D(SIZE);
+        B = new DirectDoubleMatrix1D(SIZE);
+    }
+
+    public void testWrap() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8 * (SIZE + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putDouble(-1);
+        for (int i = 0; i < SIZE; i++) {
+            buffer.putDouble(A.getQuick(i));
+        }
+        buffer.position(8);
+        DirectDoubleMatrix1D W = new DirectDoubleMatrix1D(buffer);
+        assertEquals(SIZE, W.size());
+        assertTrue(A.equals(W));
+        W.setQuick(0, 5);
+        assertEquals(5, buffer.getDouble(8), TOL);
+        W.close();
+        assertTrue(W.isClosed());
+        assertEquals(5, buffer.getDouble(8), TOL);
+    }
+
+    public void testClose() {
+        DirectDoubleMatrix1D C = new DirectDoubleMatrix1D(SIZE);
+        C.assign(A);
+        assertEquals(A.zSum(), C.zSum(), TOL);
+        C.close();
+        assertTrue(C.isClosed());
+    }
+}
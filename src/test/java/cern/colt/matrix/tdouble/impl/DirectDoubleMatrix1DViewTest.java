@@ -0,0 +1,13 @@
+package cern.colt.matrix.tdouble.impl;
+
+public class DirectDoubleMatrix1DViewTest extends DirectDoubleMatrix1DTest {
+
+    public DirectDoubleMatrix1DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new DirectDoubleMatrix1D(SIZE).viewFlip();
+        B = new DirectDoubleMatrix1D(SIZE).viewFlip();
+    }
+}
@@ -0,0 +1,96 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2DTest;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+public class DirectDoubleMatrix2DTest extends DoubleMatrix2DTest {
+
+    public DirectDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new DirectDoubleMatrix2D(NROWS, NCOLUMNS);
+        B = new DirectDoubleMatrix2D(NROWS, NCOLUMNS);
+        Bt = new DirectDoubleMatrix2D(NCOLUMNS, NROWS);
+    }
+
+    public void testWrap() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8 * NROWS * NCOLUMNS).order(ByteOrder.nativeOrder());
+        for (int r = 0; r < A.rows(); r++) {
+            for (int c = 0; c < A.columns(); c++) {
+                buffer.putDouble(A.getQuick(r, c));
+            }
+        }
+        buffer.flip();
+        DirectDoubleMatrix2D W = new DirectDoubleMatrix2D(NROWS, NCOLUMNS, buffer);
+        assertTrue(A.equals(W));
+        W.setQuick(1, 0, -3);
+        assertEquals(-3, buffer.getDouble(8 * NCOLUMNS), TOL);
+        try {
+            new DirectDoubleMatrix2D(NROWS + 1, NCOLUMNS, buffer);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testClose() {
+        DirectDoubleMatrix2D C = new DirectDoubleMatrix2D(NROWS, NCOLUMNS);
+        C.assign(A);
+        assertTrue(A.equals(C));
+        C.close();
+        assertTrue(C.isClosed());
+    }
+
+    public void testZMultTranspose() {
+        if (!(A instanceof DirectDoubleMatrix2D))
+            return;
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(A.rows()).assign(1);
+        DoubleMatrix1D z = A.zMult(y, null, 2, 0, true);
+        for (int c = 0; c < A.columns(); c++) {
+            double s = 0;
+            for (int r = 0; r < A.rows(); r++) {
+                s += A.getQuick(r, c);
+            }
+            assertEquals(2 * s, z.getQuick(c), TOL);
+        }
+    }
+
+    public void testZMultOutOfCore() {
+        if (!(A instanceof DirectDoubleMatrix2D))
+            return;
+        DirectDoubleMatrix2D D = (DirectDoubleMatrix2D) A;
+        DoubleMatrix2D Ad = new DenseDoubleMatrix2D(A.toArray());
+        DoubleMatrix2D Btd = new DenseDoubleMatrix2D(Bt.toArray());
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(A.columns()).assign(DoubleFunctions.random());
+        DoubleMatrix1D yt = new DenseDoubleMatrix1D(A.rows()).assign(DoubleFunctions.random());
+        DoubleMatrix2D AB = Ad.zMult(Btd, null);
+        DoubleMatrix2D AtA = Ad.zMult(Ad, null, 1, 0, true, false);
+        DoubleMatrix2D AtAt = Ad.zMult(Btd, null, 1, 0, true, true);
+        try {
+            D.setMemoryBudget(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        // a single row per panel and a single column per block of B
+        D.setMemoryBudget(8);
+        assertEquals(8, D.getMemoryBudget());
+        assertTrue(Ad.zMult(y, null).equals(A.zMult(y, null)));
+        assertTrue(Ad.zMult(yt, null, 1, 0, true).equals(A.zMult(yt, null, 1, 0, true)));
+        assertTrue(AB.equals(A.zMult(Bt, null)));
+        assertTrue(AtA.equals(A.zMult(A, null, 1, 0, true, false)));
+        assertTrue(AtAt.equals(A.zMult(Bt, null, 1, 0, true, true)));
+        D.setMemoryBudget(8L * 3 * A.columns());
+        assertTrue(AB.equals(A.zMult(Bt, null)));
+        assertTrue(AtA.equals(A.zMult(A, null, 1, 0, true, false)));
+        D.setMemoryBudget(DirectDoubleMatrix2D.DEFAULT_MEMORY_BUDGET);
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(A.columns(), A.columns()).assign(1);
+        A.zMult(A, C, 2, 3, true, false);
+        assertTrue(AtA.assign(DoubleFunctions.mult(2)).assign(DoubleFunctions.plus(3)).equals(C));
+    }
+}
@@ -0,0 +1,14 @@
+package cern.colt.matrix.tdouble.impl;
+
+public class DirectDoubleMatrix2DViewTest extends DirectDoubleMatrix2DTest {
+
+    public DirectDoubleMatrix2DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new DirectDoubleMatrix2D(NCOLUMNS, NROWS).viewDice();
+        B = new DirectDoubleMatrix2D(NCOLUMNS, NROWS).viewDice();
+        Bt = new DirectDoubleMatrix2D(NROWS, NCOLUMNS).viewDice();
+    }
+}
@@ -0,0 +1,114 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class LowRankDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 33;
+
+    protected int NCOLUMNS = 21;
+
+    protected int RANK = 4;
+
+    protected double TOL = 1e-10;
+
+    protected LowRankDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    public LowRankDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        DoubleMatrix2D U = new DenseDoubleMatrix2D(NROWS, RANK).assign(DoubleFunctions.random());
+        DoubleMatrix2D V = new DenseDoubleMatrix2D(NCOLUMNS, RANK).assign(DoubleFunctions.random());
+        A = new LowRankDoubleMatrix2D(U, V);
+        Adense = U.zMult(V, null, 1, 0, false, true);
+    }
+
+    public void testGetSet() {
+        assertEquals(NROWS, A.rows());
+        assertEquals(NCOLUMNS, A.columns());
+        assertEquals(RANK, A.rank());
+        assertClose(Adense, A, TOL);
+        // a cell is set with a rank-one correction
+        A.setQuick(3, 5, 1);
+        Adense.setQuick(3, 5, 1);
+        assertEquals(RANK + 1, A.rank());
+        assertClose(Adense, A, TOL);
+        // bulk assignments
+        A.assign(DoubleFunctions.mult(2));
+        Adense.assign(DoubleFunctions.mult(2));
+        assertEquals(RANK + 1, A.rank());
+        assertClose(Adense, A, TOL);
+        A.assign(DoubleFunctions.plus(1));
+        Adense.assign(DoubleFunctions.plus(1));
+        assertClose(Adense, A, TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NROWS, NCOLUMNS).assign(DoubleFunctions.random());
+        A.assign(B);
+        assertClose(B, A, TOL);
+        assertClose(B.viewDice(), new LowRankDoubleMatrix2D(NCOLUMNS, NROWS).assign(B.viewDice()), TOL);
+        A.assign(B, DoubleFunctions.minus);
+        assertEquals(0, A.aggregate(DoubleFunctions.max, DoubleFunctions.abs), TOL);
+        A.assign(2);
+        assertEquals(1, A.rank());
+        assertEquals(2, A.getQuick(3, 5), 0);
+        A.assign(0);
+        assertEquals(0, A.rank());
+        assertEquals(0, A.getQuick(3, 5), 0);
+        assertEquals(0, A.zMult(new DenseDoubleMatrix1D(NCOLUMNS).assign(1), null).aggregate(DoubleFunctions.plus,
+                DoubleFunctions.abs), 0);
+    }
+
+    public void testZMult() {
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+        assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+        assertClose(Adense.zMult(z, y.copy(), 2, 3, true), A.zMult(z, y.copy(), 2, 3, true), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 5).assign(DoubleFunctions.random());
+        assertClose(Adense.zMult(B, C.copy(), 2, 3, false, false), A.zMult(B, C.copy(), 2, 3, false, false), TOL);
+        assertClose(Adense.zMult(C.viewDice(), null, 1, 0, true, true), A.zMult(C.viewDice(), null, 1, 0, true,
+                true), TOL);
+    }
+
+    public void testPlusAndCompress() {
+        DoubleMatrix2D U = new DenseDoubleMatrix2D(NROWS, RANK).assign(DoubleFunctions.random());
+        DoubleMatrix2D V = new DenseDoubleMatrix2D(NCOLUMNS, RANK).assign(DoubleFunctions.random());
+        LowRankDoubleMatrix2D B = new LowRankDoubleMatrix2D(U, V);
+        LowRankDoubleMatrix2D sum = A.plus(B);
+        assertEquals(2 * RANK, sum.rank());
+        DoubleMatrix2D expected = Adense.copy().assign(U.zMult(V, null, 1, 0, false, true), DoubleFunctions.plus);
+        assertClose(expected, sum, TOL);
+        // A + A has the rank of A
+        LowRankDoubleMatrix2D twice = A.plus(A).compress(1e-12);
+        assertEquals(RANK, twice.rank());
+        assertClose(Adense.copy().assign(DoubleFunctions.mult(2)), twice, TOL);
+        LowRankDoubleMatrix2D compressed = sum.compress(1e-12);
+        assertEquals(2 * RANK, compressed.rank());
+        assertClose(expected, compressed, TOL);
+        // truncation to rank 1 keeps the largest singular triplet
+        LowRankDoubleMatrix2D rank1 = sum.compress(0, 1);
+        assertEquals(1, rank1.rank());
+        double[] s = new cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition(expected,
+                false, false).getSingularValues();
+        DoubleMatrix2D diff = expected.copy().assign(rank1, DoubleFunctions.minus);
+        double norm2 = new cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition(diff,
+                false, false).norm2();
+        assertEquals(s[1], norm2, TOL);
+        // more factors than rows
+        LowRankDoubleMatrix2D wide = new LowRankDoubleMatrix2D(new DenseDoubleMatrix2D(3, 6)
+                .assign(DoubleFunctions.random()), new DenseDoubleMatrix2D(NCOLUMNS, 6).assign(DoubleFunctions.random()));
+        LowRankDoubleMatrix2D wideCompressed = wide.compress(1e-12);
+        assertEquals(3, wideCompressed.rank());
+        assertClose(new DenseDoubleMatrix2D(3, NCOLUMNS).assign(wide), wideCompressed, TOL);
+    }
+}
@@ -0,0 +1,127 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2DTest;
+
+public class MappedDoubleMatrix2DTest extends DoubleMatrix2DTest {
+
+    public MappedDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = createMatrix(NROWS, NCOLUMNS);
+        B = createMatrix(NROWS, NCOLUMNS);
+        Bt = createMatrix(NCOLUMNS, NROWS);
+    }
+
+    /**
+     * Creates a matrix mapped in chunks of 32 elements, so that rows span
+     * several chunks.
+     */
+    protected static MappedDoubleMatrix2D createMatrix(int rows, int columns) throws Exception {
+        File file = File.createTempFile("MappedDoubleMatrix2DTest", ".bin");
+        file.deleteOnExit();
+        return new MappedDoubleMatrix2D(rows, columns, MappedDoubleMatrix2D.map(file, 0, (long) rows * columns,
+                FileChannel.MapMode.READ_WRITE, ByteOrder.nativeOrder(), 5));
+    }
+
+    public void testMappingModes() throws Exception {
+        File file = File.createTempFile("MappedDoubleMatrix2DTest", ".bin");
+        file.deleteOnExit();
+        MappedDoubleMatrix2D M = new MappedDoubleMatrix2D(file, 8, NROWS, NCOLUMNS, FileChannel.MapMode.READ_WRITE,
+                ByteOrder.BIG_ENDIAN);
+        M.assign(A);
+        M.force();
+        assertEquals(8 + 8L * NROWS * NCOLUMNS, file.length());
+
+        MappedDoubleMatrix2D R = new MappedDoubleMatrix2D(file, 8, NROWS, NCOLUMNS, FileChannel.MapMode.READ_ONLY,
+                ByteOrder.BIG_ENDIAN);
+        assertTrue(R.isReadOnly());
+        assertTrue(A.equals(R));
+        try {
+            R.setQuick(0, 0, 1);
+            fail();
+        } catch (ReadOnlyBufferException e) {
+        }
+
+        MappedDoubleMatrix2D P = new MappedDoubleMatrix2D(file, 8, NROWS, NCOLUMNS, FileChannel.MapMode.PRIVATE,
+                ByteOrder.BIG_ENDIAN);
+        P.setQuick(1, 2, -1);
+        assertEquals(-1, P.getQuick(1, 2), TOL);
+        assertEquals(A.getQuick(1, 2), R.getQuick(1, 2), TOL);
+        P.close();
+        R.close();
+        assertTrue(R.isClosed());
+
+        try {
+            new MappedDoubleMatrix2D(file, 8, NROWS + 1, NCOLUMNS, FileChannel.MapMode.READ_ONLY,
+                    ByteOrder.BIG_ENDIAN);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testZMultTranspose() {
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(A.rows()).assign(1);
+        DoubleMatrix1D z = A.zMult(y, null, 2, 0, true);
+        for (int c = 0; c < A.columns(); c++) {
+            double s = 0;
+            for (int r = 0; r < A.rows(); r++) {
+                s += A.getQuick(r, c);
+            }
+            assertEquals(2 * s, z.getQuick(c), TOL);
+        }
+    }
+
+    public void testCloseDuringPrefetch() throws Exception {
+        for (int n = 0; n < 10; n++) {
+            MappedDoubleMatrix2D M = createMatrix(1024, 1024);
+            M.prefetch(0, M.rows());
+            M.zMult(new DenseDoubleMatrix1D(M.columns()), null);
+            M.close();
+            assertTrue(M.isClosed());
+        }
+    }
+
+    public void testLargeMatrix() throws Exception {
+        int rows = 1 << 16;
+        int columns = (1 << 15) + 1;
+        File file = File.createTempFile("MappedDoubleMatrix2DTest", ".bin");
+        file.deleteOnExit();
+        MappedDoubleMatrix2D M;
+        try {
+            M = new MappedDoubleMatrix2D(file, rows, columns, FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            // the platform cannot map a file of 16 GB
+            file.delete();
+            return;
+        }
+        try {
+            assertEquals((long) rows * columns, M.size());
+            M.setQuick(rows - 1, columns - 1, 2);
+            M.setQuick(rows - 1, 0, 1);
+            assertEquals(2, M.getQuick(rows - 1, columns - 1), TOL);
+            assertEquals(1, M.getQuick(rows - 1, 0), TOL);
+            assertEquals(0, M.getQuick(rows - 2, columns - 1), TOL);
+            assertEquals(3, M.viewRow(rows - 1).zSum(), TOL);
+        } finally {
+            M.close();
+            file.delete();
+        }
+    }
+
+    public void testPrefetch() throws Exception {
+        ((MappedDoubleMatrix2D) A).prefetch(1, A.rows()).get();
+        DoubleMatrix2D C = A.copy();
+        assertTrue(C instanceof DenseDoubleMatrix2D);
+        assertTrue(A.equals(C));
+    }
+}
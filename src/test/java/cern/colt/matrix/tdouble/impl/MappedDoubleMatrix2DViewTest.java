@@ -0,0 +1,22 @@
+package cern.colt.matrix.tdouble.impl;
+
+public class MappedDoubleMatrix2DViewTest extends MappedDoubleMatrix2DTest {
+
+    public MappedDoubleMatrix2DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = createMatrix(NCOLUMNS, NROWS).viewDice();
+        B = createMatrix(NCOLUMNS, NROWS).viewDice();
+        Bt = createMatrix(NROWS, NCOLUMNS).viewDice();
+    }
+
+    public void testZMultTranspose() {
+        // views are not mapped matrices
+    }
+
+    public void testPrefetch() throws Exception {
+        // views are not mapped matrices
+    }
+}
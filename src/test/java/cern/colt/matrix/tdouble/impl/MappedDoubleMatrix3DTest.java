@@ -0,0 +1,63 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import cern.colt.matrix.tdouble.DoubleMatrix3DTest;
+
+public class MappedDoubleMatrix3DTest extends DoubleMatrix3DTest {
+
+    public MappedDoubleMatrix3DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = createMatrix(NSLICES, NROWS, NCOLUMNS);
+        B = createMatrix(NSLICES, NROWS, NCOLUMNS);
+    }
+
+    protected static MappedDoubleMatrix3D createMatrix(int slices, int rows, int columns) throws Exception {
+        File file = File.createTempFile("MappedDoubleMatrix3DTest", ".bin");
+        file.deleteOnExit();
+        return new MappedDoubleMatrix3D(slices, rows, columns, MappedDoubleMatrix2D.map(file, 0, (long) slices * rows
+                * columns, FileChannel.MapMode.READ_WRITE, ByteOrder.nativeOrder(), 6));
+    }
+
+    public void testLargeMatrix() throws Exception {
+        int slices = 1 << 11;
+        int rows = 1 << 10;
+        int columns = (1 << 10) + 1;
+        File file = File.createTempFile("MappedDoubleMatrix3DTest", ".bin");
+        file.deleteOnExit();
+        MappedDoubleMatrix3D M;
+        try {
+            M = new MappedDoubleMatrix3D(file, slices, rows, columns, FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            // the platform cannot map a file of 16 GB
+            file.delete();
+            return;
+        }
+        try {
+            assertEquals(slices, M.slices());
+            assertEquals(rows, M.rows());
+            assertEquals(columns, M.columns());
+            assertEquals((long) slices * rows * columns, M.size());
+            M.setQuick(slices - 1, rows - 1, columns - 1, 2);
+            M.setQuick(slices - 1, rows - 1, 0, 1);
+            assertEquals(2, M.getQuick(slices - 1, rows - 1, columns - 1), TOL);
+            assertEquals(1, M.getQuick(slices - 1, rows - 1, 0), TOL);
+            assertEquals(0, M.getQuick(slices - 2, rows - 1, columns - 1), TOL);
+            assertEquals(3, M.viewSlice(slices - 1).zSum(), TOL);
+        } finally {
+            M.close();
+            file.delete();
+        }
+    }
+
+    public void testPrefetch() throws Exception {
+        ((MappedDoubleMatrix3D) A).prefetch(0, A.slices()).get();
+        assertTrue(A.equals(A.copy()));
+    }
+}
@@ -0,0 +1,139 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SlicedEllpackDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 61;
+
+    protected int NCOLUMNS = 47;
+
+    protected double TOL = 1e-10;
+
+    protected DoubleMatrix2D Adense;
+
+    protected SparseRCDoubleMatrix2D Arc;
+
+    public SlicedEllpackDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        // rows of very different lengths, including a dense and an empty row
+        Random random = new Random(0);
+        Adense = new DenseDoubleMatrix2D(NROWS, NCOLUMNS);
+        for (int c = 0; c < NCOLUMNS; c++) {
+            Adense.setQuick(5, c, random.nextDouble());
+        }
+        for (int r = 0; r < NROWS; r++) {
+            if (r == 9)
+                continue;
+            int length = random.nextInt(r % 4 == 0 ? 12 : 3) + 1;
+            for (int j = 0; j < length; j++) {
+                Adense.setQuick(r, random.nextInt(NCOLUMNS), random.nextDouble());
+            }
+        }
+        Arc = new SparseRCDoubleMatrix2D(Adense.toArray());
+    }
+
+    public void testGetSet() {
+        SlicedEllpackDoubleMatrix2D A = new SlicedEllpackDoubleMatrix2D(Arc, 4, 16);
+        assertEquals(4, A.getChunkHeight());
+        assertEquals(16, A.getSigma());
+        assertEquals(Arc.cardinality(), A.cardinality());
+        assertClose(Adense, A, TOL);
+        assertClose(Adense, A.getRowCompressed(), TOL);
+        assertClose(Adense, new SparseRCDoubleMatrix2D(NROWS, NCOLUMNS).assign(A), TOL);
+        int c = Arc.getColumnIndexes()[Arc.getRowPointers()[7]];
+        A.setQuick(7, c, 3);
+        assertEquals(3, A.getQuick(7, c), 0);
+        // row 9 is empty but shares its chunk with longer rows
+        SlicedEllpackDoubleMatrix2D B = new SlicedEllpackDoubleMatrix2D(Arc, 8, 1);
+        B.setQuick(9, 2, 5);
+        assertEquals(5, B.getQuick(9, 2), 0);
+        assertEquals(Arc.cardinality() + 1, B.cardinality());
+        // a zero removes the entry
+        B.setQuick(5, 3, 0);
+        assertEquals(0, B.getQuick(5, 3), 0);
+        assertEquals(Arc.cardinality(), B.cardinality());
+        assertEquals(Adense.getQuick(5, 4), B.getQuick(5, 4), 0);
+        assertEquals(Arc.cardinality(), B.getRowCompressed().cardinality());
+        B.setQuick(5, 3, 7);
+        assertEquals(7, B.getQuick(5, 3), 0);
+        B.setQuick(5, 3, 0);
+        // the chunk of row 9 is widened once its padding is used up
+        DoubleMatrix2D expected = new DenseDoubleMatrix2D(NROWS, NCOLUMNS).assign(B);
+        for (int j = 0; j < NCOLUMNS; j++) {
+            B.setQuick(9, j, j + 1);
+            expected.setQuick(9, j, j + 1);
+        }
+        assertClose(expected, B, TOL);
+        assertClose(expected, B.getRowCompressed(), TOL);
+        B.trimToSize();
+        assertClose(expected, B, TOL);
+        try {
+            new SlicedEllpackDoubleMatrix2D(Arc, 0, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testSetQuick() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            // every entry is inserted into an initially empty matrix
+            SlicedEllpackDoubleMatrix2D A = new SlicedEllpackDoubleMatrix2D(new SparseRCDoubleMatrix2D(NROWS,
+                    NCOLUMNS), 4, 1);
+            for (int r = NROWS - 1; r >= 0; r--) {
+                for (int c = 0; c < NCOLUMNS; c++) {
+                    if (Adense.getQuick(r, c) != 0)
+                        A.setQuick(r, c, Adense.getQuick(r, c));
+                }
+            }
+            assertEquals(Arc.cardinality(), A.cardinality());
+            assertClose(Adense, A, TOL);
+            DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+            DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+            assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+            assertClose(Adense.zMult(z, y.copy(), 2, 3, true), A.zMult(z, y.copy(), 2, 3, true), TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMult() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        int[][] params = { { 1, 1 }, { 4, 1 }, { 4, 16 }, { 8, 64 }, { 32, 1000 } };
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int p = 0; p < params.length; p++) {
+                SlicedEllpackDoubleMatrix2D A = new SlicedEllpackDoubleMatrix2D(Arc, params[p][0], params[p][1]);
+                assertClose(Adense, A, TOL);
+                DoubleMatrix1D y = new DenseDoubleMatrix1D(NCOLUMNS).assign(DoubleFunctions.random());
+                DoubleMatrix1D z = new DenseDoubleMatrix1D(NROWS).assign(DoubleFunctions.random());
+                assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+                assertClose(Adense.zMult(y, null), A.zMult(y, null), TOL);
+                assertClose(Adense.zMult(z, y.copy(), 2, 3, true), A.zMult(z, y.copy(), 2, 3, true), TOL);
+                assertClose(Adense.zMult(z, y.copy(), 2, 0, true), A.zMult(z, y.copy(), 2, 0, true), TOL);
+                DoubleMatrix1D yv = new DenseDoubleMatrix1D(2 * NCOLUMNS).assign(DoubleFunctions.random())
+                        .viewStrides(2);
+                assertClose(Adense.zMult(yv, null), A.zMult(yv, null), TOL);
+                DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 5).assign(DoubleFunctions.random());
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(NROWS, 5).assign(DoubleFunctions.random());
+                assertClose(Adense.zMult(B, C.copy(), 2, 3, false, false), A.zMult(B, C.copy(), 2, 3, false, false),
+                        TOL);
+                assertClose(Adense.zMult(C, null, 1, 0, true, false), A.zMult(C, null, 1, 0, true, false), TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+}
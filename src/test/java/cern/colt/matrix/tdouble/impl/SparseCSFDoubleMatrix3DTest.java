@@ -0,0 +1,246 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.Random;
+
+import cern.colt.function.tdouble.IntIntDoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import cern.colt.matrix.tdouble.DoubleMatrix3DTest;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SparseCSFDoubleMatrix3DTest extends DoubleMatrix3DTest {
+
+    public SparseCSFDoubleMatrix3DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new SparseCSFDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS);
+        B = new SparseCSFDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS);
+    }
+
+    /*
+     * A hash map backed matrix with about a fifth of its cells set.
+     */
+    private SparseDoubleMatrix3D sparse(Random r) {
+        SparseDoubleMatrix3D S = new SparseDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS);
+        for (int s = 0; s < NSLICES; s++) {
+            for (int i = 0; i < NROWS; i++) {
+                for (int j = 0; j < NCOLUMNS; j++) {
+                    if (r.nextDouble() < 0.2)
+                        S.setQuick(s, i, j, 0.5 - r.nextDouble());
+                }
+            }
+        }
+        return S;
+    }
+
+    private DoubleMatrix2D random(int rows, int columns, Random r) {
+        DoubleMatrix2D U = new DenseDoubleMatrix2D(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                U.setQuick(i, j, 0.5 - r.nextDouble());
+            }
+        }
+        return U;
+    }
+
+    public void testConversion() {
+        Random r = new Random(0);
+        SparseDoubleMatrix3D S = sparse(r);
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(S);
+        assertEquals(S.cardinality(), C.cardinality());
+        assertEquals(S, C);
+        assertEquals(S, new SparseCSFDoubleMatrix3D(C));
+        DoubleMatrix3D view = S.viewDice(2, 0, 1);
+        assertEquals(view, new SparseCSFDoubleMatrix3D(view));
+        // duplicates are summed up, cancelled cells are dropped
+        C = new SparseCSFDoubleMatrix3D(2, 3, 4, new int[] { 1, 0, 1, 1, 0 }, new int[] { 2, 1, 2, 0, 1 }, new int[] {
+                3, 0, 3, 1, 0 }, new double[] { 1, 2, 3, 4, -2 });
+        assertEquals(2, C.cardinality());
+        assertEquals(4, C.getQuick(1, 2, 3), TOL);
+        assertEquals(4, C.getQuick(1, 0, 1), TOL);
+        assertEquals(0, C.getQuick(0, 1, 0), TOL);
+        try {
+            new SparseCSFDoubleMatrix3D(2, 3, 4, new int[] { 2 }, new int[] { 0 }, new int[] { 0 },
+                    new double[] { 1 });
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    public void testSetQuick() {
+        Random r = new Random(0);
+        SparseDoubleMatrix3D S = new SparseDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS);
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS, 0);
+        for (int n = 0; n < 2000; n++) {
+            int s = r.nextInt(NSLICES);
+            int i = r.nextInt(NROWS);
+            int j = r.nextInt(NCOLUMNS);
+            double value = r.nextDouble() < 0.3 ? 0 : r.nextDouble();
+            S.setQuick(s, i, j, value);
+            C.setQuick(s, i, j, value);
+        }
+        assertEquals(S.cardinality(), C.cardinality());
+        assertEquals(S, C);
+        C.assign(cern.jet.math.tdouble.DoubleFunctions.mult(0));
+        assertEquals(0, C.cardinality());
+    }
+
+    public void testForEachNonZero() {
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(sparse(new Random(0)));
+        for (int mode = 0; mode < 3; mode++) {
+            final int index = 2;
+            final DoubleMatrix2D slice = mode == 0 ? C.viewSlice(index).copy() : mode == 1 ? C.viewRow(index)
+                    .copy() : C.viewColumn(index).copy();
+            final int[] count = new int[1];
+            C.forEachNonZero(mode, index, new IntIntDoubleFunction() {
+                public double apply(int first, int second, double value) {
+                    assertEquals(slice.getQuick(first, second), value, TOL);
+                    count[0]++;
+                    return value > 0 ? 0 : value;
+                }
+            });
+            assertEquals(slice.cardinality(), count[0]);
+            slice.assign(cern.jet.math.tdouble.DoubleFunctions.min(0));
+            DoubleMatrix2D updated = mode == 0 ? C.viewSlice(index) : mode == 1 ? C.viewRow(index) : C
+                    .viewColumn(index);
+            for (int i = 0; i < slice.rows(); i++) {
+                for (int j = 0; j < slice.columns(); j++) {
+                    assertEquals(slice.getQuick(i, j), updated.getQuick(i, j), TOL);
+                }
+            }
+        }
+        assertEquals(new SparseDoubleMatrix3D(NSLICES, NROWS, NCOLUMNS).assign(C).cardinality(), C.cardinality());
+    }
+
+    public void testZMultVector() {
+        Random r = new Random(0);
+        SparseDoubleMatrix3D S = sparse(r);
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(S);
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int mode = 0; mode < 3; mode++) {
+                int n = mode == 0 ? NSLICES : mode == 1 ? NROWS : NCOLUMNS;
+                DoubleMatrix1D y = random(1, n, r).viewRow(0);
+                DoubleMatrix2D z = C.zMult(y, null, mode);
+                for (int i = 0; i < z.rows(); i++) {
+                    for (int j = 0; j < z.columns(); j++) {
+                        double expected = 0;
+                        for (int k = 0; k < n; k++) {
+                            expected += (mode == 0 ? S.getQuick(k, i, j) : mode == 1 ? S.getQuick(i, k, j) : S
+                                    .getQuick(i, j, k))
+                                    * y.getQuick(k);
+                        }
+                        assertEquals(expected, z.getQuick(i, j), TOL);
+                    }
+                }
+                // into a view
+                DoubleMatrix2D zView = new DenseDoubleMatrix2D(z.columns(), z.rows()).viewDice();
+                C.zMult(y, zView, mode);
+                assertEquals(z, zView);
+            }
+            try {
+                C.zMult(new DenseDoubleMatrix1D(NSLICES + 1), null, 0);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultMatrix() {
+        Random r = new Random(0);
+        SparseDoubleMatrix3D S = sparse(r);
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(S);
+        int m = 3;
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int mode = 0; mode < 3; mode++) {
+                int n = mode == 0 ? NSLICES : mode == 1 ? NROWS : NCOLUMNS;
+                DoubleMatrix2D U = random(m, n, r);
+                DoubleMatrix3D Z = C.zMult(U, (DoubleMatrix3D) null, mode);
+                for (int s = 0; s < Z.slices(); s++) {
+                    for (int i = 0; i < Z.rows(); i++) {
+                        for (int j = 0; j < Z.columns(); j++) {
+                            double expected = 0;
+                            for (int k = 0; k < n; k++) {
+                                if (mode == 0)
+                                    expected += S.getQuick(k, i, j) * U.getQuick(s, k);
+                                else if (mode == 1)
+                                    expected += S.getQuick(s, k, j) * U.getQuick(i, k);
+                                else
+                                    expected += S.getQuick(s, i, k) * U.getQuick(j, k);
+                            }
+                            assertEquals(expected, Z.getQuick(s, i, j), TOL);
+                        }
+                    }
+                }
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testZMultKhatriRao() {
+        Random r = new Random(0);
+        SparseDoubleMatrix3D S = sparse(r);
+        SparseCSFDoubleMatrix3D C = new SparseCSFDoubleMatrix3D(S);
+        int rank = 4;
+        DoubleMatrix2D[] factors = { random(NSLICES, rank, r), random(NROWS, rank, r), random(NCOLUMNS, rank, r) };
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            for (int mode = 0; mode < 3; mode++) {
+                DoubleMatrix2D B = factors[mode == 0 ? 1 : 0];
+                DoubleMatrix2D D = factors[mode == 2 ? 1 : 2];
+                DoubleMatrix2D z = C.zMultKhatriRao(B, D.viewDice().copy().viewDice(), null, mode);
+                DoubleMatrix2D expected = new DenseDoubleMatrix2D(z.rows(), rank);
+                for (int s = 0; s < NSLICES; s++) {
+                    for (int i = 0; i < NROWS; i++) {
+                        for (int j = 0; j < NCOLUMNS; j++) {
+                            int[] index = { s, i, j };
+                            int[] other = { mode == 0 ? i : s, mode == 2 ? i : j };
+                            for (int q = 0; q < rank; q++) {
+                                expected.setQuick(index[mode], q, expected.getQuick(index[mode], q)
+                                        + S.getQuick(s, i, j) * B.getQuick(other[0], q) * D.getQuick(other[1], q));
+                            }
+                        }
+                    }
+                }
+                assertEquals(expected, z);
+            }
+            try {
+                C.zMultKhatriRao(factors[1], factors[1], null, 0);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    private void assertEquals(DoubleMatrix2D expected, DoubleMatrix2D actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int i = 0; i < expected.rows(); i++) {
+            for (int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.getQuick(i, j), actual.getQuick(i, j), TOL);
+            }
+        }
+    }
+
+    private void assertEquals(DoubleMatrix3D expected, DoubleMatrix3D actual) {
+        assertEquals(expected.slices(), actual.slices());
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for (int s = 0; s < expected.slices(); s++) {
+            for (int i = 0; i < expected.rows(); i++) {
+                for (int j = 0; j < expected.columns(); j++) {
+                    assertEquals(expected.getQuick(s, i, j), actual.getQuick(s, i, j), TOL);
+                }
+            }
+        }
+    }
+}
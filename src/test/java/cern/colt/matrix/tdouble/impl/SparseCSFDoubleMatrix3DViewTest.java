@@ -0,0 +1,13 @@
+package cern.colt.matrix.tdouble.impl;
+
+public class SparseCSFDoubleMatrix3DViewTest extends SparseCSFDoubleMatrix3DTest {
+
+    public SparseCSFDoubleMatrix3DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new SparseCSFDoubleMatrix3D(NCOLUMNS, NROWS, NSLICES).viewDice(2, 1, 0);
+        B = new SparseCSFDoubleMatrix3D(NCOLUMNS, NROWS, NSLICES).viewDice(2, 1, 0);
+    }
+}
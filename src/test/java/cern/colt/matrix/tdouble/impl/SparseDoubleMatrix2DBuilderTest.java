@@ -0,0 +1,136 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SparseDoubleMatrix2DBuilderTest extends TestCase {
+
+    protected int NROWS = 53;
+
+    protected int NCOLUMNS = 41;
+
+    protected double TOL = 1e-10;
+
+    public SparseDoubleMatrix2DBuilderTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    public void testAssembly() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            Random random = new Random(t);
+            SparseDoubleMatrix2DBuilder builder = new SparseDoubleMatrix2DBuilder(NROWS, NCOLUMNS);
+            DoubleMatrix2D expected = new DenseDoubleMatrix2D(NROWS, NCOLUMNS);
+            // batches of very different sizes, one of them filling a whole row
+            for (int b = 0; b < 7; b++) {
+                int length = b == 3 ? 0 : random.nextInt(400) + 1;
+                int[] rowIndexes = new int[length];
+                int[] columnIndexes = new int[length];
+                double[] values = new double[length];
+                for (int k = 0; k < length; k++) {
+                    rowIndexes[k] = b == 5 ? 7 : random.nextInt(NROWS);
+                    columnIndexes[k] = random.nextInt(NCOLUMNS);
+                    values[k] = random.nextDouble();
+                    expected.setQuick(rowIndexes[k], columnIndexes[k], expected.getQuick(rowIndexes[k],
+                            columnIndexes[k]) + values[k]);
+                }
+                builder.add(rowIndexes, columnIndexes, values);
+                // the builder keeps its own copy
+                if (length > 0)
+                    rowIndexes[0] = -1;
+                builder.add(b, b, 1);
+                expected.setQuick(b, b, expected.getQuick(b, b) + 1);
+            }
+            SparseRCDoubleMatrix2D A = builder.getRowCompressed(false);
+            assertTrue(A.hasColumnIndexesSorted());
+            assertSorted(A.getRowPointers(), A.getColumnIndexes(), NROWS);
+            assertClose(expected, A, TOL);
+            SparseCCDoubleMatrix2D B = builder.getColumnCompressed(false);
+            assertSorted(B.getColumnPointers(), B.getRowIndexes(), NCOLUMNS);
+            assertClose(expected, B, TOL);
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testRemoveZeroes() {
+        SparseDoubleMatrix2DBuilder builder = new SparseDoubleMatrix2DBuilder(NROWS, NCOLUMNS);
+        builder.add(new int[] { 1, 2, 1, 4 }, new int[] { 3, 3, 3, 0 }, new double[] { 2, 5, -2, 0 });
+        builder.add(2, 6, 1);
+        assertEquals(5, builder.size());
+        SparseRCDoubleMatrix2D A = builder.getRowCompressed(true);
+        assertEquals(2, A.getRowPointers()[NROWS]);
+        assertEquals(5, A.getQuick(2, 3), 0);
+        assertEquals(1, A.getQuick(2, 6), 0);
+        assertEquals(4, builder.getRowCompressed(false).getRowPointers()[NROWS]);
+        assertEquals(2, builder.getColumnCompressed(true).getColumnPointers()[NCOLUMNS]);
+        // only exact zeroes are removed
+        builder.add(new int[] { 0, 0 }, new int[] { 1, 2 }, new double[] { 1e-20, Double.MIN_VALUE });
+        A = builder.getRowCompressed(true);
+        assertEquals(4, A.getRowPointers()[NROWS]);
+        assertEquals(1e-20, A.getQuick(0, 1), 0);
+        assertEquals(Double.MIN_VALUE, A.getQuick(0, 2), 0);
+        assertEquals(1e-20, builder.getColumnCompressed(true).getQuick(0, 1), 0);
+        assertEquals(1e-20, new SparseCCDoubleMatrix2D(NROWS, NCOLUMNS, new int[] { 0, 0 }, new int[] { 1, 1 },
+                new double[] { 1e-20, 0 }, true, true, true).getQuick(0, 1), 0);
+        builder.clear();
+        assertEquals(0, builder.size());
+        assertEquals(0, builder.getRowCompressed(true).getRowPointers()[NROWS]);
+        builder.add(new int[] { 1, NROWS }, new int[] { 0, 0 }, new double[] { 1, 1 });
+        try {
+            builder.getRowCompressed(false);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+        try {
+            builder.add(0, NCOLUMNS, 1);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    public void testTripletConstructors() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            int[] rowIndexes = { 4, 0, 4, 2, 4, 0 };
+            int[] columnIndexes = { 3, 1, 0, 2, 3, 1 };
+            double[] values = { 1, 2, 3, 4, 5, 6 };
+            SparseRCDoubleMatrix2D A = new SparseRCDoubleMatrix2D(5, 4, rowIndexes, columnIndexes, values, false,
+                    false, false);
+            // without sorting, the order of the triplets is kept within a row
+            assertEquals(3, A.getColumnIndexes()[A.getRowPointers()[4]]);
+            assertEquals(1, A.getValues()[A.getRowPointers()[4]], 0);
+            assertEquals(3, A.getValues()[A.getRowPointers()[4] + 1], 0);
+            A = new SparseRCDoubleMatrix2D(5, 4, rowIndexes, columnIndexes, values, true, false, true);
+            assertEquals(4, A.getRowPointers()[5]);
+            assertEquals(8, A.getQuick(0, 1), 0);
+            assertEquals(6, A.getQuick(4, 3), 0);
+            assertEquals(0, A.getColumnIndexes()[A.getRowPointers()[4]]);
+            SparseCCDoubleMatrix2D B = new SparseCCDoubleMatrix2D(5, 4, rowIndexes, columnIndexes, 2.0, true, true);
+            assertEquals(4, B.getColumnPointers()[4]);
+            assertEquals(4, B.getQuick(4, 3), 0);
+            assertEquals(4, B.getRowIndexes()[B.getColumnPointers()[1] - 1]);
+            A = new SparseRCDoubleMatrix2D(5, 4, new int[0], new int[0], new double[0], true, true, true);
+            assertEquals(0, A.cardinality());
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    private void assertSorted(int[] pointers, int[] indexes, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int k = pointers[i] + 1; k < pointers[i + 1]; k++) {
+                assertTrue(indexes[k - 1] < indexes[k]);
+            }
+        }
+    }
+}
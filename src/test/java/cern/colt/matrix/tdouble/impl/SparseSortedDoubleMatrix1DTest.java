@@ -0,0 +1,101 @@
+package cern.colt.matrix.tdouble.impl;
+
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1DTest;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+public class SparseSortedDoubleMatrix1DTest extends DoubleMatrix1DTest {
+
+    public SparseSortedDoubleMatrix1DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new SparseSortedDoubleMatrix1D(SIZE);
+        B = new SparseSortedDoubleMatrix1D(SIZE);
+    }
+
+    public void testMerge() {
+        Random r = new Random(0);
+        for (int t = 0; t < 20; t++) {
+            DoubleMatrix1D x = random(r, 0.2);
+            DoubleMatrix1D y = random(r, 0.1);
+            SparseSortedDoubleMatrix1D xs = new SparseSortedDoubleMatrix1D(x.toArray());
+            SparseSortedDoubleMatrix1D ys = new SparseSortedDoubleMatrix1D(y.toArray());
+            assertEquals(x.cardinality(), xs.cardinality());
+            assertEquals(x.zDotProduct(y), xs.zDotProduct(ys), TOL);
+            assertEquals(x.zDotProduct(y, 7, 100), xs.zDotProduct(ys, 7, 100), TOL);
+            // gather and scatter against dense vectors, also strided ones
+            assertEquals(x.zDotProduct(y), xs.zDotProduct(y), TOL);
+            assertEquals(x.zDotProduct(y), y.zDotProduct(xs), TOL);
+            DoubleMatrix1D strided = new DenseDoubleMatrix1D(2 * SIZE).viewStrides(2).assign(y);
+            assertEquals(x.zDotProduct(y), xs.zDotProduct(strided), TOL);
+            assertEquals(y.copy().assign(x, DoubleFunctions.plusMultSecond(2)), strided.assign(xs, DoubleFunctions
+                    .plusMultSecond(2)));
+            assertEquals(x.aggregate(DoubleFunctions.plus, DoubleFunctions.square), xs.aggregate(
+                    DoubleFunctions.plus, DoubleFunctions.square), TOL);
+            assertEquals(x.aggregate(DoubleFunctions.max, DoubleFunctions.abs), xs.aggregate(DoubleFunctions.max,
+                    DoubleFunctions.abs), TOL);
+            // union
+            assertEquals(x.copy().assign(y, DoubleFunctions.plusMultSecond(-3)), xs.copy().assign(ys,
+                    DoubleFunctions.plusMultSecond(-3)));
+            assertEquals(x.copy().assign(y, DoubleFunctions.plusMultFirst(0.5)), xs.copy().assign(ys,
+                    DoubleFunctions.plusMultFirst(0.5)));
+            // intersection
+            assertEquals(x.copy().assign(y, DoubleFunctions.mult), xs.copy().assign(ys, DoubleFunctions.mult));
+            assertEquals(x.copy().assign(y, DoubleFunctions.mult), xs.copy().assign(y, DoubleFunctions.mult));
+            // cancellation leaves no stored zeros
+            DoubleMatrix1D zero = xs.copy().assign(xs, DoubleFunctions.minus);
+            assertEquals(0, zero.cardinality());
+            assertEquals(x.copy().assign(DoubleFunctions.mult(3)), xs.copy().assign(DoubleFunctions.mult(3)));
+        }
+    }
+
+    public void testRows() {
+        Random r = new Random(0);
+        SparseSortedDoubleMatrix1D[] rows = new SparseSortedDoubleMatrix1D[20];
+        DenseDoubleMatrix2D D = new DenseDoubleMatrix2D(rows.length, SIZE);
+        for (int i = 0; i < rows.length; i++) {
+            DoubleMatrix1D x = random(r, 0.1);
+            rows[i] = new SparseSortedDoubleMatrix1D(x.toArray());
+            D.viewRow(i).assign(x);
+        }
+        SparseRCDoubleMatrix2D R = new SparseRCDoubleMatrix2D(SIZE, rows);
+        assertTrue(R.hasColumnIndexesSorted());
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(D.viewRow(i), R.viewRow(i));
+            assertEquals(D.viewRow(i), R.getRow(i));
+        }
+        // unsorted columns
+        SparseRCDoubleMatrix2D U = new SparseRCDoubleMatrix2D(rows.length, SIZE, new int[] { 0, 1, 0, 2 },
+                new int[] { 5, 3, 1, 0 }, new double[] { 1, 2, 3, 4 }, false, false, false);
+        SparseSortedDoubleMatrix1D row = U.getRow(0);
+        assertEquals(2, row.cardinality());
+        assertEquals(1, row.getIndexes()[0]);
+        assertEquals(5, row.getIndexes()[1]);
+        assertEquals(3.0, row.getValues()[0], 0);
+        try {
+            new SparseSortedDoubleMatrix1D(SIZE, new int[] { 3, 1 }, new double[] { 1, 2 });
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private DoubleMatrix1D random(Random r, double density) {
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            if (r.nextDouble() < density)
+                x.setQuick(i, r.nextDouble() - 0.5);
+        }
+        return x;
+    }
+
+    private void assertEquals(DoubleMatrix1D expected, DoubleMatrix1D actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getQuick(i), actual.getQuick(i), TOL);
+        }
+    }
+}
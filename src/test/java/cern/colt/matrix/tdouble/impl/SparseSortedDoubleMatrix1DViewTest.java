@@ -0,0 +1,13 @@
+package cern.colt.matrix.tdouble.impl;
+
+public class SparseSortedDoubleMatrix1DViewTest extends SparseSortedDoubleMatrix1DTest {
+
+    public SparseSortedDoubleMatrix1DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new SparseSortedDoubleMatrix1D(SIZE).viewFlip();
+        B = new SparseSortedDoubleMatrix1D(SIZE).viewFlip();
+    }
+}
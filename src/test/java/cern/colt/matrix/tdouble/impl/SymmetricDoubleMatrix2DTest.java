@@ -0,0 +1,111 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.SmpDoubleBlas;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SymmetricDoubleMatrix2DTest extends TestCase {
+
+    protected int N = 37;
+
+    protected double TOL = 1e-10;
+
+    protected SymmetricDoubleMatrix2D A;
+
+    protected DoubleMatrix2D Adense;
+
+    public SymmetricDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        A = new SymmetricDoubleMatrix2D(N);
+        Adense = new DenseDoubleMatrix2D(N, N);
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c <= r; c++) {
+                double value = Math.random();
+                A.setQuick(r, c, value);
+                Adense.setQuick(r, c, value);
+                Adense.setQuick(c, r, value);
+            }
+        }
+    }
+
+    public void testGetSet() {
+        assertEquals(N * (N + 1) / 2, A.elements().length);
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                assertEquals(Adense.getQuick(r, c), A.getQuick(r, c), 0);
+            }
+        }
+        A.setQuick(3, 5, 7);
+        assertEquals(7, A.getQuick(5, 3), 0);
+        SymmetricDoubleMatrix2D B = new SymmetricDoubleMatrix2D(Adense);
+        double[][] values = B.toArray();
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                assertEquals(Adense.getQuick(r, c), values[r][c], 0);
+            }
+        }
+    }
+
+    public void testZMult() {
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        assertClose(Adense.zMult(y, z.copy(), 2, 3, false), A.zMult(y, z.copy(), 2, 3, false), TOL);
+        DoubleMatrix1D yv = new DenseDoubleMatrix1D(2 * N).assign(DoubleFunctions.random()).viewStrides(2);
+        assertClose(Adense.zMult(yv, null), A.zMult(yv, null), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D C = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D expected = Adense.zMult(B, C.copy(), 2, 3, false, false);
+        DoubleMatrix2D result = A.zMult(B, C.copy(), 2, 3, false, false);
+        for (int j = 0; j < 5; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+        expected = Adense.zMult(B.viewDice(), null, 1, 0, true, true);
+        result = A.zMult(B.viewDice(), null, 1, 0, true, true);
+        for (int j = 0; j < 5; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+    }
+
+    public void testDsymv() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        ConcurrencyUtils.setNumberOfThreads(2);
+        DoubleMatrix1D x = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+        DoubleMatrix1D expected = y.copy();
+        DoubleMatrix1D result = y.copy();
+        SmpDoubleBlas blas = new SmpDoubleBlas();
+        blas.dsymv(false, 2, Adense, x, 3, expected);
+        blas.dsymv(false, 2, A, x, 3, result);
+        assertClose(Adense.zMult(x, y.copy(), 2, 3, false), expected, TOL);
+        assertClose(expected, result, TOL);
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testDecompositions() {
+        for (int i = 0; i < N; i++) {
+            A.setQuick(i, i, A.getQuick(i, i) + N);
+            Adense.setQuick(i, i, A.getQuick(i, i));
+        }
+        DoubleMatrix2D L = new DenseDoubleCholeskyDecomposition(A).getL();
+        DoubleMatrix2D LLt = L.zMult(L, null, 1, 0, false, true);
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                assertEquals(Adense.getQuick(r, c), LLt.getQuick(r, c), TOL);
+            }
+        }
+        DenseDoubleEigenvalueDecomposition expected = new DenseDoubleEigenvalueDecomposition(Adense);
+        DenseDoubleEigenvalueDecomposition result = new DenseDoubleEigenvalueDecomposition(A);
+        assertClose(expected.getRealEigenvalues(), result.getRealEigenvalues(), TOL);
+    }
+}
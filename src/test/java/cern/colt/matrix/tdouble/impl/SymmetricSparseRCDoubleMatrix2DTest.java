@@ -0,0 +1,198 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleICC;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class SymmetricSparseRCDoubleMatrix2DTest extends TestCase {
+
+    protected int N = 47;
+
+    protected double TOL = 1e-10;
+
+    protected DoubleMatrix2D Adense;
+
+    protected SparseRCDoubleMatrix2D Arc;
+
+    public SymmetricSparseRCDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+        // random symmetric, diagonally dominant matrix
+        Random random = new Random(0);
+        Adense = new DenseDoubleMatrix2D(N, N);
+        for (int i = 0; i < N; i++) {
+            for (int j = i + 1; j < N; j++) {
+                if (random.nextDouble() < 0.15) {
+                    double value = -random.nextDouble();
+                    Adense.setQuick(i, j, value);
+                    Adense.setQuick(j, i, value);
+                }
+            }
+        }
+        for (int i = 0; i < N; i++) {
+            double sum = 0;
+            for (int j = 0; j < N; j++) {
+                if (j != i)
+                    sum += Math.abs(Adense.getQuick(i, j));
+            }
+            Adense.setQuick(i, i, sum + 1);
+        }
+        Arc = new SparseRCDoubleMatrix2D(Adense.toArray());
+    }
+
+    public void testGetSet() {
+        SymmetricSparseRCDoubleMatrix2D A = new SymmetricSparseRCDoubleMatrix2D(Arc);
+        assertEquals(Arc.cardinality(), A.cardinality());
+        assertClose(Adense, A, TOL);
+        int[] rowPointers = A.getUpper().getRowPointers();
+        int[] columnIndexes = A.getUpper().getColumnIndexes();
+        assertEquals((Arc.cardinality() + N) / 2, rowPointers[N]);
+        for (int i = 0; i < N; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                assertTrue(columnIndexes[k] >= i);
+                if (k > rowPointers[i])
+                    assertTrue(columnIndexes[k - 1] < columnIndexes[k]);
+            }
+        }
+        SparseRCDoubleMatrix2D B = A.getRowCompressed();
+        assertTrue(B.hasColumnIndexesSorted());
+        assertEquals(Arc.cardinality(), B.getRowPointers()[N]);
+        assertClose(Adense, B, TOL);
+        assertClose(Adense, new SparseRCDoubleMatrix2D(N, N).assign(A), TOL);
+
+        DoubleMatrix2D expected = Adense.copy();
+        A.setQuick(30, 2, 5);
+        expected.setQuick(30, 2, 5);
+        expected.setQuick(2, 30, 5);
+        A.setQuick(7, 7, 0);
+        expected.setQuick(7, 7, 0);
+        assertClose(expected, A, TOL);
+        assertClose(expected, A.getRowCompressed(), TOL);
+
+        A = new SymmetricSparseRCDoubleMatrix2D(3, new int[] { 0, 2, 3, 4 }, new int[] { 0, 2, 1, 2 }, new double[] {
+                1, 2, 3, 4 });
+        assertEquals(2, A.getQuick(2, 0), 0);
+        // unsorted rows are sorted
+        A = new SymmetricSparseRCDoubleMatrix2D(3, new int[] { 0, 2, 3, 4 }, new int[] { 2, 0, 1, 2 }, new double[] {
+                2, 1, 3, 4 });
+        assertEquals(1, A.getQuick(0, 0), 0);
+        assertEquals(2, A.getQuick(2, 0), 0);
+        assertEquals(0, A.getUpper().getColumnIndexes()[0]);
+        A.setQuick(1, 0, 5);
+        assertEquals(5, A.getQuick(0, 1), 0);
+        assertEquals(2, A.getQuick(0, 2), 0);
+        try {
+            new SymmetricSparseRCDoubleMatrix2D(2, new int[] { 0, 1, 2 }, new int[] { 0, 0 }, new double[] { 1, 1 });
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new SymmetricSparseRCDoubleMatrix2D(2, new int[] { 0, 1, 2 }, new int[] { 0, 2 }, new double[] { 1, 1 });
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new SymmetricSparseRCDoubleMatrix2D(2, new int[] { 0, 2, 2 }, new int[] { 1, 1 }, new double[] { 1, 1 });
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testAssign() {
+        SymmetricSparseRCDoubleMatrix2D A = new SymmetricSparseRCDoubleMatrix2D(2, new int[] { 0, 2, 3 }, new int[] {
+                0, 1, 1 }, new double[] { 4, 1, 3 });
+        A.assign(cern.jet.math.tdouble.DoubleFunctions.mult(2));
+        assertEquals(8, A.getQuick(0, 0), 0);
+        assertEquals(2, A.getQuick(0, 1), 0);
+        assertEquals(2, A.getQuick(1, 0), 0);
+        assertEquals(6, A.getQuick(1, 1), 0);
+        A.assign(cern.jet.math.tdouble.DoubleFunctions.plus(1));
+        assertEquals(9, A.getQuick(0, 0), 0);
+        assertEquals(3, A.getQuick(0, 1), 0);
+        assertEquals(3, A.getQuick(1, 0), 0);
+        assertEquals(7, A.getQuick(1, 1), 0);
+        A.forEachNonZero(new cern.colt.function.tdouble.IntIntDoubleFunction() {
+            public double apply(int first, int second, double third) {
+                return first == second ? third : third - 3;
+            }
+        });
+        assertEquals(0, A.getQuick(1, 0), 0);
+        assertEquals(2, A.cardinality());
+
+        A = new SymmetricSparseRCDoubleMatrix2D(Arc);
+        A.assign(cern.jet.math.tdouble.DoubleFunctions.mult(-3));
+        assertClose(Adense.copy().assign(cern.jet.math.tdouble.DoubleFunctions.mult(-3)), A, TOL);
+        assertEquals(Arc.cardinality(), A.cardinality());
+        A.assign(cern.jet.math.tdouble.DoubleFunctions.plus(0.5));
+        DoubleMatrix2D expected = Adense.copy().assign(cern.jet.math.tdouble.DoubleFunctions.mult(-3)).assign(
+                cern.jet.math.tdouble.DoubleFunctions.plus(0.5));
+        assertClose(expected, A, TOL);
+        assertEquals(N * N, A.cardinality());
+    }
+
+    public void testZMult() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        for (int t = 1; t <= 4; t *= 4) {
+            ConcurrencyUtils.setNumberOfThreads(t);
+            SymmetricSparseRCDoubleMatrix2D A = new SymmetricSparseRCDoubleMatrix2D(Arc);
+            Random random = new Random(t);
+            DoubleMatrix1D y = new DenseDoubleMatrix1D(N);
+            DoubleMatrix1D z = new DenseDoubleMatrix1D(N);
+            for (int i = 0; i < N; i++) {
+                y.setQuick(i, random.nextDouble());
+                z.setQuick(i, random.nextDouble());
+            }
+            DoubleMatrix1D expected = Adense.zMult(y, z.copy(), 2, 3, false);
+            assertClose(expected, A.zMult(y, z.copy(), 2, 3, false), TOL);
+            assertClose(expected, A.zMult(y, z.copy(), 2, 3, true), TOL);
+            expected = Adense.zMult(y, null);
+            assertClose(expected, A.zMult(y, null), TOL);
+            // strided views
+            DoubleMatrix2D Y = new DenseDoubleMatrix2D(N, 3);
+            for (int i = 0; i < N; i++) {
+                for (int j = 0; j < 3; j++) {
+                    Y.setQuick(i, j, random.nextDouble());
+                }
+            }
+            DoubleMatrix2D Z = A.zMult(Y, null);
+            DoubleMatrix2D expectedZ = Adense.zMult(Y, null);
+            for (int i = 0; i < N; i++) {
+                for (int j = 0; j < 3; j++) {
+                    assertEquals(expectedZ.getQuick(i, j), Z.getQuick(i, j), TOL);
+                }
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+
+    public void testFactorizations() {
+        SymmetricSparseRCDoubleMatrix2D A = new SymmetricSparseRCDoubleMatrix2D(Arc);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(N);
+        for (int i = 0; i < N; i++) {
+            b.setQuick(i, i + 1);
+        }
+        for (int order = 0; order <= 1; order++) {
+            SparseDoubleCholeskyDecomposition expected = new SparseDoubleCholeskyDecomposition(Arc, order);
+            SparseDoubleCholeskyDecomposition actual = new SparseDoubleCholeskyDecomposition(A, order);
+            assertClose(expected.getL(), actual.getL(), TOL);
+            DoubleMatrix1D x = b.copy();
+            actual.solve(x);
+            assertClose(b, Adense.zMult(x, null), TOL);
+        }
+        DoubleICC expected = new DoubleICC(N);
+        expected.setMatrix(Arc);
+        DoubleICC actual = new DoubleICC(N);
+        actual.setMatrix(A);
+        assertClose(expected.apply(b, null), actual.apply(b, null), TOL);
+    }
+}
@@ -0,0 +1,111 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class ToeplitzDoubleMatrix2DTest extends TestCase {
+
+    protected int NROWS = 13;
+
+    protected int NCOLUMNS = 17;
+
+    protected double TOL = 1e-9;
+
+    public ToeplitzDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    private static double[] random(int n) {
+        double[] a = new double[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = Math.random();
+        }
+        return a;
+    }
+
+    private static DoubleMatrix2D dense(ToeplitzDoubleMatrix2D T) {
+        double[] c = T.getFirstColumn();
+        double[] r = T.getFirstRow();
+        DoubleMatrix2D D = new DenseDoubleMatrix2D(T.rows(), T.columns());
+        for (int i = 0; i < T.rows(); i++) {
+            for (int j = 0; j < T.columns(); j++) {
+                D.setQuick(i, j, i >= j ? c[i - j] : r[j - i]);
+            }
+        }
+        return D;
+    }
+
+    public void testGetSet() {
+        ToeplitzDoubleMatrix2D T = new ToeplitzDoubleMatrix2D(random(NROWS), random(NCOLUMNS));
+        DoubleMatrix2D D = dense(T);
+        for (int i = 0; i < NROWS; i++) {
+            for (int j = 0; j < NCOLUMNS; j++) {
+                assertEquals(D.getQuick(i, j), T.getQuick(i, j), 0);
+            }
+        }
+        T.setQuick(2, 5, 7);
+        assertEquals(7, T.getQuick(0, 3), 0);
+        T.setQuick(3, 3, 8);
+        assertEquals(8, T.getFirstRow()[0], 0);
+        assertEquals(8, T.getFirstColumn()[0], 0);
+    }
+
+    public void testZMult() {
+        ToeplitzDoubleMatrix2D T = new ToeplitzDoubleMatrix2D(random(NROWS), random(NCOLUMNS));
+        DoubleMatrix2D D = dense(T);
+        DoubleMatrix1D y = new DenseDoubleMatrix1D(random(NCOLUMNS));
+        DoubleMatrix1D yt = new DenseDoubleMatrix1D(random(NROWS));
+        DoubleMatrix1D z = new DenseDoubleMatrix1D(random(NROWS));
+        assertClose(D.zMult(y, z.copy(), 2, 3, false), T.zMult(y, z.copy(), 2, 3, false), TOL);
+        assertClose(D.zMult(yt, null, 1, 0, true), T.zMult(yt, null, 1, 0, true), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NCOLUMNS, 6).assign(DoubleFunctions.random());
+        DoubleMatrix2D expected = D.zMult(B, null);
+        DoubleMatrix2D result = T.zMult(B, null);
+        for (int j = 0; j < 6; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+        B = new DenseDoubleMatrix2D(6, NROWS).assign(DoubleFunctions.random());
+        expected = D.zMult(B, null, 1, 0, true, true);
+        result = T.zMult(B, null, 1, 0, true, true);
+        for (int j = 0; j < 6; j++) {
+            assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+        }
+    }
+
+    public void testSolve() {
+        // nonsymmetric, diagonally dominant
+        double[] c = random(NROWS);
+        double[] r = random(NROWS);
+        c[0] += NROWS;
+        ToeplitzDoubleMatrix2D T = new ToeplitzDoubleMatrix2D(c, r);
+        DoubleMatrix2D D = dense(T);
+        DoubleMatrix1D b = new DenseDoubleMatrix1D(random(NROWS));
+        assertClose(b, D.zMult(T.solve(b), null), TOL);
+        DoubleMatrix2D B = new DenseDoubleMatrix2D(NROWS, 5).assign(DoubleFunctions.random());
+        DoubleMatrix2D R = D.zMult(T.solve(B), null);
+        for (int j = 0; j < 5; j++) {
+            assertClose(B.viewColumn(j), R.viewColumn(j), TOL);
+        }
+        // symmetric positive definite, not diagonally dominant
+        double[] s = new double[NROWS];
+        for (int i = 0; i < NROWS; i++) {
+            s[i] = 1.0 / (1 + i);
+        }
+        T = new ToeplitzDoubleMatrix2D(s);
+        assertClose(b, dense(T).zMult(T.solve(b), null), TOL);
+        try {
+            new ToeplitzDoubleMatrix2D(random(3), random(4)).solve(b.viewPart(0, 3));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
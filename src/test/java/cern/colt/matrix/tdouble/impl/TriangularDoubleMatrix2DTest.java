@@ -0,0 +1,93 @@
+package cern.colt.matrix.tdouble.impl;
+
+import static cern.colt.matrix.tdouble.DoubleMatrixAssert.assertClose;
+
+import junit.framework.TestCase;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.SmpDoubleBlas;
+import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+public class TriangularDoubleMatrix2DTest extends TestCase {
+
+    protected int N = 37;
+
+    protected double TOL = 1e-10;
+
+    public TriangularDoubleMatrix2DTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        ConcurrencyUtils.setThreadsBeginN_2D(1);
+    }
+
+    public void testGetSet() {
+        for (int u = 0; u < 2; u++) {
+            boolean upper = u == 0;
+            DoubleMatrix2D D = new DenseDoubleMatrix2D(N, N).assign(DoubleFunctions.random());
+            TriangularDoubleMatrix2D A = new TriangularDoubleMatrix2D(D, upper);
+            assertEquals(upper, A.isUpperTriangular());
+            assertEquals(N * (N + 1) / 2, A.elements().length);
+            for (int r = 0; r < N; r++) {
+                for (int c = 0; c < N; c++) {
+                    double expected = (upper ? r <= c : c <= r) ? D.getQuick(r, c) : 0;
+                    assertEquals(expected, A.getQuick(r, c), 0);
+                }
+            }
+            A.setQuick(upper ? 4 : 2, upper ? 2 : 4, 1);
+            assertEquals(0, A.getQuick(upper ? 4 : 2, upper ? 2 : 4), 0);
+        }
+    }
+
+    public void testZMult() {
+        for (int u = 0; u < 2; u++) {
+            boolean upper = u == 0;
+            TriangularDoubleMatrix2D A = new TriangularDoubleMatrix2D(new DenseDoubleMatrix2D(N, N)
+                    .assign(DoubleFunctions.random()), upper);
+            DoubleMatrix2D D = new DenseDoubleMatrix2D(N, N).assign(A);
+            for (int t = 0; t < 2; t++) {
+                boolean transpose = t == 1;
+                DoubleMatrix1D y = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+                DoubleMatrix1D z = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+                assertClose(D.zMult(y, z.copy(), 2, 3, transpose), A.zMult(y, z.copy(), 2, 3, transpose), TOL);
+                DoubleMatrix2D B = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+                DoubleMatrix2D C = new DenseDoubleMatrix2D(N, 5).assign(DoubleFunctions.random());
+                DoubleMatrix2D expected = D.zMult(B, C.copy(), 2, 3, transpose, false);
+                DoubleMatrix2D result = A.zMult(B, C.copy(), 2, 3, transpose, false);
+                for (int j = 0; j < 5; j++) {
+                    assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+                }
+                expected = D.zMult(B.viewDice(), null, 1, 0, transpose, true);
+                result = A.zMult(B.viewDice(), null, 1, 0, transpose, true);
+                for (int j = 0; j < 5; j++) {
+                    assertClose(expected.viewColumn(j), result.viewColumn(j), TOL);
+                }
+            }
+        }
+    }
+
+    public void testDtrmv() {
+        int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        ConcurrencyUtils.setNumberOfThreads(3);
+        SmpDoubleBlas blas = new SmpDoubleBlas();
+        for (int u = 0; u < 2; u++) {
+            boolean upper = u == 0;
+            TriangularDoubleMatrix2D A = new TriangularDoubleMatrix2D(new DenseDoubleMatrix2D(N, N)
+                    .assign(DoubleFunctions.random()), upper);
+            DoubleMatrix2D D = new DenseDoubleMatrix2D(N, N).assign(A);
+            for (int t = 0; t < 2; t++) {
+                boolean transpose = t == 1;
+                DoubleMatrix1D x = new DenseDoubleMatrix1D(N).assign(DoubleFunctions.random());
+                DoubleMatrix1D expected = x.copy();
+                DoubleMatrix1D result = x.copy();
+                blas.dtrmv(upper, transpose, false, D, expected);
+                blas.dtrmv(upper, transpose, false, A, result);
+                assertClose(D.zMult(x, null, 1, 0, transpose), expected, TOL);
+                assertClose(expected, result, TOL);
+            }
+        }
+        ConcurrencyUtils.setNumberOfThreads(nthreads);
+    }
+}
@@ -17,6 +17,10 @@ import cern.colt.matrix.tfloat.impl.DenseLargeFloatMatrix3DTest;
 import cern.colt.matrix.tfloat.impl.DenseLargeFloatMatrix3DViewTest;
 import cern.colt.matrix.tfloat.impl.DiagonalFloatMatrix2DTest;
 import cern.colt.matrix.tfloat.impl.DiagonalFloatMatrix2DViewTest;
+import cern.colt.matrix.tfloat.impl.HalfFloatMatrix1DTest;
+import cern.colt.matrix.tfloat.impl.HalfFloatMatrix1DViewTest;
+import cern.colt.matrix.tfloat.impl.HalfFloatMatrix2DTest;
+import cern.colt.matrix.tfloat.impl.HalfFloatMatrix2DViewTest;
 import cern.colt.matrix.tfloat.impl.SparseCCFloatMatrix2DTest;
 import cern.colt.matrix.tfloat.impl.SparseCCFloatMatrix2DViewTest;
 import cern.colt.matrix.tfloat.impl.SparseCCMFloatMatrix2DTest;
@@ -40,6 +44,8 @@ public class AllFloatMatrixTests {
         suite.addTestSuite(DenseFloatMatrix1DViewTest.class);
         suite.addTestSuite(SparseFloatMatrix1DTest.class);
         suite.addTestSuite(SparseFloatMatrix1DViewTest.class);
+        suite.addTestSuite(HalfFloatMatrix1DTest.class);
+        suite.addTestSuite(HalfFloatMatrix1DViewTest.class);
 
         suite.addTestSuite(DenseFloatMatrix2DTest.class);
         suite.addTestSuite(DenseFloatMatrix2DViewTest.class);
@@ -47,6 +53,8 @@ public class AllFloatMatrixTests {
         suite.addTestSuite(DenseColumnFloatMatrix2DViewTest.class);
         suite.addTestSuite(DenseLargeFloatMatrix2DTest.class);
         suite.addTestSuite(DenseLargeFloatMatrix2DViewTest.class);
+        suite.addTestSuite(HalfFloatMatrix2DTest.class);
+        suite.addTestSuite(HalfFloatMatrix2DViewTest.class);
 
         suite.addTestSuite(SparseFloatMatrix2DTest.class);
         suite.addTestSuite(SparseFloatMatrix2DViewTest.class);
@@ -0,0 +1,95 @@
+package cern.colt.matrix.tfloat.impl;
+
+import cern.colt.list.tfloat.FloatArrayList;
+import cern.colt.list.tint.IntArrayList;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tfloat.FloatMatrix1DTest;
+import cern.jet.math.tfloat.FloatFunctions;
+
+public class HalfFloatMatrix1DTest extends FloatMatrix1DTest {
+
+    public HalfFloatMatrix1DTest(String arg0) {
+        super(arg0);
+        TOL = 1e-2f;
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new HalfFloatMatrix1D(SIZE, HalfFloatFormat.FLOAT16);
+        B = new HalfFloatMatrix1D(SIZE, HalfFloatFormat.FLOAT16);
+    }
+
+    protected void populateMatrices() {
+        super.populateMatrices();
+        // keep the quotients in the tests of assign(B, div) small
+        A.assign(FloatFunctions.plus(0.5f));
+        B.assign(FloatFunctions.plus(0.5f));
+    }
+
+    public void testGetNegativeValuesIntArrayListFloatArrayList() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick((int) A.size() / 3, -0.75f);
+        A.setQuick((int) A.size() / 2, -0.125f);
+        IntArrayList indexList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getNegativeValues(indexList, valueList);
+        assertEquals(2, indexList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(indexList.contains((int) A.size() / 3));
+        assertTrue(indexList.contains((int) A.size() / 2));
+        assertTrue(valueList.contains(-0.75f));
+        assertTrue(valueList.contains(-0.125f));
+    }
+
+    public void testGetNonZerosIntArrayListFloatArrayList() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick((int) A.size() / 3, 0.75f);
+        A.setQuick((int) A.size() / 2, 0.125f);
+        IntArrayList indexList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getNonZeros(indexList, valueList);
+        assertEquals(2, indexList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(indexList.contains((int) A.size() / 3));
+        assertTrue(indexList.contains((int) A.size() / 2));
+        assertTrue(valueList.contains(0.75f));
+        assertTrue(valueList.contains(0.125f));
+    }
+
+    public void testGetPositiveValuesIntArrayListFloatArrayList() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick((int) A.size() / 3, 0.75f);
+        A.setQuick((int) A.size() / 2, 0.125f);
+        IntArrayList indexList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getPositiveValues(indexList, valueList);
+        assertEquals(2, indexList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(indexList.contains((int) A.size() / 3));
+        assertTrue(indexList.contains((int) A.size() / 2));
+        assertTrue(valueList.contains(0.75f));
+        assertTrue(valueList.contains(0.125f));
+    }
+
+    public void testConversions() {
+        if (!(A instanceof HalfFloatMatrix1D))
+            return;
+        HalfFloatMatrix1D H = (HalfFloatMatrix1D) A;
+        DenseDoubleMatrix1D D = H.toDenseDouble();
+        HalfFloatMatrix1D G = new HalfFloatMatrix1D(D, HalfFloatFormat.BFLOAT16);
+        HalfFloatMatrix1D F = new HalfFloatMatrix1D(H.toDenseFloat(), HalfFloatFormat.BFLOAT16);
+        assertEquals(SIZE, H.elements().length);
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(H.getQuick(i), D.getQuick(i), 0);
+            assertEquals(H.getQuick(i), G.getQuick(i), H.getQuick(i) / 128);
+            assertEquals(G.getQuick(i), F.getQuick(i), 0);
+        }
+        float expected = 0;
+        for (int i = 0; i < SIZE; i++) {
+            expected += H.getQuick(i) * G.getQuick(i);
+        }
+        assertEquals(expected, H.zDotProduct(G), TOL);
+    }
+}
@@ -0,0 +1,13 @@
+package cern.colt.matrix.tfloat.impl;
+
+public class HalfFloatMatrix1DViewTest extends HalfFloatMatrix1DTest {
+
+    public HalfFloatMatrix1DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new HalfFloatMatrix1D(SIZE, HalfFloatFormat.FLOAT16).viewFlip();
+        B = new HalfFloatMatrix1D(SIZE, HalfFloatFormat.FLOAT16).viewFlip();
+    }
+}
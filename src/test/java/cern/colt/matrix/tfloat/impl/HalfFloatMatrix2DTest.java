@@ -0,0 +1,159 @@
+package cern.colt.matrix.tfloat.impl;
+
+import cern.colt.list.tfloat.FloatArrayList;
+import cern.colt.list.tint.IntArrayList;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tfloat.FloatMatrix1D;
+import cern.colt.matrix.tfloat.FloatMatrix2D;
+import cern.colt.matrix.tfloat.FloatMatrix2DTest;
+import cern.jet.math.tfloat.FloatFunctions;
+
+public class HalfFloatMatrix2DTest extends FloatMatrix2DTest {
+
+    public HalfFloatMatrix2DTest(String arg0) {
+        super(arg0);
+        TOL = 1e-2f;
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new HalfFloatMatrix2D(NROWS, NCOLUMNS, HalfFloatFormat.FLOAT16);
+        B = new HalfFloatMatrix2D(NROWS, NCOLUMNS, HalfFloatFormat.FLOAT16);
+        Bt = new HalfFloatMatrix2D(NCOLUMNS, NROWS, HalfFloatFormat.FLOAT16);
+    }
+
+    protected void populateMatrices() {
+        super.populateMatrices();
+        // keep the quotients in the tests of assign(B, div) small
+        A.assign(FloatFunctions.plus(0.5f));
+        B.assign(FloatFunctions.plus(0.5f));
+        Bt.assign(FloatFunctions.plus(0.5f));
+    }
+
+    public void testGetNegativeValues() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick(A.rows() / 3, A.columns() / 3, -0.75f);
+        A.setQuick(A.rows() / 2, A.columns() / 2, -0.125f);
+        IntArrayList rowList = new IntArrayList();
+        IntArrayList columnList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getNegativeValues(rowList, columnList, valueList);
+        assertEquals(2, rowList.size());
+        assertEquals(2, columnList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(rowList.contains(A.rows() / 3));
+        assertTrue(rowList.contains(A.rows() / 2));
+        assertTrue(columnList.contains(A.columns() / 3));
+        assertTrue(columnList.contains(A.columns() / 2));
+        assertTrue(valueList.contains(-0.75f));
+        assertTrue(valueList.contains(-0.125f));
+    }
+
+    public void testGetNonZeros() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick(A.rows() / 3, A.columns() / 3, 0.75f);
+        A.setQuick(A.rows() / 2, A.columns() / 2, 0.125f);
+        IntArrayList rowList = new IntArrayList();
+        IntArrayList columnList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getNonZeros(rowList, columnList, valueList);
+        assertEquals(2, rowList.size());
+        assertEquals(2, columnList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(rowList.contains(A.rows() / 3));
+        assertTrue(rowList.contains(A.rows() / 2));
+        assertTrue(columnList.contains(A.columns() / 3));
+        assertTrue(columnList.contains(A.columns() / 2));
+        assertTrue(valueList.contains(0.75f));
+        assertTrue(valueList.contains(0.125f));
+    }
+
+    public void testGetPositiveValues() {
+        // 0.75 and 0.125 are exactly representable in 16 bits
+        A.assign(0);
+        A.setQuick(A.rows() / 3, A.columns() / 3, 0.75f);
+        A.setQuick(A.rows() / 2, A.columns() / 2, 0.125f);
+        IntArrayList rowList = new IntArrayList();
+        IntArrayList columnList = new IntArrayList();
+        FloatArrayList valueList = new FloatArrayList();
+        A.getPositiveValues(rowList, columnList, valueList);
+        assertEquals(2, rowList.size());
+        assertEquals(2, columnList.size());
+        assertEquals(2, valueList.size());
+        assertTrue(rowList.contains(A.rows() / 3));
+        assertTrue(rowList.contains(A.rows() / 2));
+        assertTrue(columnList.contains(A.columns() / 3));
+        assertTrue(columnList.contains(A.columns() / 2));
+        assertTrue(valueList.contains(0.75f));
+        assertTrue(valueList.contains(0.125f));
+    }
+
+    public void testFormats() {
+        HalfFloatFormat[] formats = HalfFloatFormat.values();
+        float[] exact = { 0, -0f, 1, -2, 0.5f, 0.375f, 1024, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+        for (int f = 0; f < formats.length; f++) {
+            for (int i = 0; i < exact.length; i++) {
+                assertEquals(exact[i], formats[f].decode(formats[f].encode(exact[i])), 0);
+            }
+            assertTrue(Float.isNaN(formats[f].decode(formats[f].encode(Float.NaN))));
+        }
+        // ties to even
+        assertEquals(1f, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(1 + 1f / 2048)), 0);
+        assertEquals(1f, HalfFloatFormat.BFLOAT16.decode(HalfFloatFormat.BFLOAT16.encode(1 + 1f / 256)), 0);
+        // range
+        assertEquals(65504f, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(65504)), 0);
+        assertEquals(Float.POSITIVE_INFINITY, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(1e5f)), 0);
+        assertEquals(1e30f, HalfFloatFormat.BFLOAT16.decode(HalfFloatFormat.BFLOAT16.encode(1e30f)), 1e28f);
+        // subnormals
+        float min = 5.9604645E-8f;
+        assertEquals(min, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(min)), 0);
+        assertEquals(3 * min, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(3 * min)), 0);
+        assertEquals(0, HalfFloatFormat.FLOAT16.decode(HalfFloatFormat.FLOAT16.encode(min / 2)), 0);
+        for (int h = 0; h < (1 << 16); h++) {
+            float value = HalfFloatFormat.FLOAT16.decode((short) h);
+            if (!Float.isNaN(value))
+                assertEquals((short) h, HalfFloatFormat.FLOAT16.encode(value));
+        }
+    }
+
+    public void testConversions() {
+        DenseFloatMatrix2D F = ((HalfFloatMatrix2D) A).toDenseFloat();
+        DenseDoubleMatrix2D D = ((HalfFloatMatrix2D) A).toDenseDouble();
+        for (int r = 0; r < A.rows(); r++) {
+            for (int c = 0; c < A.columns(); c++) {
+                assertEquals(A.getQuick(r, c), F.getQuick(r, c), 0);
+                assertEquals(A.getQuick(r, c), D.getQuick(r, c), 0);
+            }
+        }
+        HalfFloatMatrix2D H = new HalfFloatMatrix2D(D, HalfFloatFormat.BFLOAT16);
+        HalfFloatMatrix2D G = new HalfFloatMatrix2D(F, HalfFloatFormat.BFLOAT16);
+        for (int r = 0; r < A.rows(); r++) {
+            for (int c = 0; c < A.columns(); c++) {
+                assertEquals(A.getQuick(r, c), H.getQuick(r, c), A.getQuick(r, c) / 128);
+                assertEquals(H.getQuick(r, c), G.getQuick(r, c), 0);
+            }
+        }
+        H.assign(A);
+        assertEquals(HalfFloatFormat.BFLOAT16, H.getFormat());
+        assertEquals(G.toDenseFloat(), H.toDenseFloat());
+    }
+
+    public void testZMultMixedFormats() {
+        HalfFloatMatrix2D H = new HalfFloatMatrix2D(A, HalfFloatFormat.BFLOAT16);
+        FloatMatrix2D Hf = H.toDenseFloat();
+        FloatMatrix2D C = H.zMult(Bt, null);
+        FloatMatrix2D expected = Hf.zMult(Bt, null);
+        for (int r = 0; r < C.rows(); r++) {
+            for (int c = 0; c < C.columns(); c++) {
+                assertEquals(expected.getQuick(r, c), C.getQuick(r, c), TOL);
+            }
+        }
+        FloatMatrix1D y = new DenseFloatMatrix1D(H.rows()).assign(1);
+        FloatMatrix1D z = H.zMult(y, null, 1, 0, true);
+        FloatMatrix1D ez = Hf.zMult(y, null, 1, 0, true);
+        for (int c = 0; c < z.size(); c++) {
+            assertEquals(ez.getQuick(c), z.getQuick(c), TOL);
+        }
+    }
+}
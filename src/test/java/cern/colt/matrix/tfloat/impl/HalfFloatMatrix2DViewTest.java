@@ -0,0 +1,20 @@
+package cern.colt.matrix.tfloat.impl;
+
+public class HalfFloatMatrix2DViewTest extends HalfFloatMatrix2DTest {
+
+    public HalfFloatMatrix2DViewTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void createMatrices() throws Exception {
+        A = new HalfFloatMatrix2D(NCOLUMNS, NROWS, HalfFloatFormat.FLOAT16).viewDice();
+        B = new HalfFloatMatrix2D(NCOLUMNS, NROWS, HalfFloatFormat.FLOAT16).viewDice();
+        Bt = new HalfFloatMatrix2D(NROWS, NCOLUMNS, HalfFloatFormat.FLOAT16).viewDice();
+    }
+
+    public void testConversions() {
+    }
+
+    public void testZMultMixedFormats() {
+    }
+}